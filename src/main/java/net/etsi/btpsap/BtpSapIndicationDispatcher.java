@@ -0,0 +1,484 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** A {@link BtpSap_DataInd} that dispatches indications to handlers registered on their BTP destination port.
+ * 
+ * <p>
+ * Handlers are registered on a destination port (e.g., 2001 for CAMs, 2002 for DENMs),
+ * or on a destination port and destination port info (a secondary key).
+ * An indication is delivered to all handlers registered on its destination port and, if present, destination port info,
+ * in order of registration (port-info handlers first);
+ * if there are none, it is delivered to the wildcard handler (if set).
+ * The indication is delivered through the same {@code btpSapIndication} variant it arrived through,
+ * so payloads passed by offset or in a {@link ByteBuffer} reach the handlers without copying;
+ * handlers must therefore leave the payload (including the position and limit of a payload buffer) unchanged.
+ * A handler throwing an exception aborts the delivery to the remaining handlers.
+ * 
+ * <p>
+ * The handlers of each port are kept in an immutable route, held in a 65536-slot array indexed by destination port.
+ * Registration replaces the route of the port (copy-on-write),
+ * so dispatching takes a single (volatile) array load and involves neither locking nor allocation.
+ * Registrations are meant to be (relatively) rare.
+ * 
+ * <p>
+ * This class is thread-safe.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ */
+public class BtpSapIndicationDispatcher
+implements BtpSap_DataInd
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTOR(S) / CLONING / FACTORY
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a dispatcher without handlers.
+   * 
+   */
+  public BtpSapIndicationDispatcher ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // ROUTES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The number of BTP ports.
+   * 
+   */
+  public final static int NUMBER_OF_PORTS = 65536;
+
+  private final static BtpSap_DataInd[] NO_HANDLERS = new BtpSap_DataInd[0];
+
+  /** The (immutable) handlers of a single destination port.
+   * 
+   */
+  private final static class Route
+  {
+
+    private Route (final BtpSap_DataInd[] portHandlers, final int[] infoKeys, final BtpSap_DataInd[][] infoHandlers)
+    {
+      this.portHandlers = portHandlers;
+      this.infoKeys = infoKeys;
+      this.infoHandlers = infoHandlers;
+      this.combinedHandlers = new BtpSap_DataInd[infoKeys.length][];
+      for (int k = 0; k < infoKeys.length; k++)
+      {
+        this.combinedHandlers[k] = Arrays.copyOf (infoHandlers[k], infoHandlers[k].length + portHandlers.length);
+        System.arraycopy (portHandlers, 0, this.combinedHandlers[k], infoHandlers[k].length, portHandlers.length);
+      }
+    }
+
+    /** The handlers registered on the port only.
+     * 
+     */
+    private final BtpSap_DataInd[] portHandlers;
+
+    /** The port-info keys with handlers, in increasing order.
+     * 
+     */
+    private final int[] infoKeys;
+
+    /** The handlers registered on each port-info key.
+     * 
+     */
+    private final BtpSap_DataInd[][] infoHandlers;
+
+    /** The handlers for each port-info key, followed by the port handlers.
+     * 
+     */
+    private final BtpSap_DataInd[][] combinedHandlers;
+
+    private BtpSap_DataInd[] handlers (final Integer btpDstPortInfo)
+    {
+      if (btpDstPortInfo != null && this.infoKeys.length > 0)
+      {
+        final int k = Arrays.binarySearch (this.infoKeys, btpDstPortInfo);
+        if (k >= 0)
+          return this.combinedHandlers[k];
+      }
+      return this.portHandlers;
+    }
+
+    private boolean isEmpty ()
+    {
+      return this.portHandlers.length == 0 && this.infoKeys.length == 0;
+    }
+
+  }
+
+  private final static Route EMPTY_ROUTE = new Route (NO_HANDLERS, new int[0], new BtpSap_DataInd[0][]);
+
+  private final AtomicReferenceArray<Route> routes = new AtomicReferenceArray<> (NUMBER_OF_PORTS);
+
+  private static BtpSap_DataInd[] add (final BtpSap_DataInd[] handlers, final BtpSap_DataInd handler)
+  {
+    final BtpSap_DataInd[] newHandlers = Arrays.copyOf (handlers, handlers.length + 1);
+    newHandlers[handlers.length] = handler;
+    return newHandlers;
+  }
+
+  private static BtpSap_DataInd[] remove (final BtpSap_DataInd[] handlers, final int index)
+  {
+    final BtpSap_DataInd[] newHandlers = new BtpSap_DataInd[handlers.length - 1];
+    System.arraycopy (handlers, 0, newHandlers, 0, index);
+    System.arraycopy (handlers, index + 1, newHandlers, index, handlers.length - index - 1);
+    return newHandlers;
+  }
+
+  private static int indexOf (final BtpSap_DataInd[] handlers, final BtpSap_DataInd handler)
+  {
+    for (int i = 0; i < handlers.length; i++)
+      if (handlers[i] == handler)
+        return i;
+    return -1;
+  }
+
+  private Route route (final int btpDstPort)
+  {
+    final Route route = this.routes.get (btpDstPort);
+    return route != null ? route : EMPTY_ROUTE;
+  }
+
+  private void setRoute (final int btpDstPort, final Route route)
+  {
+    this.routes.set (btpDstPort, route.isEmpty () ? null : route);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // REGISTRATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Registers a handler on a destination port (for any destination port info).
+   * 
+   * @param btpDstPort The BTP destination port, between 0 and 65535 inclusive.
+   * @param handler    The handler, non-{@code null}.
+   * 
+   * @return Whether the handler was registered, i.e., {@code false} if it was already registered on the port.
+   * 
+   * @throws IllegalArgumentException If the port is out of range or the handler is {@code null}.
+   * 
+   */
+  public final synchronized boolean register (final int btpDstPort, final BtpSap_DataInd handler)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS || handler == null)
+      throw new IllegalArgumentException ();
+    final Route route = route (btpDstPort);
+    if (indexOf (route.portHandlers, handler) >= 0)
+      return false;
+    setRoute (btpDstPort, new Route (add (route.portHandlers, handler), route.infoKeys, route.infoHandlers));
+    return true;
+  }
+
+  /** Registers a handler on a destination port and destination port info.
+   * 
+   * @param btpDstPort     The BTP destination port, between 0 and 65535 inclusive.
+   * @param btpDstPortInfo The BTP destination port info, between 0 and 65535 inclusive.
+   * @param handler        The handler, non-{@code null}.
+   * 
+   * @return Whether the handler was registered, i.e., {@code false} if it was already registered on the port and port info.
+   * 
+   * @throws IllegalArgumentException If the port or port info is out of range or the handler is {@code null}.
+   * 
+   */
+  public final synchronized boolean register (final int btpDstPort, final int btpDstPortInfo, final BtpSap_DataInd handler)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS || btpDstPortInfo < 0 || btpDstPortInfo >= NUMBER_OF_PORTS
+      || handler == null)
+      throw new IllegalArgumentException ();
+    final Route route = route (btpDstPort);
+    final int k = Arrays.binarySearch (route.infoKeys, btpDstPortInfo);
+    final int[] infoKeys;
+    final BtpSap_DataInd[][] infoHandlers;
+    if (k >= 0)
+    {
+      if (indexOf (route.infoHandlers[k], handler) >= 0)
+        return false;
+      infoKeys = route.infoKeys;
+      infoHandlers = route.infoHandlers.clone ();
+      infoHandlers[k] = add (route.infoHandlers[k], handler);
+    }
+    else
+    {
+      final int i = -k - 1;
+      infoKeys = new int[route.infoKeys.length + 1];
+      infoHandlers = new BtpSap_DataInd[route.infoKeys.length + 1][];
+      System.arraycopy (route.infoKeys, 0, infoKeys, 0, i);
+      System.arraycopy (route.infoHandlers, 0, infoHandlers, 0, i);
+      infoKeys[i] = btpDstPortInfo;
+      infoHandlers[i] = new BtpSap_DataInd[] { handler };
+      System.arraycopy (route.infoKeys, i, infoKeys, i + 1, route.infoKeys.length - i);
+      System.arraycopy (route.infoHandlers, i, infoHandlers, i + 1, route.infoKeys.length - i);
+    }
+    setRoute (btpDstPort, new Route (route.portHandlers, infoKeys, infoHandlers));
+    return true;
+  }
+
+  /** Unregisters a handler from a destination port (for any destination port info).
+   * 
+   * <p>
+   * Registrations of the handler on the port with specific destination port infos are not affected.
+   * 
+   * @param btpDstPort The BTP destination port, between 0 and 65535 inclusive.
+   * @param handler    The handler.
+   * 
+   * @return Whether the handler was registered on the port (and is now unregistered).
+   * 
+   * @throws IllegalArgumentException If the port is out of range.
+   * 
+   */
+  public final synchronized boolean unregister (final int btpDstPort, final BtpSap_DataInd handler)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS)
+      throw new IllegalArgumentException ();
+    final Route route = route (btpDstPort);
+    final int i = indexOf (route.portHandlers, handler);
+    if (i < 0)
+      return false;
+    setRoute (btpDstPort, new Route (remove (route.portHandlers, i), route.infoKeys, route.infoHandlers));
+    return true;
+  }
+
+  /** Unregisters a handler from a destination port and destination port info.
+   * 
+   * @param btpDstPort     The BTP destination port, between 0 and 65535 inclusive.
+   * @param btpDstPortInfo The BTP destination port info.
+   * @param handler        The handler.
+   * 
+   * @return Whether the handler was registered on the port and port info (and is now unregistered).
+   * 
+   * @throws IllegalArgumentException If the port is out of range.
+   * 
+   */
+  public final synchronized boolean unregister (final int btpDstPort, final int btpDstPortInfo, final BtpSap_DataInd handler)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS)
+      throw new IllegalArgumentException ();
+    final Route route = route (btpDstPort);
+    final int k = Arrays.binarySearch (route.infoKeys, btpDstPortInfo);
+    if (k < 0)
+      return false;
+    final int i = indexOf (route.infoHandlers[k], handler);
+    if (i < 0)
+      return false;
+    final int[] infoKeys;
+    final BtpSap_DataInd[][] infoHandlers;
+    if (route.infoHandlers[k].length > 1)
+    {
+      infoKeys = route.infoKeys;
+      infoHandlers = route.infoHandlers.clone ();
+      infoHandlers[k] = remove (route.infoHandlers[k], i);
+    }
+    else
+    {
+      infoKeys = new int[route.infoKeys.length - 1];
+      infoHandlers = new BtpSap_DataInd[route.infoKeys.length - 1][];
+      System.arraycopy (route.infoKeys, 0, infoKeys, 0, k);
+      System.arraycopy (route.infoHandlers, 0, infoHandlers, 0, k);
+      System.arraycopy (route.infoKeys, k + 1, infoKeys, k, route.infoKeys.length - k - 1);
+      System.arraycopy (route.infoHandlers, k + 1, infoHandlers, k, route.infoKeys.length - k - 1);
+    }
+    setRoute (btpDstPort, new Route (route.portHandlers, infoKeys, infoHandlers));
+    return true;
+  }
+
+  /** Returns whether a destination port has handlers (on the port, or on any of its destination port infos).
+   * 
+   * @param btpDstPort The BTP destination port, between 0 and 65535 inclusive.
+   * 
+   * @return Whether the port has handlers.
+   * 
+   * @throws IllegalArgumentException If the port is out of range.
+   * 
+   */
+  public final boolean hasHandlers (final int btpDstPort)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS)
+      throw new IllegalArgumentException ();
+    return this.routes.get (btpDstPort) != null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // WILDCARD HANDLER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The wildcard handler, if any, in a single-element array; otherwise an empty array.
+   * 
+   */
+  private volatile BtpSap_DataInd[] wildcardHandlers = NO_HANDLERS;
+
+  public final BtpSap_DataInd getWildcardHandler ()
+  {
+    final BtpSap_DataInd[] wildcardHandlers = this.wildcardHandlers;
+    return wildcardHandlers.length > 0 ? wildcardHandlers[0] : null;
+  }
+
+  /** Sets the handler of indications without (other) handlers.
+   * 
+   * @param wildcardHandler The wildcard handler, {@code null} to drop such indications.
+   * 
+   */
+  public final void setWildcardHandler (final BtpSap_DataInd wildcardHandler)
+  {
+    this.wildcardHandlers = wildcardHandler != null ? new BtpSap_DataInd[] { wildcardHandler } : NO_HANDLERS;
+  }
+
+  /** Returns the handlers for an indication; an empty array if there are none (not even a wildcard handler).
+   * 
+   */
+  private BtpSap_DataInd[] handlers (final int btpDstPort, final Integer btpDstPortInfo)
+  {
+    if (btpDstPort < 0 || btpDstPort >= NUMBER_OF_PORTS)
+      throw new IllegalArgumentException ();
+    final Route route = this.routes.get (btpDstPort);
+    final BtpSap_DataInd[] handlers = route != null ? route.handlers (btpDstPortInfo) : NO_HANDLERS;
+    return handlers.length > 0 ? handlers : this.wildcardHandlers;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataInd
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Dispatches an indication.
+   * 
+   * @throws IllegalArgumentException If the destination port is out of range, or if a handler throws it.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    for (final BtpSap_DataInd handler : handlers (btpDstPort, btpDstPortInfo))
+      handler.btpSapIndication
+        (btpSrcPort,
+         btpDstPort,
+         btpDstPortInfo,
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         gnRemLifetime_s,
+         length,
+         data);
+  }
+
+  /** Dispatches an indication with the payload at an arbitrary offset.
+   * 
+   * @throws IllegalArgumentException If the destination port is out of range, or if a handler throws it.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    for (final BtpSap_DataInd handler : handlers (btpDstPort, btpDstPortInfo))
+      handler.btpSapIndication
+        (btpSrcPort,
+         btpDstPort,
+         btpDstPortInfo,
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         gnRemLifetime_s,
+         offset,
+         length,
+         data);
+  }
+
+  /** Dispatches an indication with the payload held in a (heap or direct) buffer.
+   * 
+   * @throws IllegalArgumentException If the destination port is out of range, or if a handler throws it.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final ByteBuffer payload)
+  throws IllegalArgumentException
+  {
+    for (final BtpSap_DataInd handler : handlers (btpDstPort, btpDstPortInfo))
+      handler.btpSapIndication
+        (btpSrcPort,
+         btpDstPort,
+         btpDstPortInfo,
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         gnRemLifetime_s,
+         payload);
+  }
+
+}
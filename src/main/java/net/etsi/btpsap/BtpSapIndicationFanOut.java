@@ -0,0 +1,845 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** A {@link BtpSap_DataInd} that fans out indications to subscribers, each with its own bounded mailbox and worker thread.
+ * 
+ * <p>
+ * The (single) thread delivering indications to the fan-out (e.g., the receiver thread of a BtpSap client,
+ * or a {@link BtpSapIndicationDispatcher}) only copies each indication into the mailbox of each subscriber;
+ * the subscriber handlers are invoked from their own (daemon) worker threads.
+ * A slow or blocked handler (e.g., a logger writing to disk) therefore only fills its own mailbox,
+ * and does not delay the delivery of indications to other subscribers.
+ * What happens when a mailbox is full is determined by the {@link OverflowPolicy} of the subscription.
+ * A handler throwing a {@link RuntimeException} is logged and counted, and receives the next indication;
+ * a handler throwing an {@link Error} terminates its worker thread and closes its subscription,
+ * so that the producer never waits on a mailbox without a consumer.
+ * 
+ * <p>
+ * Each mailbox is a single-producer single-consumer ring of pre-allocated slots;
+ * the payload is copied into a (re-used) array owned by the slot, and, by the worker, into a (re-used) array of its own,
+ * from which it is delivered to the handler through the {@code offset}/{@code length} variant of {@code btpSapIndication}.
+ * The other arguments of the indication are retained by reference until delivered,
+ * and must therefore not be mutated by the producer.
+ * In steady state, neither enqueueing nor delivering an indication involves locking or allocation.
+ * 
+ * <p>
+ * The lag of a subscriber is the time elapsed since the indication it is currently handling was enqueued.
+ * If it exceeds the slow-consumer threshold of the subscription, the subscriber is marked slow
+ * (and a warning is logged, including the queue depth and lag);
+ * it is marked recovered (and logged as such) once it delivers an indication with a lag below half the threshold.
+ * The lag is checked whenever an indication is enqueued at, or delivered by, the subscriber.
+ * 
+ * <p>
+ * The {@code btpSapIndication} methods must not be invoked concurrently (by different threads);
+ * (un)subscribing and the metrics are thread-safe.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ * @see Subscription
+ * 
+ */
+public class BtpSapIndicationFanOut
+implements BtpSap_DataInd, Closeable
+{
+
+  private static final Logger LOG = Logger.getLogger (BtpSapIndicationFanOut.class.getName ());
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTOR(S) / CLONING / FACTORY
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a fan-out without subscribers.
+   * 
+   */
+  public BtpSapIndicationFanOut ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // OVERFLOW POLICY
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The policy applied to an indication arriving at a full mailbox.
+   * 
+   */
+  public enum OverflowPolicy
+  {
+    /** The new indication is dropped.
+     * 
+     */
+    DROP_NEWEST,
+    /** The oldest indication (not yet being delivered) is dropped to make room for the new one.
+     * 
+     */
+    DROP_OLDEST,
+    /** The producer waits until there is room; note that this delays the delivery to all other subscribers.
+     * 
+     */
+    BLOCK;
+  }
+
+  /** The interval at which a producer blocked by a full mailbox re-checks for room, in nanoseconds.
+   * 
+   */
+  private final static long BLOCK_PARK_NS = 50000L;
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // SUBSCRIPTIONS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final static Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+  /** The subscriptions, replaced (copy-on-write) upon (un)subscribing.
+   * 
+   */
+  private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+  private boolean closed = false;
+
+  /** Subscribes a handler, and starts its worker thread.
+   * 
+   * @param name                     The name of the subscriber, used in its thread name and in log messages, non-{@code null}.
+   * @param handler                  The handler, non-{@code null}.
+   * @param capacity                 The maximum number of pending indications in the mailbox, strictly positive.
+   * @param overflowPolicy           The overflow policy, non-{@code null}.
+   * @param slowConsumerThreshold_ms The lag above which the subscriber is considered slow, strictly positive.
+   * 
+   * @return The subscription.
+   * 
+   * @throws IllegalArgumentException If an argument is {@code null} or not strictly positive.
+   * @throws IllegalStateException    If the fan-out is closed.
+   * 
+   */
+  public final synchronized Subscription subscribe
+  (final String name,
+   final BtpSap_DataInd handler,
+   final int capacity,
+   final OverflowPolicy overflowPolicy,
+   final int slowConsumerThreshold_ms)
+  {
+    if (name == null || handler == null || capacity <= 0 || capacity == Integer.MAX_VALUE || overflowPolicy == null
+      || slowConsumerThreshold_ms <= 0)
+      throw new IllegalArgumentException ();
+    if (this.closed)
+      throw new IllegalStateException ();
+    final Subscription subscription = new Subscription (name, handler, capacity, overflowPolicy, slowConsumerThreshold_ms);
+    final Subscription[] newSubscriptions = Arrays.copyOf (this.subscriptions, this.subscriptions.length + 1);
+    newSubscriptions[newSubscriptions.length - 1] = subscription;
+    this.subscriptions = newSubscriptions;
+    subscription.worker.start ();
+    return subscription;
+  }
+
+  private synchronized void remove (final Subscription subscription)
+  {
+    final Subscription[] subscriptions = this.subscriptions;
+    for (int i = 0; i < subscriptions.length; i++)
+      if (subscriptions[i] == subscription)
+      {
+        final Subscription[] newSubscriptions = new Subscription[subscriptions.length - 1];
+        System.arraycopy (subscriptions, 0, newSubscriptions, 0, i);
+        System.arraycopy (subscriptions, i + 1, newSubscriptions, i, subscriptions.length - i - 1);
+        this.subscriptions = newSubscriptions;
+        return;
+      }
+  }
+
+  /** Returns the (current) subscriptions, in order of subscription.
+   * 
+   * @return A new array holding the subscriptions.
+   * 
+   */
+  public final Subscription[] getSubscriptions ()
+  {
+    return this.subscriptions.clone ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // SUBSCRIPTION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A mailbox slot; written by the producer and read by the worker, with visibility through the ring indices.
+   * 
+   */
+  private final static class Slot
+  {
+
+    private Integer btpSrcPort;
+
+    private int btpDstPort;
+
+    private Integer btpDstPortInfo;
+
+    private GnDestination gnDstAddress;
+
+    private GnPositionVector gnSrcPV;
+
+    private GnSecurityReport gnSecReport;
+
+    private GnCertificateId gnCertId;
+
+    private GnPermissions gnPermissions;
+
+    private GnTrafficClass gnTrafficClass;
+
+    private Integer gnRemLifetime_s;
+
+    private int length;
+
+    private byte[] data = new byte[0];
+
+    private long enqueued_ns;
+
+    /** Copies another slot into this one (including the payload); tolerates the other slot being overwritten concurrently.
+     * 
+     */
+    private void copy (final Slot slot)
+    {
+      this.btpSrcPort = slot.btpSrcPort;
+      this.btpDstPort = slot.btpDstPort;
+      this.btpDstPortInfo = slot.btpDstPortInfo;
+      this.gnDstAddress = slot.gnDstAddress;
+      this.gnSrcPV = slot.gnSrcPV;
+      this.gnSecReport = slot.gnSecReport;
+      this.gnCertId = slot.gnCertId;
+      this.gnPermissions = slot.gnPermissions;
+      this.gnTrafficClass = slot.gnTrafficClass;
+      this.gnRemLifetime_s = slot.gnRemLifetime_s;
+      final byte[] data = slot.data;
+      final int length = Math.min (slot.length, data.length);
+      if (this.data.length < length)
+        this.data = new byte[Math.max (length, 2 * this.data.length)];
+      System.arraycopy (data, 0, this.data, 0, length);
+      this.length = length;
+      this.enqueued_ns = slot.enqueued_ns;
+    }
+
+  }
+
+  /** The value of the delivery start time of an idle worker.
+   * 
+   */
+  private final static long IDLE = Long.MIN_VALUE;
+
+  /** A subscription of a handler to a {@link BtpSapIndicationFanOut}, holding its mailbox, worker thread and metrics.
+   * 
+   * <p>
+   * The mailbox is a ring of {@code capacity} slots, with indices increasing without bound.
+   * The producer publishes slot {@code tail} by incrementing {@code tail};
+   * the worker claims slot {@code head} by incrementing {@code head} (compare-and-set),
+   * which the producer also does to drop the oldest indication.
+   * The worker copies a slot into its private delivery slot <i>before</i> claiming it;
+   * the producer only overwrites a slot after {@code head} has moved past it,
+   * so a successful claim implies an intact copy, and the handler is never exposed to a slot being overwritten.
+   * 
+   */
+  public final class Subscription
+  implements Closeable
+  {
+
+    private Subscription
+    (final String name,
+     final BtpSap_DataInd handler,
+     final int capacity,
+     final OverflowPolicy overflowPolicy,
+     final int slowConsumerThreshold_ms)
+    {
+      this.name = name;
+      this.handler = handler;
+      this.capacity = capacity;
+      this.overflowPolicy = overflowPolicy;
+      this.slowConsumerThreshold_ms = slowConsumerThreshold_ms;
+      this.slowConsumerThreshold_ns = slowConsumerThreshold_ms * 1000000L;
+      this.slots = new Slot[capacity];
+      for (int s = 0; s < this.slots.length; s++)
+        this.slots[s] = new Slot ();
+      this.worker = new Thread (this::work, "BtpSapIndicationFanOut-" + name);
+      this.worker.setDaemon (true);
+    }
+
+    private final String name;
+
+    public final String getName ()
+    {
+      return this.name;
+    }
+
+    private final BtpSap_DataInd handler;
+
+    public final BtpSap_DataInd getHandler ()
+    {
+      return this.handler;
+    }
+
+    private final int capacity;
+
+    public final int getCapacity ()
+    {
+      return this.capacity;
+    }
+
+    private final OverflowPolicy overflowPolicy;
+
+    public final OverflowPolicy getOverflowPolicy ()
+    {
+      return this.overflowPolicy;
+    }
+
+    private final int slowConsumerThreshold_ms;
+
+    public final int getSlowConsumerThreshold_ms ()
+    {
+      return this.slowConsumerThreshold_ms;
+    }
+
+    private final long slowConsumerThreshold_ns;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // MAILBOX
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private final Slot[] slots;
+
+    /** The index of the next slot to deliver (or drop).
+     * 
+     */
+    private final AtomicLong head = new AtomicLong ();
+
+    /** The index of the next slot to fill; only written by the producer.
+     * 
+     */
+    private volatile long tail = 0L;
+
+    /** Whether the worker is (about to be) parked on an empty mailbox.
+     * 
+     */
+    private volatile boolean workerWaiting = false;
+
+    /** The enqueue time of the indication being delivered, {@link #IDLE} if none.
+     * 
+     */
+    private volatile long delivering_ns = IDLE;
+
+    private volatile boolean closed = false;
+
+    private final Thread worker;
+
+    /** The copy of the indication being delivered; only accessed by the worker.
+     * 
+     */
+    private final Slot delivery = new Slot ();
+
+    /** Enqueues an indication; invoked by the producer only.
+     * 
+     * <p>
+     * The payload is taken from {@code payload} if non-{@code null}, otherwise from {@code data}.
+     * 
+     */
+    private void offer
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int offset,
+     final int length,
+     final byte[] data,
+     final ByteBuffer payload,
+     final long now_ns)
+    {
+      final long t = this.tail;
+      while (true)
+      {
+        if (this.closed)
+          return;
+        final long h = this.head.get ();
+        if (t - h < this.capacity)
+          break;
+        if (this.overflowPolicy == OverflowPolicy.BLOCK)
+        {
+          checkSlow (System.nanoTime ());
+          LockSupport.parkNanos (BLOCK_PARK_NS);
+        }
+        else if (this.overflowPolicy == OverflowPolicy.DROP_OLDEST)
+        {
+          // Fails if the worker claimed it first; either way, there is one pending indication less.
+          if (this.head.compareAndSet (h, h + 1))
+            this.droppedCount.increment ();
+        }
+        else
+        {
+          this.droppedCount.increment ();
+          checkSlow (now_ns);
+          return;
+        }
+      }
+      final Slot slot = this.slots[(int) (t % this.slots.length)];
+      slot.btpSrcPort = btpSrcPort;
+      slot.btpDstPort = btpDstPort;
+      slot.btpDstPortInfo = btpDstPortInfo;
+      slot.gnDstAddress = gnDstAddress;
+      slot.gnSrcPV = gnSrcPV;
+      slot.gnSecReport = gnSecReport;
+      slot.gnCertId = gnCertId;
+      slot.gnPermissions = gnPermissions;
+      slot.gnTrafficClass = gnTrafficClass;
+      slot.gnRemLifetime_s = gnRemLifetime_s;
+      if (slot.data.length < length)
+        slot.data = new byte[Math.max (length, 2 * slot.data.length)];
+      if (payload != null)
+      {
+        final int position = payload.position ();
+        payload.get (slot.data, 0, length);
+        payload.position (position);
+      }
+      else if (length > 0)
+        System.arraycopy (data, offset, slot.data, 0, length);
+      slot.length = length;
+      slot.enqueued_ns = now_ns;
+      this.tail = t + 1;
+      final long depth = t + 1 - this.head.get ();
+      if (depth > this.maxQueueDepth)
+        this.maxQueueDepth = depth;
+      if (this.workerWaiting)
+        LockSupport.unpark (this.worker);
+      checkSlow (now_ns);
+    }
+
+    /** The main loop of the worker thread.
+     * 
+     * <p>
+     * If the worker terminates for any other reason than the subscription being closed (e.g., an {@link Error}),
+     * the subscription is closed, so that a (blocked) producer no longer waits for room in the mailbox.
+     * 
+     */
+    private void work ()
+    {
+      try
+      {
+        while (! this.closed)
+        {
+          final long h = this.head.get ();
+          if (h == this.tail)
+          {
+            this.delivering_ns = IDLE;
+            this.workerWaiting = true;
+            if (this.head.get () == this.tail && ! this.closed)
+              LockSupport.park (this);
+            this.workerWaiting = false;
+            continue;
+          }
+          final Slot slot = this.delivery;
+          slot.copy (this.slots[(int) (h % this.slots.length)]);
+          // Fails if the producer dropped the indication, in which case the copy may be corrupt.
+          if (! this.head.compareAndSet (h, h + 1))
+            continue;
+          this.delivering_ns = slot.enqueued_ns;
+          try
+          {
+            this.handler.btpSapIndication
+              (slot.btpSrcPort,
+               slot.btpDstPort,
+               slot.btpDstPortInfo,
+               slot.gnDstAddress,
+               slot.gnSrcPV,
+               slot.gnSecReport,
+               slot.gnCertId,
+               slot.gnPermissions,
+               slot.gnTrafficClass,
+               slot.gnRemLifetime_s,
+               0,
+               slot.length,
+               slot.data);
+          }
+          catch (RuntimeException re)
+          {
+            this.failureCount.increment ();
+            LOG.log (Level.WARNING, "Subscriber " + this.name + " failed: ", re);
+          }
+          catch (Error e)
+          {
+            this.failureCount.increment ();
+            LOG.log (Level.SEVERE, "Subscriber " + this.name + " failed fatally: ", e);
+            throw e;
+          }
+          this.deliveredCount.increment ();
+          final long lag_ns = System.nanoTime () - slot.enqueued_ns;
+          if (lag_ns > this.maxLag_ns)
+            this.maxLag_ns = lag_ns;
+          if (lag_ns > this.slowConsumerThreshold_ns)
+            checkSlow (slot.enqueued_ns + lag_ns);
+          else if (lag_ns < this.slowConsumerThreshold_ns / 2 && this.slow.compareAndSet (true, false))
+            LOG.log (Level.INFO, "Subscriber {0} recovered; queue depth: {1}; lag: {2} ms.",
+              new Object[]{this.name, getQueueDepth (), lag_ns / 1000000L});
+        }
+      }
+      finally
+      {
+        // E.g., the handler threw an Error; never leave the producer waiting on a mailbox without a consumer.
+        if (! this.closed)
+        {
+          LOG.log (Level.SEVERE, "Worker of subscriber {0} terminated; unsubscribing.", this.name);
+          close ();
+        }
+      }
+    }
+
+    /** Marks the subscriber slow (and logs a warning) if its lag at given time exceeds the threshold.
+     * 
+     */
+    private void checkSlow (final long now_ns)
+    {
+      final long delivering_ns = this.delivering_ns;
+      if (delivering_ns == IDLE || now_ns - delivering_ns <= this.slowConsumerThreshold_ns || this.slow.get ())
+        return;
+      if (this.slow.compareAndSet (false, true))
+      {
+        this.slowCount.increment ();
+        LOG.log (Level.WARNING, "Slow subscriber {0}; queue depth: {1}; lag: {2} ms.",
+          new Object[]{this.name, getQueueDepth (), (now_ns - delivering_ns) / 1000000L});
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // METRICS
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private final LongAdder deliveredCount = new LongAdder ();
+
+    private final LongAdder droppedCount = new LongAdder ();
+
+    private final LongAdder failureCount = new LongAdder ();
+
+    private final LongAdder slowCount = new LongAdder ();
+
+    private final AtomicBoolean slow = new AtomicBoolean ();
+
+    /** The maximum queue depth; only written by the producer.
+     * 
+     */
+    private volatile long maxQueueDepth = 0L;
+
+    /** The maximum lag; only written by the worker.
+     * 
+     */
+    private volatile long maxLag_ns = 0L;
+
+    /** Returns the number of indications waiting in the mailbox (excluding the one being delivered, if any).
+     * 
+     * @return The number of indications waiting in the mailbox.
+     * 
+     */
+    public final int getQueueDepth ()
+    {
+      final long head = this.head.get ();
+      return (int) Math.max (0L, this.tail - head);
+    }
+
+    /** Returns the maximum number of indications that have been waiting in the mailbox.
+     * 
+     * @return The maximum queue depth.
+     * 
+     */
+    public final int getMaxQueueDepth ()
+    {
+      return (int) this.maxQueueDepth;
+    }
+
+    /** Returns the current lag, i.e., the time elapsed since the enqueueing of the indication being delivered.
+     * 
+     * @return The current lag in microseconds, zero if the worker is idle.
+     * 
+     */
+    public final long getLag_us ()
+    {
+      final long delivering_ns = this.delivering_ns;
+      return delivering_ns == IDLE ? 0L : Math.max (0L, (System.nanoTime () - delivering_ns) / 1000L);
+    }
+
+    /** Returns the maximum lag (upon completion of delivery) of all delivered indications.
+     * 
+     * @return The maximum lag in microseconds.
+     * 
+     */
+    public final long getMaxLag_us ()
+    {
+      return this.maxLag_ns / 1000L;
+    }
+
+    /** Returns the number of indications delivered (including those on which the handler failed).
+     * 
+     * @return The number of indications delivered.
+     * 
+     */
+    public final long getDeliveredCount ()
+    {
+      return this.deliveredCount.sum ();
+    }
+
+    /** Returns the number of indications dropped because the mailbox was full.
+     * 
+     * @return The number of indications dropped.
+     * 
+     */
+    public final long getDroppedCount ()
+    {
+      return this.droppedCount.sum ();
+    }
+
+    /** Returns the number of indications on which the handler threw an exception (or an error).
+     * 
+     * @return The number of handler failures.
+     * 
+     */
+    public final long getFailureCount ()
+    {
+      return this.failureCount.sum ();
+    }
+
+    /** Returns whether the subscriber is (currently) marked slow.
+     * 
+     * @return Whether the subscriber is marked slow.
+     * 
+     */
+    public final boolean isSlow ()
+    {
+      return this.slow.get ();
+    }
+
+    /** Returns the number of times the subscriber was marked slow.
+     * 
+     * @return The number of times the subscriber was marked slow.
+     * 
+     */
+    public final long getSlowCount ()
+    {
+      return this.slowCount.sum ();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // CLOSE
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public final boolean isClosed ()
+    {
+      return this.closed;
+    }
+
+    /** Unsubscribes; pending indications are discarded, and the worker thread terminates after the current delivery (if any).
+     * 
+     * <p>
+     * Closing a closed subscription has no effect.
+     * 
+     */
+    @Override
+    public final void close ()
+    {
+      this.closed = true;
+      remove (this);
+      LockSupport.unpark (this.worker);
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataInd
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Enqueues an indication at all subscribers.
+   * 
+   * @throws IllegalArgumentException If the length is negative, or exceeds the length of the data array.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       0,
+       length,
+       data);
+  }
+
+  /** Enqueues an indication with the payload at an arbitrary offset at all subscribers.
+   * 
+   * @throws IllegalArgumentException If the offset or length is negative, or the payload exceeds the data array.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    if (offset < 0 || length < 0 || (data == null ? length > 0 : offset > data.length - length))
+      throw new IllegalArgumentException ();
+    final long now_ns = System.nanoTime ();
+    for (final Subscription subscription : this.subscriptions)
+      subscription.offer
+        (btpSrcPort,
+         btpDstPort,
+         btpDstPortInfo,
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         gnRemLifetime_s,
+         offset,
+         length,
+         data,
+         null,
+         now_ns);
+  }
+
+  /** Enqueues an indication with the payload held in a (heap or direct) buffer at all subscribers.
+   * 
+   * <p>
+   * The position and limit of the buffer are left unchanged.
+   * 
+   * @throws IllegalArgumentException If the payload buffer is {@code null}.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final ByteBuffer payload)
+  throws IllegalArgumentException
+  {
+    if (payload == null)
+      throw new IllegalArgumentException ();
+    final long now_ns = System.nanoTime ();
+    for (final Subscription subscription : this.subscriptions)
+      subscription.offer
+        (btpSrcPort,
+         btpDstPort,
+         btpDstPortInfo,
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         gnRemLifetime_s,
+         0,
+         payload.remaining (),
+         null,
+         payload,
+         now_ns);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLOSE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Closes all subscriptions; no new subscriptions are accepted.
+   * 
+   * <p>
+   * Closing a closed fan-out has no effect.
+   * 
+   */
+  @Override
+  public final void close ()
+  {
+    final Subscription[] subscriptions;
+    synchronized (this)
+    {
+      this.closed = true;
+      subscriptions = this.subscriptions;
+    }
+    for (final Subscription subscription : subscriptions)
+      subscription.close ();
+  }
+
+}
@@ -16,7 +16,10 @@
  */
 package net.etsi.btpsap;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /** Java binding for common data types in a BTP (Basic Transport Protocol) SAP (Service Access Point entity).
  *
@@ -222,6 +225,40 @@ public interface BtpSapTypes
       return this.angle_degrees;
     }
     
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // EQUALS / HASHCODE
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      final DefaultGnArea other = (DefaultGnArea) obj;
+      return this.gnAreaShape == other.gnAreaShape
+        && Double.doubleToLongBits (this.latitude) == Double.doubleToLongBits (other.latitude)
+        && Double.doubleToLongBits (this.longitude) == Double.doubleToLongBits (other.longitude)
+        && this.distanceA_m == other.distanceA_m
+        && this.distanceB_m == other.distanceB_m
+        && this.angle_degrees == other.angle_degrees;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      int hash = this.gnAreaShape.hashCode ();
+      hash = 31 * hash + Double.hashCode (this.latitude);
+      hash = 31 * hash + Double.hashCode (this.longitude);
+      hash = 31 * hash + this.distanceA_m;
+      hash = 31 * hash + this.distanceB_m;
+      hash = 31 * hash + this.angle_degrees;
+      return hash;
+    }
+    
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -252,6 +289,19 @@ public interface BtpSapTypes
       if (gnAddressBytes == null || gnAddressBytes.length != 8)
         throw new IllegalArgumentException ();
       this.gnAddressBytes = Arrays.copyOf (gnAddressBytes, 8);
+      this.gnAddressLong = ByteBuffer.wrap (this.gnAddressBytes).getLong ();
+    }
+    
+    /** Creates an address from its (big-endian) long form.
+     * 
+     * @param gnAddress The address as a long.
+     * 
+     */
+    public DefaultGnAddress (final long gnAddress)
+    {
+      this.gnAddressBytes = new byte[8];
+      ByteBuffer.wrap (this.gnAddressBytes).putLong (gnAddress);
+      this.gnAddressLong = gnAddress;
     }
     
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -262,21 +312,56 @@ public interface BtpSapTypes
     
     private final byte [] gnAddressBytes;
     
+    /** Returns (a reference to) the address bytes.
+     * 
+     * <p>
+     * The array must not be modified: the long form returned by {@link #toLong},
+     * on which {@link #equals} and {@link #hashCode} are based, is fixed at construction.
+     * 
+     * @return The address bytes, big-endian.
+     * 
+     */
     public final byte [] getGnAddressBytes ()
     {
       return this.gnAddressBytes;
     }
 
+    /** The big-endian long form of the address bytes, set at construction.
+     * 
+     * <p>
+     * It is the single value that identifies the address: both constructors produce it,
+     * and {@link #toLong}, {@link #equals} and {@link #hashCode} all derive from it,
+     * so that addresses created from bytes and from a long compare consistently.
+     * 
+     */
+    private final long gnAddressLong;
+    
     @Override
     public final long toLong ()
     {
-      long result = 0;
-      for (int i = 0; i < 8; i++)
-      {
-        result <<= 8;
-        result |= (this.gnAddressBytes[i] & 0xff);
-      }
-      return result;
+      return this.gnAddressLong;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // EQUALS / HASHCODE
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      return this.gnAddressLong == ((DefaultGnAddress) obj).gnAddressLong;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return Long.hashCode (this.gnAddressLong);
     }
     
   }
@@ -395,6 +480,98 @@ public interface BtpSapTypes
       return this.gnArea;
     }
     
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // EQUALS / HASHCODE
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      final DefaultGnDestination other = (DefaultGnDestination) obj;
+      return this.gnDestinationType == other.gnDestinationType
+        && Objects.equals (this.gnUnicastAddress, other.gnUnicastAddress)
+        && Objects.equals (this.gnArea, other.gnArea);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      int hash = this.gnDestinationType.hashCode ();
+      hash = 31 * hash + Objects.hashCode (this.gnUnicastAddress);
+      hash = 31 * hash + Objects.hashCode (this.gnArea);
+      return hash;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // AREA-DESTINATION CACHE
+    //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /** The size of the area-destination cache (a power of two).
+     * 
+     */
+    private static final int AREA_CACHE_SIZE = 64;
+    
+    private static final AtomicReferenceArray<DefaultGnDestination> AREA_CACHE = new AtomicReferenceArray<> (AREA_CACHE_SIZE);
+    
+    /** Returns a canonical(ized) area destination.
+     * 
+     * <p>
+     * Uses a small, lock-free, direct-mapped cache of recently decoded areas, keyed by (the bits of) all area fields,
+     * so that repeated (e.g., DENM) destinations are decoded into a single object.
+     * Upon a cache miss, a new destination is created and replaces the cache entry.
+     * 
+     * @param gnAreaShape   The area shape, non-{@code null}.
+     * @param latitude      The latitude of the area center.
+     * @param longitude     The longitude of the area center.
+     * @param distanceA_m   Distance A in meters.
+     * @param distanceB_m   Distance B in meters.
+     * @param angle_degrees The angle in degrees.
+     * 
+     * @return The area destination.
+     * 
+     * @throws IllegalArgumentException If the area shape is {@code null}.
+     * 
+     */
+    public static DefaultGnDestination valueOf (final GnAreaShape gnAreaShape,
+      final double latitude, final double longitude,
+      final int distanceA_m, final int distanceB_m,
+      final int angle_degrees)
+    {
+      if (gnAreaShape == null)
+        throw new IllegalArgumentException ();
+      int hash = gnAreaShape.ordinal ();
+      hash = 31 * hash + Double.hashCode (latitude);
+      hash = 31 * hash + Double.hashCode (longitude);
+      hash = 31 * hash + distanceA_m;
+      hash = 31 * hash + distanceB_m;
+      hash = 31 * hash + angle_degrees;
+      final int index = (hash ^ (hash >>> 16)) & (AREA_CACHE_SIZE - 1);
+      final DefaultGnDestination cached = AREA_CACHE.get (index);
+      if (cached != null)
+      {
+        final GnArea area = cached.gnArea;
+        if (area.getAreaShape () == gnAreaShape
+          && Double.doubleToLongBits (area.getLatitude ()) == Double.doubleToLongBits (latitude)
+          && Double.doubleToLongBits (area.getLongitude ()) == Double.doubleToLongBits (longitude)
+          && area.getDistanceA_m () == distanceA_m
+          && area.getDistanceB_m () == distanceB_m
+          && area.getAngle_degrees () == angle_degrees)
+          return cached;
+      }
+      final DefaultGnDestination destination = new DefaultGnDestination
+        (new DefaultGnArea (gnAreaShape, latitude, longitude, distanceA_m, distanceB_m, angle_degrees));
+      AREA_CACHE.lazySet (index, destination);
+      return destination;
+    }
+    
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -480,6 +657,74 @@ public interface BtpSapTypes
       this.gnPermissions = gnPermissions;
     }
     
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      final BaseGnSecurityProfile other = (BaseGnSecurityProfile) obj;
+      return this.itsAid == other.itsAid && Objects.equals (this.gnPermissions, other.gnPermissions);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return 31 * Long.hashCode (this.itsAid) + Objects.hashCode (this.gnPermissions);
+    }
+    
+    /** The size of the security-profile cache (a power of two).
+     * 
+     */
+    private static final int CACHE_SIZE = 256;
+    
+    private static final AtomicReferenceArray<BaseGnSecurityProfile> CACHE = new AtomicReferenceArray<> (CACHE_SIZE);
+    
+    /** Returns a canonical(ized) security profile with {@link BaseGnPermissions}.
+     * 
+     * <p>
+     * Uses a bounded, lock-free, direct-mapped cache keyed by the ITS-AID and the SSP bytes,
+     * so that frequent (e.g., CAM and DENM default) profiles are decoded into a single object without allocation.
+     * Upon a cache miss, a new profile (with a copy of the SSP bytes) is created and replaces the cache entry.
+     * 
+     * @param itsAid The ITS-AID.
+     * @param ssp    The array holding the SSP bytes, non-{@code null}.
+     * @param offset The offset of the SSP bytes in the array.
+     * @param length The number of SSP bytes (at most 31).
+     * 
+     * @return The security profile.
+     * 
+     * @throws IllegalArgumentException If the array is {@code null}, or the offset or length are illegal.
+     * 
+     */
+    public static BaseGnSecurityProfile valueOf (final long itsAid, final byte[] ssp, final int offset, final int length)
+    {
+      if (ssp == null || offset < 0 || length < 0 || length > 31 || offset > ssp.length - length)
+        throw new IllegalArgumentException ();
+      int hash = Long.hashCode (itsAid);
+      for (int i = offset; i < offset + length; i++)
+        hash = 31 * hash + ssp[i];
+      final int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+      final BaseGnSecurityProfile cached = CACHE.get (index);
+      if (cached != null && cached.itsAid == itsAid && cached.gnPermissions instanceof BaseGnPermissions)
+      {
+        final byte[] cachedSsp = ((BaseGnPermissions) cached.gnPermissions).permissionsArray;
+        if (cachedSsp.length == length)
+        {
+          int i = 0;
+          while (i < length && cachedSsp[i] == ssp[offset + i])
+            i++;
+          if (i == length)
+            return cached;
+        }
+      }
+      final BaseGnSecurityProfile profile =
+        new BaseGnSecurityProfile (itsAid, new BaseGnPermissions (Arrays.copyOfRange (ssp, offset, offset + length)));
+      CACHE.lazySet (index, profile);
+      return profile;
+    }
+    
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -533,6 +778,42 @@ public interface BtpSapTypes
 //      System.err.println ("  Latency     = " + tcLatencyBits + ".");
     }
     
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      return this.trafficClassByte == ((DefaultGnTrafficClass) obj).trafficClassByte;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return this.trafficClassByte & 0xff;
+    }
+    
+    private static final DefaultGnTrafficClass[] VALUES = new DefaultGnTrafficClass[256];
+    
+    static
+    {
+      for (int b = 0; b < 256; b++)
+        VALUES[b] = new DefaultGnTrafficClass ((byte) b);
+    }
+    
+    /** Returns the canonical traffic class for given traffic-class byte, without allocation.
+     * 
+     * @param trafficClassByte The traffic-class byte.
+     * 
+     * @return The (shared) traffic class.
+     * 
+     */
+    public static DefaultGnTrafficClass valueOf (final byte trafficClassByte)
+    {
+      return VALUES[trafficClassByte & 0xff];
+    }
+    
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -584,6 +865,24 @@ public interface BtpSapTypes
       return this.longitude;
     }
     
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      final DefaultGnPositionVector other = (DefaultGnPositionVector) obj;
+      return Double.doubleToLongBits (this.latitude) == Double.doubleToLongBits (other.latitude)
+        && Double.doubleToLongBits (this.longitude) == Double.doubleToLongBits (other.longitude);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return 31 * Double.hashCode (this.latitude) + Double.hashCode (this.longitude);
+    }
+    
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -626,6 +925,39 @@ public interface BtpSapTypes
     
     byte[] getPermissionsArray ();
     
+    /** Returns the number of permission (SSP) bytes.
+     * 
+     * <p>
+     * The default implementation obtains the array through {@link #getPermissionsArray};
+     * implementations holding the bytes should override it without copying.
+     * 
+     * @return The number of permission bytes.
+     * 
+     */
+    default int getPermissionsLength ()
+    {
+      final byte[] permissionsArray = getPermissionsArray ();
+      return permissionsArray != null ? permissionsArray.length : 0;
+    }
+    
+    /** Returns a single permission (SSP) byte.
+     * 
+     * <p>
+     * The default implementation obtains the array through {@link #getPermissionsArray};
+     * implementations holding the bytes should override it without copying.
+     * 
+     * @param i The index of the byte, between zero and {@link #getPermissionsLength} (exclusive).
+     * 
+     * @return The permission byte.
+     * 
+     * @throws ArrayIndexOutOfBoundsException If the index is out of range.
+     * 
+     */
+    default byte getPermissionsByte (final int i)
+    {
+      return getPermissionsArray ()[i];
+    }
+    
   }
   
   /** A base implementation of {@link GnPermissions}.
@@ -650,6 +982,18 @@ public interface BtpSapTypes
       return Arrays.copyOf (this.permissionsArray, this.permissionsArray.length);
     }
     
+    @Override
+    public final int getPermissionsLength ()
+    {
+      return this.permissionsArray.length;
+    }
+    
+    @Override
+    public final byte getPermissionsByte (final int i)
+    {
+      return this.permissionsArray[i];
+    }
+    
     public BaseGnPermissions (final byte[] permissionsArray)
     {
       if (permissionsArray != null && permissionsArray.length > 31)
@@ -668,6 +1012,22 @@ public interface BtpSapTypes
       return (BaseGnPermissions) super.clone ();
     }
     
+    @Override
+    public boolean equals (final Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (obj == null || obj.getClass () != getClass ())
+        return false;
+      return Arrays.equals (this.permissionsArray, ((BaseGnPermissions) obj).permissionsArray);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return Arrays.hashCode (this.permissionsArray);
+    }
+    
   }
   
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Validation results for the arguments of BTP SAP primitives, and for the PDUs carrying them.
+ * 
+ * <p>
+ * Validation methods (e.g., {@link BtpSap_DataReqContainer#validate},
+ * or {@code UdpTnoDataReq.validateRequest} and {@code UdpTnoDataInd.validateIndication} for UDP-TNO PDUs)
+ * report their result as a primitive {@code int} status,
+ * being the ordinal of one of the constants below, with {@link #OK} (zero) denoting success.
+ * Each rejection is counted (per error code) in a {@link LongAdder},
+ * so rejections (including the dropping of malformed PDUs) are cheap, yet can be monitored through {@link #getCount}.
+ * 
+ * <p>
+ * The constants from {@link #NULL_BTP_TYPE} through {@link #ILLEGAL_PAYLOAD} concern the arguments of primitives;
+ * the constants from {@link #NULL_PDU} through {@link #ILLEGAL_PRIMITIVE} concern PDUs,
+ * and are listed in the order in which the checks are applied.
+ * In particular, all PDU checks up to and including {@link #UNSUPPORTED_VERSION} concern the fixed PDU prefix
+ * (after which, e.g., the client ID and units of a UDP-TNO PDU can be trusted), see {@link #isPduPrefixError}.
+ * Constants added later are appended at the end, so that existing statuses remain stable;
+ * {@link #UNSUPPORTED_GN_TRANSPORT_TYPE}, for instance, concerns the arguments of primitives.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ */
+public enum BtpSapValidationError
+{
+
+  OK,
+  NULL_BTP_TYPE,
+  ILLEGAL_BTP_SRC_PORT,
+  ILLEGAL_BTP_DST_PORT,
+  ILLEGAL_BTP_DST_PORT_INFO,
+  NULL_GN_TRANSPORT_TYPE,
+  ILLEGAL_GN_DESTINATION,
+  ILLEGAL_GN_MAX_LIFETIME,
+  ILLEGAL_GN_REP_INTERVAL,
+  ILLEGAL_GN_MAX_REP_TIME,
+  ILLEGAL_GN_MAX_HOP_LIMIT,
+  NULL_GN_TRAFFIC_CLASS,
+  ILLEGAL_PAYLOAD,
+  NULL_PDU,
+  ILLEGAL_PDU_BOUNDS,
+  PDU_TOO_SHORT,
+  MAGIC_MISMATCH,
+  UNSUPPORTED_VERSION,
+  UNKNOWN_GN_COMM_PROFILE,
+  UNKNOWN_BTP_TYPE,
+  UNKNOWN_GN_TRANSPORT_TYPE,
+  UNKNOWN_GN_AREA_SHAPE,
+  UNSUPPORTED_SECURITY_FIELDS,
+  PAYLOAD_LENGTH_MISMATCH,
+  ILLEGAL_PRIMITIVE,
+  UNSUPPORTED_GN_TRANSPORT_TYPE;
+
+  private static final BtpSapValidationError[] VALUES = values ();
+
+  private final LongAdder count = new LongAdder ();
+
+  /** Counts a rejection with this error code, and returns the (primitive) status.
+   * 
+   * @return The ordinal of this error code.
+   * 
+   */
+  public final int reject ()
+  {
+    this.count.increment ();
+    return ordinal ();
+  }
+
+  /** Returns the number of rejections with this error code (since the last reset).
+   * 
+   * @return The number of rejections with this error code; always zero for {@link #OK}.
+   * 
+   */
+  public final long getCount ()
+  {
+    return this.count.sum ();
+  }
+
+  public final void resetCount ()
+  {
+    this.count.reset ();
+  }
+
+  /** Returns whether a primitive status denotes a rejection of the fixed prefix of a PDU.
+   * 
+   * @param status The status, i.e., the ordinal of the error code.
+   * 
+   * @return Whether the status is between {@link #NULL_PDU} and {@link #UNSUPPORTED_VERSION}, inclusive.
+   * 
+   */
+  public static boolean isPduPrefixError (final int status)
+  {
+    return status >= NULL_PDU.ordinal () && status <= UNSUPPORTED_VERSION.ordinal ();
+  }
+
+  /** Maps a primitive status back onto its error code.
+   * 
+   * @param status The status, i.e., the ordinal of the error code.
+   * 
+   * @return The error code.
+   * 
+   * @throws IllegalArgumentException If the status is out of range.
+   * 
+   */
+  public static BtpSapValidationError valueOf (final int status)
+  {
+    if (status < 0 || status >= VALUES.length)
+      throw new IllegalArgumentException ();
+    return VALUES[status];
+  }
+
+}
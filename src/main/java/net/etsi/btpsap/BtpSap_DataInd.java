@@ -16,6 +16,8 @@
  */
 package net.etsi.btpsap;
 
+import java.nio.ByteBuffer;
+
 /** Java binding for a BTP (Basic Transport Protocol) SAP (Service Access Point entity) Data Indication.
  *
  * <p>
@@ -52,7 +54,9 @@ extends BtpSapTypes
    * @param gnTrafficClass    The traffic class for the message, non-null.
    * @param gnRemLifetime_s   The remaining lifetime of the packet in seconds (optional, may be null).
    * @param length            The number of bytes in the {@code data} buffer received (non-negative).
-   * @param data              The bytes received as payload (starting at index zero and upto {@code length} bytes).
+   * @param data              The bytes received as payload (starting at index zero and upto {@code length} bytes);
+   *                          the array may be recycled by the caller after this method returns,
+   *                          hence implementations must copy the payload if they need it afterwards.
    * 
    * @throws IllegalArgumentException If one or more actual arguments has an illegal value.
    * 
@@ -73,4 +77,142 @@ extends BtpSapTypes
     byte data[]
   ) throws IllegalArgumentException;
   
+  /** BTP-Data.btpSapIndication with the payload at an arbitrary offset in the {@code data} buffer.
+   * 
+   * <p>
+   * This allows a decoder to pass its receive buffer by reference, instead of copying the payload to index zero.
+   * The default implementation delegates to {@link #btpSapIndication(Integer, int, Integer, GnDestination, GnPositionVector,
+   * GnSecurityReport, GnCertificateId, GnPermissions, GnTrafficClass, Integer, int, byte[])},
+   * copying the payload into a fresh array if (and only if) the offset is non-zero.
+   * Implementations that can handle the payload in place should override this method.
+   * 
+   * @param btpSrcPort        The BTP source port (optional).
+   * @param btpDstPort        The BTP destination port.
+   * @param btpDstPortInfo    The BTP destination port info (optional).
+   * @param gnDstAddress      The Geonetworking destination address.
+   * @param gnSrcPV           The source position vector.
+   * @param gnSecReport       The security report (optional, may be null).
+   * @param gnCertId          The certificate id (optional, may be null).
+   * @param gnPermissions     The GN Permissions parameter (optional, may be null).
+   * @param gnTrafficClass    The traffic class for the message, non-null.
+   * @param gnRemLifetime_s   The remaining lifetime of the packet in seconds (optional, may be null).
+   * @param offset            The offset of the payload in the {@code data} buffer (non-negative).
+   * @param length            The number of bytes in the payload (non-negative).
+   * @param data              The buffer holding the payload (starting at index {@code offset} and upto {@code length} bytes);
+   *                          the array may be recycled by the caller after this method returns,
+   *                          hence implementations must copy the payload if they need it afterwards.
+   * 
+   * @throws IllegalArgumentException If one or more actual arguments has an illegal value.
+   * 
+   */
+  default void btpSapIndication
+  (
+    final Integer btpSrcPort,
+    final int btpDstPort,
+    final Integer btpDstPortInfo,
+    final GnDestination gnDstAddress,
+    final GnPositionVector gnSrcPV,
+    final GnSecurityReport gnSecReport,
+    final GnCertificateId gnCertId,
+    final GnPermissions gnPermissions,
+    final GnTrafficClass gnTrafficClass,
+    final Integer gnRemLifetime_s,
+    final int offset,
+    final int length,
+    final byte data[]
+  ) throws IllegalArgumentException
+  {
+    if (offset < 0 || length < 0 || (data == null ? length > 0 : offset > data.length - length))
+      throw new IllegalArgumentException ();
+    final byte[] payload;
+    if (offset == 0 || data == null)
+      payload = data;
+    else
+    {
+      payload = new byte[length];
+      System.arraycopy (data, offset, payload, 0, length);
+    }
+    btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       length,
+       payload);
+  }
+  
+  /** BTP-Data.btpSapIndication with the payload held in a (heap or direct) buffer.
+   * 
+   * <p>
+   * The payload consists of the bytes between the position and the limit of {@code payload};
+   * the position and limit are not changed.
+   * The default implementation delegates to the offset-aware {@link #btpSapIndication(Integer, int, Integer, GnDestination,
+   * GnPositionVector, GnSecurityReport, GnCertificateId, GnPermissions, GnTrafficClass, Integer, int, int, byte[])},
+   * passing the backing array if the buffer has an accessible one,
+   * and copying the payload into a fresh array otherwise (e.g., for direct buffers).
+   * Implementations that can handle buffers in place should override this method.
+   * 
+   * @param payload The payload, may be {@code null} (no payload);
+   *                the buffer may be recycled by the caller after this method returns,
+   *                hence implementations must copy the payload if they need it afterwards.
+   * 
+   * @throws IllegalArgumentException If one or more actual arguments has an illegal value.
+   * 
+   */
+  default void btpSapIndication
+  (
+    final Integer btpSrcPort,
+    final int btpDstPort,
+    final Integer btpDstPortInfo,
+    final GnDestination gnDstAddress,
+    final GnPositionVector gnSrcPV,
+    final GnSecurityReport gnSecReport,
+    final GnCertificateId gnCertId,
+    final GnPermissions gnPermissions,
+    final GnTrafficClass gnTrafficClass,
+    final Integer gnRemLifetime_s,
+    final ByteBuffer payload
+  ) throws IllegalArgumentException
+  {
+    final int offset;
+    final int length = payload != null ? payload.remaining () : 0;
+    final byte[] data;
+    if (payload == null)
+    {
+      offset = 0;
+      data = null;
+    }
+    else if (payload.hasArray ())
+    {
+      offset = payload.arrayOffset () + payload.position ();
+      data = payload.array ();
+    }
+    else
+    {
+      offset = 0;
+      data = new byte[length];
+      payload.duplicate ().get (data);
+    }
+    btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       offset,
+       length,
+       data);
+  }
+  
 }
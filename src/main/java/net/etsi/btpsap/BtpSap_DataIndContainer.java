@@ -16,6 +16,7 @@
  */
 package net.etsi.btpsap;
 
+import java.nio.ByteBuffer;
 import net.etsi.btpsap.BtpSapTypes.GnCertificateId;
 import net.etsi.btpsap.BtpSapTypes.GnDestination;
 import net.etsi.btpsap.BtpSapTypes.GnPermissions;
@@ -23,6 +24,28 @@ import net.etsi.btpsap.BtpSapTypes.GnPositionVector;
 import net.etsi.btpsap.BtpSapTypes.GnSecurityReport;
 import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
 
+/** A container for the arguments of a BTP-Data.indication.
+ * 
+ * <p>
+ * The payload is held as a (reference to a) byte array, an offset into that array, and a length.
+ * The array is not necessarily owned by the container;
+ * in particular, zero-copy parsers (e.g., {@code UdpTnoDataInd.parseIndication} in zero-copy mode)
+ * reference the receive buffer directly, in which case the payload does not start at index zero.
+ * Consumers must therefore always honor {@link #getOffset}, and must not retain (a reference to) the payload array
+ * beyond the processing of the indication; the producer may recycle the array once the indication has been released.
+ * 
+ * <p>
+ * Alternatively, the payload is held as a (heap or direct) {@link ByteBuffer}, see {@link #hasArray},
+ * subject to the same rules.
+ * 
+ * <p>
+ * The getters are final, as in {@link BtpSap_DataReqContainer}.
+ * Other representations of indications (e.g., {@link BtpSap_DataIndStore} views) do not extend this class,
+ * but convert into a container on demand.
+ * 
+ * @see BtpSap_DataInd
+ * 
+ */
 public class BtpSap_DataIndContainer
 {
   
@@ -110,13 +133,70 @@ public class BtpSap_DataIndContainer
     return this.offset;
   }
 
+  /** Returns the array holding the payload.
+   * 
+   * <p>
+   * If the payload is not backed by an accessible array (see {@link #hasArray}),
+   * it is copied into a fresh array (at offset zero) upon the first invocation.
+   * Consumers able to handle buffers should use {@link #getPayloadBuffer} in that case.
+   * 
+   * @return The array holding the payload, {@code null} if there is no payload.
+   * 
+   */
   public final byte[] getData ()
   {
-    return this.data;
+    if (this.data != null || this.payload == null)
+      return this.data;
+    byte[] heapCopy = this.heapCopy;
+    if (heapCopy == null)
+    {
+      heapCopy = new byte[this.length];
+      this.payload.duplicate ().get (heapCopy);
+      // Racing threads may each copy; the volatile write publishes the array only after it has been filled.
+      this.heapCopy = heapCopy;
+    }
+    return heapCopy;
   }
   
   private final byte data[];
 
+  private final ByteBuffer payload;
+  
+  private volatile byte[] heapCopy = null;
+  
+  /** Returns whether the payload is available through {@link #getData} (and {@link #getOffset}) without copying.
+   * 
+   * <p>
+   * This is the case unless the container was created from a direct (or read-only) buffer.
+   * 
+   * @return Whether the payload is backed by an accessible array.
+   * 
+   */
+  public final boolean hasArray ()
+  {
+    return this.payload == null || this.data != null;
+  }
+  
+  /** Returns a read-only buffer holding (exactly) the payload, without copying.
+   * 
+   * <p>
+   * The buffer's position is zero and its limit (and capacity) equals {@link #getLength};
+   * for containers created from a direct buffer, the returned buffer is direct as well.
+   * Like the data array, the returned buffer must not be retained beyond the processing of the indication.
+   * 
+   * @return A read-only buffer holding the payload.
+   * 
+   */
+  public final ByteBuffer getPayloadBuffer ()
+  {
+    if (this.payload != null)
+      return this.payload.duplicate ();
+    final byte[] data = getData ();
+    if (data == null)
+      return ByteBuffer.allocate (0).asReadOnlyBuffer ();
+    return ByteBuffer.wrap (data, getOffset (), getLength ()).slice ().asReadOnlyBuffer ();
+  }
+
   public BtpSap_DataIndContainer
   (
     final Integer btpSrcPort,
@@ -148,6 +228,50 @@ public class BtpSap_DataIndContainer
     this.length = length;
     this.offset = offset;
     this.data = data;
+    this.payload = null;
+  }
+
+  /** Creates a container with the payload held in a buffer.
+   * 
+   * <p>
+   * The payload consists of the bytes between the position and the limit of {@code payload};
+   * it is <i>not</i> copied, and the container keeps a (read-only) view on it.
+   * The position and limit of {@code payload} are not changed.
+   * If the buffer is backed by an accessible array, the container presents that array through {@link #getData}
+   * and {@link #getOffset} as well.
+   * 
+   * @param payload The payload, may be {@code null} (no payload).
+   * 
+   */
+  public BtpSap_DataIndContainer
+  (
+    final Integer btpSrcPort,
+    final int btpDstPort,
+    final Integer btpDstPortInfo,
+    final GnDestination gnDstAddress,
+    final GnPositionVector gnSrcPV,
+    final GnSecurityReport gnSecReport,
+    final GnCertificateId gnCertId,
+    final GnPermissions gnPermissions,
+    final GnTrafficClass gnTrafficClass,
+    final Integer gnRemLifetime_s,
+    final ByteBuffer payload
+  )
+  {
+    this.btpSrcPort = btpSrcPort;
+    this.btpDstPort = btpDstPort;
+    this.btpDstPortInfo = btpDstPortInfo;
+    this.gnDstAddress = gnDstAddress;
+    this.gnSrcPV = gnSrcPV;
+    this.gnSecReport = gnSecReport;
+    this.gnCertId = gnCertId;
+    this.gnPermissions = gnPermissions;
+    this.gnTrafficClass = gnTrafficClass;
+    this.gnRemLifetime_s = gnRemLifetime_s;
+    this.length = payload != null ? payload.remaining () : 0;
+    this.offset = payload != null && payload.hasArray () ? payload.arrayOffset () + payload.position () : 0;
+    this.data = payload != null && payload.hasArray () ? payload.array () : null;
+    this.payload = payload != null ? payload.slice ().asReadOnlyBuffer () : null;
   }
 
 }
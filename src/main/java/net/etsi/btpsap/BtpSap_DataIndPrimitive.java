@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+/** Java binding for a BTP (Basic Transport Protocol) SAP (Service Access Point entity) Data Indication, without boxing.
+ *
+ * <p>
+ * Equivalent to {@link BtpSap_DataInd},
+ * except that optional integer parameters are passed as primitive {@code int}s,
+ * with {@link #ABSENT} denoting an absent value (instead of {@code null}),
+ * and that the payload is passed with an offset, so it can be delivered straight from a receive buffer.
+ * 
+ * <p>
+ * The nested {@link BoxingAdapter} and {@link UnboxingAdapter} convert from and to {@link BtpSap_DataInd}.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ * @see BtpSap_DataInd
+ * 
+ */
+public interface BtpSap_DataIndPrimitive
+extends BtpSapTypes
+{
+  
+  /** The value denoting an absent optional (primitive) parameter.
+   * 
+   */
+  int ABSENT = -1;
+  
+  /** Boxes an optional primitive value.
+   * 
+   * @param value The value, {@link #ABSENT} if absent.
+   * 
+   * @return The boxed value, {@code null} if absent.
+   * 
+   */
+  static Integer box (final int value)
+  {
+    return value == ABSENT ? null : value;
+  }
+  
+  /** Unboxes an optional value.
+   * 
+   * <p>
+   * A (non-{@code null}) value equal to {@link #ABSENT} is mapped onto {@link Integer#MIN_VALUE},
+   * so that it remains illegal instead of being silently interpreted as absent.
+   * 
+   * @param value The value, {@code null} if absent.
+   * 
+   * @return The unboxed value, {@link #ABSENT} if absent.
+   * 
+   */
+  static int unbox (final Integer value)
+  {
+    if (value == null)
+      return ABSENT;
+    final int intValue = value;
+    return intValue == ABSENT ? Integer.MIN_VALUE : intValue;
+  }
+  
+  /** BTP-Data.btpSapIndication.
+   * 
+   * @param btpSrcPort        The BTP source port, {@code btpSrcPort == ABSENT || 0 <= btpSrcPort <= 65535}.
+   * @param btpDstPort        The BTP destination port, {@code 0 <= btpDstPort <= 65535}.
+   * @param btpDstPortInfo    The BTP destination port info, {@code btpDstPortInfo == ABSENT || 0 <= btpDstPortInfo <= 65535}.
+   * @param gnDstAddress      The Geonetworking destination address, non-null for GeoUnicast, GeoBroadcast and GeoAnycast,
+   *                          null for SHB and TSB.
+   * @param gnSrcPV           The source position vector (may be null).
+   * @param gnSecReport       The security report (optional, may be null).
+   * @param gnCertId          The certificate id (optional, may be null).
+   * @param gnPermissions     The GN Permissions parameter (optional, may be null).
+   * @param gnTrafficClass    The traffic class for the message, non-null.
+   * @param gnRemLifetime_s   The remaining lifetime of the packet in seconds, or {@link #ABSENT}.
+   * @param offset            The offset of the payload in the {@code data} buffer (non-negative).
+   * @param length            The number of bytes in the payload (non-negative).
+   * @param data              The buffer holding the payload (starting at index {@code offset} and upto {@code length} bytes);
+   *                          the array may be recycled by the caller after this method returns,
+   *                          hence implementations must copy the payload if they need it afterwards.
+   * 
+   * @throws IllegalArgumentException If one or more actual arguments has an illegal value.
+   * 
+   * @see BtpSap_DataInd#btpSapIndication
+   * 
+   */
+  void btpSapIndication
+  (
+    int btpSrcPort,
+    int btpDstPort,
+    int btpDstPortInfo,
+    GnDestination gnDstAddress,
+    GnPositionVector gnSrcPV,
+    GnSecurityReport gnSecReport,
+    GnCertificateId gnCertId,
+    GnPermissions gnPermissions,
+    GnTrafficClass gnTrafficClass,
+    int gnRemLifetime_s,
+    int offset,
+    int length,
+    byte data[]
+  ) throws IllegalArgumentException;
+  
+  /** A {@link BtpSap_DataIndPrimitive} delegating to a {@link BtpSap_DataInd} (boxing the optional parameters).
+   * 
+   * <p>
+   * The payload is delegated (with its offset) to the offset-aware
+   * {@link BtpSap_DataInd#btpSapIndication(Integer, int, Integer, GnDestination, GnPositionVector,
+   * GnSecurityReport, GnCertificateId, GnPermissions, GnTrafficClass, Integer, int, int, byte[])},
+   * the default implementation of which copies payloads at a non-zero offset.
+   * 
+   */
+  public static final class BoxingAdapter
+  implements BtpSap_DataIndPrimitive
+  {
+    
+    private final BtpSap_DataInd target;
+    
+    public BoxingAdapter (final BtpSap_DataInd target)
+    {
+      if (target == null)
+        throw new IllegalArgumentException ();
+      this.target = target;
+    }
+    
+    @Override
+    public final void btpSapIndication
+    (final int btpSrcPort,
+     final int btpDstPort,
+     final int btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final int gnRemLifetime_s,
+     final int offset,
+     final int length,
+     final byte[] data)
+    throws IllegalArgumentException
+    {
+      this.target.btpSapIndication
+        (box (btpSrcPort),
+         btpDstPort,
+         box (btpDstPortInfo),
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         box (gnRemLifetime_s),
+         offset,
+         length,
+         data);
+    }
+    
+  }
+  
+  /** A {@link BtpSap_DataInd} delegating to a {@link BtpSap_DataIndPrimitive} (unboxing the optional parameters).
+   * 
+   */
+  public static final class UnboxingAdapter
+  implements BtpSap_DataInd
+  {
+    
+    private final BtpSap_DataIndPrimitive target;
+    
+    public UnboxingAdapter (final BtpSap_DataIndPrimitive target)
+    {
+      if (target == null)
+        throw new IllegalArgumentException ();
+      this.target = target;
+    }
+    
+    @Override
+    public final void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int length,
+     final byte[] data)
+    throws IllegalArgumentException
+    {
+      this.target.btpSapIndication
+        (unbox (btpSrcPort),
+         btpDstPort,
+         unbox (btpDstPortInfo),
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         unbox (gnRemLifetime_s),
+         0,
+         length,
+         data);
+    }
+    
+    @Override
+    public final void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int offset,
+     final int length,
+     final byte[] data)
+    throws IllegalArgumentException
+    {
+      this.target.btpSapIndication
+        (unbox (btpSrcPort),
+         btpDstPort,
+         unbox (btpDstPortInfo),
+         gnDstAddress,
+         gnSrcPV,
+         gnSecReport,
+         gnCertId,
+         gnPermissions,
+         gnTrafficClass,
+         unbox (gnRemLifetime_s),
+         offset,
+         length,
+         data);
+    }
+    
+  }
+  
+}
@@ -0,0 +1,771 @@
+/*
+ * Copyright 2016 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+/** A compact (packed) store for the most recent BTP-Data.indications.
+ * 
+ * <p>
+ * The fixed-size fields of each indication are kept in parallel primitive arrays (columns),
+ * and the payloads are copied into a single, shared byte-array slab;
+ * the per-record overhead is about 56 bytes (plus the payload itself),
+ * compared to several hundreds of bytes for a {@link BtpSap_DataIndContainer} with its boxed and interface-typed fields.
+ * Latitudes and longitudes (of the source position vector and the destination area) are stored as integers
+ * in units of 1e-7 degrees.
+ * The security report, certificate ID and permissions are <i>not</i> stored.
+ * 
+ * <p>
+ * The store has a fixed record capacity and a fixed slab capacity;
+ * appending a record evicts the oldest records as needed to make room.
+ * Each appended record is assigned a unique, increasing sequence number (starting at zero).
+ * 
+ * <p>
+ * Records are read through a {@link Cursor}, which yields a (single, re-used) flyweight {@link Cursor.View}
+ * of the current record, with the getters of a {@link BtpSap_DataIndContainer}.
+ * A view (including its destination, source position vector, traffic class and payload array)
+ * reflects the store directly, and is only valid until the cursor is moved, or until the record is evicted;
+ * use {@link Cursor#copy} (or {@link Cursor.View#toContainer}) to obtain an independent container.
+ * 
+ * <p>
+ * Since it implements {@link BtpSap_DataIndPrimitive}, a store can be fed directly by (primitive) indication parsers.
+ * 
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ */
+public class BtpSap_DataIndStore
+implements BtpSap_DataIndPrimitive
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTOR(S) / CLONING / FACTORY
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates an empty store.
+   * 
+   * @param capacity     The maximum number of records held, strictly positive.
+   * @param slabCapacity The size of the payload slab in bytes, strictly positive.
+   * 
+   * @throws IllegalArgumentException If either capacity is not strictly positive.
+   * 
+   */
+  public BtpSap_DataIndStore (final int capacity, final int slabCapacity)
+  {
+    if (capacity <= 0 || slabCapacity <= 0)
+      throw new IllegalArgumentException ();
+    this.capacity = capacity;
+    this.slabCapacity = slabCapacity;
+    this.btpSrcPort = new int[capacity];
+    this.btpDstPort = new char[capacity];
+    this.btpDstPortInfo = new int[capacity];
+    this.trafficClass = new byte[capacity];
+    this.flags = new byte[capacity];
+    this.remLifetime_s = new int[capacity];
+    this.srcLatitude_e7 = new int[capacity];
+    this.srcLongitude_e7 = new int[capacity];
+    this.dstAddressOrPosition = new long[capacity];
+    this.dstDistances_m = new long[capacity];
+    this.dstAngle_degrees = new int[capacity];
+    this.payloadStart = new long[capacity];
+    this.payloadLength = new int[capacity];
+    this.slab = new byte[slabCapacity];
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CAPACITY / SIZE / SEQUENCE NUMBERS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int capacity;
+
+  public final int getCapacity ()
+  {
+    return this.capacity;
+  }
+
+  private final int slabCapacity;
+
+  public final int getSlabCapacity ()
+  {
+    return this.slabCapacity;
+  }
+
+  /** The sequence number of the oldest record held.
+   * 
+   */
+  private long first = 0L;
+
+  /** The sequence number of the next record to be appended.
+   * 
+   */
+  private long next = 0L;
+
+  public final long getFirstSequence ()
+  {
+    return this.first;
+  }
+
+  public final long getNextSequence ()
+  {
+    return this.next;
+  }
+
+  public final int size ()
+  {
+    return (int) (this.next - this.first);
+  }
+
+  public final boolean isEmpty ()
+  {
+    return this.next == this.first;
+  }
+
+  public final boolean contains (final long sequence)
+  {
+    return sequence >= this.first && sequence < this.next;
+  }
+
+  /** Removes all records (without resetting the sequence numbers).
+   * 
+   */
+  public final void clear ()
+  {
+    this.first = this.next;
+  }
+
+  private int index (final long sequence)
+  {
+    return (int) (sequence % this.capacity);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // COLUMNS / SLAB
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final static int FLAG_SRC_PV = 0x01;
+
+  private final static int FLAG_DST_UC = 0x02;
+
+  private final static int FLAG_DST_AREA = 0x04;
+
+  /** The area-shape ordinal is held in the high nibble of the flags.
+   * 
+   */
+  private final static int FLAGS_AREA_SHAPE_SHIFT = 4;
+
+  private final static GnAreaShape[] GN_AREA_SHAPES = GnAreaShape.values ();
+
+  /** Source and destination-info ports; {@link #ABSENT} if absent.
+   * 
+   */
+  private final int[] btpSrcPort;
+
+  private final char[] btpDstPort;
+
+  private final int[] btpDstPortInfo;
+
+  private final byte[] trafficClass;
+
+  private final byte[] flags;
+
+  /** The remaining lifetime; {@link #ABSENT} if absent.
+   * 
+   */
+  private final int[] remLifetime_s;
+
+  private final int[] srcLatitude_e7;
+
+  private final int[] srcLongitude_e7;
+
+  /** The unicast address [UC], or the area latitude (high word) and longitude (low word) in 1e-7 degrees [GBC/AC].
+   * 
+   */
+  private final long[] dstAddressOrPosition;
+
+  /** Distance A (high word) and distance B (low word).
+   * 
+   */
+  private final long[] dstDistances_m;
+
+  private final int[] dstAngle_degrees;
+
+  /** The (monotonically increasing) start position of the payload; the index in the slab is this value modulo its capacity.
+   * 
+   */
+  private final long[] payloadStart;
+
+  private final int[] payloadLength;
+
+  private final byte[] slab;
+
+  /** The (monotonically increasing) slab position for the next payload.
+   * 
+   */
+  private long slabNext = 0L;
+
+  private static int toE7 (final double degrees)
+  {
+    return (int) Math.round (degrees * 1e7);
+  }
+
+  private static double fromE7 (final int degrees_e7)
+  {
+    return degrees_e7 / 1e7;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // APPEND
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Appends an indication, evicting the oldest records as needed.
+   * 
+   * @param btpSrcPort      The BTP source port, or {@link #ABSENT}.
+   * @param btpDstPort      The BTP destination port.
+   * @param btpDstPortInfo  The BTP destination port info, or {@link #ABSENT}.
+   * @param gnDstAddress    The Geonetworking destination (may be null).
+   * @param gnSrcPV         The source position vector (may be null).
+   * @param gnTrafficClass  The traffic class, non-null.
+   * @param gnRemLifetime_s The remaining lifetime in seconds, or {@link #ABSENT}.
+   * @param offset          The offset of the payload in {@code data}.
+   * @param length          The length of the payload, at most the slab capacity.
+   * @param data            The payload data (copied into the slab), may be null if {@code length == 0}.
+   * 
+   * @return The sequence number of the new record, or -1 if one or more arguments are illegal.
+   * 
+   */
+  public final long append
+  (final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnTrafficClass gnTrafficClass,
+   final int gnRemLifetime_s,
+   final int offset,
+   final int length,
+   final byte[] data)
+  {
+    if (btpSrcPort != ABSENT && (btpSrcPort < 0 || btpSrcPort >= 65536))
+      return -1L;
+    if (btpDstPort < 0 || btpDstPort >= 65536)
+      return -1L;
+    if (btpDstPortInfo != ABSENT && (btpDstPortInfo < 0 || btpDstPortInfo >= 65536))
+      return -1L;
+    if (gnTrafficClass == null || (gnRemLifetime_s != ABSENT && gnRemLifetime_s < 0))
+      return -1L;
+    if (offset < 0 || length < 0 || length > this.slabCapacity)
+      return -1L;
+    if (data == null ? length > 0 : offset > data.length - length)
+      return -1L;
+    // SLAB SPACE; payloads do not wrap around the end of the slab.
+    long start = this.slabNext;
+    final int startIndex = (int) (start % this.slabCapacity);
+    if (startIndex + length > this.slabCapacity)
+      start += this.slabCapacity - startIndex;
+    final long end = start + length;
+    // EVICTION
+    while (this.first < this.next
+      && (this.next - this.first >= this.capacity || end - this.payloadStart[index (this.first)] > this.slabCapacity))
+      this.first++;
+    // COLUMNS
+    final int i = index (this.next);
+    int recordFlags = 0;
+    this.btpSrcPort[i] = btpSrcPort;
+    this.btpDstPort[i] = (char) btpDstPort;
+    this.btpDstPortInfo[i] = btpDstPortInfo;
+    this.trafficClass[i] = gnTrafficClass.toByte ();
+    this.remLifetime_s[i] = gnRemLifetime_s;
+    if (gnSrcPV != null)
+    {
+      recordFlags |= FLAG_SRC_PV;
+      this.srcLatitude_e7[i] = toE7 (gnSrcPV.getLatitude ());
+      this.srcLongitude_e7[i] = toE7 (gnSrcPV.getLongitude ());
+    }
+    if (gnDstAddress != null && gnDstAddress.getGnDestinationType () == GnDestinationType.GN_DEST_UC)
+    {
+      recordFlags |= FLAG_DST_UC;
+      this.dstAddressOrPosition[i] = gnDstAddress.getGnUnicastAddress ().toLong ();
+    }
+    else if (gnDstAddress != null && gnDstAddress.getGnDestinationType () == GnDestinationType.GN_DEST_GBC_AC)
+    {
+      final GnArea gnArea = gnDstAddress.getGnArea ();
+      recordFlags |= FLAG_DST_AREA | (gnArea.getAreaShape ().ordinal () << FLAGS_AREA_SHAPE_SHIFT);
+      this.dstAddressOrPosition[i] =
+        (((long) toE7 (gnArea.getLatitude ())) << 32) | (toE7 (gnArea.getLongitude ()) & 0xffffffffL);
+      this.dstDistances_m[i] =
+        (((long) gnArea.getDistanceA_m ()) << 32) | (gnArea.getDistanceB_m () & 0xffffffffL);
+      this.dstAngle_degrees[i] = gnArea.getAngle_degrees ();
+    }
+    this.flags[i] = (byte) recordFlags;
+    this.payloadStart[i] = start;
+    this.payloadLength[i] = length;
+    if (length > 0)
+      System.arraycopy (data, offset, this.slab, (int) (start % this.slabCapacity), length);
+    this.slabNext = end;
+    return this.next++;
+  }
+
+  /** Appends an indication from a container, evicting the oldest records as needed.
+   * 
+   * @param indication The indication, non-null.
+   * 
+   * @return The sequence number of the new record, or -1 if the indication is null or illegal.
+   * 
+   * @see #append(int, int, int, GnDestination, GnPositionVector, GnTrafficClass, int, int, int, byte[])
+   * 
+   */
+  public final long append (final BtpSap_DataIndContainer indication)
+  {
+    if (indication == null)
+      return -1L;
+    return append
+      (BtpSap_DataIndPrimitive.unbox (indication.getBtpSrcPort ()),
+       indication.getBtpDstPort (),
+       BtpSap_DataIndPrimitive.unbox (indication.getBtpDstPortInfo ()),
+       indication.getGnDstAddress (),
+       indication.getGnSrcPV (),
+       indication.getGnTrafficClass (),
+       BtpSap_DataIndPrimitive.unbox (indication.getGnRemLifetime_s ()),
+       indication.getOffset (),
+       indication.getLength (),
+       indication.getData ());
+  }
+
+  /** Appends the indication to this store (ignoring the security report, certificate ID and permissions).
+   * 
+   * @throws IllegalArgumentException If one or more arguments are illegal.
+   * 
+   */
+  @Override
+  public void btpSapIndication
+  (final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final int gnRemLifetime_s,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    if (append (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnTrafficClass, gnRemLifetime_s,
+      offset, length, data) < 0)
+      throw new IllegalArgumentException ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CURSOR
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a new cursor, positioned just before the oldest record.
+   * 
+   * @return A new cursor.
+   * 
+   */
+  public final Cursor cursor ()
+  {
+    return new Cursor ();
+  }
+
+  /** A cursor over the records in a {@link BtpSap_DataIndStore}, from oldest to newest.
+   * 
+   * <p>
+   * A cursor owns a single flyweight view (and its flyweight destination, source position vector and traffic class),
+   * which is re-pointed as the cursor moves.
+   * 
+   */
+  public final class Cursor
+  {
+
+    private Cursor ()
+    {
+      this.sequence = BtpSap_DataIndStore.this.first - 1;
+    }
+
+    private long sequence;
+
+    private int i;
+
+    /** Returns the sequence number of the current record.
+     * 
+     * @return The sequence number of the current record.
+     * 
+     */
+    public final long getSequence ()
+    {
+      return this.sequence;
+    }
+
+    /** Returns whether the cursor is positioned at a record still held in the store.
+     * 
+     * @return Whether the cursor is positioned at a record still held in the store.
+     * 
+     */
+    public final boolean isValid ()
+    {
+      return contains (this.sequence);
+    }
+
+    /** Moves to the next record, skipping records evicted in the mean time.
+     * 
+     * @return Whether the cursor moved to a (valid) record; if not, the cursor is left unchanged.
+     * 
+     */
+    public final boolean next ()
+    {
+      final long s = Math.max (this.sequence + 1, BtpSap_DataIndStore.this.first);
+      if (s >= BtpSap_DataIndStore.this.next)
+        return false;
+      this.sequence = s;
+      this.i = index (s);
+      return true;
+    }
+
+    /** Moves to the record with given sequence number.
+     * 
+     * @param sequence The sequence number.
+     * 
+     * @return Whether the record is held in the store; if not, the cursor is left unchanged.
+     * 
+     */
+    public final boolean seek (final long sequence)
+    {
+      if (! contains (sequence))
+        return false;
+      this.sequence = sequence;
+      this.i = index (sequence);
+      return true;
+    }
+
+    private void check ()
+    {
+      if (! isValid ())
+        throw new IllegalStateException ();
+    }
+
+    /** Returns the flyweight view of the current record.
+     * 
+     * @return The flyweight view of the current record (always the same object for this cursor).
+     * 
+     * @throws IllegalStateException If the cursor is not positioned at a record held in the store.
+     * 
+     */
+    public final View get ()
+    {
+      check ();
+      return this.view;
+    }
+
+    /** Returns an independent (immutable) container holding the current record, including a copy of the payload.
+     * 
+     * @return A new container holding the current record.
+     * 
+     * @throws IllegalStateException If the cursor is not positioned at a record held in the store.
+     * 
+     */
+    public final BtpSap_DataIndContainer copy ()
+    {
+      check ();
+      final int f = BtpSap_DataIndStore.this.flags[this.i];
+      final GnDestination gnDst;
+      if ((f & FLAG_DST_UC) != 0)
+        gnDst = new DefaultGnDestination (new DefaultGnAddress (this.dst.toLong ()));
+      else if ((f & FLAG_DST_AREA) != 0)
+        gnDst = new DefaultGnDestination (new DefaultGnArea (this.dst.getAreaShape (),
+          this.dst.getLatitude (), this.dst.getLongitude (),
+          this.dst.getDistanceA_m (), this.dst.getDistanceB_m (), this.dst.getAngle_degrees ()));
+      else
+        gnDst = null;
+      final GnPositionVector gnSrcPV = (f & FLAG_SRC_PV) != 0
+        ? new DefaultGnPositionVector (this.srcPV.getLatitude (), this.srcPV.getLongitude ())
+        : null;
+      final int length = BtpSap_DataIndStore.this.payloadLength[this.i];
+      final byte[] payload = new byte[length];
+      System.arraycopy (BtpSap_DataIndStore.this.slab, this.view.getOffset (), payload, 0, length);
+      return new BtpSap_DataIndContainer
+        (this.view.getBtpSrcPort (),
+         this.view.getBtpDstPort (),
+         this.view.getBtpDstPortInfo (),
+         gnDst,
+         gnSrcPV,
+         null,
+         null,
+         null,
+         DefaultGnTrafficClass.valueOf (BtpSap_DataIndStore.this.trafficClass[this.i]),
+         this.view.getGnRemLifetime_s (),
+         length,
+         0,
+         payload);
+    }
+
+    /** Delivers the current record to a primitive indication handler, without boxing or copying.
+     * 
+     * <p>
+     * The destination, source position vector, traffic class and payload array passed are the flyweights of this cursor.
+     * 
+     * @param handler The handler, non-null.
+     * 
+     * @throws IllegalStateException    If the cursor is not positioned at a record held in the store.
+     * @throws IllegalArgumentException If the handler is null, or if the handler throws it.
+     * 
+     */
+    public final void deliver (final BtpSap_DataIndPrimitive handler)
+    {
+      if (handler == null)
+        throw new IllegalArgumentException ();
+      check ();
+      handler.btpSapIndication
+        (BtpSap_DataIndStore.this.btpSrcPort[this.i],
+         BtpSap_DataIndStore.this.btpDstPort[this.i],
+         BtpSap_DataIndStore.this.btpDstPortInfo[this.i],
+         this.view.getGnDstAddress (),
+         this.view.getGnSrcPV (),
+         null,
+         null,
+         null,
+         this.tc,
+         BtpSap_DataIndStore.this.remLifetime_s[this.i],
+         this.view.getOffset (),
+         BtpSap_DataIndStore.this.payloadLength[this.i],
+         BtpSap_DataIndStore.this.slab);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // FLYWEIGHTS
+    //
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private final GnTrafficClass tc = new GnTrafficClass ()
+    {
+      @Override
+      public final byte toByte ()
+      {
+        return BtpSap_DataIndStore.this.trafficClass[Cursor.this.i];
+      }
+    };
+
+    private final GnPositionVector srcPV = new GnPositionVector ()
+    {
+
+      @Override
+      public final double getLatitude ()
+      {
+        return fromE7 (BtpSap_DataIndStore.this.srcLatitude_e7[Cursor.this.i]);
+      }
+
+      @Override
+      public final double getLongitude ()
+      {
+        return fromE7 (BtpSap_DataIndStore.this.srcLongitude_e7[Cursor.this.i]);
+      }
+
+    };
+
+    private final class DestinationView
+    implements GnDestination, GnAddress, GnArea
+    {
+
+      private int flags ()
+      {
+        return BtpSap_DataIndStore.this.flags[Cursor.this.i];
+      }
+
+      @Override
+      public final GnDestinationType getGnDestinationType ()
+      {
+        return (flags () & FLAG_DST_UC) != 0 ? GnDestinationType.GN_DEST_UC : GnDestinationType.GN_DEST_GBC_AC;
+      }
+
+      @Override
+      public final GnAddress getGnUnicastAddress () throws IllegalStateException
+      {
+        if ((flags () & FLAG_DST_UC) == 0)
+          throw new IllegalStateException ();
+        return this;
+      }
+
+      @Override
+      public final GnArea getGnArea () throws IllegalStateException
+      {
+        if ((flags () & FLAG_DST_AREA) == 0)
+          throw new IllegalStateException ();
+        return this;
+      }
+
+      @Override
+      public final long toLong ()
+      {
+        return BtpSap_DataIndStore.this.dstAddressOrPosition[Cursor.this.i];
+      }
+
+      @Override
+      public final GnAreaShape getAreaShape ()
+      {
+        return GN_AREA_SHAPES[(flags () & 0xff) >>> FLAGS_AREA_SHAPE_SHIFT];
+      }
+
+      @Override
+      public final double getLatitude ()
+      {
+        return fromE7 ((int) (BtpSap_DataIndStore.this.dstAddressOrPosition[Cursor.this.i] >> 32));
+      }
+
+      @Override
+      public final double getLongitude ()
+      {
+        return fromE7 ((int) BtpSap_DataIndStore.this.dstAddressOrPosition[Cursor.this.i]);
+      }
+
+      @Override
+      public final int getDistanceA_m ()
+      {
+        return (int) (BtpSap_DataIndStore.this.dstDistances_m[Cursor.this.i] >> 32);
+      }
+
+      @Override
+      public final int getDistanceB_m ()
+      {
+        return (int) BtpSap_DataIndStore.this.dstDistances_m[Cursor.this.i];
+      }
+
+      @Override
+      public final int getAngle_degrees ()
+      {
+        return BtpSap_DataIndStore.this.dstAngle_degrees[Cursor.this.i];
+      }
+
+    }
+
+    private final DestinationView dst = new DestinationView ();
+
+    /** A flyweight view of the current record of a {@link Cursor}, with the getters of a {@link BtpSap_DataIndContainer}.
+     * 
+     * <p>
+     * The view is not a container itself (the getters of which are final); use {@link #toContainer} to obtain one.
+     * 
+     */
+    public final class View
+    {
+
+      private View ()
+      {
+      }
+
+      public final Integer getBtpSrcPort ()
+      {
+        return BtpSap_DataIndPrimitive.box (BtpSap_DataIndStore.this.btpSrcPort[Cursor.this.i]);
+      }
+
+      public final int getBtpDstPort ()
+      {
+        return BtpSap_DataIndStore.this.btpDstPort[Cursor.this.i];
+      }
+
+      public final Integer getBtpDstPortInfo ()
+      {
+        return BtpSap_DataIndPrimitive.box (BtpSap_DataIndStore.this.btpDstPortInfo[Cursor.this.i]);
+      }
+
+      public final GnDestination getGnDstAddress ()
+      {
+        return (BtpSap_DataIndStore.this.flags[Cursor.this.i] & (FLAG_DST_UC | FLAG_DST_AREA)) != 0
+          ? Cursor.this.dst
+          : null;
+      }
+
+      public final GnPositionVector getGnSrcPV ()
+      {
+        return (BtpSap_DataIndStore.this.flags[Cursor.this.i] & FLAG_SRC_PV) != 0 ? Cursor.this.srcPV : null;
+      }
+
+      public final GnSecurityReport getGnSecReport ()
+      {
+        return null;
+      }
+
+      public final GnCertificateId getGnCertId ()
+      {
+        return null;
+      }
+
+      public final GnPermissions getGnPermissions ()
+      {
+        return null;
+      }
+
+      public final GnTrafficClass getGnTrafficClass ()
+      {
+        return Cursor.this.tc;
+      }
+
+      public final Integer getGnRemLifetime_s ()
+      {
+        return BtpSap_DataIndPrimitive.box (BtpSap_DataIndStore.this.remLifetime_s[Cursor.this.i]);
+      }
+
+      public final int getLength ()
+      {
+        return BtpSap_DataIndStore.this.payloadLength[Cursor.this.i];
+      }
+
+      public final int getOffset ()
+      {
+        return (int) (BtpSap_DataIndStore.this.payloadStart[Cursor.this.i] % BtpSap_DataIndStore.this.slabCapacity);
+      }
+
+      public final byte[] getData ()
+      {
+        return BtpSap_DataIndStore.this.slab;
+      }
+
+      /** Returns an independent (immutable) container holding the current record, including a copy of the payload.
+       * 
+       * @return A new container holding the current record.
+       * 
+       * @throws IllegalStateException If the cursor is not positioned at a record held in the store.
+       * 
+       * @see Cursor#copy
+       * 
+       */
+      public final BtpSap_DataIndContainer toContainer ()
+      {
+        return copy ();
+      }
+
+    }
+
+    private final View view = new View ();
+
+  }
+
+}
@@ -17,6 +17,7 @@
 package net.etsi.btpsap;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** Java binding to a BTP (Basic Transport Protocol) SAP (Service Access Point) entity.
  *
@@ -88,4 +89,142 @@ extends BtpSapTypes
     byte data[]
   ) throws IllegalArgumentException, IOException;
   
+  /** BTP-Data.request with the payload held in a (heap or direct) buffer.
+   * 
+   * <p>
+   * The payload consists of the bytes between the position and the limit of {@code payload};
+   * the position and limit are not changed.
+   * The default implementation delegates to {@link #btpSapRequest(BtpType, Integer, int, Integer, GnTransportType,
+   * GnDestination, GnCommunicationsProfile, GnSecurityProfile, Integer, Integer, Integer, int, GnTrafficClass,
+   * int, int, byte[])}, passing the backing array if the buffer has an accessible one,
+   * and copying the payload into a fresh array otherwise (e.g., for direct buffers).
+   * Implementations that can send from a buffer without copying should override this method.
+   * 
+   * @param payload The payload, may be {@code null} (no payload).
+   * 
+   * @throws IllegalArgumentException If one or more actual arguments has an illegal value.
+   * @throws IOException              If sending failed.
+   * 
+   */
+  default void btpSapRequest
+  (
+    final BtpType btpType,
+    final Integer btpSrcPort,
+    final int btpDstPort,
+    final Integer btpDstPortInfo,
+    final GnTransportType gnTransportType,
+    final GnDestination gnDstAddress,
+    final GnCommunicationsProfile gnCommProfile,
+    final GnSecurityProfile gnSecProfile,
+    final Integer gnMaxLifetime_ms,
+    final Integer gnRepInterval_ms,
+    final Integer gnMaxRepTime_ms,
+    final int gnMaxHopLimit,
+    final GnTrafficClass gnTrafficClass,
+    final ByteBuffer payload
+  ) throws IllegalArgumentException, IOException
+  {
+    final int offset;
+    final int length = payload != null ? payload.remaining () : 0;
+    final byte[] data;
+    if (payload == null)
+    {
+      offset = 0;
+      data = null;
+    }
+    else if (payload.hasArray ())
+    {
+      offset = payload.arrayOffset () + payload.position ();
+      data = payload.array ();
+    }
+    else
+    {
+      offset = 0;
+      data = new byte[length];
+      payload.duplicate ().get (data);
+    }
+    btpSapRequest
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data);
+  }
+  
+  /** BTP-Data.request for a batch of requests.
+   * 
+   * <p>
+   * Semantically equivalent to invoking {@link #btpSapRequest} for each request in turn (which is what the default
+   * implementation does), but allows implementations to amortize per-request overhead
+   * (e.g., by encoding all requests into a single buffer and sending them in a single loop).
+   * 
+   * <p>
+   * Upon an exception, requests beyond the one that failed may or may not have been sent.
+   * 
+   * @param reqs The requests, non-{@code null}.
+   * @param off  The index of the first request in {@code reqs}.
+   * @param n    The number of requests to send (from {@code reqs}).
+   * 
+   * @throws IllegalArgumentException If the array or range is invalid, or if one or more requests has an illegal value.
+   * @throws IOException              If sending failed.
+   * 
+   */
+  default void btpSapRequests (final BtpSap_DataReqContainer[] reqs, final int off, final int n)
+  throws IllegalArgumentException, IOException
+  {
+    if (reqs == null || off < 0 || n < 0 || off > reqs.length - n)
+      throw new IllegalArgumentException ();
+    for (int i = off; i < off + n; i++)
+    {
+      final BtpSap_DataReqContainer req = reqs[i];
+      if (req == null)
+        throw new IllegalArgumentException ();
+      if (! req.hasArray ())
+        btpSapRequest
+          (req.getBtpType (),
+           req.getBtpSrcPort (),
+           req.getBtpDestinationPort (),
+           req.getBtpDstPortInfo (),
+           req.getGnTransportType (),
+           req.getGnDestination (),
+           req.getCommunicationsProfile (),
+           req.getSecurityProfile (),
+           req.hasMaxLifetime () ? req.getMaxLifeTime_ms () : null,
+           req.getGnRepInterval_ms (),
+           req.getGnMaxRepTime_ms (),
+           req.getGnMaxHopLimit (),
+           req.getGnTrafficClass (),
+           req.getPayloadBuffer ());
+      else
+        btpSapRequest
+          (req.getBtpType (),
+           req.getBtpSrcPort (),
+           req.getBtpDestinationPort (),
+           req.getBtpDstPortInfo (),
+           req.getGnTransportType (),
+           req.getGnDestination (),
+           req.getCommunicationsProfile (),
+           req.getSecurityProfile (),
+           req.hasMaxLifetime () ? req.getMaxLifeTime_ms () : null,
+           req.getGnRepInterval_ms (),
+           req.getGnMaxRepTime_ms (),
+           req.getGnMaxHopLimit (),
+           req.getGnTrafficClass (),
+           req.getOffset (),
+           req.getLength (),
+           req.getData ());
+    }
+  }
+  
 }
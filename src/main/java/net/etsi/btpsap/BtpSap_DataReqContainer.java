@@ -16,6 +16,7 @@
  */
 package net.etsi.btpsap;
 
+import java.nio.ByteBuffer;
 import net.etsi.btpsap.BtpSapTypes.BtpType;
 import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
 import net.etsi.btpsap.BtpSapTypes.GnDestination;
@@ -23,6 +24,21 @@ import net.etsi.btpsap.BtpSapTypes.GnSecurityProfile;
 import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
 import net.etsi.btpsap.BtpSapTypes.GnTransportType;
 
+/** A container for the arguments of a BTP-Data.request.
+ * 
+ * <p>
+ * The payload is held either as a (reference to a) byte array, an offset into that array, and a length,
+ * or as a (heap or direct) {@link ByteBuffer}, see {@link #hasArray}.
+ * Neither is copied upon construction.
+ * 
+ * <p>
+ * The getters are final, so that a container always holds exactly the values it was created with.
+ * Other representations of requests (e.g., requests decoded lazily from a PDU) do not extend this class,
+ * but convert into a container on demand.
+ * 
+ * @see BtpSap_DataReq
+ * 
+ */
 public class BtpSap_DataReqContainer
 {
   
@@ -32,6 +48,11 @@ public class BtpSap_DataReqContainer
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   
+  /** Creates a new request container.
+   * 
+   * @throws IllegalArgumentException If the arguments do not pass {@link #validate}.
+   * 
+   */
   public BtpSap_DataReqContainer
   (final BtpType btpType,
    final Integer btpSrcPort,
@@ -51,67 +72,364 @@ public class BtpSap_DataReqContainer
    final byte data[]
   )
   {
-    if (btpType == null)
-      throw new IllegalArgumentException ();
+    this (BtpSap_DataReqContainer.checked (BtpSap_DataReqContainer.validate
+     (btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      length,
+      offset,
+      data)),
+      btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      length,
+      offset,
+      data,
+      null);
+  }
+  
+  /** Creates a new request container from validated arguments.
+   * 
+   * @param status The validation status, ignored (but, through {@link #checked}, forcing validation before construction).
+   * 
+   */
+  private BtpSap_DataReqContainer
+  (final int status,
+   final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDst,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int length,
+   final int offset,
+   final byte data[],
+   final ByteBuffer payload
+  )
+  {
     this.btpType = btpType;
-    if (btpSrcPort != null && (btpSrcPort < 0 || btpSrcPort >= 65536))
-      throw new IllegalArgumentException ();
     this.btpSrcPort = btpSrcPort;
-    if (btpDstPort < 0 || btpDstPort >= 65536)
-      throw new IllegalArgumentException ();
     this.btpDstPort = btpDstPort;
-    if (btpDstPortInfo != null && (btpDstPortInfo < 0 || btpDstPortInfo >= 65536))
-      throw new IllegalArgumentException ();
     this.btpDstPortInfo = btpDstPortInfo;
-    if (gnTransportType == null)
-      throw new IllegalArgumentException ();
     this.gnTransportType = gnTransportType;
-    switch (this.gnTransportType)
+    this.gnDst = gnDst;
+    this.gnCommProfile = gnCommProfile;
+    this.gnSecProfile = gnSecProfile;
+    this.gnMaxLifetime_ms = gnMaxLifetime_ms;
+    this.gnRepInterval_ms = gnRepInterval_ms;
+    this.gnMaxRepTime_ms = gnMaxRepTime_ms;
+    this.gnMaxHopLimit = gnMaxHopLimit;
+    this.gnTrafficClass = gnTrafficClass;
+    this.length = length;
+    this.offset = offset;
+    this.data = data;
+    this.payload = payload;
+  }
+  
+  /** Creates a new request container with the payload held in a buffer.
+   * 
+   * <p>
+   * The payload consists of the bytes between the position and the limit of {@code payload};
+   * it is <i>not</i> copied, and the container keeps a (read-only) view on it,
+   * so the contents must not be modified while the container is in use.
+   * The position and limit of {@code payload} are not changed, and may be changed by the caller afterwards.
+   * If the buffer is backed by an accessible array, the container presents that array through {@link #getData}
+   * and {@link #getOffset} as well.
+   * 
+   * @param payload The payload, may be {@code null} (no payload).
+   * 
+   * @throws IllegalArgumentException If the arguments do not pass {@link #validate}.
+   * 
+   */
+  public BtpSap_DataReqContainer
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDst,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final ByteBuffer payload
+  )
+  {
+    this (BtpSap_DataReqContainer.checked (BtpSap_DataReqContainer.validate
+     (btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      0,
+      0,
+      null)),
+      btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      payload != null ? payload.remaining () : 0,
+      payload != null && payload.hasArray () ? payload.arrayOffset () + payload.position () : 0,
+      payload != null && payload.hasArray () ? payload.array () : null,
+      payload != null ? payload.slice ().asReadOnlyBuffer () : null);
+  }
+  
+  private static int checked (final int status)
+  {
+    if (status != BtpSapValidationError.OK.ordinal ())
+      throw new IllegalArgumentException ();
+    return status;
+  }
+  
+  /** Creates a new request container, or returns {@code null} if the arguments do not pass {@link #validate}.
+   * 
+   * <p>
+   * Unlike the constructor, this method does not throw on invalid arguments;
+   * the reason for rejection is counted in {@link BtpSapValidationError}.
+   * 
+   * @return The new container, {@code null} if the arguments are invalid.
+   * 
+   */
+  public static BtpSap_DataReqContainer tryCreate
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDst,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int length,
+   final int offset,
+   final byte data[]
+  )
+  {
+    final int status = BtpSap_DataReqContainer.validate
+     (btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      length,
+      offset,
+      data);
+    if (status != BtpSapValidationError.OK.ordinal ())
+      return null;
+    return new BtpSap_DataReqContainer
+     (status,
+      btpType,
+      btpSrcPort,
+      btpDstPort,
+      btpDstPortInfo,
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      gnMaxLifetime_ms,
+      gnRepInterval_ms,
+      gnMaxRepTime_ms,
+      gnMaxHopLimit,
+      gnTrafficClass,
+      length,
+      offset,
+      data,
+      null);
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // VALIDATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  
+  /** The maximum GN lifetime and repetition times (in ms).
+   * 
+   */
+  public final static int MAX_GN_TIME_MS = 6300000;
+  
+  /** Validates the arguments for a request container, without throwing or allocating.
+   * 
+   * <p>
+   * Each rejection is counted in its {@link BtpSapValidationError}.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   */
+  public static int validate
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDst,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int length,
+   final int offset,
+   final byte data[]
+  )
+  {
+    return BtpSap_DataReqContainer.validate
+     (btpType,
+      BtpSap_DataReqPrimitive.unbox (btpSrcPort),
+      btpDstPort,
+      BtpSap_DataReqPrimitive.unbox (btpDstPortInfo),
+      gnTransportType,
+      gnDst,
+      gnCommProfile,
+      gnSecProfile,
+      BtpSap_DataReqPrimitive.unbox (gnMaxLifetime_ms),
+      BtpSap_DataReqPrimitive.unbox (gnRepInterval_ms),
+      BtpSap_DataReqPrimitive.unbox (gnMaxRepTime_ms),
+      gnMaxHopLimit,
+      gnTrafficClass,
+      length,
+      offset,
+      data);
+  }
+  
+  /** Validates the arguments for a request, with optional values passed as primitives, without throwing or allocating.
+   * 
+   * <p>
+   * Applies the same rules as {@link #validate(BtpType, Integer, int, Integer, GnTransportType, GnDestination,
+   * GnCommunicationsProfile, GnSecurityProfile, Integer, Integer, Integer, int, GnTrafficClass, int, int, byte[])},
+   * but absent optional values are denoted by {@link BtpSap_DataReqPrimitive#ABSENT} instead of {@code null}.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see MutableBtpSap_DataReq#validate
+   * 
+   */
+  public static int validate
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDst,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final int gnMaxLifetime_ms,
+   final int gnRepInterval_ms,
+   final int gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int length,
+   final int offset,
+   final byte data[]
+  )
+  {
+    if (btpType == null)
+      return BtpSapValidationError.NULL_BTP_TYPE.reject ();
+    if (btpSrcPort != BtpSap_DataReqPrimitive.ABSENT && (btpSrcPort < 0 || btpSrcPort >= 65536))
+      return BtpSapValidationError.ILLEGAL_BTP_SRC_PORT.reject ();
+    if (btpDstPort < 0 || btpDstPort >= 65536)
+      return BtpSapValidationError.ILLEGAL_BTP_DST_PORT.reject ();
+    if (btpDstPortInfo != BtpSap_DataReqPrimitive.ABSENT && (btpDstPortInfo < 0 || btpDstPortInfo >= 65536))
+      return BtpSapValidationError.ILLEGAL_BTP_DST_PORT_INFO.reject ();
+    if (gnTransportType == null)
+      return BtpSapValidationError.NULL_GN_TRANSPORT_TYPE.reject ();
+    switch (gnTransportType)
     {
       case GN_SHB:
       case GN_TSB:
         if (gnDst != null)
-          throw new IllegalArgumentException ();
+          return BtpSapValidationError.ILLEGAL_GN_DESTINATION.reject ();
         break;
       case GN_UC:
         if (gnDst == null || gnDst.getGnDestinationType () != BtpSapTypes.GnDestinationType.GN_DEST_UC)
-          throw new IllegalArgumentException ();
+          return BtpSapValidationError.ILLEGAL_GN_DESTINATION.reject ();
         break;        
       case GN_GBC:
       case GN_AC:
         if (gnDst == null || gnDst.getGnDestinationType () != BtpSapTypes.GnDestinationType.GN_DEST_GBC_AC)
-          throw new IllegalArgumentException ();
+          return BtpSapValidationError.ILLEGAL_GN_DESTINATION.reject ();
         break;        
       default:
-        throw new IllegalArgumentException ();
+        return BtpSapValidationError.UNSUPPORTED_GN_TRANSPORT_TYPE.reject ();
     }
-    this.gnDst = gnDst;
-    this.gnCommProfile = gnCommProfile;
-    this.gnSecProfile = gnSecProfile;
-    if (gnMaxLifetime_ms != null && (gnMaxLifetime_ms < 0 || gnMaxLifetime_ms > 6300000))
-      throw new IllegalArgumentException ();
-    this.gnMaxLifetime_ms = gnMaxLifetime_ms;
-    if (gnRepInterval_ms != null && (gnRepInterval_ms < 0 || gnRepInterval_ms > 6300000))
-      throw new IllegalArgumentException ();
-    this.gnRepInterval_ms = gnRepInterval_ms;
-    if (gnMaxRepTime_ms != null && (gnMaxRepTime_ms < 0 || gnMaxRepTime_ms > 6300000))
-      throw new IllegalArgumentException ();
-    this.gnMaxRepTime_ms = gnMaxRepTime_ms;
+    if (gnMaxLifetime_ms != BtpSap_DataReqPrimitive.ABSENT && (gnMaxLifetime_ms < 0 || gnMaxLifetime_ms > MAX_GN_TIME_MS))
+      return BtpSapValidationError.ILLEGAL_GN_MAX_LIFETIME.reject ();
+    if (gnRepInterval_ms != BtpSap_DataReqPrimitive.ABSENT && (gnRepInterval_ms < 0 || gnRepInterval_ms > MAX_GN_TIME_MS))
+      return BtpSapValidationError.ILLEGAL_GN_REP_INTERVAL.reject ();
+    if (gnMaxRepTime_ms != BtpSap_DataReqPrimitive.ABSENT && (gnMaxRepTime_ms < 0 || gnMaxRepTime_ms > MAX_GN_TIME_MS))
+      return BtpSapValidationError.ILLEGAL_GN_MAX_REP_TIME.reject ();
     if (gnMaxHopLimit < 0 || gnMaxHopLimit >= 256)
-      throw new IllegalArgumentException ();
-    this.gnMaxHopLimit = gnMaxHopLimit;
+      return BtpSapValidationError.ILLEGAL_GN_MAX_HOP_LIMIT.reject ();
     if (gnTrafficClass == null)
-      throw new IllegalArgumentException ();
-    this.gnTrafficClass = gnTrafficClass;
+      return BtpSapValidationError.NULL_GN_TRAFFIC_CLASS.reject ();
     if (length < 0 || offset < 0)
-      throw new IllegalArgumentException ();
+      return BtpSapValidationError.ILLEGAL_PAYLOAD.reject ();
     if (data == null && (length > 0 || offset > 0))
-      throw new IllegalArgumentException ();
-    if (data != null && offset + length > data.length)
-      throw new IllegalArgumentException ();
-    this.length = length;
-    this.offset = offset;
-    this.data = data;
+      return BtpSapValidationError.ILLEGAL_PAYLOAD.reject ();
+    if (data != null && offset > data.length - length)
+      return BtpSapValidationError.ILLEGAL_PAYLOAD.reject ();
+    return BtpSapValidationError.OK.ordinal ();
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -246,6 +564,11 @@ public class BtpSap_DataReqContainer
   
   private final Integer gnRepInterval_ms;
   
+  public final Integer getGnRepInterval_ms ()
+  {
+    return this.gnRepInterval_ms;
+  }
+  
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
   // GN MAXIMUM REPITITION TIME [OPTIONAL]
@@ -254,6 +577,11 @@ public class BtpSap_DataReqContainer
   
   private final Integer gnMaxRepTime_ms;
   
+  public final Integer getGnMaxRepTime_ms ()
+  {
+    return this.gnMaxRepTime_ms;
+  }
+  
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
   // GN MAXIMUM HOP LIMIT
@@ -311,9 +639,71 @@ public class BtpSap_DataReqContainer
    */
   private final byte data[];
   
+  /** Returns the array holding the payload.
+   * 
+   * <p>
+   * If the payload is not backed by an accessible array (see {@link #hasArray}),
+   * it is copied into a fresh array (at offset zero) upon the first invocation.
+   * Consumers able to handle buffers should use {@link #getPayloadBuffer} in that case.
+   * 
+   * @return The array holding the payload, {@code null} if there is no payload.
+   * 
+   */
   public final byte[] getData ()
   {
-    return this.data;
+    if (this.data != null || this.payload == null)
+      return this.data;
+    byte[] heapCopy = this.heapCopy;
+    if (heapCopy == null)
+    {
+      heapCopy = new byte[this.length];
+      this.payload.duplicate ().get (heapCopy);
+      // Racing threads may each copy; the volatile write publishes the array only after it has been filled.
+      this.heapCopy = heapCopy;
+    }
+    return heapCopy;
+  }
+  
+  /** The payload buffer, if the container was created from a buffer (a read-only view, holding exactly the payload).
+   * 
+   */
+  private final ByteBuffer payload;
+  
+  /** The heap copy of a payload not backed by an accessible array, created on demand and published (filled) through a volatile write.
+   * 
+   */
+  private volatile byte[] heapCopy = null;
+  
+  /** Returns whether the payload is available through {@link #getData} (and {@link #getOffset}) without copying.
+   * 
+   * <p>
+   * This is the case unless the container was created from a direct (or read-only) buffer.
+   * 
+   * @return Whether the payload is backed by an accessible array.
+   * 
+   */
+  public final boolean hasArray ()
+  {
+    return this.payload == null || this.data != null;
+  }
+  
+  /** Returns a read-only buffer holding (exactly) the payload, without copying.
+   * 
+   * <p>
+   * The buffer's position is zero and its limit equals {@link #getLength};
+   * for containers created from a direct buffer, the returned buffer is direct as well.
+   * 
+   * @return A read-only buffer holding the payload.
+   * 
+   */
+  public final ByteBuffer getPayloadBuffer ()
+  {
+    if (this.payload != null)
+      return this.payload.duplicate ();
+    final byte[] data = getData ();
+    if (data == null)
+      return ByteBuffer.allocate (0).asReadOnlyBuffer ();
+    return ByteBuffer.wrap (data, getOffset (), getLength ()).slice ().asReadOnlyBuffer ();
   }
   
 }
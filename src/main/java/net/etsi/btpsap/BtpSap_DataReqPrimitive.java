@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.io.IOException;
+
+/** Java binding to a BTP (Basic Transport Protocol) SAP (Service Access Point) entity, without boxing.
+ *
+ * <p>
+ * This is the BTP-Data.request part, equivalent to {@link BtpSap_DataReq},
+ * except that optional integer parameters are passed as primitive {@code int}s,
+ * with {@link #ABSENT} denoting an absent value (instead of {@code null}).
+ * 
+ * <p>
+ * The nested {@link BoxingAdapter} and {@link UnboxingAdapter} convert from and to {@link BtpSap_DataReq}.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ * @see BtpSap_DataReq
+ * 
+ */
+public interface BtpSap_DataReqPrimitive
+extends BtpSapTypes
+{
+  
+  /** The value denoting an absent optional (primitive) parameter.
+   * 
+   */
+  int ABSENT = -1;
+  
+  /** BTP-Data.request.
+   * 
+   * @param btpType           The BTP type, BTP-A or BTP-B.
+   * @param btpSrcPort        The BTP source port, {@code btpSrcPort == ABSENT || 0 <= btpSrcPort <= 65535}.
+   * @param btpDstPort        The BTP destination port, {@code 0 <= btpDstPort <= 65535}.
+   * @param btpDstPortInfo    The BTP destination port info, {@code btpDstPortInfo == ABSENT || 0 <= btpDstPortInfo <= 65535}.
+   * @param gnTransportType   The Geonetworking transport type, non-null.
+   * @param gnDstAddress      The Geonetworking destination address, non-null for GeoUnicast, GeoBroadcast and GeoAnycast,
+   *                          null for SHB and TSB.
+   * @param gnCommProfile     The Geonetworking communications profile (optional, may be null).
+   * @param gnSecProfile      The Geonetworking security profile (optional, may be null).
+   * @param gnMaxLifetime_ms  The maximum lifetime in milliseconds, or {@link #ABSENT}.
+   * @param gnRepInterval_ms  The repetition interval in milliseconds, or {@link #ABSENT}.
+   * @param gnMaxRepTime_ms   The maximum repetition time in milliseconds, or {@link #ABSENT}.
+   * @param gnMaxHopLimit     The maximum hop limit, non-negative.
+   * @param gnTrafficClass    The traffic class for the message, non-null.
+   * @param offset            The offset into the {@code data} buffer at which the message contents start.
+   * @param length            The number of bytes from the {@code data} buffer to send (non-negative).
+   * @param data              The bytes to be sent as payload (starting at index {@code offset} and upto {@code length} bytes).
+   * 
+   * @see BtpSap_DataReq#btpSapRequest
+   * 
+   */
+  void btpSapRequest
+  (
+    BtpType btpType,
+    int btpSrcPort,
+    int btpDstPort,
+    int btpDstPortInfo,
+    GnTransportType gnTransportType,
+    GnDestination gnDstAddress,
+    GnCommunicationsProfile gnCommProfile,
+    GnSecurityProfile gnSecProfile,
+    int gnMaxLifetime_ms,
+    int gnRepInterval_ms,
+    int gnMaxRepTime_ms,
+    int gnMaxHopLimit,
+    GnTrafficClass gnTrafficClass,
+    int offset,
+    int length,
+    byte data[]
+  ) throws IllegalArgumentException, IOException;
+  
+  /** Boxes an optional primitive value.
+   * 
+   * @param value The value, {@link #ABSENT} if absent.
+   * 
+   * @return The boxed value, {@code null} if absent.
+   * 
+   */
+  static Integer box (final int value)
+  {
+    return value == ABSENT ? null : value;
+  }
+  
+  /** Unboxes an optional value.
+   * 
+   * <p>
+   * A (non-{@code null}) value equal to {@link #ABSENT} is mapped onto {@link Integer#MIN_VALUE},
+   * so that it remains illegal instead of being silently interpreted as absent.
+   * 
+   * @param value The value, {@code null} if absent.
+   * 
+   * @return The unboxed value, {@link #ABSENT} if absent.
+   * 
+   */
+  static int unbox (final Integer value)
+  {
+    if (value == null)
+      return ABSENT;
+    final int intValue = value;
+    return intValue == ABSENT ? Integer.MIN_VALUE : intValue;
+  }
+  
+  /** A {@link BtpSap_DataReqPrimitive} delegating to a {@link BtpSap_DataReq} (boxing the optional parameters).
+   * 
+   */
+  public static final class BoxingAdapter
+  implements BtpSap_DataReqPrimitive
+  {
+    
+    private final BtpSap_DataReq target;
+    
+    public BoxingAdapter (final BtpSap_DataReq target)
+    {
+      if (target == null)
+        throw new IllegalArgumentException ();
+      this.target = target;
+    }
+    
+    @Override
+    public final void btpSapRequest
+    (final BtpType btpType,
+     final int btpSrcPort,
+     final int btpDstPort,
+     final int btpDstPortInfo,
+     final GnTransportType gnTransportType,
+     final GnDestination gnDstAddress,
+     final GnCommunicationsProfile gnCommProfile,
+     final GnSecurityProfile gnSecProfile,
+     final int gnMaxLifetime_ms,
+     final int gnRepInterval_ms,
+     final int gnMaxRepTime_ms,
+     final int gnMaxHopLimit,
+     final GnTrafficClass gnTrafficClass,
+     final int offset,
+     final int length,
+     final byte[] data)
+    throws IllegalArgumentException, IOException
+    {
+      this.target.btpSapRequest
+        (btpType,
+         box (btpSrcPort),
+         btpDstPort,
+         box (btpDstPortInfo),
+         gnTransportType,
+         gnDstAddress,
+         gnCommProfile,
+         gnSecProfile,
+         box (gnMaxLifetime_ms),
+         box (gnRepInterval_ms),
+         box (gnMaxRepTime_ms),
+         gnMaxHopLimit,
+         gnTrafficClass,
+         offset,
+         length,
+         data);
+    }
+    
+  }
+  
+  /** A {@link BtpSap_DataReq} delegating to a {@link BtpSap_DataReqPrimitive} (unboxing the optional parameters).
+   * 
+   */
+  public static final class UnboxingAdapter
+  implements BtpSap_DataReq
+  {
+    
+    private final BtpSap_DataReqPrimitive target;
+    
+    public UnboxingAdapter (final BtpSap_DataReqPrimitive target)
+    {
+      if (target == null)
+        throw new IllegalArgumentException ();
+      this.target = target;
+    }
+    
+    @Override
+    public final void btpSapRequest
+    (final BtpType btpType,
+     final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnTransportType gnTransportType,
+     final GnDestination gnDstAddress,
+     final GnCommunicationsProfile gnCommProfile,
+     final GnSecurityProfile gnSecProfile,
+     final Integer gnMaxLifetime_ms,
+     final Integer gnRepInterval_ms,
+     final Integer gnMaxRepTime_ms,
+     final int gnMaxHopLimit,
+     final GnTrafficClass gnTrafficClass,
+     final int offset,
+     final int length,
+     final byte[] data)
+    throws IllegalArgumentException, IOException
+    {
+      this.target.btpSapRequest
+        (btpType,
+         unbox (btpSrcPort),
+         btpDstPort,
+         unbox (btpDstPortInfo),
+         gnTransportType,
+         gnDstAddress,
+         gnCommProfile,
+         gnSecProfile,
+         unbox (gnMaxLifetime_ms),
+         unbox (gnRepInterval_ms),
+         unbox (gnMaxRepTime_ms),
+         gnMaxHopLimit,
+         gnTrafficClass,
+         offset,
+         length,
+         data);
+    }
+    
+  }
+  
+}
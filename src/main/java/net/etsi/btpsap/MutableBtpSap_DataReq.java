@@ -0,0 +1,903 @@
+/*
+ * Copyright 2016 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.GnAddress;
+import net.etsi.btpsap.BtpSapTypes.GnArea;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnDestination;
+import net.etsi.btpsap.BtpSapTypes.GnDestinationType;
+import net.etsi.btpsap.BtpSapTypes.GnPermissions;
+import net.etsi.btpsap.BtpSapTypes.GnSecurityProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+
+/** A mutable, resettable container for the arguments of a BTP-Data.request.
+ * 
+ * <p>
+ * The mutable sibling of {@link BtpSap_DataReqContainer}, intended to be re-used (e.g., through a {@link Pool})
+ * in order to send requests without allocation.
+ * Optional integer values are held as primitives, with {@link BtpSap_DataReqPrimitive#ABSENT} denoting absence.
+ * The setters do not validate; use {@link #validate} (which applies the same rules as {@link BtpSap_DataReqContainer})
+ * before handing the request to an encoder.
+ * 
+ * <p>
+ * Each object embeds its own mutable destination, traffic class and security profile,
+ * set through {@link #setGnUnicastDestination}, {@link #setGnAreaDestination}, {@link #setGnTrafficClass(byte)}
+ * and {@link #setGnSecurityProfile(long, GnPermissions)};
+ * these are re-used along with the request itself.
+ * Alternatively, (immutable) value objects can be referenced through the other setters.
+ * 
+ * <p>
+ * The payload array is referenced, not copied.
+ * Objects of this class are not thread-safe; they may be handed over between threads
+ * (e.g., through a send queue) provided the hand-over is properly synchronized.
+ * 
+ * @author Jan de Jongh, TNO
+ * 
+ * @see BtpSap_DataReqContainer
+ * 
+ */
+public class MutableBtpSap_DataReq
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTOR(S) / CLONING / FACTORY
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a new request, in its reset state.
+   * 
+   * @see #reset
+   * 
+   */
+  public MutableBtpSap_DataReq ()
+  {
+    reset ();
+  }
+
+  /** Resets this request.
+   * 
+   * <p>
+   * All optional values are set to absent ({@code null} or {@link BtpSap_DataReqPrimitive#ABSENT}),
+   * all other values to {@code null} or zero; the result is <i>not</i> a valid request.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq reset ()
+  {
+    this.btpType = null;
+    this.btpSrcPort = BtpSap_DataReqPrimitive.ABSENT;
+    this.btpDstPort = 0;
+    this.btpDstPortInfo = BtpSap_DataReqPrimitive.ABSENT;
+    this.gnTransportType = null;
+    this.gnDst = null;
+    this.gnCommProfile = null;
+    this.gnSecProfile = null;
+    this.gnMaxLifetime_ms = BtpSap_DataReqPrimitive.ABSENT;
+    this.gnRepInterval_ms = BtpSap_DataReqPrimitive.ABSENT;
+    this.gnMaxRepTime_ms = BtpSap_DataReqPrimitive.ABSENT;
+    this.gnMaxHopLimit = 0;
+    this.gnTrafficClass = null;
+    this.offset = 0;
+    this.length = 0;
+    this.data = null;
+    return this;
+  }
+
+  /** Copies all values from a (immutable) request container.
+   * 
+   * <p>
+   * The value objects of the container are referenced, not copied.
+   * 
+   * @param request The request container, non-{@code null}.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq set (final BtpSap_DataReqContainer request)
+  {
+    if (request == null)
+      throw new IllegalArgumentException ();
+    this.btpType = request.getBtpType ();
+    this.btpSrcPort = BtpSap_DataReqPrimitive.unbox (request.getBtpSrcPort ());
+    this.btpDstPort = request.getBtpDestinationPort ();
+    this.btpDstPortInfo = BtpSap_DataReqPrimitive.unbox (request.getBtpDstPortInfo ());
+    this.gnTransportType = request.getGnTransportType ();
+    this.gnDst = request.getGnDestination ();
+    this.gnCommProfile = request.getCommunicationsProfile ();
+    this.gnSecProfile = request.getSecurityProfile ();
+    this.gnMaxLifetime_ms = request.hasMaxLifetime () ? request.getMaxLifeTime_ms () : BtpSap_DataReqPrimitive.ABSENT;
+    this.gnRepInterval_ms = BtpSap_DataReqPrimitive.unbox (request.getGnRepInterval_ms ());
+    this.gnMaxRepTime_ms = BtpSap_DataReqPrimitive.unbox (request.getGnMaxRepTime_ms ());
+    this.gnMaxHopLimit = request.getGnMaxHopLimit ();
+    this.gnTrafficClass = request.getGnTrafficClass ();
+    this.offset = request.getOffset ();
+    this.length = request.getLength ();
+    this.data = request.getData ();
+    return this;
+  }
+
+  /** Creates an (immutable) request container holding the values of this request.
+   * 
+   * <p>
+   * The embedded (mutable) value objects are <i>not</i> copied, so this request should not be re-used
+   * while the container is in use.
+   * 
+   * @return A new request container.
+   * 
+   * @throws IllegalArgumentException If this request does not pass {@link #validate}.
+   * 
+   */
+  public final BtpSap_DataReqContainer toContainer ()
+  {
+    return new BtpSap_DataReqContainer
+      (this.btpType,
+       BtpSap_DataReqPrimitive.box (this.btpSrcPort),
+       this.btpDstPort,
+       BtpSap_DataReqPrimitive.box (this.btpDstPortInfo),
+       this.gnTransportType,
+       this.gnDst,
+       this.gnCommProfile,
+       this.gnSecProfile,
+       BtpSap_DataReqPrimitive.box (this.gnMaxLifetime_ms),
+       BtpSap_DataReqPrimitive.box (this.gnRepInterval_ms),
+       BtpSap_DataReqPrimitive.box (this.gnMaxRepTime_ms),
+       this.gnMaxHopLimit,
+       this.gnTrafficClass,
+       this.length,
+       this.offset,
+       this.data);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // VALIDATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates this request, without throwing or allocating.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see BtpSap_DataReqContainer#validate(BtpType, int, int, int, GnTransportType, GnDestination, GnCommunicationsProfile,
+   *        GnSecurityProfile, int, int, int, int, GnTrafficClass, int, int, byte[])
+   * 
+   */
+  public final int validate ()
+  {
+    return BtpSap_DataReqContainer.validate
+      (this.btpType,
+       this.btpSrcPort,
+       this.btpDstPort,
+       this.btpDstPortInfo,
+       this.gnTransportType,
+       this.gnDst,
+       this.gnCommProfile,
+       this.gnSecProfile,
+       this.gnMaxLifetime_ms,
+       this.gnRepInterval_ms,
+       this.gnMaxRepTime_ms,
+       this.gnMaxHopLimit,
+       this.gnTrafficClass,
+       this.length,
+       this.offset,
+       this.data);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // SEND
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Passes this request to a primitive BTP-Data.request implementation, without boxing.
+   * 
+   * @param sap The BTP SAP, non-{@code null}.
+   * 
+   * @throws IllegalArgumentException If the SAP is {@code null}, or if this request does not pass {@link #validate}.
+   * @throws IOException              If the SAP throws it.
+   * 
+   */
+  public final void sendTo (final BtpSap_DataReqPrimitive sap)
+  throws IllegalArgumentException, IOException
+  {
+    if (sap == null || validate () != BtpSapValidationError.OK.ordinal ())
+      throw new IllegalArgumentException ();
+    sap.btpSapRequest
+      (this.btpType,
+       this.btpSrcPort,
+       this.btpDstPort,
+       this.btpDstPortInfo,
+       this.gnTransportType,
+       this.gnDst,
+       this.gnCommProfile,
+       this.gnSecProfile,
+       this.gnMaxLifetime_ms,
+       this.gnRepInterval_ms,
+       this.gnMaxRepTime_ms,
+       this.gnMaxHopLimit,
+       this.gnTrafficClass,
+       this.offset,
+       this.length,
+       this.data);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BTP TYPE / PORTS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private BtpType btpType;
+
+  public final BtpType getBtpType ()
+  {
+    return this.btpType;
+  }
+
+  public final MutableBtpSap_DataReq setBtpType (final BtpType btpType)
+  {
+    this.btpType = btpType;
+    return this;
+  }
+
+  private int btpSrcPort;
+
+  public final int getBtpSrcPort ()
+  {
+    return this.btpSrcPort;
+  }
+
+  public final MutableBtpSap_DataReq setBtpSrcPort (final int btpSrcPort)
+  {
+    this.btpSrcPort = btpSrcPort;
+    return this;
+  }
+
+  private int btpDstPort;
+
+  public final int getBtpDestinationPort ()
+  {
+    return this.btpDstPort;
+  }
+
+  public final MutableBtpSap_DataReq setBtpDestinationPort (final int btpDstPort)
+  {
+    this.btpDstPort = btpDstPort;
+    return this;
+  }
+
+  private int btpDstPortInfo;
+
+  public final int getBtpDstPortInfo ()
+  {
+    return this.btpDstPortInfo;
+  }
+
+  public final MutableBtpSap_DataReq setBtpDstPortInfo (final int btpDstPortInfo)
+  {
+    this.btpDstPortInfo = btpDstPortInfo;
+    return this;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN TRANSPORT TYPE / DESTINATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private GnTransportType gnTransportType;
+
+  public final GnTransportType getGnTransportType ()
+  {
+    return this.gnTransportType;
+  }
+
+  public final MutableBtpSap_DataReq setGnTransportType (final GnTransportType gnTransportType)
+  {
+    this.gnTransportType = gnTransportType;
+    return this;
+  }
+
+  private GnDestination gnDst;
+
+  public final GnDestination getGnDestination ()
+  {
+    return this.gnDst;
+  }
+
+  /** Sets (a reference to) the destination.
+   * 
+   * @param gnDst The destination, may be {@code null}.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnDestination (final GnDestination gnDst)
+  {
+    this.gnDst = gnDst;
+    return this;
+  }
+
+  /** Sets the destination to the embedded (mutable) destination, holding a unicast address.
+   * 
+   * @param gnAddress The unicast address.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnUnicastDestination (final long gnAddress)
+  {
+    this.destination.type = GnDestinationType.GN_DEST_UC;
+    this.destination.address = gnAddress;
+    this.gnDst = this.destination;
+    return this;
+  }
+
+  /** Sets the destination to the embedded (mutable) destination, holding an area.
+   * 
+   * @param gnAreaShape   The area shape, non-{@code null}.
+   * @param latitude      The latitude of the area center.
+   * @param longitude     The longitude of the area center.
+   * @param distanceA_m   Distance A in meters.
+   * @param distanceB_m   Distance B in meters.
+   * @param angle_degrees The angle in degrees.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnAreaDestination
+  (final GnAreaShape gnAreaShape,
+   final double latitude,
+   final double longitude,
+   final int distanceA_m,
+   final int distanceB_m,
+   final int angle_degrees)
+  {
+    if (gnAreaShape == null)
+      throw new IllegalArgumentException ();
+    this.destination.type = GnDestinationType.GN_DEST_GBC_AC;
+    this.destination.shape = gnAreaShape;
+    this.destination.latitude = latitude;
+    this.destination.longitude = longitude;
+    this.destination.distanceA_m = distanceA_m;
+    this.destination.distanceB_m = distanceB_m;
+    this.destination.angle_degrees = angle_degrees;
+    this.gnDst = this.destination;
+    return this;
+  }
+
+  /** The embedded destination, which serves as its own unicast address and area.
+   * 
+   */
+  private static final class MutableGnDestination
+  implements GnDestination, GnAddress, GnArea
+  {
+
+    private GnDestinationType type;
+
+    private long address;
+
+    private GnAreaShape shape;
+
+    private double latitude;
+
+    private double longitude;
+
+    private int distanceA_m;
+
+    private int distanceB_m;
+
+    private int angle_degrees;
+
+    @Override
+    public final GnDestinationType getGnDestinationType ()
+    {
+      return this.type;
+    }
+
+    @Override
+    public final GnAddress getGnUnicastAddress () throws IllegalStateException
+    {
+      if (this.type != GnDestinationType.GN_DEST_UC)
+        throw new IllegalStateException ();
+      return this;
+    }
+
+    @Override
+    public final GnArea getGnArea () throws IllegalStateException
+    {
+      if (this.type != GnDestinationType.GN_DEST_GBC_AC)
+        throw new IllegalStateException ();
+      return this;
+    }
+
+    @Override
+    public final long toLong ()
+    {
+      return this.address;
+    }
+
+    @Override
+    public final GnAreaShape getAreaShape ()
+    {
+      return this.shape;
+    }
+
+    @Override
+    public final double getLatitude ()
+    {
+      return this.latitude;
+    }
+
+    @Override
+    public final double getLongitude ()
+    {
+      return this.longitude;
+    }
+
+    @Override
+    public final int getDistanceA_m ()
+    {
+      return this.distanceA_m;
+    }
+
+    @Override
+    public final int getDistanceB_m ()
+    {
+      return this.distanceB_m;
+    }
+
+    @Override
+    public final int getAngle_degrees ()
+    {
+      return this.angle_degrees;
+    }
+
+  }
+
+  private final MutableGnDestination destination = new MutableGnDestination ();
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN COMMUNICATIONS PROFILE / SECURITY PROFILE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private GnCommunicationsProfile gnCommProfile;
+
+  public final GnCommunicationsProfile getCommunicationsProfile ()
+  {
+    return this.gnCommProfile;
+  }
+
+  public final MutableBtpSap_DataReq setCommunicationsProfile (final GnCommunicationsProfile gnCommProfile)
+  {
+    this.gnCommProfile = gnCommProfile;
+    return this;
+  }
+
+  private GnSecurityProfile gnSecProfile;
+
+  public final GnSecurityProfile getSecurityProfile ()
+  {
+    return this.gnSecProfile;
+  }
+
+  /** Sets (a reference to) the security profile.
+   * 
+   * @param gnSecProfile The security profile, may be {@code null}.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setSecurityProfile (final GnSecurityProfile gnSecProfile)
+  {
+    this.gnSecProfile = gnSecProfile;
+    return this;
+  }
+
+  /** Sets the security profile to the embedded (mutable) security profile.
+   * 
+   * @param itsAid        The ITS-AID.
+   * @param gnPermissions (A reference to) the permissions, may be {@code null}.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnSecurityProfile (final long itsAid, final GnPermissions gnPermissions)
+  {
+    this.securityProfile.itsAid = itsAid;
+    this.securityProfile.gnPermissions = gnPermissions;
+    this.gnSecProfile = this.securityProfile;
+    return this;
+  }
+
+  private static final class MutableGnSecurityProfile
+  implements GnSecurityProfile
+  {
+
+    private long itsAid;
+
+    private GnPermissions gnPermissions;
+
+    @Override
+    public final long getItsAid ()
+    {
+      return this.itsAid;
+    }
+
+    @Override
+    public final GnPermissions getPermissions ()
+    {
+      return this.gnPermissions;
+    }
+
+  }
+
+  private final MutableGnSecurityProfile securityProfile = new MutableGnSecurityProfile ();
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN LIFETIME / REPETITION [OPTIONAL]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private int gnMaxLifetime_ms;
+
+  public final int getGnMaxLifetime_ms ()
+  {
+    return this.gnMaxLifetime_ms;
+  }
+
+  public final MutableBtpSap_DataReq setGnMaxLifetime_ms (final int gnMaxLifetime_ms)
+  {
+    this.gnMaxLifetime_ms = gnMaxLifetime_ms;
+    return this;
+  }
+
+  private int gnRepInterval_ms;
+
+  public final int getGnRepInterval_ms ()
+  {
+    return this.gnRepInterval_ms;
+  }
+
+  public final MutableBtpSap_DataReq setGnRepInterval_ms (final int gnRepInterval_ms)
+  {
+    this.gnRepInterval_ms = gnRepInterval_ms;
+    return this;
+  }
+
+  private int gnMaxRepTime_ms;
+
+  public final int getGnMaxRepTime_ms ()
+  {
+    return this.gnMaxRepTime_ms;
+  }
+
+  public final MutableBtpSap_DataReq setGnMaxRepTime_ms (final int gnMaxRepTime_ms)
+  {
+    this.gnMaxRepTime_ms = gnMaxRepTime_ms;
+    return this;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN MAXIMUM HOP LIMIT / TRAFFIC CLASS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private int gnMaxHopLimit;
+
+  public final int getGnMaxHopLimit ()
+  {
+    return this.gnMaxHopLimit;
+  }
+
+  public final MutableBtpSap_DataReq setGnMaxHopLimit (final int gnMaxHopLimit)
+  {
+    this.gnMaxHopLimit = gnMaxHopLimit;
+    return this;
+  }
+
+  private GnTrafficClass gnTrafficClass;
+
+  public final GnTrafficClass getGnTrafficClass ()
+  {
+    return this.gnTrafficClass;
+  }
+
+  /** Sets (a reference to) the traffic class.
+   * 
+   * @param gnTrafficClass The traffic class.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnTrafficClass (final GnTrafficClass gnTrafficClass)
+  {
+    this.gnTrafficClass = gnTrafficClass;
+    return this;
+  }
+
+  /** Sets the traffic class to the embedded (mutable) traffic class.
+   * 
+   * @param trafficClassByte The traffic-class byte.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setGnTrafficClass (final byte trafficClassByte)
+  {
+    this.trafficClass.trafficClassByte = trafficClassByte;
+    this.gnTrafficClass = this.trafficClass;
+    return this;
+  }
+
+  private static final class MutableGnTrafficClass
+  implements GnTrafficClass
+  {
+
+    private byte trafficClassByte;
+
+    @Override
+    public final byte toByte ()
+    {
+      return this.trafficClassByte;
+    }
+
+  }
+
+  private final MutableGnTrafficClass trafficClass = new MutableGnTrafficClass ();
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DATA / PAYLOAD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private int offset;
+
+  public final int getOffset ()
+  {
+    return this.offset;
+  }
+
+  private int length;
+
+  public final int getLength ()
+  {
+    return this.length;
+  }
+
+  private byte[] data;
+
+  public final byte[] getData ()
+  {
+    return this.data;
+  }
+
+  /** Sets (a reference to) the payload.
+   * 
+   * @param data   The payload data (not copied), may be {@code null} if {@code length == 0}.
+   * @param offset The offset of the payload in {@code data}.
+   * @param length The length of the payload.
+   * 
+   * @return This object.
+   * 
+   */
+  public final MutableBtpSap_DataReq setPayload (final byte[] data, final int offset, final int length)
+  {
+    this.data = data;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // POOL
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The per-thread cache this object was acquired from, {@code null} if not acquired from a pool.
+   * 
+   */
+  private Pool.Cache owner = null;
+
+  /** The next free object in the (local or remote) free list of the owner.
+   * 
+   */
+  private MutableBtpSap_DataReq nextFree = null;
+
+  /** Whether this object is currently free (in a pool): 1 if so, 0 if not; updated through {@link #FREE}.
+   * 
+   */
+  private volatile int free = 0;
+
+  private static final AtomicIntegerFieldUpdater<MutableBtpSap_DataReq> FREE =
+    AtomicIntegerFieldUpdater.newUpdater (MutableBtpSap_DataReq.class, "free");
+
+  /** A lock-free, thread-affine pool of {@link MutableBtpSap_DataReq} objects.
+   * 
+   * <p>
+   * Each thread acquires from its own (unsynchronized) cache.
+   * Objects are released into the cache of the thread that acquired them:
+   * releases from that same thread are unsynchronized, releases from other threads (e.g., a sender thread
+   * releasing requests once encoded) are pushed lock-free onto a per-cache stack,
+   * which the owning thread takes over in a single atomic operation once its local cache runs empty.
+   * 
+   * <p>
+   * Each thread caches at most a fixed number of free objects released by itself,
+   * and at most the same number of free objects released by other threads (on its remote stack);
+   * excess objects are left to the garbage collector.
+   * The size of the remote stack is tracked in a counter of the cache, reserved before and not after a push,
+   * so it cannot drift from the stack it bounds (as a depth stored in the pushed objects could).
+   * In particular, the pool does not grow without bound if objects are consistently handed off to, and released by,
+   * other threads.
+   * Requests are reset upon acquisition.
+   * 
+   */
+  public static final class Pool
+  {
+
+    /** Creates a pool.
+     * 
+     * @param maxCachedPerThread The maximum number of free objects cached locally per thread, non-negative.
+     * 
+     */
+    public Pool (final int maxCachedPerThread)
+    {
+      if (maxCachedPerThread < 0)
+        throw new IllegalArgumentException ();
+      this.maxCachedPerThread = maxCachedPerThread;
+    }
+
+    private final int maxCachedPerThread;
+
+    private final ThreadLocal<Cache> caches = new ThreadLocal<Cache> ()
+    {
+      @Override
+      protected Cache initialValue ()
+      {
+        return new Cache ();
+      }
+    };
+
+    private final class Cache
+    {
+
+      private final Thread thread = Thread.currentThread ();
+
+      private MutableBtpSap_DataReq local = null;
+
+      private int localSize = 0;
+
+      private final AtomicReference<MutableBtpSap_DataReq> remote = new AtomicReference<> ();
+
+      /** The number of objects on, or reserved for, the remote stack; never less than its actual size.
+       * 
+       */
+      private final AtomicInteger remoteSize = new AtomicInteger ();
+
+      private Pool pool ()
+      {
+        return Pool.this;
+      }
+
+      private MutableBtpSap_DataReq acquire ()
+      {
+        if (this.local == null)
+        {
+          this.local = this.remote.getAndSet (null);
+          int size = 0;
+          for (MutableBtpSap_DataReq r = this.local; r != null; r = r.nextFree)
+            size++;
+          this.localSize = size;
+          this.remoteSize.addAndGet (-size);
+        }
+        final MutableBtpSap_DataReq request;
+        if (this.local == null)
+        {
+          request = new MutableBtpSap_DataReq ();
+          request.owner = this;
+        }
+        else
+        {
+          request = this.local;
+          this.local = request.nextFree;
+          this.localSize--;
+          request.nextFree = null;
+          request.free = 0;
+          request.reset ();
+        }
+        return request;
+      }
+
+      private void release (final MutableBtpSap_DataReq request)
+      {
+        if (Thread.currentThread () == this.thread)
+        {
+          if (this.localSize < Pool.this.maxCachedPerThread)
+          {
+            request.nextFree = this.local;
+            this.local = request;
+            this.localSize++;
+          }
+        }
+        else
+        {
+          if (this.remoteSize.incrementAndGet () > Pool.this.maxCachedPerThread)
+          {
+            this.remoteSize.decrementAndGet ();
+            return;
+          }
+          MutableBtpSap_DataReq head;
+          do
+          {
+            head = this.remote.get ();
+            request.nextFree = head;
+          }
+          while (! this.remote.compareAndSet (head, request));
+        }
+      }
+
+    }
+
+    /** Acquires a (reset) request from the cache of the current thread, or creates a new one.
+     * 
+     * @return The request, in its reset state.
+     * 
+     */
+    public final MutableBtpSap_DataReq acquire ()
+    {
+      return this.caches.get ().acquire ();
+    }
+
+    /** Releases a request acquired from this pool (from any thread).
+     * 
+     * <p>
+     * The caller must not use the request (or its embedded value objects) after releasing it.
+     * 
+     * @param request The request.
+     * 
+     * @throws IllegalArgumentException If the request is {@code null} or was not acquired from this pool.
+     * @throws IllegalStateException    If the request has already been released.
+     * 
+     */
+    public final void release (final MutableBtpSap_DataReq request)
+    {
+      if (request == null || request.owner == null || request.owner.pool () != this)
+        throw new IllegalArgumentException ();
+      if (! FREE.compareAndSet (request, 0, 1))
+        throw new IllegalStateException ();
+      request.owner.release (request);
+    }
+
+  }
+
+}
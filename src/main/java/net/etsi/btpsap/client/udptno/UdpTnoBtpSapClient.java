@@ -0,0 +1,871 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.etsi.btpsap.BtpSap;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataInd;
+
+/** A {@link BtpSap} talking UDP-TNO to a (remote) BtpSap router over a non-blocking {@link DatagramChannel}.
+ * 
+ * <p>
+ * Requests are sent to the router as UDP-TNO BtpSap Request PDUs by scatter/gather (see {@link UdpTnoGatheringSender}),
+ * from any thread; concurrent requests are serialized.
+ * 
+ * <p>
+ * Indication PDUs received from the router are handled by a single receiver thread (see {@link #start}),
+ * which waits on a {@link Selector} and, upon each wakeup, drains up to a configured number of datagrams
+ * into a single, re-used direct receive buffer, taken from the {@link UdpTnoBufferPool#getDefault default buffer pool}
+ * for the lifetime of the client.
+ * Each valid PDU is decoded in place (see {@link UdpTnoDataInd#parseIndication(ByteBuffer, int, int, BtpSap_DataInd)})
+ * and delivered, on the receiver thread, to this object's {@code btpSapIndication} methods,
+ * which forward it to the registered indication handler (see {@link #setIndicationHandler}).
+ * The payload handed to the handler is valid only for the duration of the call.
+ * Handlers should override the {@link ByteBuffer} variant of {@code btpSapIndication} to avoid any payload copy,
+ * and should return quickly, since they hold up the reception of further datagrams.
+ * Exceptions thrown by the handler are counted (see {@link #getHandlerFailureCount}) and logged;
+ * any other exception upon decoding a datagram is counted as an invalid datagram
+ * (and as {@link BtpSapValidationError#ILLEGAL_PRIMITIVE}).
+ * 
+ * <p>
+ * The client is configured at construction from {@link Properties} (all optional), see {@link #PROPERTY_PREFIX}:
+ * <ul>
+ * <li>{@code version}: the version of the request PDUs, {@link UdpTnoDataReq#VERSION_1} (default) or {@link UdpTnoDataReq#VERSION_2};
+ * <li>{@code receiveBufferSize}: the socket receive-buffer size ({@code SO_RCVBUF}) in bytes, zero for the system default (default);
+ * <li>{@code sendBufferSize}: the socket send-buffer size ({@code SO_SNDBUF}) in bytes, zero for the system default (default);
+ * <li>{@code maxDatagramSize}: the size of the receive buffer in bytes,
+ *       at most {@link UdpTnoBufferPool#MAX_BUFFER_SIZE}; larger datagrams are truncated (default 4096);
+ * <li>{@code maxDatagramsPerWakeup}: the maximum number of datagrams drained per selector wakeup (default 64).
+ * </ul>
+ * 
+ * <p>
+ * Since the channel is non-blocking, a request is not sent (and an {@link IOException} is thrown)
+ * if the socket send buffer is full.
+ * 
+ * <p>
+ * This class is thread-safe.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * @see UdpTnoDataInd
+ * 
+ */
+public final class UdpTnoBtpSapClient
+implements BtpSap, Closeable
+{
+
+  private static final Logger LOG = Logger.getLogger (UdpTnoBtpSapClient.class.getName ());
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONFIGURATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The prefix of the configuration properties.
+   * 
+   */
+  public final static String PROPERTY_PREFIX = "net.etsi.btpsap.client.udptno.client.";
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a client, and connects it to a router.
+   * 
+   * <p>
+   * The receiver thread is not started; see {@link #start}.
+   * 
+   * @param routerAddress The address of the router, non-{@code null}.
+   * @param localAddress  The local address to bind to, {@code null} for an automatically assigned address.
+   * @param clientID      The client ID (between 0 and 127 inclusive).
+   * @param unitMask      The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * @param properties    The configuration properties, see the class documentation; {@code null} for all defaults.
+   * 
+   * @throws IllegalArgumentException If the router address is {@code null}, the client ID is out of range,
+   *                                    or a property has an illegal value.
+   * @throws IOException              If the channel or selector could not be opened, bound, connected or configured,
+   *                                    or if the buffer pool has no receive buffer available.
+   * 
+   */
+  public UdpTnoBtpSapClient
+  (final SocketAddress routerAddress,
+   final SocketAddress localAddress,
+   final int clientID,
+   final int unitMask,
+   final Properties properties)
+  throws IOException
+  {
+    if (routerAddress == null || clientID < 0 || clientID > 127)
+      throw new IllegalArgumentException ();
+    final Properties p = properties != null ? properties : new Properties ();
+    final int version = UdpTnoBufferPool.intProperty (p, PROPERTY_PREFIX, "version", UdpTnoDataReq.VERSION_1, 1);
+    final int receiveBufferSize = UdpTnoBufferPool.intProperty (p, PROPERTY_PREFIX, "receiveBufferSize", 0, 0);
+    final int sendBufferSize = UdpTnoBufferPool.intProperty (p, PROPERTY_PREFIX, "sendBufferSize", 0, 0);
+    final int maxDatagramSize = UdpTnoBufferPool.intProperty (p, PROPERTY_PREFIX, "maxDatagramSize", 4096, 1);
+    this.maxDatagramsPerWakeup = UdpTnoBufferPool.intProperty (p, PROPERTY_PREFIX, "maxDatagramsPerWakeup", 64, 1);
+    if (version != UdpTnoDataReq.VERSION_1 && version != UdpTnoDataReq.VERSION_2)
+      throw new IllegalArgumentException ();
+    if (maxDatagramSize > UdpTnoBufferPool.MAX_BUFFER_SIZE)
+      throw new IllegalArgumentException ();
+    this.receiveHandle = UdpTnoBufferPool.getDefault ().acquire (maxDatagramSize);
+    if (this.receiveHandle == null)
+      throw new IOException ("Buffer pool exhausted!");
+    // The pooled buffer may be larger than requested; expose exactly maxDatagramSize bytes.
+    final ByteBuffer pooledBuffer = this.receiveHandle.getBuffer ();
+    pooledBuffer.limit (maxDatagramSize);
+    this.receiveBuffer = pooledBuffer.slice ();
+    try
+    {
+      this.channel = DatagramChannel.open ();
+    }
+    catch (IOException | RuntimeException e)
+    {
+      this.receiveHandle.release ();
+      throw e;
+    }
+    Selector selector = null;
+    try
+    {
+      if (receiveBufferSize > 0)
+        this.channel.setOption (StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+      if (sendBufferSize > 0)
+        this.channel.setOption (StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      this.channel.bind (localAddress);
+      this.channel.connect (routerAddress);
+      this.channel.configureBlocking (false);
+      selector = Selector.open ();
+      this.channel.register (selector, SelectionKey.OP_READ);
+    }
+    catch (IOException | RuntimeException e)
+    {
+      this.receiveHandle.release ();
+      if (selector != null)
+        selector.close ();
+      this.channel.close ();
+      throw e;
+    }
+    this.selector = selector;
+    this.sender = new UdpTnoGatheringSender (clientID, unitMask, version, this.channel);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CHANNEL / SELECTOR / ADDRESSES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final DatagramChannel channel;
+
+  private final Selector selector;
+
+  public final SocketAddress getLocalAddress () throws IOException
+  {
+    return this.channel.getLocalAddress ();
+  }
+
+  public final SocketAddress getRouterAddress () throws IOException
+  {
+    return this.channel.getRemoteAddress ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // STATISTICS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final LongAdder sentCount = new LongAdder ();
+
+  private final LongAdder sendFailureCount = new LongAdder ();
+
+  private final LongAdder wakeupCount = new LongAdder ();
+
+  private final LongAdder receivedCount = new LongAdder ();
+
+  private final LongAdder invalidCount = new LongAdder ();
+
+  private final LongAdder undeliveredCount = new LongAdder ();
+
+  private final LongAdder handlerFailureCount = new LongAdder ();
+
+  /** Returns the number of request PDUs sent.
+   * 
+   * @return The number of request PDUs sent.
+   * 
+   */
+  public final long getSentCount ()
+  {
+    return this.sentCount.sum ();
+  }
+
+  /** Returns the number of (valid) requests that could not be sent, e.g., because the socket send buffer was full.
+   * 
+   * @return The number of requests that could not be sent.
+   * 
+   */
+  public final long getSendFailureCount ()
+  {
+    return this.sendFailureCount.sum ();
+  }
+
+  /** Returns the number of selector wakeups with datagrams pending.
+   * 
+   * <p>
+   * The ratio of received datagrams and wakeups is the average number of datagrams drained per wakeup.
+   * 
+   * @return The number of selector wakeups with datagrams pending.
+   * 
+   */
+  public final long getWakeupCount ()
+  {
+    return this.wakeupCount.sum ();
+  }
+
+  /** Returns the number of datagrams received.
+   * 
+   * @return The number of datagrams received.
+   * 
+   */
+  public final long getReceivedCount ()
+  {
+    return this.receivedCount.sum ();
+  }
+
+  /** Returns the number of received datagrams that were not valid indication PDUs.
+   * 
+   * @return The number of received datagrams that were not valid indication PDUs.
+   * 
+   * @see UdpTnoDataInd#validateIndication(ByteBuffer, int, int)
+   * 
+   */
+  public final long getInvalidCount ()
+  {
+    return this.invalidCount.sum ();
+  }
+
+  /** Returns the number of indications dropped because no indication handler was registered.
+   * 
+   * @return The number of indications dropped because no indication handler was registered.
+   * 
+   */
+  public final long getUndeliveredCount ()
+  {
+    return this.undeliveredCount.sum ();
+  }
+
+  /** Returns the number of indications upon which the indication handler threw a {@link RuntimeException}.
+   * 
+   * <p>
+   * Failures to decode a received datagram are not included; they are counted as invalid datagrams, see {@link #getInvalidCount}.
+   * 
+   * @return The number of indications upon which the indication handler threw a {@link RuntimeException}.
+   * 
+   */
+  public final long getHandlerFailureCount ()
+  {
+    return this.handlerFailureCount.sum ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReq
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final UdpTnoGatheringSender sender;
+
+  public final int getClientID ()
+  {
+    return this.sender.getClientID ();
+  }
+
+  public final int getUnitMask ()
+  {
+    return this.sender.getUnitMask ();
+  }
+
+  public final int getVersion ()
+  {
+    return this.sender.getVersion ();
+  }
+
+  /** Validates a request and sends it to the router.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the PDU could not be sent (e.g., because the socket send buffer is full).
+   * 
+   * @see UdpTnoGatheringSender
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException, IOException
+  {
+    synchronized (this.sender)
+    {
+      try
+      {
+        this.sender.btpSapRequest
+          (btpType,
+           btpSrcPort,
+           btpDstPort,
+           btpDstPortInfo,
+           gnTransportType,
+           gnDstAddress,
+           gnCommProfile,
+           gnSecProfile,
+           gnMaxLifetime_ms,
+           gnRepInterval_ms,
+           gnMaxRepTime_ms,
+           gnMaxHopLimit,
+           gnTrafficClass,
+           offset,
+           length,
+           data);
+      }
+      catch (IOException e)
+      {
+        this.sendFailureCount.increment ();
+        throw e;
+      }
+    }
+    this.sentCount.increment ();
+  }
+
+  /** Validates a request with the payload held in a (heap or direct) buffer and sends it to the router.
+   * 
+   * <p>
+   * The payload is not copied; the position and limit of {@code payload} are not changed.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the PDU could not be sent (e.g., because the socket send buffer is full).
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final ByteBuffer payload)
+  throws IllegalArgumentException, IOException
+  {
+    synchronized (this.sender)
+    {
+      try
+      {
+        this.sender.btpSapRequest
+          (btpType,
+           btpSrcPort,
+           btpDstPort,
+           btpDstPortInfo,
+           gnTransportType,
+           gnDstAddress,
+           gnCommProfile,
+           gnSecProfile,
+           gnMaxLifetime_ms,
+           gnRepInterval_ms,
+           gnMaxRepTime_ms,
+           gnMaxHopLimit,
+           gnTrafficClass,
+           payload);
+      }
+      catch (IOException e)
+      {
+        this.sendFailureCount.increment ();
+        throw e;
+      }
+    }
+    this.sentCount.increment ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // INDICATION HANDLER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private volatile BtpSap_DataInd indicationHandler = null;
+
+  public final BtpSap_DataInd getIndicationHandler ()
+  {
+    return this.indicationHandler;
+  }
+
+  /** Sets the handler of received indications.
+   * 
+   * @param indicationHandler The handler, {@code null} to drop received indications.
+   * 
+   */
+  public final void setIndicationHandler (final BtpSap_DataInd indicationHandler)
+  {
+    this.indicationHandler = indicationHandler;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataInd
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Forwards an indication to the indication handler, if any.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    final BtpSap_DataInd indicationHandler = this.indicationHandler;
+    if (indicationHandler == null)
+    {
+      this.undeliveredCount.increment ();
+      return;
+    }
+    indicationHandler.btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       length,
+       data);
+  }
+
+  /** Forwards an indication (with the payload at an arbitrary offset) to the indication handler, if any.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException
+  {
+    final BtpSap_DataInd indicationHandler = this.indicationHandler;
+    if (indicationHandler == null)
+    {
+      this.undeliveredCount.increment ();
+      return;
+    }
+    indicationHandler.btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       offset,
+       length,
+       data);
+  }
+
+  /** Forwards an indication (with the payload held in a buffer) to the indication handler, if any.
+   * 
+   */
+  @Override
+  public final void btpSapIndication
+  (final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnDestination gnDstAddress,
+   final GnPositionVector gnSrcPV,
+   final GnSecurityReport gnSecReport,
+   final GnCertificateId gnCertId,
+   final GnPermissions gnPermissions,
+   final GnTrafficClass gnTrafficClass,
+   final Integer gnRemLifetime_s,
+   final ByteBuffer payload)
+  throws IllegalArgumentException
+  {
+    final BtpSap_DataInd indicationHandler = this.indicationHandler;
+    if (indicationHandler == null)
+    {
+      this.undeliveredCount.increment ();
+      return;
+    }
+    indicationHandler.btpSapIndication
+      (btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnDstAddress,
+       gnSrcPV,
+       gnSecReport,
+       gnCertId,
+       gnPermissions,
+       gnTrafficClass,
+       gnRemLifetime_s,
+       payload);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // RECEIVER THREAD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int maxDatagramsPerWakeup;
+
+  /** The handle of the (pooled) receive buffer; released by the receiver thread upon exit,
+   *  or upon closing if the receiver thread was never started.
+   * 
+   */
+  private final UdpTnoBufferPool.Handle receiveHandle;
+
+  /** The receive buffer (a view of exactly {@code maxDatagramSize} bytes of the pooled buffer); only accessed by the receiver thread.
+   * 
+   */
+  private final ByteBuffer receiveBuffer;
+
+  /** The target of decoded datagrams, separating indication-handler failures from decoding failures.
+   * 
+   */
+  private final BtpSap_DataInd receiver = new Receiver ();
+
+  private Thread receiverThread = null;
+
+  private volatile boolean closed = false;
+
+  /** Starts the (daemon) receiver thread.
+   * 
+   * @throws IllegalStateException If the receiver thread has already been started, or the client is closed.
+   * 
+   */
+  public final synchronized void start ()
+  {
+    if (this.receiverThread != null || this.closed)
+      throw new IllegalStateException ();
+    this.receiverThread = new Thread (this::receive, "UdpTnoBtpSapClient-" + this.sender.getClientID ());
+    this.receiverThread.setDaemon (true);
+    this.receiverThread.start ();
+  }
+
+  /** The main loop of the receiver thread.
+   * 
+   */
+  private void receive ()
+  {
+    try
+    {
+      while (! this.closed)
+      {
+        if (this.selector.select () == 0)
+          continue;
+        this.selector.selectedKeys ().clear ();
+        this.wakeupCount.increment ();
+        // Drain (up to) maxDatagramsPerWakeup datagrams; the selector fires again if more are pending.
+        for (int d = 0; d < this.maxDatagramsPerWakeup; d++)
+        {
+          this.receiveBuffer.clear ();
+          final int length;
+          try
+          {
+            length = this.channel.read (this.receiveBuffer);
+          }
+          catch (PortUnreachableException pue)
+          {
+            LOG.log (Level.FINE, "Router unreachable: {0}.", pue.getMessage ());
+            break;
+          }
+          if (length <= 0)
+            break;
+          this.receivedCount.increment ();
+          try
+          {
+            if (! UdpTnoDataInd.parseIndication (this.receiveBuffer, 0, length, this.receiver))
+              this.invalidCount.increment ();
+          }
+          catch (RuntimeException re)
+          {
+            // Indication-handler failures are caught by the receiver; this is a decoding failure.
+            BtpSapValidationError.ILLEGAL_PRIMITIVE.reject ();
+            this.invalidCount.increment ();
+            LOG.log (Level.FINE, "Dropping undecodable BTP/UDP[TNO] indication: ", re);
+          }
+        }
+      }
+    }
+    catch (ClosedChannelException | ClosedSelectorException e)
+    {
+      // Closed; fall through.
+    }
+    catch (IOException ioe)
+    {
+      if (! this.closed)
+        LOG.log (Level.SEVERE, "Receiver thread terminated: ", ioe);
+    }
+    finally
+    {
+      this.receiveHandle.release ();
+      UdpTnoBufferPool.getDefault ().flush ();
+    }
+  }
+
+  /** Forwards decoded indications to the client, counting and logging failures of the indication handler.
+   * 
+   */
+  private final class Receiver
+  implements BtpSap_DataInd
+  {
+
+    private void handlerFailed (final RuntimeException re)
+    {
+      UdpTnoBtpSapClient.this.handlerFailureCount.increment ();
+      LOG.log (Level.WARNING, "Indication handler failed: ", re);
+    }
+
+    @Override
+    public final void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int length,
+     final byte[] data)
+    {
+      try
+      {
+        UdpTnoBtpSapClient.this.btpSapIndication
+          (btpSrcPort,
+           btpDstPort,
+           btpDstPortInfo,
+           gnDstAddress,
+           gnSrcPV,
+           gnSecReport,
+           gnCertId,
+           gnPermissions,
+           gnTrafficClass,
+           gnRemLifetime_s,
+           length,
+           data);
+      }
+      catch (RuntimeException re)
+      {
+        handlerFailed (re);
+      }
+    }
+
+    @Override
+    public final void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int offset,
+     final int length,
+     final byte[] data)
+    {
+      try
+      {
+        UdpTnoBtpSapClient.this.btpSapIndication
+          (btpSrcPort,
+           btpDstPort,
+           btpDstPortInfo,
+           gnDstAddress,
+           gnSrcPV,
+           gnSecReport,
+           gnCertId,
+           gnPermissions,
+           gnTrafficClass,
+           gnRemLifetime_s,
+           offset,
+           length,
+           data);
+      }
+      catch (RuntimeException re)
+      {
+        handlerFailed (re);
+      }
+    }
+
+    @Override
+    public final void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final ByteBuffer payload)
+    {
+      try
+      {
+        UdpTnoBtpSapClient.this.btpSapIndication
+          (btpSrcPort,
+           btpDstPort,
+           btpDstPortInfo,
+           gnDstAddress,
+           gnSrcPV,
+           gnSecReport,
+           gnCertId,
+           gnPermissions,
+           gnTrafficClass,
+           gnRemLifetime_s,
+           payload);
+      }
+      catch (RuntimeException re)
+      {
+        handlerFailed (re);
+      }
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLOSE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final boolean isClosed ()
+  {
+    return this.closed;
+  }
+
+  /** Closes the client; stops the receiver thread (if started) and closes the channel and selector.
+   * 
+   * <p>
+   * Closing a closed client has no effect.
+   * 
+   * @throws IOException If closing the channel or selector failed.
+   * 
+   */
+  @Override
+  public final void close () throws IOException
+  {
+    final Thread receiverThread;
+    synchronized (this)
+    {
+      if (this.closed)
+        return;
+      this.closed = true;
+      receiverThread = this.receiverThread;
+    }
+    // Without a receiver thread, the receive buffer is ours to release.
+    if (receiverThread == null)
+      this.receiveHandle.release ();
+    this.selector.wakeup ();
+    if (receiverThread != null && receiverThread != Thread.currentThread ())
+      try
+      {
+        receiverThread.join ();
+      }
+      catch (InterruptedException ie)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    try
+    {
+      this.channel.close ();
+    }
+    finally
+    {
+      this.selector.close ();
+    }
+  }
+
+}
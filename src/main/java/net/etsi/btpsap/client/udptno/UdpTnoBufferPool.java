@@ -0,0 +1,662 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** A pool of direct {@link ByteBuffer}s for UDP-TNO PDUs, carved from slabs in a fixed set of size classes.
+ * 
+ * <p>
+ * Buffers come in size classes of 64, 128, 256, 512, 2048 ({@link UdpTnoDataReq#MAX_PDU_SIZE}) and 4096 bytes;
+ * the largest class also holds indication PDUs carrying a maximum-size request payload.
+ * Each size class allocates its (direct) memory in slabs of (about) {@link #getSlabSize} bytes,
+ * each cut into equally-sized buffers, up to a configured maximum number of slabs;
+ * no native memory is allocated per buffer, and none is ever returned.
+ * Buffers are handed out as {@link Handle}s, which are released back into the pool after use (from any thread).
+ * 
+ * <p>
+ * Each thread acquires from and releases into its own (unsynchronized) magazines, one per size class,
+ * each holding up to {@link #getMagazineSize} free buffers.
+ * Full magazines are exchanged with a global depot (per size class), so that buffers released by one thread
+ * (e.g., a worker thread) flow back to another (e.g., the receiver thread) in batches.
+ * The depot holds a stack of (full or partial) magazines with free buffers, and a stack of empty magazines for reuse;
+ * each exchange pushes or pops a single magazine under a short lock, in constant time,
+ * and returning a magazine to the depot never fails.
+ * Threads that stop using the pool should {@link #flush} their magazines first;
+ * buffers in magazines of terminated threads are lost to the pool.
+ * 
+ * <p>
+ * The pool is configured at construction from {@link Properties} (all optional), see {@link #PROPERTY_PREFIX}:
+ * <ul>
+ * <li>{@code magazineSize}: the number of buffers per magazine (default 32);
+ * <li>{@code slabSize}: the (approximate) size of a slab in bytes (default 65536);
+ * <li>{@code initialSlabs}: the number of slabs allocated per size class at construction (default 1);
+ * <li>{@code maxSlabs}: the maximum number of slabs per size class (default 16),
+ *       overridden for individual size classes by {@code maxSlabs.<size>} (e.g., {@code maxSlabs.2048});
+ * <li>{@code leakDetection}: whether to record the acquisition site of each buffer (default {@code false}),
+ *       see {@link #reportLeaks}.
+ * </ul>
+ * 
+ * <p>
+ * This class is thread-safe; handles and their buffers are not.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq#formatRequest(net.etsi.btpsap.BtpSap_DataReqContainer, int, int, ByteBuffer, int)
+ * @see UdpTnoDataInd#parseIndication(ByteBuffer, int, int, net.etsi.btpsap.BtpSap_DataInd)
+ * 
+ */
+public final class UdpTnoBufferPool
+{
+
+  private static final Logger LOG = Logger.getLogger (UdpTnoBufferPool.class.getName ());
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONFIGURATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The prefix of the configuration properties (also used for the system properties of the {@link #getDefault} pool).
+   * 
+   */
+  public final static String PROPERTY_PREFIX = "net.etsi.btpsap.client.udptno.pool.";
+
+  /** The buffer sizes of the size classes, in increasing order.
+   * 
+   */
+  private final static int[] SIZES = { 64, 128, 256, 512, UdpTnoDataReq.MAX_PDU_SIZE, 4096 };
+
+  /** The size of the largest buffer in the pool.
+   * 
+   */
+  public final static int MAX_BUFFER_SIZE = 4096;
+
+  /** Returns an integer-valued configuration property; package-private for {@link UdpTnoBtpSapClient}.
+   * 
+   */
+  static int intProperty
+  (final Properties properties, final String prefix, final String key, final int defaultValue, final int minValue)
+  {
+    final String value = properties.getProperty (prefix + key);
+    // NumberFormatException is an IllegalArgumentException.
+    final int intValue = value == null ? defaultValue : Integer.parseInt (value.trim ());
+    if (intValue < minValue)
+      throw new IllegalArgumentException ();
+    return intValue;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a pool from configuration properties.
+   * 
+   * @param properties The properties, see the class documentation; {@code null} for all defaults.
+   * 
+   * @throws IllegalArgumentException If a property has an illegal value.
+   * 
+   */
+  public UdpTnoBufferPool (final Properties properties)
+  {
+    final Properties p = properties != null ? properties : new Properties ();
+    this.magazineSize = intProperty (p, PROPERTY_PREFIX, "magazineSize", 32, 1);
+    this.slabSize = intProperty (p, PROPERTY_PREFIX, "slabSize", 65536, 1);
+    final int initialSlabs = intProperty (p, PROPERTY_PREFIX, "initialSlabs", 1, 0);
+    final int maxSlabs = intProperty (p, PROPERTY_PREFIX, "maxSlabs", 16, 1);
+    this.leakDetection = Boolean.parseBoolean (p.getProperty (PROPERTY_PREFIX + "leakDetection", "false").trim ());
+    this.sizeClasses = new SizeClass[SIZES.length];
+    for (int c = 0; c < SIZES.length; c++)
+    {
+      this.sizeClasses[c] = new SizeClass (c, intProperty (p, PROPERTY_PREFIX, "maxSlabs." + SIZES[c], maxSlabs, 1));
+      if (initialSlabs > this.sizeClasses[c].maxSlabs)
+        throw new IllegalArgumentException ();
+      for (int s = 0; s < initialSlabs; s++)
+        this.sizeClasses[c].grow ();
+    }
+  }
+
+  /** Creates a pool with default configuration.
+   * 
+   */
+  public UdpTnoBufferPool ()
+  {
+    this (null);
+  }
+
+  private static final class DefaultHolder
+  {
+    private static final UdpTnoBufferPool DEFAULT = new UdpTnoBufferPool (System.getProperties ());
+  }
+
+  /** Returns the default pool, configured from the system properties upon first use.
+   * 
+   * <p>
+   * Illegal property values are reported (as the cause of an {@link ExceptionInInitializerError}) upon first use.
+   * 
+   * @return The default pool.
+   * 
+   */
+  public static UdpTnoBufferPool getDefault ()
+  {
+    return DefaultHolder.DEFAULT;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // MAGAZINE SIZE / SLAB SIZE / LEAK DETECTION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int magazineSize;
+
+  public final int getMagazineSize ()
+  {
+    return this.magazineSize;
+  }
+
+  private final int slabSize;
+
+  public final int getSlabSize ()
+  {
+    return this.slabSize;
+  }
+
+  private final boolean leakDetection;
+
+  public final boolean isLeakDetection ()
+  {
+    return this.leakDetection;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // HANDLE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A (pooled) direct buffer.
+   * 
+   * <p>
+   * The buffer is cleared upon acquisition.
+   * The caller must neither use the buffer nor retain (views of) it after releasing the handle.
+   * 
+   */
+  public static final class Handle
+  {
+
+    private Handle (final UdpTnoBufferPool pool, final int sizeClass, final ByteBuffer buffer)
+    {
+      this.pool = pool;
+      this.sizeClass = sizeClass;
+      this.buffer = buffer;
+    }
+
+    private final UdpTnoBufferPool pool;
+
+    private final int sizeClass;
+
+    private final ByteBuffer buffer;
+
+    /** Whether the buffer is currently free (in the pool): 1 if so, 0 if not; updated through {@link #FREE}.
+     * 
+     */
+    private volatile int free = 1;
+
+    private static final AtomicIntegerFieldUpdater<Handle> FREE =
+      AtomicIntegerFieldUpdater.newUpdater (Handle.class, "free");
+
+    /** The acquisition site and time [leak detection only].
+     * 
+     */
+    private Throwable acquisitionSite = null;
+
+    private long acquisitionTime_ms = 0L;
+
+    /** Returns the (direct) buffer.
+     * 
+     * @return The buffer, with capacity equal to the buffer size of its size class.
+     * 
+     */
+    public final ByteBuffer getBuffer ()
+    {
+      return this.buffer;
+    }
+
+    /** Releases this handle into its pool.
+     * 
+     * @throws IllegalStateException If the handle has already been released.
+     * 
+     * @see UdpTnoBufferPool#release
+     * 
+     */
+    public final void release ()
+    {
+      this.pool.release (this);
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // MAGAZINES / SIZE CLASSES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A stack of (at most magazineSize) free handles.
+   * 
+   */
+  private final class Magazine
+  {
+
+    private final Handle[] rounds = new Handle[UdpTnoBufferPool.this.magazineSize];
+
+    private int size = 0;
+
+    /** The next magazine on the same depot stack; guarded by the depot lock.
+     * 
+     */
+    private Magazine next = null;
+
+  }
+
+  private final class SizeClass
+  {
+
+    private SizeClass (final int sizeClass, final int maxSlabs)
+    {
+      this.sizeClass = sizeClass;
+      this.maxSlabs = maxSlabs;
+      this.buffersPerSlab = Math.max (1, UdpTnoBufferPool.this.slabSize / SIZES[sizeClass]);
+    }
+
+    private final int sizeClass;
+
+    private final int maxSlabs;
+
+    private final int buffersPerSlab;
+
+    /** Guards the depot stacks.
+     * 
+     * <p>
+     * The stacks are not lock-free (Treiber) stacks, since magazines are reused, which would make popping subject to ABA;
+     * the lock is held for a single push or pop, once per magazine of buffers.
+     * 
+     */
+    private final Object depotLock = new Object ();
+
+    /** The top of the stack of (non-empty) magazines; guarded by the depot lock.
+     * 
+     */
+    private Magazine full = null;
+
+    /** The top of the stack of empty magazines; guarded by the depot lock.
+     * 
+     */
+    private Magazine empty = null;
+
+    /** All handles, per slab; guarded by this.
+     * 
+     */
+    private final List<Handle[]> slabs = new ArrayList<> ();
+
+    /** Takes a (non-empty) magazine from the depot, {@code null} if there is none.
+     * 
+     */
+    private Magazine take ()
+    {
+      synchronized (this.depotLock)
+      {
+        final Magazine magazine = this.full;
+        if (magazine != null)
+        {
+          this.full = magazine.next;
+          magazine.next = null;
+        }
+        return magazine;
+      }
+    }
+
+    /** Puts a (non-empty) magazine into the depot.
+     * 
+     */
+    private void put (final Magazine magazine)
+    {
+      synchronized (this.depotLock)
+      {
+        magazine.next = this.full;
+        this.full = magazine;
+      }
+    }
+
+    /** Takes an empty magazine from the depot, or creates one if there is none.
+     * 
+     */
+    private Magazine takeEmpty ()
+    {
+      synchronized (this.depotLock)
+      {
+        final Magazine magazine = this.empty;
+        if (magazine != null)
+        {
+          this.empty = magazine.next;
+          magazine.next = null;
+          return magazine;
+        }
+      }
+      return new Magazine ();
+    }
+
+    /** Puts an empty magazine into the depot, for reuse.
+     * 
+     */
+    private void putEmpty (final Magazine magazine)
+    {
+      synchronized (this.depotLock)
+      {
+        magazine.next = this.empty;
+        this.empty = magazine;
+      }
+    }
+
+    /** Allocates a new slab and puts its buffers into the depot; returns {@code false} if the maximum number of slabs is reached.
+     * 
+     */
+    private synchronized boolean grow ()
+    {
+      if (this.slabs.size () >= this.maxSlabs)
+        return false;
+      final int size = SIZES[this.sizeClass];
+      final ByteBuffer slab = ByteBuffer.allocateDirect (this.buffersPerSlab * size);
+      final Handle[] handles = new Handle[this.buffersPerSlab];
+      Magazine magazine = takeEmpty ();
+      for (int i = 0; i < this.buffersPerSlab; i++)
+      {
+        slab.limit (i * size + size);
+        slab.position (i * size);
+        handles[i] = new Handle (UdpTnoBufferPool.this, this.sizeClass, slab.slice ());
+        magazine.rounds[magazine.size++] = handles[i];
+        if (magazine.size == UdpTnoBufferPool.this.magazineSize || i == this.buffersPerSlab - 1)
+        {
+          put (magazine);
+          magazine = i < this.buffersPerSlab - 1 ? takeEmpty () : null;
+        }
+      }
+      this.slabs.add (handles);
+      return true;
+    }
+
+  }
+
+  private final SizeClass[] sizeClasses;
+
+  /** Returns the index of the smallest size class holding buffers of given size.
+   * 
+   */
+  private static int sizeClassOf (final int size)
+  {
+    if (size < 0)
+      return -1;
+    for (int c = 0; c < SIZES.length; c++)
+      if (size <= SIZES[c])
+        return c;
+    return -1;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // THREAD-LOCAL CACHES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The magazines of a thread: a loaded one per size class, and an (optional) empty spare one.
+   * 
+   */
+  private final class Cache
+  {
+
+    private final Magazine[] loaded = new Magazine[SIZES.length];
+
+    private final Magazine[] spare = new Magazine[SIZES.length];
+
+    private Cache ()
+    {
+      for (int c = 0; c < SIZES.length; c++)
+        this.loaded[c] = new Magazine ();
+    }
+
+  }
+
+  private final ThreadLocal<Cache> caches = new ThreadLocal<Cache> ()
+  {
+    @Override
+    protected Cache initialValue ()
+    {
+      return new Cache ();
+    }
+  };
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // ACQUIRE / RELEASE / FLUSH
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final LongAdder exhaustedCount = new LongAdder ();
+
+  /** Returns the number of acquisitions that failed because the pool was exhausted.
+   * 
+   * @return The number of acquisitions that failed because the pool was exhausted.
+   * 
+   */
+  public final long getExhaustedCount ()
+  {
+    return this.exhaustedCount.sum ();
+  }
+
+  /** Acquires a (cleared) buffer of at least given size.
+   * 
+   * <p>
+   * The buffer is taken from the smallest size class that fits.
+   * 
+   * @param size The minimum buffer size, between zero and {@link #MAX_BUFFER_SIZE} inclusive.
+   * 
+   * @return The handle of the buffer, {@code null} if the size class is exhausted (i.e., has reached its maximum number of slabs).
+   * 
+   * @throws IllegalArgumentException If the size is out of range.
+   * 
+   */
+  public final Handle acquire (final int size)
+  {
+    final int c = sizeClassOf (size);
+    if (c < 0)
+      throw new IllegalArgumentException ();
+    final Cache cache = this.caches.get ();
+    Magazine magazine = cache.loaded[c];
+    if (magazine.size == 0)
+    {
+      final SizeClass sizeClass = this.sizeClasses[c];
+      Magazine full;
+      while ((full = sizeClass.take ()) == null)
+        if (! sizeClass.grow ())
+        {
+          this.exhaustedCount.increment ();
+          return null;
+        }
+      if (cache.spare[c] == null)
+        cache.spare[c] = magazine;
+      else
+        sizeClass.putEmpty (magazine);
+      cache.loaded[c] = magazine = full;
+    }
+    final Handle handle = magazine.rounds[--magazine.size];
+    magazine.rounds[magazine.size] = null;
+    handle.free = 0;
+    if (this.leakDetection)
+    {
+      handle.acquisitionSite = new Throwable ("Buffer acquisition site");
+      handle.acquisitionTime_ms = System.currentTimeMillis ();
+    }
+    handle.buffer.clear ();
+    return handle;
+  }
+
+  /** Releases a handle acquired from this pool (from any thread).
+   * 
+   * @param handle The handle.
+   * 
+   * @throws IllegalArgumentException If the handle is {@code null} or was not acquired from this pool.
+   * @throws IllegalStateException    If the handle has already been released.
+   * 
+   */
+  public final void release (final Handle handle)
+  {
+    if (handle == null || handle.pool != this)
+      throw new IllegalArgumentException ();
+    if (! Handle.FREE.compareAndSet (handle, 0, 1))
+      throw new IllegalStateException ();
+    handle.acquisitionSite = null;
+    final int c = handle.sizeClass;
+    final Cache cache = this.caches.get ();
+    Magazine magazine = cache.loaded[c];
+    if (magazine.size == this.magazineSize)
+    {
+      this.sizeClasses[c].put (magazine);
+      magazine = cache.spare[c] != null ? cache.spare[c] : this.sizeClasses[c].takeEmpty ();
+      cache.spare[c] = null;
+      cache.loaded[c] = magazine;
+    }
+    magazine.rounds[magazine.size++] = handle;
+  }
+
+  /** Returns the free buffers in the magazines of the current thread to the global depot.
+   * 
+   * <p>
+   * Threads should invoke this method before they stop using the pool (e.g., before terminating).
+   * 
+   */
+  public final void flush ()
+  {
+    final Cache cache = this.caches.get ();
+    for (int c = 0; c < SIZES.length; c++)
+      if (cache.loaded[c].size > 0)
+      {
+        this.sizeClasses[c].put (cache.loaded[c]);
+        cache.loaded[c] = this.sizeClasses[c].takeEmpty ();
+      }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // STATISTICS / LEAK DETECTION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns the number of slabs allocated for the size class holding buffers of given size.
+   * 
+   * @param size The buffer size, between zero and {@link #MAX_BUFFER_SIZE} inclusive.
+   * 
+   * @return The number of slabs.
+   * 
+   * @throws IllegalArgumentException If the size is out of range.
+   * 
+   */
+  public final int getSlabCount (final int size)
+  {
+    final int c = sizeClassOf (size);
+    if (c < 0)
+      throw new IllegalArgumentException ();
+    synchronized (this.sizeClasses[c])
+    {
+      return this.sizeClasses[c].slabs.size ();
+    }
+  }
+
+  /** Returns the number of buffers currently acquired (and not yet released) from the size class holding buffers of given size.
+   * 
+   * <p>
+   * This method scans all buffers of the size class; it is meant for diagnostics, not for the data path.
+   * 
+   * @param size The buffer size, between zero and {@link #MAX_BUFFER_SIZE} inclusive.
+   * 
+   * @return The number of buffers in use.
+   * 
+   * @throws IllegalArgumentException If the size is out of range.
+   * 
+   */
+  public final int getInUseCount (final int size)
+  {
+    final int c = sizeClassOf (size);
+    if (c < 0)
+      throw new IllegalArgumentException ();
+    int inUse = 0;
+    synchronized (this.sizeClasses[c])
+    {
+      for (final Handle[] slab : this.sizeClasses[c].slabs)
+        for (final Handle handle : slab)
+          if (handle.free == 0)
+            inUse++;
+    }
+    return inUse;
+  }
+
+  /** Logs (at {@link Level#WARNING}) all buffers that have been in use for at least given time, with their acquisition sites.
+   * 
+   * <p>
+   * Acquisition sites and times are only recorded if leak detection is enabled, see {@link #isLeakDetection};
+   * otherwise, this method does nothing.
+   * Like {@link #getInUseCount}, this method is meant for diagnostics.
+   * 
+   * @param minAge_ms The minimum time in use in milliseconds (non-negative).
+   * 
+   * @return The number of buffers logged.
+   * 
+   */
+  public final int reportLeaks (final long minAge_ms)
+  {
+    if (! this.leakDetection)
+      return 0;
+    final long now_ms = System.currentTimeMillis ();
+    int leaks = 0;
+    for (final SizeClass sizeClass : this.sizeClasses)
+      synchronized (sizeClass)
+      {
+        for (final Handle[] slab : sizeClass.slabs)
+          for (final Handle handle : slab)
+          {
+            final Throwable acquisitionSite = handle.acquisitionSite;
+            if (handle.free == 0 && acquisitionSite != null && now_ms - handle.acquisitionTime_ms >= minAge_ms)
+            {
+              LOG.log (Level.WARNING, "Buffer of size " + SIZES[sizeClass.sizeClass] + " in use for "
+                + (now_ms - handle.acquisitionTime_ms) + " ms; possible leak!", acquisitionSite);
+              leaks++;
+            }
+          }
+      }
+    return leaks;
+  }
+
+}
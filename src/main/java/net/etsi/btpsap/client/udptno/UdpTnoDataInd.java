@@ -16,8 +16,12 @@
  */
 package net.etsi.btpsap.client.udptno;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 import net.etsi.btpsap.BtpSapTypes;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataInd;
+import net.etsi.btpsap.BtpSap_DataIndPrimitive;
 import net.etsi.btpsap.BtpSap_DataIndContainer;
 
 /** Formatting and parsing UDP-TNO BtpSap Indication PDUs.
@@ -53,12 +57,42 @@ public class UdpTnoDataInd
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
-  // MAGIC BYTES
+  // VERSIONS
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-  private final static byte MAGIC_1 = (byte) (Integer.parseInt ("3d", 16) & 0xff);
-  private final static byte MAGIC_2 = (byte) (Integer.parseInt ("94", 16) & 0xff);
+  /** The original (fixed-layout) PDU format; the default for encoding.
+   * 
+   * <p>
+   * PDUs with a version other than {@link #VERSION_1} or {@link #VERSION_2} are rejected
+   * as {@link BtpSapValidationError#UNSUPPORTED_VERSION}, as are request PDUs.
+   * 
+   */
+  public final static int VERSION_1 = UdpTnoSchema.VERSION_1;
+  
+  /** The compact PDU format, see {@link UdpTnoSchema#VERSION_2} and {@link UdpTnoDataReq#VERSION_2}.
+   * 
+   */
+  public final static int VERSION_2 = UdpTnoSchema.VERSION_2;
+  
+  /** Returns the version of an (indication) PDU.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return The version, or -1 if the PDU is too short to hold a version or has the wrong magic.
+   * 
+   */
+  public final static int versionOf (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null || offset < 0 || length < UdpTnoSchema.IND_VERSION.end () || offset > pdu.length - length)
+      return -1;
+    final ByteBuffer buffer = ByteBuffer.wrap (pdu);
+    if (UdpTnoSchema.IND_MAGIC.getInt (buffer, offset) != UdpTnoSchema.IND_MAGIC_VALUE)
+      return -1;
+    return UdpTnoSchema.IND_VERSION.getInt (buffer, offset);
+  }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
@@ -66,176 +100,263 @@ public class UdpTnoDataInd
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+  /** The (fixed) size of the indication-PDU header, i.e., the offset of the payload in the PDU.
+   * 
+   */
+  public final static int HEADER_SIZE = UdpTnoSchema.IND_HEADER_SIZE;
+  
+  /** Returns the size of the PDU encoding given indication, including 32-bit boundary padding.
+   * 
+   * @param indication The BTP Data Indication.
+   * 
+   * @return The size of the PDU in bytes, or -1 if {@code indication == null}.
+   * 
+   */
+  public final static int encodedSize (final BtpSap_DataIndContainer indication)
+  {
+    if (indication == null)
+      return -1;
+    return UdpTnoSchema.padded (HEADER_SIZE + indication.getLength ());
+  }
+  
+  /** Returns the size of the PDU encoding given indication in given version.
+   * 
+   * @param indication The BTP Data Indication.
+   * @param version    The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The size of the PDU in bytes, or -1 if {@code indication == null} or the version is unsupported.
+   * 
+   */
+  public final static int encodedSize (final BtpSap_DataIndContainer indication, final int version)
+  {
+    if (indication == null)
+      return -1;
+    switch (version)
+    {
+      case VERSION_1:
+        return encodedSize (indication);
+      case VERSION_2:
+        final int length = indication.getLength ();
+        return UdpTnoSchema.IND2_FIXED_SIZE
+          + (indication.getGnSrcPV () != null ? UdpTnoSchema.POSITION2_LONGITUDE_E7.end () : 0)
+          + UdpTnoSchema.varintSize (length)
+          + length;
+      default:
+        return -1;
+    }
+  }
+  
+  /** Creates a BTP Data Indication PDU.
+   * 
+   * @param indication The BTP Data Indication.
+   * @param clientID   The client ID (between 0 and 127 inclusive).
+   * 
+   * @return The BTP Data Indication PDU, or {@code null} in case of a failure.
+   * 
+   * @see #formatIndication(BtpSap_DataIndContainer, int, ByteBuffer)
+   * 
+   */
   public final static byte [] formatIndication (final BtpSap_DataIndContainer indication, final int clientID)
   {
     if (indication == null)
       return null;
     if (clientID < 0 || clientID > 127)
       return null;
-    final int length = indication.getLength ();
-    final int unpaddedSize = 80 + length;
-    // XXX Clumsy way of doing this...
-    int paddedSize = unpaddedSize;
-    while (paddedSize % 4 != 0)
-      paddedSize++;
-    final int size = paddedSize;
-    final byte[] pdu = new byte[size];
-    pdu[0] = MAGIC_1;
-    pdu[1] = MAGIC_2;
-    pdu[2] = (byte) 1;
-    pdu[3] = (byte) clientID;
-    pdu[4] = (byte) 0; // Units...
-    pdu[5] = (byte) 0;
-    pdu[6] = (byte) 0; // XXX Btp Flags...
-    pdu[7] = (byte) 0; // XXX Gn SubType
-    final Integer btpSrcPort = indication.getBtpSrcPort ();
-    if (btpSrcPort != null)
-    {
-      pdu[8] = (byte) ((btpSrcPort & 0xff00) >> 8);
-      pdu[9] = (byte) (btpSrcPort & 0x00ff);
-    }
-    else
-    {
-      pdu[8] = (byte) 0;
-      pdu[9] = (byte) 0;      
-    }
-    pdu[10] = (byte) 0; // XXX Rem Lifetime...
-    if (indication.getGnTrafficClass () != null && (indication.getGnTrafficClass () instanceof BtpSapTypes.DefaultGnTrafficClass))
-      pdu[11] = ((BtpSapTypes.DefaultGnTrafficClass) indication.getGnTrafficClass ()).getTrafficClassByte ();
-    else
-      pdu[11] = (byte) 0; // We do not know...
-    final int btpDstPort = indication.getBtpDstPort ();
-    pdu[12] = (byte) ((btpDstPort & 0xff00) >> 8);
-    pdu[13] = (byte) (btpDstPort & 0x00ff);
-    final Integer btpDstPortInfo = indication.getBtpDstPortInfo ();
-    if (btpDstPortInfo != null)
-    {
-      pdu[14] = (byte) ((btpDstPortInfo & 0xff00) >> 8);
-      pdu[15] = (byte) (btpDstPortInfo & 0x00ff);
-    }
-    else
-    {
-      pdu[14] = (byte) 0;
-      pdu[15] = (byte) 0;      
-    }
-    // XXX Dst Latitude OR DstGnUc
-    pdu[16] = (byte) 0;
-    pdu[17] = (byte) 0;
-    pdu[18] = (byte) 0;
-    pdu[19] = (byte) 0;
-    pdu[20] = (byte) 0;
-    pdu[21] = (byte) 0;
-    pdu[22] = (byte) 0;
-    pdu[23] = (byte) 0;
-    // XXX Dst Longitude
-    pdu[24] = (byte) 0;
-    pdu[25] = (byte) 0;
-    pdu[26] = (byte) 0;
-    pdu[27] = (byte) 0;
-    pdu[28] = (byte) 0;
-    pdu[29] = (byte) 0;
-    pdu[30] = (byte) 0;
-    pdu[31] = (byte) 0;
-    // XXX DST Distance A
-    pdu[32] = (byte) 0;
-    pdu[33] = (byte) 0;
-    // XXX DST Distance B
-    pdu[34] = (byte) 0;
-    pdu[35] = (byte) 0;
-    // XXX DST Angle
-    pdu[36] = (byte) 0;
-    pdu[37] = (byte) 0;
-    // RESERVED_1
-    pdu[38] = (byte) 0;
-    pdu[39] = (byte) 0;
+    final byte[] pdu = new byte[encodedSize (indication)];
+    if (formatIndication (indication, clientID, ByteBuffer.wrap (pdu)) < 0)
+      return null;
+    return pdu;
+  }
+  
+  /** Encodes a BTP Data Indication PDU into a buffer.
+   * 
+   * <p>
+   * The PDU is written at the position of {@code dst}, and upon success, the position is advanced by the number of bytes written.
+   * Upon failure, the buffer is left unchanged.
+   * The method does not allocate.
+   * 
+   * @param indication The BTP Data Indication.
+   * @param clientID   The client ID (between 0 and 127 inclusive).
+   * @param dst        The buffer to write into (heap or direct), starting at its position.
+   * 
+   * @return The number of bytes written (equal to {@link #encodedSize}), or -1 in case of a failure.
+   * 
+   */
+  public final static int formatIndication (final BtpSap_DataIndContainer indication, final int clientID, final ByteBuffer dst)
+  {
+    return formatIndication (indication, clientID, dst, VERSION_1);
+  }
+  
+  /** Encodes a BTP Data Indication PDU into a buffer in given version.
+   * 
+   * <p>
+   * Otherwise, this method behaves as {@link #formatIndication(BtpSap_DataIndContainer, int, ByteBuffer)}.
+   * 
+   * @param indication The BTP Data Indication.
+   * @param clientID   The client ID (between 0 and 127 inclusive).
+   * @param dst        The buffer to write into (heap or direct), starting at its position.
+   * @param version    The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The number of bytes written (equal to {@link #encodedSize(BtpSap_DataIndContainer, int)}), or -1 in case of a failure.
+   * 
+   */
+  public final static int formatIndication
+  (final BtpSap_DataIndContainer indication, final int clientID, final ByteBuffer dst, final int version)
+  {
+    if (indication == null)
+      return -1;
+    final boolean hasArray = indication.hasArray ();
+    final BtpSapTypes.GnTrafficClass gnTrafficClass = indication.getGnTrafficClass ();
+    final Integer gnRemLifetime_s = indication.getGnRemLifetime_s ();
+    return encode
+      (BtpSap_DataIndPrimitive.unbox (indication.getBtpSrcPort ()),
+       indication.getBtpDstPort (),
+       BtpSap_DataIndPrimitive.unbox (indication.getBtpDstPortInfo ()),
+       // else: We do not know...
+       gnTrafficClass instanceof BtpSapTypes.DefaultGnTrafficClass
+         ? ((BtpSapTypes.DefaultGnTrafficClass) gnTrafficClass).getTrafficClassByte () : (byte) 0,
+       gnRemLifetime_s != null && gnRemLifetime_s > 0
+         ? UdpTnoSchema.encodeTime_ms (Math.min (gnRemLifetime_s, Integer.MAX_VALUE / 1000) * 1000) : (byte) 0,
+       indication.getGnSrcPV (),
+       hasArray ? indication.getOffset () : 0,
+       indication.getLength (),
+       hasArray ? indication.getData () : null,
+       hasArray ? null : indication.getPayloadBuffer (),
+       clientID,
+       version,
+       dst);
+  }
+  
+  /** Encodes a BTP Data Indication PDU from primitive arguments into a buffer.
+   * 
+   * <p>
+   * Absent optional ports are {@link BtpSap_DataIndPrimitive#ABSENT}, and an absent source position vector is {@code null}.
+   * The remaining lifetime is passed in its (one-byte) PDU encoding, zero if absent.
+   * If {@code payloadBuffer} is non-{@code null}, the payload is taken from its remaining bytes
+   * (its position and limit are not changed), and {@code offset}, {@code length} and {@code data} are ignored.
+   * 
+   */
+  private static int encode
+  (final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final byte gnTrafficClassByte,
+   final byte gnRemLifetimeByte,
+   final BtpSapTypes.GnPositionVector gnSrcPV,
+   final int offset,
+   final int length,
+   final byte[] data,
+   final ByteBuffer payloadBuffer,
+   final int clientID,
+   final int version,
+   final ByteBuffer dst)
+  {
+    if (dst == null)
+      return -1;
+    if (version != VERSION_1 && version != VERSION_2)
+      return -1;
+    if (clientID < 0 || clientID > 127)
+      return -1;
+    final int payloadLength = payloadBuffer != null ? payloadBuffer.remaining () : length;
+    if (payloadBuffer == null
+      && (length < 0 || offset < 0 || (data == null && length > 0) || (data != null && offset > data.length - length)))
+      return -1;
+    final int size = version == VERSION_1
+      ? UdpTnoSchema.padded (HEADER_SIZE + payloadLength)
+      : UdpTnoSchema.IND2_FIXED_SIZE
+        + (gnSrcPV != null ? UdpTnoSchema.POSITION2_LONGITUDE_E7.end () : 0)
+        + UdpTnoSchema.varintSize (payloadLength)
+        + payloadLength;
+    if (size > dst.remaining ())
+      return -1;
+    final int o = dst.position ();
+    // PREFIX (shared by all versions); absent/unsupported fields are left zero.
+    UdpTnoSchema.clear (dst, o, version == VERSION_1 ? UdpTnoSchema.IND_HEADER_SIZE : UdpTnoSchema.IND2_FIXED_SIZE);
+    UdpTnoSchema.IND_MAGIC.put (dst, o, UdpTnoSchema.IND_MAGIC_VALUE);
+    UdpTnoSchema.IND_VERSION.put (dst, o, version);
+    UdpTnoSchema.IND_CLIENT_ID.put (dst, o, clientID);
+    // XXX Units, Btp Flags, Gn SubType...
+    if (btpSrcPort != BtpSap_DataIndPrimitive.ABSENT)
+      UdpTnoSchema.IND_SRC_PORT.put (dst, o, btpSrcPort);
+    UdpTnoSchema.IND_REM_LIFETIME.put (dst, o, gnRemLifetimeByte & 0xff);
+    UdpTnoSchema.IND_TRAFFIC_CLASS.put (dst, o, gnTrafficClassByte);
+    UdpTnoSchema.IND_DST_PORT.put (dst, o, btpDstPort);
+    if (btpDstPortInfo != BtpSap_DataIndPrimitive.ABSENT)
+      UdpTnoSchema.IND_DST_PORT_INFO.put (dst, o, btpDstPortInfo);
+    // XXX Dst Latitude OR DstGnUc, Dst Longitude, Distance A, Distance B, Angle.
     // XXX SRC_GN_ADDRESS
-    pdu[40] = (byte) 0;
-    pdu[41] = (byte) 0;
-    pdu[42] = (byte) 0;
-    pdu[43] = (byte) 0;
-    pdu[44] = (byte) 0;
-    pdu[45] = (byte) 0;
-    pdu[46] = (byte) 0;
-    pdu[47] = (byte) 0;
-    final BtpSapTypes.GnPositionVector gnSrcPV = indication.getGnSrcPV ();
-    // SRC_LATITUDE
-    if (gnSrcPV != null)
+    final int payloadIndex;
+    if (version == VERSION_1)
     {
-      final long latBits = Double.doubleToLongBits (indication.getGnSrcPV ().getLatitude ());
-      pdu[48] = (byte) ((latBits >> 56) & 0xff);
-      pdu[49] = (byte) ((latBits >> 48) & 0xff);
-      pdu[50] = (byte) ((latBits >> 40) & 0xff);
-      pdu[51] = (byte) ((latBits >> 32) & 0xff);
-      pdu[52] = (byte) ((latBits >> 24) & 0xff);
-      pdu[53] = (byte) ((latBits >> 16) & 0xff);
-      pdu[54] = (byte) ((latBits >>  8) & 0xff);
-      pdu[55] = (byte) ((latBits      ) & 0xff);      
+      if (gnSrcPV != null)
+      {
+        UdpTnoSchema.IND_SRC_LAT.putDouble (dst, o, gnSrcPV.getLatitude ());
+        UdpTnoSchema.IND_SRC_LON.putDouble (dst, o, gnSrcPV.getLongitude ());
+      }
+      // SECURITY REPORT, CERTIFICATE ID and PERMISSIONS LENGTHS: zero.
+      UdpTnoSchema.IND_PAYLOAD_LENGTH.put (dst, o, payloadLength);
+      payloadIndex = o + UdpTnoSchema.IND_HEADER_SIZE;
     }
     else
     {
-      pdu[48] = (byte) 0;
-      pdu[49] = (byte) 0;
-      pdu[50] = (byte) 0;
-      pdu[51] = (byte) 0;
-      pdu[52] = (byte) 0;
-      pdu[53] = (byte) 0;
-      pdu[54] = (byte) 0;
-      pdu[55] = (byte) 0;
-    }
-    // SRC_LONGITUDE
-    if (gnSrcPV != null)
-    {
-      final long lonBits = Double.doubleToLongBits (indication.getGnSrcPV ().getLongitude ());
-      pdu[56] = (byte) ((lonBits >> 56) & 0xff);
-      pdu[57] = (byte) ((lonBits >> 48) & 0xff);
-      pdu[58] = (byte) ((lonBits >> 40) & 0xff);
-      pdu[59] = (byte) ((lonBits >> 32) & 0xff);
-      pdu[60] = (byte) ((lonBits >> 24) & 0xff);
-      pdu[61] = (byte) ((lonBits >> 16) & 0xff);
-      pdu[62] = (byte) ((lonBits >>  8) & 0xff);
-      pdu[63] = (byte) ((lonBits      ) & 0xff);      
+      // OPTIONAL FIELDS, in presence-bit order; absent fields take no space.
+      int index = o + UdpTnoSchema.IND2_FIXED_SIZE;
+      if (gnSrcPV != null)
+      {
+        UdpTnoSchema.IND2_PRESENCE.put (dst, o, UdpTnoSchema.IND2_HAS_SRC_POSITION);
+        UdpTnoSchema.POSITION2_LATITUDE_E7.put (dst, index, UdpTnoSchema.toE7 (gnSrcPV.getLatitude ()));
+        UdpTnoSchema.POSITION2_LONGITUDE_E7.put (dst, index, UdpTnoSchema.toE7 (gnSrcPV.getLongitude ()));
+        index += UdpTnoSchema.POSITION2_LONGITUDE_E7.end ();
+      }
+      payloadIndex = UdpTnoSchema.putVarint (dst, index, payloadLength);
     }
-    else
+    // PAYLOAD
+    dst.position (payloadIndex);
+    if (payloadBuffer != null)
+      dst.put (payloadBuffer.duplicate ());
+    else if (data != null)
+      dst.put (data, offset, payloadLength);
+    // 32-bit padding [version 1 only].
+    for (int i = payloadIndex + payloadLength; i < o + size; i++)
+      dst.put (i, (byte) 0);
+    dst.position (o + size);
+    return size;
+  }
+  
+  /** Encodes a BTP Data Indication PDU into a buffer acquired from a pool.
+   * 
+   * <p>
+   * Upon success, the PDU occupies the bytes between the position (zero) and the limit of the handle's buffer;
+   * the caller owns the handle and must release it after use (e.g., after sending the PDU, on any thread).
+   * Upon failure, no buffer is held.
+   * Otherwise, this method behaves as {@link #formatIndication(BtpSap_DataIndContainer, int, ByteBuffer, int)}.
+   * 
+   * @param indication The BTP Data Indication (non-{@code null}).
+   * @param clientID   The client ID (between 0 and 127 inclusive).
+   * @param version    The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * @param pool       The pool to acquire the buffer from, non-{@code null}.
+   * 
+   * @return The handle of the buffer holding the PDU, or {@code null} in case of a failure
+   *         (including a PDU larger than {@link UdpTnoBufferPool#MAX_BUFFER_SIZE} or an exhausted pool).
+   * 
+   */
+  public final static UdpTnoBufferPool.Handle formatIndication
+  (final BtpSap_DataIndContainer indication, final int clientID, final int version, final UdpTnoBufferPool pool)
+  {
+    final int size = encodedSize (indication, version);
+    if (pool == null || size < 0 || size > UdpTnoBufferPool.MAX_BUFFER_SIZE)
+      return null;
+    final UdpTnoBufferPool.Handle handle = pool.acquire (size);
+    if (handle == null)
+      return null;
+    final ByteBuffer buffer = handle.getBuffer ();
+    if (formatIndication (indication, clientID, buffer, version) < 0)
     {
-      pdu[56] = (byte) 0;
-      pdu[57] = (byte) 0;
-      pdu[58] = (byte) 0;
-      pdu[59] = (byte) 0;
-      pdu[60] = (byte) 0;
-      pdu[61] = (byte) 0;
-      pdu[62] = (byte) 0;
-      pdu[63] = (byte) 0;
+      handle.release ();
+      return null;
     }
-    // SECURITY REPORT LENGTH
-    // [+ SECURITY REPORT]
-    pdu[64] = (byte) 0;
-    pdu[65] = (byte) 0;
-    pdu[66] = (byte) 0;
-    pdu[67] = (byte) 0;
-    // CERTIFICATE ID LENGTH
-    // [+ CERTIFICATE ID]
-    pdu[68] = (byte) 0;
-    pdu[69] = (byte) 0;
-    pdu[70] = (byte) 0;
-    pdu[71] = (byte) 0;
-    // PERMISSIONS LENGTH
-    // [+ PERMISSIONS]
-    pdu[72] = (byte) 0;
-    pdu[73] = (byte) 0;
-    pdu[74] = (byte) 0;
-    pdu[75] = (byte) 0;
-    // PAYLOAD
-    pdu[76] = (byte) ((length & 0xff000000) >>> 24);
-    pdu[77] = (byte) ((length & 0x00ff0000) >>> 16);
-    pdu[78] = (byte) ((length & 0x0000ff00) >>> 8);
-    pdu[79] = (byte) (length & 0x000000ff);
-    final byte[] data_src = indication.getData ();
-    final int offset_src = indication.getOffset ();
-    System.arraycopy (data_src, offset_src, pdu, 80, length);
-    // 32-bit padding.
-    for (int i = 80 + length; i < size; i++)
-      pdu[i] = (byte) 0;
-    return pdu;
+    buffer.flip ();
+    return handle;
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -244,89 +365,195 @@ public class UdpTnoDataInd
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+  /** Validates a BTP Data Indication PDU, without throwing or logging.
+   * 
+   * <p>
+   * Each rejection is counted in its {@link BtpSapValidationError}.
+   * The array is wrapped in a (short-lived) {@link ByteBuffer};
+   * callers holding a buffer (e.g., a re-used receive buffer) should use the allocation-free
+   * {@link #validateIndication(ByteBuffer, int, int)} instead.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see #parseIndication(byte[], int, int, boolean)
+   * 
+   */
+  public final static int validateIndication (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null)
+      return BtpSapValidationError.NULL_PDU.reject ();
+    if (offset < 0 || length < 0 || offset > pdu.length - length)
+      return BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
+    return validateIndication (ByteBuffer.wrap (pdu), offset, length);
+  }
+  
+  /** Validates a BTP Data Indication PDU held in a (heap or direct) buffer, without throwing, logging or allocating.
+   * 
+   * <p>
+   * The offset is absolute; the position and limit of the buffer are neither used nor changed.
+   * 
+   * @param pdu    The buffer holding the PDU.
+   * @param offset The (absolute) offset of the PDU in the buffer.
+   * @param length The length of the PDU.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see #validateIndication(byte[], int, int)
+   * 
+   */
+  public final static int validateIndication (final ByteBuffer pdu, final int offset, final int length)
+  {
+    if (pdu == null)
+      return BtpSapValidationError.NULL_PDU.reject ();
+    if (offset < 0 || length < 0 || offset > pdu.capacity () - length)
+      return BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
+    final int prefixStatus = validateIndicationPrefix (pdu, offset, length);
+    if (prefixStatus != BtpSapValidationError.OK.ordinal ())
+      return prefixStatus;
+    // Security report, certificate ID and permissions must be all-zero in current implementation...
+    // XXX This should be easy to fix...
+    // Compact PDUs have no security fields (yet).
+    if (! isCompact (pdu, offset)
+      && (UdpTnoSchema.IND_SEC_REPORT_LENGTH.get (pdu, offset) != 0
+        || UdpTnoSchema.IND_CERT_ID_LENGTH.get (pdu, offset) != 0
+        || UdpTnoSchema.IND_PERMISSIONS_LENGTH.get (pdu, offset) != 0))
+      return BtpSapValidationError.UNSUPPORTED_SECURITY_FIELDS.reject ();
+    return validateIndicationLength (pdu, offset, length);
+  }
+  
+  /** Checks the PDU length against the (fixed) header size, the magic and the version.
+   * 
+   */
+  private static int validateIndicationPrefix (final ByteBuffer buffer, final int offset, final int length)
+  {
+    if (length < UdpTnoSchema.IND2_FIXED_SIZE)
+      return BtpSapValidationError.PDU_TOO_SHORT.reject ();
+    if (UdpTnoSchema.IND_MAGIC.getInt (buffer, offset) != UdpTnoSchema.IND_MAGIC_VALUE)
+      return BtpSapValidationError.MAGIC_MISMATCH.reject ();
+    // Check version: 0x01 and 0x02 supported.
+    switch (UdpTnoSchema.IND_VERSION.getInt (buffer, offset))
+    {
+      case VERSION_1:
+        if (length < UdpTnoSchema.IND_HEADER_SIZE)
+          return BtpSapValidationError.PDU_TOO_SHORT.reject ();
+        return BtpSapValidationError.OK.ordinal ();
+      case VERSION_2:
+        return BtpSapValidationError.OK.ordinal ();
+      default:
+        return BtpSapValidationError.UNSUPPORTED_VERSION.reject ();
+    }
+  }
+  
+  /** Checks the PDU length against the (padded) payload length.
+   * 
+   */
+  private static int validateIndicationLength (final ByteBuffer buffer, final int offset, final int length)
+  {
+    if (isCompact (buffer, offset))
+    {
+      if (compactLength (buffer, offset, length) != length)
+        return BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+      return BtpSapValidationError.OK.ordinal ();
+    }
+    final long payloadLength = UdpTnoSchema.IND_PAYLOAD_LENGTH.get (buffer, offset);
+    if (UdpTnoSchema.IND_HEADER_SIZE + ((payloadLength + 3) & ~3L) != length)
+      return BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+    return BtpSapValidationError.OK.ordinal ();
+  }
+  
+  /** Parses a BTP Data Indication PDU, copying the payload.
+   * 
+   * <p>
+   * The payload is copied into a fresh array (at offset zero) owned by the returned container,
+   * so the {@code pdu} array may be re-used by the caller as soon as this method returns.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return The BTP Data Indication, or {@code null} in case of a failure.
+   * 
+   * @see #parseIndication(byte[], int, int, boolean)
+   * 
+   */
   public final static BtpSap_DataIndContainer parseIndication
   ( final byte[] pdu,
     final int offset,
     final int length)
   {
-    if (pdu == null || offset < 0 || length < 0 || offset + length > pdu.length)
-      return null;
-    if (length < 80)
-      return null;
-    // 0, 1: Magic.
-    if (pdu[offset+0] != MAGIC_1 || pdu[offset+1] != MAGIC_2)
+    return parseIndication (pdu, offset, length, false);
+  }
+  
+  /** Parses a BTP Data Indication PDU, optionally without copying the payload.
+   * 
+   * <p>
+   * In zero-copy mode, the returned container references the {@code pdu} array directly;
+   * its payload starts at {@code offset + 80} in that array (for version-1 PDUs) (see {@link BtpSap_DataIndContainer#getOffset}
+   * and {@link BtpSap_DataIndContainer#getPayloadBuffer}).
+   * Ownership of the {@code pdu} array then passes to the container:
+   * the caller must not modify or recycle the array until the container has been <i>released</i> by the upper layer,
+   * i.e., until all consumers of the indication have returned from processing it and no longer hold a reference to it
+   * (or to its payload).
+   * Consumers that need the payload beyond that point must take a copy.
+   * 
+   * @param pdu      The array holding the PDU.
+   * @param offset   The offset of the PDU in the array.
+   * @param length   The length of the PDU.
+   * @param zeroCopy Whether to reference (instead of copy) the payload in the {@code pdu} array.
+   * 
+   * @return The BTP Data Indication, or {@code null} in case of a failure.
+   * 
+   */
+  public final static BtpSap_DataIndContainer parseIndication
+  ( final byte[] pdu,
+    final int offset,
+    final int length,
+    final boolean zeroCopy)
+  {
+    final ByteBuffer buffer = pdu != null ? ByteBuffer.wrap (pdu) : null;
+    if (validateIndication (buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
       return null;
-    // 2: Unknown... Always unity? Version? XXX
-    //if (pdu[offset+2] != (byte) 1)
-    //  return null;
-    // 3: Client ID. XXX Report back?? XXX int??
-    final byte clientID = pdu[offset+3];
-    // 4, 5: Units?? XXX Report back? Always zero?
-    // 6 XXX Btp Flags...
-    // 7 XXX Gn SubType
-    // 8, 9 btpSrcPort; 0 -> no btpSrcPort provided? XXX
-    final Integer btpSrcPort = ((((int) pdu[offset+8]) & 0xff) << 8) + (((int) pdu[offset+9]) & 0xff);
-    // 10: XXX Rem Lifetime...
-    final Integer gnRemLifetime_s = 1;
-    // 11: gnTrafficClass
-    final BtpSapTypes.GnTrafficClass gnTrafficClass = new BtpSapTypes.DefaultGnTrafficClass (pdu[offset+11]);
-    // 12, 13 btpDstPort; 0 -> no btpDstPort provided? XXX
-    final int btpDstPort = ((((int) pdu[offset+12]) & 0xff) << 8) + (((int) pdu[offset+13]) & 0xff);
-    // 14, 15 btpDstPortInfo; 0 -> no btpDstPortInfo provided? XXX
-    final Integer btpDstPortInfo = ((((int) pdu[offset+14]) & 0xff) << 8) + (((int) pdu[offset+15]) & 0xff);
-    // 16 - 23: XXX Dst Latitude OR DstGnUc
-    // 24 - 31: XXX XXX Dst Longitude
-    // 32, 33: XXX DST Distance A
-    // 34, 35: XXX DST Distance B
-    // 36, 37: XXX DST Angle
+    // VERSION: Unknown... Always unity? XXX
+    // CLIENT ID: XXX Report back??
+    // UNITS: XXX Report back? Always zero?
+    // XXX Btp Flags...
+    // XXX Gn SubType
+    // btpSrcPort; 0 -> no btpSrcPort provided? XXX
+    final Integer btpSrcPort = UdpTnoSchema.IND_SRC_PORT.getInt (buffer, offset);
+    final Integer gnRemLifetime_s = BtpSap_DataIndPrimitive.box (remLifetime_s (buffer, offset));
+    final BtpSapTypes.GnTrafficClass gnTrafficClass =
+      BtpSapTypes.DefaultGnTrafficClass.valueOf ((byte) UdpTnoSchema.IND_TRAFFIC_CLASS.getInt (buffer, offset));
+    // btpDstPort; 0 -> no btpDstPort provided? XXX
+    final int btpDstPort = UdpTnoSchema.IND_DST_PORT.getInt (buffer, offset);
+    // btpDstPortInfo; 0 -> no btpDstPortInfo provided? XXX
+    final Integer btpDstPortInfo = UdpTnoSchema.IND_DST_PORT_INFO.getInt (buffer, offset);
+    // XXX Dst Latitude OR DstGnUc, Dst Longitude, Distance A, Distance B, Angle.
     final BtpSapTypes.GnDestination gnDstAddress = null;
-    // 38, 39: RESERVED_1
-    // 40 - 47: XXX SRC_GN_ADDRESS
-    // 48 - 55: SRC_LATITUDE
-    // 56 - 63: SRC_LONGITUDE
-    final BtpSapTypes.GnPositionVector gnSrcPV = null;
-    // 64 - 67: SECURITY REPORT LENGTH [+ SECURITY REPORT]
-    // Must be all-zero in current implementation...
-    // XXX This should be easy to fix...
-    if ( pdu[offset+64] != (byte) 0
-      || pdu[offset+65] != (byte) 0
-      || pdu[offset+66] != (byte) 0
-      || pdu[offset+67] != (byte) 0)
-      return null;
+    // XXX SRC_GN_ADDRESS
+    final BtpSapTypes.GnPositionVector gnSrcPV = srcPV (buffer, offset);
+    // SECURITY REPORT, CERTIFICATE ID and PERMISSIONS LENGTHS [+ CONTENTS]: all-zero (checked in validateIndication).
     final BtpSapTypes.GnSecurityReport gnSecReport = null;
-    // 68 - 71: CERTIFICATE ID LENGTH [+ CERTIFICATE ID]
-    // Must be all-zero in current implementation...
-    // XXX This should be easy to fix...
-    if ( pdu[offset+68] != (byte) 0
-      || pdu[offset+69] != (byte) 0
-      || pdu[offset+70] != (byte) 0
-      || pdu[offset+71] != (byte) 0)
-      return null;
     final BtpSapTypes.GnCertificateId gnCertId = null;
-    // 72 - 75: PERMISSIONS LENGTH [+ PERMISSIONS]
-    // Must be all-zero in current implementation...
-    // XXX This should be easy to fix...
-    if ( pdu[offset+72] != (byte) 0
-      || pdu[offset+73] != (byte) 0
-      || pdu[offset+74] != (byte) 0
-      || pdu[offset+75] != (byte) 0)
-      return null;
     final BtpSapTypes.GnPermissions gnPermissions = null;
-    // 76 - 79: PAYLOAD LENGTH
-    final int payLoadLength =
-        ((((int) pdu[offset+76]) & 0xff) << 24)
-      + ((((int) pdu[offset+77]) & 0xff) << 16)
-      + ((((int) pdu[offset+78]) & 0xff) <<  8)
-      + ((((int) pdu[offset+79]) & 0xff));
-    if (payLoadLength < 0)
-      return null;
-    final int payLoadAndPaddingLength = (payLoadLength % 4 == 0) ? payLoadLength : ((payLoadLength / 4) + 1) * 4;
-    if (payLoadAndPaddingLength + 80 /* XXX */ != length)
-     return null;
-    // 80 - ...: PAYLOAD
-    final byte[] payload = new byte[payLoadLength];
-    final int payloadOffset = 0;
-    System.arraycopy (pdu, offset + 80, payload, payloadOffset, payLoadLength);
+    final int payloadLength = payloadLength (buffer, offset);
+    // PAYLOAD
+    final byte[] payload;
+    final int payloadOffset;
+    if (zeroCopy)
+    {
+      payload = pdu;
+      payloadOffset = payloadOffset (buffer, offset);
+    }
+    else
+    {
+      payload = new byte[payloadLength];
+      payloadOffset = 0;
+      System.arraycopy (pdu, payloadOffset (buffer, offset), payload, payloadOffset, payloadLength);
+    }
     return new BtpSap_DataIndContainer
       ( btpSrcPort,
         btpDstPort,
@@ -338,9 +565,426 @@ public class UdpTnoDataInd
         gnPermissions,
         gnTrafficClass,
         gnRemLifetime_s,
-        payLoadLength,
+        payloadLength,
         payloadOffset,
         payload);
   }
   
+  /** Parses a BTP Data Indication PDU lazily.
+   * 
+   * <p>
+   * Only the framing of the PDU (header size, magic and payload length) is validated;
+   * all other fields are decoded on demand by the getters of the returned object, see {@link UdpTnoLazyDataInd}.
+   * The payload is not copied; ownership of the {@code pdu} array passes to the container
+   * as in {@link #parseIndication(byte[], int, int, boolean)} in zero-copy mode.
+   * 
+   * @param pdu     The array holding the PDU.
+   * @param offset  The offset of the PDU in the array.
+   * @param length  The length of the PDU.
+   * @param memoize Whether the container memoizes boxed fields after their first decoding.
+   * 
+   * @return The (lazy) BTP Data Indication, or {@code null} in case of a failure.
+   * 
+   */
+  public final static UdpTnoLazyDataInd parseIndicationLazy
+  ( final byte[] pdu,
+    final int offset,
+    final int length,
+    final boolean memoize)
+  {
+    if (pdu == null)
+    {
+      BtpSapValidationError.NULL_PDU.reject ();
+      return null;
+    }
+    if (offset < 0 || length < 0 || offset > pdu.length - length)
+    {
+      BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
+      return null;
+    }
+    final ByteBuffer buffer = ByteBuffer.wrap (pdu);
+    if (validateIndicationPrefix (buffer, offset, length) != BtpSapValidationError.OK.ordinal ()
+      || validateIndicationLength (buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return null;
+    return new UdpTnoLazyDataInd (pdu, offset, memoize);
+  }
+  
+  /** Parses a sequence of concatenated BTP Data Indication PDUs into a columnar batch.
+   * 
+   * <p>
+   * The batch is emptied and bound to {@code src}, after which PDUs are decoded back-to-back starting at {@code offset},
+   * each version-1 PDU spanning the 80-byte header and the payload padded to a 32-bit boundary,
+   * and each (compact) version-2 PDU spanning exactly its fields and payload.
+   * Decoding stops when the batch is full, when fewer than 80 bytes (17 bytes for version 2) remain,
+   * or when a PDU has a wrong magic, an unsupported version or extends beyond the range (in which case the framing is lost).
+   * PDUs with (unsupported) security fields are skipped.
+   * All rejections are counted in {@link BtpSapValidationError}.
+   * The payloads are not copied, see {@link UdpTnoIndicationBatch}; the method does not allocate.
+   * 
+   * @param src    The array holding the PDUs.
+   * @param offset The offset of the first PDU in the array.
+   * @param length The length of the range holding the PDUs.
+   * @param batch  The batch to fill, non-{@code null}.
+   * 
+   * @return The number of bytes consumed from {@code src} (decoding may be resumed at {@code offset} plus this number),
+   *         or -1 in case of illegal arguments.
+   * 
+   */
+  public final static int parseIndications
+  ( final byte[] src,
+    final int offset,
+    final int length,
+    final UdpTnoIndicationBatch batch)
+  {
+    if (src == null || batch == null || offset < 0 || length < 0 || offset > src.length - length)
+      return -1;
+    batch.reset (src);
+    final ByteBuffer buffer = ByteBuffer.wrap (src);
+    final int end = offset + length;
+    int o = offset;
+    while (! batch.isFull () && end - o >= UdpTnoSchema.IND2_FIXED_SIZE)
+    {
+      if (UdpTnoSchema.IND_MAGIC.getInt (buffer, o) != UdpTnoSchema.IND_MAGIC_VALUE)
+      {
+        BtpSapValidationError.MAGIC_MISMATCH.reject ();
+        break;
+      }
+      final int version = UdpTnoSchema.IND_VERSION.getInt (buffer, o);
+      if (version != VERSION_1 && version != VERSION_2)
+      {
+        BtpSapValidationError.UNSUPPORTED_VERSION.reject ();
+        break;
+      }
+      if (version == VERSION_2)
+      {
+        final int pduLength = compactLength (buffer, o, end - o);
+        if (pduLength < 0)
+        {
+          BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+          break;
+        }
+        final int positionIndex = optionalIndex (buffer, o, UdpTnoSchema.IND2_HAS_SRC_POSITION);
+        batch.add
+          ( UdpTnoSchema.IND_SRC_PORT.getInt (buffer, o),
+            UdpTnoSchema.IND_DST_PORT.getInt (buffer, o),
+            UdpTnoSchema.IND_DST_PORT_INFO.getInt (buffer, o),
+            (byte) UdpTnoSchema.IND_TRAFFIC_CLASS.getInt (buffer, o),
+            remLifetime_s (buffer, o),
+            positionIndex < 0 ? Double.NaN : UdpTnoSchema.fromE7 ((int) UdpTnoSchema.POSITION2_LATITUDE_E7.get (buffer, positionIndex)),
+            positionIndex < 0 ? Double.NaN : UdpTnoSchema.fromE7 ((int) UdpTnoSchema.POSITION2_LONGITUDE_E7.get (buffer, positionIndex)),
+            payloadOffset (buffer, o),
+            payloadLength (buffer, o));
+        o += pduLength;
+        continue;
+      }
+      if (end - o < UdpTnoSchema.IND_HEADER_SIZE)
+        break;
+      final long pduLength = UdpTnoSchema.IND_HEADER_SIZE + ((UdpTnoSchema.IND_PAYLOAD_LENGTH.get (buffer, o) + 3) & ~3L);
+      if (pduLength > end - o)
+      {
+        BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+        break;
+      }
+      if (UdpTnoSchema.IND_SEC_REPORT_LENGTH.get (buffer, o) != 0
+        || UdpTnoSchema.IND_CERT_ID_LENGTH.get (buffer, o) != 0
+        || UdpTnoSchema.IND_PERMISSIONS_LENGTH.get (buffer, o) != 0)
+        BtpSapValidationError.UNSUPPORTED_SECURITY_FIELDS.reject ();
+      else
+      {
+        // An all-zero source position denotes an absent one, see srcPV.
+        final boolean hasSrcPV = UdpTnoSchema.IND_SRC_LAT.get (buffer, o) != 0L || UdpTnoSchema.IND_SRC_LON.get (buffer, o) != 0L;
+        batch.add
+          ( UdpTnoSchema.IND_SRC_PORT.getInt (buffer, o),
+            UdpTnoSchema.IND_DST_PORT.getInt (buffer, o),
+            UdpTnoSchema.IND_DST_PORT_INFO.getInt (buffer, o),
+            (byte) UdpTnoSchema.IND_TRAFFIC_CLASS.getInt (buffer, o),
+            remLifetime_s (buffer, o),
+            hasSrcPV ? UdpTnoSchema.IND_SRC_LAT.getDouble (buffer, o) : Double.NaN,
+            hasSrcPV ? UdpTnoSchema.IND_SRC_LON.getDouble (buffer, o) : Double.NaN,
+            o + UdpTnoSchema.IND_HEADER_SIZE,
+            UdpTnoSchema.IND_PAYLOAD_LENGTH.getInt (buffer, o));
+      }
+      o += (int) pduLength;
+    }
+    return o - offset;
+  }
+  
+  /** Parses a BTP Data Indication PDU and delivers it to a primitive (non-boxing) indication handler.
+   * 
+   * <p>
+   * The payload is not copied: it is passed to the handler at its offset in the {@code pdu} array,
+   * and is valid only for the duration of the call to
+   * {@link BtpSap_DataIndPrimitive#btpSapIndication}.
+   * Neither this method nor the decoding of the optional integer fields involve boxing;
+   * the source position vector (if present) is the only object created.
+   * 
+   * @param pdu     The array holding the PDU.
+   * @param offset  The offset of the PDU in the array.
+   * @param length  The length of the PDU.
+   * @param handler The handler to deliver the indication to, non-{@code null}.
+   * 
+   * @return Whether the PDU was valid (and delivered to the handler).
+   * 
+   * @throws IllegalArgumentException If the handler is {@code null}, or if the handler throws it.
+   * 
+   * @see #validateIndication
+   * 
+   */
+  public final static boolean parseIndication
+  ( final byte[] pdu,
+    final int offset,
+    final int length,
+    final BtpSap_DataIndPrimitive handler)
+  {
+    if (handler == null)
+      throw new IllegalArgumentException ();
+    final ByteBuffer buffer = pdu != null ? ByteBuffer.wrap (pdu) : null;
+    if (validateIndication (buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return false;
+    deliver (buffer, offset, pdu, null, handler);
+    return true;
+  }
+  
+  /** Parses a BTP Data Indication PDU and delivers it straight to a {@link BtpSap_DataInd}.
+   * 
+   * <p>
+   * The fields are passed to the offset-aware
+   * {@link BtpSap_DataInd#btpSapIndication(Integer, int, Integer, BtpSapTypes.GnDestination, BtpSapTypes.GnPositionVector,
+   * BtpSapTypes.GnSecurityReport, BtpSapTypes.GnCertificateId, BtpSapTypes.GnPermissions, BtpSapTypes.GnTrafficClass,
+   * Integer, int, int, byte[])}
+   * as they are decoded, without creating a {@link BtpSap_DataIndContainer}.
+   * The payload is passed by reference, at its offset in the {@code pdu} array,
+   * and is valid only for the duration of the call.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * @param target The indication target, non-{@code null}.
+   * 
+   * @return Whether the PDU was valid (and delivered to the target).
+   * 
+   * @throws IllegalArgumentException If the target is {@code null}, or if the target throws it.
+   * 
+   * @see #parseIndication(byte[], int, int, BtpSap_DataIndPrimitive)
+   * 
+   */
+  public final static boolean parseIndication
+  ( final byte[] pdu,
+    final int offset,
+    final int length,
+    final BtpSap_DataInd target)
+  {
+    if (target == null)
+      throw new IllegalArgumentException ();
+    final ByteBuffer buffer = pdu != null ? ByteBuffer.wrap (pdu) : null;
+    if (validateIndication (buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return false;
+    deliver (buffer, offset, pdu, target, null);
+    return true;
+  }
+  
+  /** Parses a BTP Data Indication PDU held in a (heap or direct) buffer and delivers it to a {@link BtpSap_DataInd}.
+   * 
+   * <p>
+   * The payload is passed as a slice of {@code pdu} to
+   * {@link BtpSap_DataInd#btpSapIndication(Integer, int, Integer, BtpSapTypes.GnDestination, BtpSapTypes.GnPositionVector,
+   * BtpSapTypes.GnSecurityReport, BtpSapTypes.GnCertificateId, BtpSapTypes.GnPermissions, BtpSapTypes.GnTrafficClass,
+   * Integer, ByteBuffer)}, so a PDU received into a direct buffer reaches the target without any heap copy
+   * (unless the target relies on the default implementation of that method).
+   * The payload is valid only for the duration of the call.
+   * The offset is absolute; the position and limit of the buffer are neither used nor changed.
+   * Otherwise, this method behaves as {@link #parseIndication(byte[], int, int, BtpSap_DataInd)}.
+   * 
+   * @param pdu    The buffer holding the PDU.
+   * @param offset The (absolute) offset of the PDU in the buffer.
+   * @param length The length of the PDU.
+   * @param target The indication target, non-{@code null}.
+   * 
+   * @return Whether the PDU was valid (and delivered to the target).
+   * 
+   * @throws IllegalArgumentException If the target is {@code null}, or if the target throws it.
+   * 
+   */
+  public final static boolean parseIndication
+  ( final ByteBuffer pdu,
+    final int offset,
+    final int length,
+    final BtpSap_DataInd target)
+  {
+    if (target == null)
+      throw new IllegalArgumentException ();
+    if (validateIndication (pdu, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return false;
+    deliver (pdu, offset, null, target, null);
+    return true;
+  }
+  
+  /** Decodes a (validated) BTP Data Indication PDU and delivers it to either a primitive handler or a target.
+   * 
+   * <p>
+   * If {@code pdu} is non-{@code null}, {@code buffer} wraps it, and the payload is passed at its offset in {@code pdu};
+   * otherwise, the payload is passed to the target as a slice of {@code buffer}.
+   * 
+   */
+  private static void deliver
+  (final ByteBuffer buffer,
+   final int offset,
+   final byte[] pdu,
+   final BtpSap_DataInd target,
+   final BtpSap_DataIndPrimitive handler)
+  {
+    final int btpSrcPort = UdpTnoSchema.IND_SRC_PORT.getInt (buffer, offset);
+    final int btpDstPort = UdpTnoSchema.IND_DST_PORT.getInt (buffer, offset);
+    final int btpDstPortInfo = UdpTnoSchema.IND_DST_PORT_INFO.getInt (buffer, offset);
+    // XXX Dst Latitude OR DstGnUc, Dst Longitude, Distance A, Distance B, Angle.
+    final BtpSapTypes.GnPositionVector gnSrcPV = srcPV (buffer, offset);
+    final BtpSapTypes.GnTrafficClass gnTrafficClass =
+      BtpSapTypes.DefaultGnTrafficClass.valueOf ((byte) UdpTnoSchema.IND_TRAFFIC_CLASS.getInt (buffer, offset));
+    final int gnRemLifetime_s = remLifetime_s (buffer, offset);
+    final int payloadOffset = payloadOffset (buffer, offset);
+    final int payloadLength = payloadLength (buffer, offset);
+    if (handler != null)
+      handler.btpSapIndication
+        ( btpSrcPort,
+          btpDstPort,
+          btpDstPortInfo,
+          null,
+          gnSrcPV,
+          null,
+          null,
+          null,
+          gnTrafficClass,
+          gnRemLifetime_s,
+          payloadOffset,
+          payloadLength,
+          pdu);
+    else if (pdu != null)
+      target.btpSapIndication
+        ( btpSrcPort,
+          btpDstPort,
+          btpDstPortInfo,
+          null,
+          gnSrcPV,
+          null,
+          null,
+          null,
+          gnTrafficClass,
+          BtpSap_DataIndPrimitive.box (gnRemLifetime_s),
+          payloadOffset,
+          payloadLength,
+          pdu);
+    else
+    {
+      final ByteBuffer payload = buffer.duplicate ();
+      payload.limit (payloadOffset + payloadLength);
+      payload.position (payloadOffset);
+      target.btpSapIndication
+        ( btpSrcPort,
+          btpDstPort,
+          btpDstPortInfo,
+          null,
+          gnSrcPV,
+          null,
+          null,
+          null,
+          gnTrafficClass,
+          BtpSap_DataIndPrimitive.box (gnRemLifetime_s),
+          payload);
+    }
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DECODE VERSION-DEPENDENT FIELDS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+ 
+  private static boolean isCompact (final ByteBuffer buffer, final int offset)
+  {
+    return UdpTnoSchema.IND_VERSION.getInt (buffer, offset) == VERSION_2;
+  }
+  
+  private static int compactLength (final ByteBuffer buffer, final int offset, final int length)
+  {
+    return UdpTnoSchema.compactLength
+      (buffer, offset, length, UdpTnoSchema.IND2_FIXED_SIZE, UdpTnoSchema.IND2_PRESENCE, UdpTnoSchema.IND2_OPTIONAL_SIZES);
+  }
+  
+  /** Returns the (absolute) index of an optional field in a (validated) compact indication PDU, or -1 if absent.
+   * 
+   */
+  private static int optionalIndex (final ByteBuffer buffer, final int offset, final int bit)
+  {
+    final int presence = UdpTnoSchema.IND2_PRESENCE.getInt (buffer, offset);
+    if ((presence & bit) == 0)
+      return -1;
+    return UdpTnoSchema.compactIndex
+      (buffer, presence, offset + UdpTnoSchema.IND2_FIXED_SIZE, UdpTnoSchema.IND2_OPTIONAL_SIZES, bit);
+  }
+  
+  /** Returns the source position vector of a (validated) indication PDU, or {@code null} if absent.
+   * 
+   * <p>
+   * In version 1, an all-zero source latitude and longitude denote an absent position vector (as written by the encoder).
+   * 
+   */
+  static BtpSapTypes.GnPositionVector srcPV (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
+    {
+      final int index = optionalIndex (buffer, offset, UdpTnoSchema.IND2_HAS_SRC_POSITION);
+      if (index < 0)
+        return null;
+      return new BtpSapTypes.DefaultGnPositionVector
+        (UdpTnoSchema.fromE7 ((int) UdpTnoSchema.POSITION2_LATITUDE_E7.get (buffer, index)),
+         UdpTnoSchema.fromE7 ((int) UdpTnoSchema.POSITION2_LONGITUDE_E7.get (buffer, index)));
+    }
+    if (UdpTnoSchema.IND_SRC_LAT.get (buffer, offset) == 0L && UdpTnoSchema.IND_SRC_LON.get (buffer, offset) == 0L)
+      return null;
+    return new BtpSapTypes.DefaultGnPositionVector
+      (UdpTnoSchema.IND_SRC_LAT.getDouble (buffer, offset), UdpTnoSchema.IND_SRC_LON.getDouble (buffer, offset));
+  }
+  
+  /** Returns the remaining lifetime in seconds (rounded up) of a (validated) indication PDU, {@link BtpSap_DataIndPrimitive#ABSENT} if absent (zero).
+   * 
+   */
+  static int remLifetime_s (final ByteBuffer buffer, final int offset)
+  {
+    final int remLifetime_ms = UdpTnoSchema.TIME_MS[UdpTnoSchema.IND_REM_LIFETIME.getInt (buffer, offset)];
+    return remLifetime_ms == 0 ? BtpSap_DataIndPrimitive.ABSENT : (remLifetime_ms + 999) / 1000;
+  }
+  
+  /** Returns the (absolute) index of the payload-length varint in a (validated) compact indication PDU.
+   * 
+   */
+  private static int payloadLengthIndex (final ByteBuffer buffer, final int offset)
+  {
+    return UdpTnoSchema.compactIndex
+      (buffer,
+       UdpTnoSchema.IND2_PRESENCE.getInt (buffer, offset),
+       offset + UdpTnoSchema.IND2_FIXED_SIZE,
+       UdpTnoSchema.IND2_OPTIONAL_SIZES,
+       1 << UdpTnoSchema.IND2_OPTIONAL_SIZES.length);
+  }
+  
+  /** Decodes the payload length from a (validated) indication PDU.
+   * 
+   */
+  static int payloadLength (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
+      return (int) UdpTnoSchema.getVarint (buffer, payloadLengthIndex (buffer, offset));
+    return UdpTnoSchema.IND_PAYLOAD_LENGTH.getInt (buffer, offset);
+  }
+  
+  /** Decodes the (absolute) payload offset from a (validated) indication PDU.
+   * 
+   */
+  static int payloadOffset (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
+      return UdpTnoSchema.varintEnd (buffer, payloadLengthIndex (buffer, offset), buffer.capacity ());
+    return offset + UdpTnoSchema.IND_HEADER_SIZE;
+  }
+  
 }
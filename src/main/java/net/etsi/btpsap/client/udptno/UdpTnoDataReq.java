@@ -17,16 +17,17 @@
 package net.etsi.btpsap.client.udptno;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.etsi.btpsap.BtpSapTypes;
 import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapValidationError;
 import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.BtpSap_DataReqPrimitive;
+import net.etsi.btpsap.MutableBtpSap_DataReq;
 
 /** Formatting and parsing UDP-TNO BtpSap Request PDUs.
  * 
@@ -61,21 +62,52 @@ public class UdpTnoDataReq
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
-  // MAGIC BYTES
+  // ITS AIDs
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-  private final static byte MAGIC_1 = (byte) (Integer.parseInt ("3d", 16) & 0xff);
-  private final static byte MAGIC_2 = (byte) (Integer.parseInt ("93", 16) & 0xff);
+	public static final long ITS_AID_CAM = 36;
+	public static final long ITS_AID_DENM = 37;
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
-  // ITS AIDs
+  // VERSIONS
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-	public static final long ITS_AID_CAM = 36;
-	public static final long ITS_AID_DENM = 37;
+  /** The original (fixed-layout) PDU format; the default for encoding.
+   * 
+   */
+  public final static int VERSION_1 = UdpTnoSchema.VERSION_1;
+  
+  /** The compact PDU format, see {@link UdpTnoSchema#VERSION_2}.
+   * 
+   * <p>
+   * Absent optional fields take no space, coordinates are encoded in units of 1e-7 degrees (and are thus rounded),
+   * and the payload is not padded.
+   * The first 16 bytes are laid out as in version 1, so {@link UdpTnoFilter}s apply to both versions.
+   * 
+   */
+  public final static int VERSION_2 = UdpTnoSchema.VERSION_2;
+  
+  /** Returns the version of a (request) PDU, allowing a receiver to answer a peer in its own version.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return The version, or -1 if the PDU is too short to hold a version or has the wrong magic.
+   * 
+   */
+  public final static int versionOf (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null || offset < 0 || length < UdpTnoSchema.REQ_VERSION.end () || offset > pdu.length - length)
+      return -1;
+    final ByteBuffer buffer = ByteBuffer.wrap (pdu);
+    if (UdpTnoSchema.REQ_MAGIC.getInt (buffer, offset) != UdpTnoSchema.REQ_MAGIC_VALUE)
+      return -1;
+    return UdpTnoSchema.REQ_VERSION.getInt (buffer, offset);
+  }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
@@ -83,6 +115,129 @@ public class UdpTnoDataReq
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+  /** The maximum size of a (request) PDU, including header, payload and padding.
+   * 
+   * <p>
+   * Implementation requires this to be a multiple of four.
+   * 
+   */
+  public final static int MAX_PDU_SIZE = 2048;
+  
+  /** The (fixed) size of the request-PDU header, i.e., the offset of the payload in the PDU.
+   * 
+   */
+  public final static int HEADER_SIZE = UdpTnoSchema.REQ_HEADER_SIZE;
+  
+  /** Returns the size of the PDU encoding given request, including 32-bit boundary padding.
+   * 
+   * <p>
+   * Callers may use this to size (or check the remaining space in) the buffer passed to
+   * {@link #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)}.
+   * 
+   * @param request The BTP Data Request.
+   * 
+   * @return The size of the PDU in bytes, or -1 if {@code request == null}.
+   * 
+   */
+  public final static int encodedSize (final BtpSap_DataReqContainer request)
+  {
+    if (request == null)
+      return -1;
+    return UdpTnoSchema.padded (HEADER_SIZE + request.getLength ());
+  }
+  
+  /** Returns the size of the PDU encoding given request in given version.
+   * 
+   * @param request The BTP Data Request.
+   * @param version The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The size of the PDU in bytes, or -1 if {@code request == null} or the version is unsupported.
+   * 
+   * @see #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer, int)
+   * 
+   */
+  public final static int encodedSize (final BtpSap_DataReqContainer request, final int version)
+  {
+    if (request == null)
+      return -1;
+    switch (version)
+    {
+      case VERSION_1:
+        return encodedSize (request);
+      case VERSION_2:
+      {
+        final BtpSapTypes.GnSecurityProfile gnSecurityProfile = request.getSecurityProfile ();
+        return compactSize
+          (request.getGnTransportType (),
+           request.getGnDestination (),
+           gnSecurityProfile,
+           packSsp (gnSecurityProfile != null ? gnSecurityProfile.getPermissions () : null),
+           request.getLength ());
+      }
+      default:
+        return -1;
+    }
+  }
+  
+  /** Returns the size of the PDU encoding given (mutable) request, including 32-bit boundary padding.
+   * 
+   * @param request The BTP Data Request.
+   * 
+   * @return The size of the PDU in bytes, or -1 if {@code request == null}.
+   * 
+   * @see #encodedSize(BtpSap_DataReqContainer)
+   * 
+   */
+  public final static int encodedSize (final MutableBtpSap_DataReq request)
+  {
+    if (request == null)
+      return -1;
+    return UdpTnoSchema.padded (HEADER_SIZE + request.getLength ());
+  }
+  
+  /** Returns the number of (zero) padding bytes following a payload of given length in given version.
+   * 
+   * <p>
+   * Version-1 PDUs are padded to a 32-bit boundary; compact version-2 PDUs are not padded.
+   * 
+   * @param payloadLength The payload length, non-negative.
+   * @param version       The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The number of padding bytes (between 0 and 3 inclusive).
+   * 
+   * @see #formatRequestHeader
+   * 
+   */
+  public final static int paddingSize (final int payloadLength, final int version)
+  {
+    return version == VERSION_1 ? UdpTnoSchema.padded (HEADER_SIZE + payloadLength) - HEADER_SIZE - payloadLength : 0;
+  }
+  
+  /** Encodes a set of unit ID's into the 16-bit unit mask of the PDU.
+   * 
+   * <p>
+   * Unit ID {@code i} (between 1 and 16 inclusive) maps onto bit {@code i - 1} of the mask.
+   * Illegal unit ID's are logged and ignored.
+   * 
+   * @param unitIds The ID's of the units, may be {@code null} (no units).
+   * 
+   * @return The unit mask.
+   * 
+   */
+  public final static int unitMask (final Set<Integer> unitIds)
+  {
+    int unitMask = 0;
+    if (unitIds != null)
+    {
+      for (final int unitId : unitIds)
+        if (unitId >= 1 && unitId <= 16)
+          unitMask |= (1 << (unitId - 1));
+        else
+          LOG.log (Level.WARNING, "Illegal unit number: {0}; ignored!", unitId);
+    }
+    return unitMask;
+  }
+  
   /** Creates a BTP Data Request PDU from given parameters.
    * 
    * @param request  The BTP Data Request (non-{@code null}).
@@ -91,6 +246,7 @@ public class UdpTnoDataReq
    * 
    * @return The BTP Data Request PDU, or {@code null} in case of a failure.
    * 
+   * @see #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)
    * @see #parseRequest
    * 
    */
@@ -98,323 +254,549 @@ public class UdpTnoDataReq
   {
     if (request == null)
       return null;
-    if (clientID < 0 || clientID > 127)
+    final int size = encodedSize (request);
+    if (size > MAX_PDU_SIZE)
+    {
+      LOG.log (Level.WARNING, "Payload size too large: {0} > {1} (maximum); request ignored!",
+        new Object[]{request.getLength (), MAX_PDU_SIZE - HEADER_SIZE});
       return null;
-    final int MAX_PDU_SIZE = 2048; // IMPLEMENTATION REQUIRES THIS TO BE MULTIPLE OF FOUR!
-    final byte[] pdu = new byte[MAX_PDU_SIZE];
-    int index = 0;
-    // 0, 1: MAGIC
-    pdu[index++] = MAGIC_1;
-    pdu[index++] = MAGIC_2;
-    // 2: version (1)
-    pdu[index++] = (byte) 1;
-    // 3: clientId
-    pdu[index++] = (byte) clientID;
-    // 4, 5: units
-    byte unitsHigh = 0;
-    byte unitsLow = 0;
-    if (unitIds != null)
+    }
+    final byte[] pdu = new byte[size];
+    if (formatRequest (request, clientID, unitMask (unitIds), ByteBuffer.wrap (pdu)) < 0)
+      return null;
+    return pdu;
+  }
+  
+  /** Encodes a BTP Data Request PDU into a buffer.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitIds  The ID's of the units to which the request applies (this is encoded into the PDU).
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * 
+   * @return The number of bytes written, or -1 in case of a failure.
+   * 
+   * @see #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)
+   * 
+   */
+  public final static int formatRequest
+  (final BtpSap_DataReqContainer request, final int clientID, final Set<Integer> unitIds, final ByteBuffer dst)
+  {
+    return formatRequest (request, clientID, unitMask (unitIds), dst);
+  }
+  
+  /** Encodes a BTP Data Request PDU into a buffer.
+   * 
+   * <p>
+   * The PDU is written at the position of {@code dst}, and upon success, the position is advanced by the number of bytes written.
+   * Upon failure, the position of the buffer is left unchanged, but its contents beyond the position may have been overwritten.
+   * The method does not allocate.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * 
+   * @return The number of bytes written (equal to {@link #encodedSize}), or -1 in case of a failure.
+   * 
+   * @see #parseRequest
+   * 
+   */
+  public final static int formatRequest
+  (final BtpSap_DataReqContainer request, final int clientID, final int unitMask, final ByteBuffer dst)
+  {
+    return formatRequest (request, clientID, unitMask, dst, VERSION_1);
+  }
+  
+  /** Encodes a BTP Data Request PDU into a buffer in given version.
+   * 
+   * <p>
+   * Otherwise, this method behaves as {@link #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)}.
+   * Payloads not backed by an accessible array (see {@link BtpSap_DataReqContainer#hasArray}) are copied
+   * straight from their (direct) buffer into {@code dst}.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * @param version  The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The number of bytes written (equal to {@link #encodedSize(BtpSap_DataReqContainer, int)}), or -1 in case of a failure.
+   * 
+   * @see #parseRequest
+   * 
+   */
+  public final static int formatRequest
+  (final BtpSap_DataReqContainer request, final int clientID, final int unitMask, final ByteBuffer dst, final int version)
+  {
+    if (request == null)
+      return -1;
+    final boolean hasArray = request.hasArray ();
+    return encode
+      (request.getBtpType (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpSrcPort ()),
+       request.getBtpDestinationPort (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpDstPortInfo ()),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.hasMaxLifetime () ? request.getMaxLifeTime_ms () : BtpSap_DataReqPrimitive.ABSENT,
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       hasArray ? request.getOffset () : 0,
+       request.getLength (),
+       hasArray ? request.getData () : null,
+       hasArray ? null : request.getPayloadBuffer (),
+       clientID,
+       unitMask,
+       version,
+       false,
+       dst);
+  }
+  
+  /** Encodes a BTP Data Request PDU into a buffer acquired from a pool.
+   * 
+   * <p>
+   * Upon success, the PDU occupies the bytes between the position (zero) and the limit of the handle's buffer;
+   * the caller owns the handle and must release it after use (e.g., after sending the PDU, on any thread).
+   * Upon failure, no buffer is held.
+   * Otherwise, this method behaves as {@link #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer, int)}.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param version  The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * @param pool     The pool to acquire the buffer from, non-{@code null}.
+   * 
+   * @return The handle of the buffer holding the PDU, or {@code null} in case of a failure
+   *         (including an exhausted pool, see {@link UdpTnoBufferPool#acquire}).
+   * 
+   */
+  public final static UdpTnoBufferPool.Handle formatRequest
+  (final BtpSap_DataReqContainer request, final int clientID, final int unitMask, final int version, final UdpTnoBufferPool pool)
+  {
+    final int size = encodedSize (request, version);
+    if (pool == null || size < 0 || size > MAX_PDU_SIZE)
+      return null;
+    final UdpTnoBufferPool.Handle handle = pool.acquire (size);
+    if (handle == null)
+      return null;
+    final ByteBuffer buffer = handle.getBuffer ();
+    if (formatRequest (request, clientID, unitMask, buffer, version) < 0)
     {
-      for (final int unitId : unitIds)
-        if (unitId >= 1 && unitId <= 8)
-          unitsLow |= (1 << (unitId - 1));
-        else if (unitId >= 9 && unitId <= 16)
-          unitsHigh |= (1 << (unitId - 9));
-        else
-          LOG.log (Level.WARNING, "Illegal unit number: {0}; ignored!", unitId);
+      handle.release ();
+      return null;
     }
-    pdu[index++] = unitsHigh;
-    pdu[index++] = unitsLow;
-    // 6: btpFlags
-    final int commProfileBits;
-    final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile = request.getCommunicationsProfile ();
-    if (gnCommunicationsProfile == null)
-      commProfileBits = 0; // Silently default to ITS-G5...
-    else
-      switch (gnCommunicationsProfile)
-      {
-        case GN_COMPROF_ITSG5:
-          commProfileBits = 0;
-          break;
-        case GN_COMPROF_CELLULAR:
-          commProfileBits = 1;
-          break;
-        default:
-          LOG.log (Level.WARNING, "Unknown communications profile {0}; request ignored!", gnCommunicationsProfile);
-          return null;
-      }
-    final int btpTypeBits;
-    final BtpType btpType = request.getBtpType (); // Non-null!
-    switch (btpType)
+    buffer.flip ();
+    return handle;
+  }
+  
+  /** Encodes only the header of a BTP Data Request PDU (i.e., the bytes in front of the payload) into a buffer.
+   * 
+   * <p>
+   * The header, followed by the request's payload and {@link #paddingSize} zero bytes,
+   * makes up the PDU written by {@link #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer, int)},
+   * so senders can gather the PDU from separate buffers without copying the payload, see {@link UdpTnoGatheringSender}.
+   * In either version, the header takes at most {@link #HEADER_SIZE} bytes.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * @param version  The version, {@link #VERSION_1} or {@link #VERSION_2}.
+   * 
+   * @return The number of header bytes written, or -1 in case of a failure.
+   * 
+   */
+  public final static int formatRequestHeader
+  (final BtpSap_DataReqContainer request, final int clientID, final int unitMask, final ByteBuffer dst, final int version)
+  {
+    if (request == null)
+      return -1;
+    final boolean hasArray = request.hasArray ();
+    return encode
+      (request.getBtpType (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpSrcPort ()),
+       request.getBtpDestinationPort (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpDstPortInfo ()),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.hasMaxLifetime () ? request.getMaxLifeTime_ms () : BtpSap_DataReqPrimitive.ABSENT,
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       hasArray ? request.getOffset () : 0,
+       request.getLength (),
+       hasArray ? request.getData () : null,
+       hasArray ? null : request.getPayloadBuffer (),
+       clientID,
+       unitMask,
+       version,
+       true,
+       dst);
+  }
+  
+  /** Encodes a (mutable) BTP Data Request PDU into a buffer.
+   * 
+   * <p>
+   * The request is validated first (see {@link MutableBtpSap_DataReq#validate}); invalid requests are not encoded.
+   * Otherwise, this method behaves as {@link #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)};
+   * in particular, it does not allocate, and the request may be released (e.g., into its pool) as soon as this method returns.
+   * 
+   * @param request  The BTP Data Request (non-{@code null}).
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * 
+   * @return The number of bytes written, or -1 in case of a failure.
+   * 
+   */
+  public final static int formatRequest
+  (final MutableBtpSap_DataReq request, final int clientID, final int unitMask, final ByteBuffer dst)
+  {
+    if (request == null || request.validate () != BtpSapValidationError.OK.ordinal ())
+      return -1;
+    return encode
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.getGnMaxLifetime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       request.getOffset (),
+       request.getLength (),
+       request.getData (),
+       null,
+       clientID,
+       unitMask,
+       VERSION_1,
+       false,
+       dst);
+  }
+  
+  /** Encodes a (validated) BTP Data Request PDU from primitive arguments into a buffer.
+   * 
+   * <p>
+   * Absent optional values are {@link BtpSap_DataReqPrimitive#ABSENT}.
+   * If {@code payloadBuffer} is non-{@code null}, the payload is taken from its remaining bytes
+   * (its position and limit are not changed), and {@code offset}, {@code length} and {@code data} are ignored.
+   * If {@code headerOnly} is set, only the bytes in front of the payload are written (and required to fit into {@code dst}),
+   * and their number is returned; the payload and padding are left to the caller, see {@link #paddingSize}.
+   * Package-private for {@link UdpTnoDirectEncoder}, {@link UdpTnoGatheringSender} and {@link UdpTnoRequestTemplate}.
+   * 
+   */
+  static int encode
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final BtpSapTypes.GnTransportType gnTransportType,
+   final BtpSapTypes.GnDestination gnDestination,
+   final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile,
+   final BtpSapTypes.GnSecurityProfile gnSecurityProfile,
+   final int gnMaxLifetime_ms,
+   final int gnMaxHopLimit,
+   final BtpSapTypes.GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data,
+   final ByteBuffer payloadBuffer,
+   final int clientID,
+   final int unitMask,
+   final int version,
+   final boolean headerOnly,
+   final ByteBuffer dst)
+  {
+    if (dst == null)
+      return -1;
+    if (version != VERSION_1 && version != VERSION_2)
     {
-      case BTP_A:
-        btpTypeBits = 0;
-        break;
-      case BTP_B:
-        btpTypeBits = 1;
-        break;
-      default:
-        LOG.log (Level.WARNING, "Unknown BTP Type {0}; request ignored!", btpType);
-        return null;
+      LOG.log (Level.WARNING, "Unsupported version: {0}; request ignored!", version);
+      return -1;
     }
-    pdu[index++] = (byte) ((commProfileBits << 4) + btpTypeBits);
-    // 7: gnTransportType
-    final int transportTypeNibble;
-    final BtpSapTypes.GnTransportType gnTransportType = request.getGnTransportType (); // Non-null!
-    switch (gnTransportType)
+    if (clientID < 0 || clientID > 127)
+      return -1;
+    // PAYLOAD
+    final int reqPayloadLength = payloadBuffer != null ? payloadBuffer.remaining () : length;
+    if (reqPayloadLength < 0)
     {
-      case GN_UC:
-        transportTypeNibble = 0;
-        break;
-      case GN_SHB:
-        transportTypeNibble = 1;
-        break;
-      case GN_TSB:
-        transportTypeNibble = 2;
-        break;
-      case GN_GBC:
-        transportTypeNibble = 3;
-        break;
-      case GN_AC:
-        transportTypeNibble = 4;
-        break;
-      default:
-        LOG.log (Level.WARNING, "Unknown GN Transport Type {0}; request ignored!", gnTransportType);
-        return null;
+      LOG.log (Level.WARNING, "Invalid payload size: {0}; request ignored!", reqPayloadLength);
+      return -1;      
     }
-    final int gnSubTypeNibble;
-    switch (gnTransportType)
+    final int reqPayloadOffset = payloadBuffer != null ? 0 : offset;
+    if (reqPayloadOffset < 0)
     {
-      case GN_UC:
-      case GN_SHB:
-      case GN_TSB:
-        gnSubTypeNibble = 0;
-        break;
-      case GN_GBC:
-      case GN_AC:
-        final BtpSapTypes.GnAreaShape gnAreaShape = request.getGnDestination ().getGnArea ().getAreaShape ();
-        switch (gnAreaShape)
-        {
-          case CIRCLE:
-            gnSubTypeNibble = 0;
-            break;
-          case RECTANGLE:
-            gnSubTypeNibble = 1;
-            break;
-          case ELLIPSE:
-            gnSubTypeNibble = 2;
-            break;
-          default:
-            LOG.log (Level.WARNING, "Unknown GN Area Shape {0}; request ignored!", gnAreaShape);
-            return null;
-        }
-        break;
-      default:
-        throw new RuntimeException ();
-    }
-    pdu[index++] = (byte) ((transportTypeNibble << 4) + gnSubTypeNibble);
-    // 8, 9: source port
-    final int srcPort = request.getBtpSrcPort () != null ? request.getBtpSrcPort () : 0;
-    pdu[index++] = (byte) ((srcPort & 0xff00) >> 8);
-    pdu[index++] = (byte) (srcPort & 0x00ff);
-    // 10: lifetime
-    pdu[index++] = encodeMaxLifetime (request.getMaxLifeTime_ms ());
-    // 11: Traffic Class
-    pdu[index++] = request.getGnTrafficClass ().toByte ();
-    // 12, 13: Destination Port
-    final int dstPort = request.getBtpDestinationPort (); // Non-null.
-    pdu[index++] = (byte) ((dstPort & 0xff00) >> 8);
-    pdu[index++] = (byte) (dstPort & 0x00ff);
-    // 14, 15: Destination Port Info [Optional]
-    final Integer btpDstPortInfo = request.getBtpDstPortInfo ();
-    pdu[index++] = (btpDstPortInfo != null ? (byte) ((btpDstPortInfo & 0xff00) >> 8) : (byte) 0);
-    pdu[index++] = (btpDstPortInfo != null ? (byte) (btpDstPortInfo & 0x00ff) : (byte) 0);
-    // 16: Hop Limit
-    pdu[index++] = (byte) (request.getGnMaxHopLimit () & 0xff);
-    // 17: Repetition Interval -> Unsupported by BtpSap (XXX).
-    pdu[index++] = (byte) 0; // Means disable completely.
-    // 18: Repitition Time -> Unsupported by BtpSap (XXX).
-    pdu[index++] = (byte) 0;
-    // 19: RESERVED_1 -> Set to 0x00.
-    pdu[index++] = (byte) 0;
-    // 20 - 27: LATITUDE [NOT GN_UC] or GN_UC_DST_ADDRESS [GN_UC]
-    final BtpSapTypes.GnDestination gnDestination = request.getGnDestination (); // Non-null.
-    switch (gnTransportType)
+      LOG.log (Level.WARNING, "Invalid payload offset: {0}; request ignored!", reqPayloadOffset);
+      return -1;      
+    }
+    final byte[] reqPayload = payloadBuffer != null ? null : data;
+    if (reqPayload == null && payloadBuffer == null && reqPayloadLength > 0)
     {
-      case GN_SHB:
-      case GN_TSB:
-        for (int i = 1; i <= 8; i++)
-          pdu[index++] = (byte) 0;
-        break;
-      case GN_UC:
-        final long gnUnicastAddress = gnDestination.getGnUnicastAddress ().toLong ();
-        pdu[index++] = (byte) ((gnUnicastAddress & 0xff00000000000000L) >> 56);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x00ff000000000000L) >> 48);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x0000ff0000000000L) >> 40);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x000000ff00000000L) >> 32);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x00000000ff000000L) >> 24);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x0000000000ff0000L) >> 16);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x000000000000ff00L) >>  8);
-        pdu[index++] = (byte) ((gnUnicastAddress & 0x00000000000000ffL));
-        break;        
-      case GN_GBC:
-      case GN_AC:
-        final double latitude = gnDestination.getGnArea ().getLatitude ();
-        final long latIEEE754Bits = Double.doubleToLongBits (latitude);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0xff00000000000000L) >> 56);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x00ff000000000000L) >> 48);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x0000ff0000000000L) >> 40);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x000000ff00000000L) >> 32);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x00000000ff000000L) >> 24);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x0000000000ff0000L) >> 16);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x000000000000ff00L) >>  8);
-        pdu[index++] = (byte) ((latIEEE754Bits & 0x00000000000000ffL));
-        break;        
-      default:
-        throw new RuntimeException ();
+      LOG.log (Level.WARNING, "Invalid payload length: {0} for null-provided payload data; request ignored!", reqPayloadLength);
+      return -1;            
     }
-    // 28 - 35: LONGITUDE
-    switch (gnTransportType)
+    if (reqPayload != null && reqPayloadOffset + reqPayloadLength > reqPayload.length)
     {
-      case GN_UC:
-      case GN_SHB:
-      case GN_TSB:
-        for (int i = 1; i <= 8; i++)
-          pdu[index++] = (byte) 0;
-        break;
-      case GN_GBC:
-      case GN_AC:
-        final double longitude = gnDestination.getGnArea ().getLongitude ();
-        final long lonIEEE754Bits = Double.doubleToLongBits (longitude);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0xff00000000000000L) >> 56);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x00ff000000000000L) >> 48);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x0000ff0000000000L) >> 40);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x000000ff00000000L) >> 32);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x00000000ff000000L) >> 24);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x0000000000ff0000L) >> 16);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x000000000000ff00L) >>  8);
-        pdu[index++] = (byte) ((lonIEEE754Bits & 0x00000000000000ffL));
-        break;
-      default:
-        throw new RuntimeException ();        
+      LOG.log (Level.WARNING, "Invalid payload specification: offset {0} + length {1} > payloadLength {2}; request ignored!",
+        new Object[]{reqPayloadOffset, reqPayloadLength, reqPayload.length});
+      return -1;
     }
-    // 36, 37: DISTANCE_A
-    // 38, 39: DISTANCE_B
-    // 40, 41: ANGLE
-    switch (gnTransportType)
+    // SECURITY PROFILE
+    final BtpSapTypes.GnPermissions gnPermissions = gnSecurityProfile != null ? gnSecurityProfile.getPermissions () : null;
+    final int reqSspLength = gnPermissions != null ? gnPermissions.getPermissionsLength () : 0;
+    if (reqSspLength > 8)
     {
-      case GN_UC:
-      case GN_SHB:
-      case GN_TSB:
-        for (int i = 1; i <= 6; i++)
-          pdu[index++] = (byte) 0;
-        break;
-      case GN_GBC:
-      case GN_AC:
-        // 3x uint16 in disguise...
-        final int distanceA = gnDestination.getGnArea ().getDistanceA_m () & 0xffff;
-        final int distanceB = gnDestination.getGnArea ().getDistanceA_m () & 0xffff;
-        final int angle = gnDestination.getGnArea ().getAngle_degrees () & 0xffff;
-        pdu[index++] = (byte) ((distanceA & 0xff00) >> 8);
-        pdu[index++] = (byte) ((distanceA & 0x00ff));
-        pdu[index++] = (byte) ((distanceB & 0xff00) >> 8);
-        pdu[index++] = (byte) ((distanceB & 0x00ff));
-        pdu[index++] = (byte) ((angle     & 0xff00) >> 8);
-        pdu[index++] = (byte) ((angle     & 0x00ff));
-        break;
-      default:
-        throw new RuntimeException ();        
-    }
-    // 42, 43: RESERVED_2
-    pdu[index++] = (byte) 0;
-    pdu[index++] = (byte) 0;
-    // 44 - 55: SECURITY PROFILE
-    // 44 - 47: ITS-AID
-    // 48 - 55: SSP BITS
-    final BtpSapTypes.GnSecurityProfile gnSecurityProfile = request.getSecurityProfile ();
-    if (gnSecurityProfile != null)
+      LOG.log (Level.WARNING, "SSP byte array too large (up to 8 supported): {0}; request ignored!", reqSspLength);
+      return -1;
+    }
+    // SSP bytes are right-aligned; zero-byte values on the left.
+    // They are packed into a (big-endian) long, which is the value of the 64-bit SSP field.
+    final long ssp = packSsp (gnPermissions);
+    final int size = version == VERSION_1
+      ? UdpTnoSchema.padded (HEADER_SIZE + reqPayloadLength)
+      : compactSize (gnTransportType, gnDestination, gnSecurityProfile, ssp, reqPayloadLength);
+    if (size > MAX_PDU_SIZE)
     {
-      // uint32 in disguise...
-      final long itsAid = gnSecurityProfile.getItsAid () & 0xffffffffL;
-      pdu[index++] = (byte) ((itsAid & 0xff000000L) >> 24);
-      pdu[index++] = (byte) ((itsAid & 0x00ff0000L) >> 16);
-      pdu[index++] = (byte) ((itsAid & 0x0000ff00L) >>  8);
-      pdu[index++] = (byte) ((itsAid & 0x000000ffL));
-      final BtpSapTypes.GnPermissions gnPermissions = gnSecurityProfile.getPermissions ();
-      if (gnPermissions != null && gnPermissions.getPermissionsArray () != null)
-      {
-        final byte[] reqSspBytes = gnPermissions.getPermissionsArray ();
-        if (reqSspBytes.length > 8)
-        {
-          LOG.log (Level.WARNING, "SSP byte array too large (up to 8 supported): {0}; request ignored!",
-            reqSspBytes.length);
-          return null;
-        }
-        final byte[] pduSspBytes = new byte[8]; // Initialized to zero-byte values!
-        if (reqSspBytes.length > 0)
-          System.arraycopy (reqSspBytes, 0, pduSspBytes, 8 - reqSspBytes.length, reqSspBytes.length);
-        int j = 0;
-        for (int i = 1; i <= 8; i++)
-          pdu[index++] = pduSspBytes[j++];
-      }
-      else
-        for (int i = 1; i <= 8; i++)
-          pdu[index++] = (byte) 0;
+      LOG.log (Level.WARNING, "Payload size too large: {0} > {1} (maximum); request ignored!",
+        new Object[]{reqPayloadLength, MAX_PDU_SIZE - HEADER_SIZE});
+      return -1;
     }
-    else
+    final int required = headerOnly ? size - reqPayloadLength - paddingSize (reqPayloadLength, version) : size;
+    if (required > dst.remaining ())
     {
-      for (int i = 1; i <= 12; i++)
-        pdu[index++] = (byte) 0;
+      LOG.log (Level.WARNING, "Insufficient buffer space: {0} < {1}; request ignored!",
+        new Object[]{dst.remaining (), required});
+      return -1;
     }
-    // 56 - 59: PAYLOAD LENGTH
-    final int reqPayloadLength = request.getLength ();
-    if (reqPayloadLength < 0)
+    // BTP FLAGS
+    final int commProfileBits = gnCommunicationsProfile == null
+      ? 0 // Silently default to ITS-G5...
+      : UdpTnoSchema.GN_COMM_PROFILE_CODES[gnCommunicationsProfile.ordinal ()];
+    if (commProfileBits < 0)
     {
-      LOG.log (Level.WARNING, "Invalid payload size: {0}; request ignored!", reqPayloadLength);
-      return null;      
+      LOG.log (Level.WARNING, "Unknown communications profile {0}; request ignored!", gnCommunicationsProfile);
+      return -1;
     }
-    final int reqPayloadOffset = request.getOffset ();
-    if (reqPayloadOffset < 0)
+    final int btpTypeBits = UdpTnoSchema.BTP_TYPE_CODES[btpType.ordinal ()];
+    if (btpTypeBits < 0)
     {
-      LOG.log (Level.WARNING, "Invalid payload offset: {0}; request ignored!", reqPayloadOffset);
-      return null;      
+      LOG.log (Level.WARNING, "Unknown BTP Type {0}; request ignored!", btpType);
+      return -1;
     }
-    final byte[] reqPayload = request.getData ();
-    if (reqPayload == null && reqPayloadLength > 0)
+    // GN TYPE
+    final int transportTypeNibble = UdpTnoSchema.GN_TRANSPORT_TYPE_CODES[gnTransportType.ordinal ()];
+    if (transportTypeNibble < 0)
     {
-      LOG.log (Level.WARNING, "Invalid payload length: {0} for null-provided payload data; request ignored!", reqPayloadLength);
-      return null;            
+      LOG.log (Level.WARNING, "Unknown GN Transport Type {0}; request ignored!", gnTransportType);
+      return -1;
     }
-    if (reqPayload != null && reqPayloadOffset + reqPayloadLength > reqPayload.length)
+    final BtpSapTypes.GnArea gnArea = UdpTnoSchema.HAS_GN_AREA[gnTransportType.ordinal ()] ? gnDestination.getGnArea () : null;
+    final int gnSubTypeNibble = gnArea != null ? UdpTnoSchema.GN_AREA_SHAPE_CODES[gnArea.getAreaShape ().ordinal ()] : 0;
+    if (gnSubTypeNibble < 0)
+    {
+      LOG.log (Level.WARNING, "Unknown GN Area Shape {0}; request ignored!", gnArea.getAreaShape ());
+      return -1;
+    }
+    // PREFIX (shared by all versions); absent/unsupported fields are left zero.
+    final int o = dst.position ();
+    UdpTnoSchema.clear (dst, o, version == VERSION_1 ? UdpTnoSchema.REQ_HEADER_SIZE : UdpTnoSchema.REQ2_FIXED_SIZE);
+    UdpTnoSchema.REQ_MAGIC.put (dst, o, UdpTnoSchema.REQ_MAGIC_VALUE);
+    UdpTnoSchema.REQ_VERSION.put (dst, o, version);
+    UdpTnoSchema.REQ_CLIENT_ID.put (dst, o, clientID);
+    UdpTnoSchema.REQ_UNITS.put (dst, o, unitMask);
+    UdpTnoSchema.REQ_BTP_FLAGS.put (dst, o, (commProfileBits << 4) + btpTypeBits);
+    UdpTnoSchema.REQ_GN_TYPE.put (dst, o, (transportTypeNibble << 4) + gnSubTypeNibble);
+    if (btpSrcPort != BtpSap_DataReqPrimitive.ABSENT)
+      UdpTnoSchema.REQ_SRC_PORT.put (dst, o, btpSrcPort);
+    if (gnMaxLifetime_ms != BtpSap_DataReqPrimitive.ABSENT)
+      UdpTnoSchema.REQ_LIFETIME.put (dst, o, UdpTnoSchema.encodeTime_ms (gnMaxLifetime_ms));
+    UdpTnoSchema.REQ_TRAFFIC_CLASS.put (dst, o, gnTrafficClass.toByte ());
+    UdpTnoSchema.REQ_DST_PORT.put (dst, o, btpDstPort);
+    if (btpDstPortInfo != BtpSap_DataReqPrimitive.ABSENT)
+      UdpTnoSchema.REQ_DST_PORT_INFO.put (dst, o, btpDstPortInfo);
+    UdpTnoSchema.REQ_HOP_LIMIT.put (dst, o, gnMaxHopLimit);
+    // Repetition Interval and Repetition Time -> Unsupported by BtpSap (XXX); zero (or absent) means disable completely.
+    final int payloadIndex;
+    if (version == VERSION_1)
+    {
+      if (gnTransportType == BtpSapTypes.GnTransportType.GN_UC)
+        UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.put (dst, o, gnDestination.getGnUnicastAddress ().toLong ());
+      else if (gnArea != null)
+      {
+        UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.putDouble (dst, o, gnArea.getLatitude ());
+        UdpTnoSchema.REQ_DST_LON.putDouble (dst, o, gnArea.getLongitude ());
+        UdpTnoSchema.REQ_DISTANCE_A.put (dst, o, gnArea.getDistanceA_m ());
+        UdpTnoSchema.REQ_DISTANCE_B.put (dst, o, gnArea.getDistanceB_m ());
+        UdpTnoSchema.REQ_ANGLE.put (dst, o, gnArea.getAngle_degrees ());
+      }
+      if (gnSecurityProfile != null)
+      {
+        UdpTnoSchema.REQ_ITS_AID.put (dst, o, gnSecurityProfile.getItsAid ());
+        UdpTnoSchema.REQ_SSP.put (dst, o, ssp);
+      }
+      UdpTnoSchema.REQ_PAYLOAD_LENGTH.put (dst, o, reqPayloadLength);
+      payloadIndex = o + UdpTnoSchema.REQ_HEADER_SIZE;
+    }
+    else
+    {
+      // OPTIONAL FIELDS, in presence-bit order; absent fields take no space.
+      int presence = 0;
+      int index = o + UdpTnoSchema.REQ2_FIXED_SIZE;
+      if (gnTransportType == BtpSapTypes.GnTransportType.GN_UC)
+      {
+        presence |= UdpTnoSchema.REQ2_HAS_GN_ADDRESS;
+        UdpTnoSchema.GN_ADDRESS2.put (dst, index, gnDestination.getGnUnicastAddress ().toLong ());
+        index += UdpTnoSchema.GN_ADDRESS2.size;
+      }
+      else if (gnArea != null)
+      {
+        presence |= UdpTnoSchema.REQ2_HAS_GN_AREA;
+        UdpTnoSchema.AREA2_LATITUDE_E7.put (dst, index, UdpTnoSchema.toE7 (gnArea.getLatitude ()));
+        UdpTnoSchema.AREA2_LONGITUDE_E7.put (dst, index, UdpTnoSchema.toE7 (gnArea.getLongitude ()));
+        UdpTnoSchema.AREA2_DISTANCE_A.put (dst, index, gnArea.getDistanceA_m ());
+        UdpTnoSchema.AREA2_DISTANCE_B.put (dst, index, gnArea.getDistanceB_m ());
+        UdpTnoSchema.AREA2_ANGLE.put (dst, index, gnArea.getAngle_degrees ());
+        index += UdpTnoSchema.AREA2_ANGLE.end ();
+      }
+      final long itsAid = gnSecurityProfile != null ? gnSecurityProfile.getItsAid () & 0xffffffffL : 0L;
+      if (itsAid != 0L)
+      {
+        presence |= UdpTnoSchema.REQ2_HAS_ITS_AID;
+        index = UdpTnoSchema.putVarint (dst, index, itsAid);
+      }
+      if (ssp != 0L)
+      {
+        presence |= UdpTnoSchema.REQ2_HAS_SSP;
+        UdpTnoSchema.SSP2.put (dst, index, ssp);
+        index += UdpTnoSchema.SSP2.size;
+      }
+      UdpTnoSchema.REQ2_PRESENCE.put (dst, o, presence);
+      payloadIndex = UdpTnoSchema.putVarint (dst, index, reqPayloadLength);
+    }
+    // PAYLOAD [if PayloadLength > 0].
+    dst.position (payloadIndex);
+    if (headerOnly)
+      return payloadIndex - o;
+    if (payloadBuffer != null)
+      dst.put (payloadBuffer.duplicate ());
+    else if (reqPayload != null)
+      dst.put (reqPayload, reqPayloadOffset, reqPayloadLength);
+    // 32-BIT BOUNDARY PADDING [VERSION 1 ONLY]
+    for (int index = payloadIndex + reqPayloadLength; index < o + size; index++)
+      dst.put (index, (byte) 0);
+    dst.position (o + size);
+    return size;
+  }
+  
+  /** Packs (right-aligned, at most 8) SSP bytes into a (big-endian) long.
+   * 
+   * <p>
+   * The bytes are read one by one, so that {@link BtpSapTypes.BaseGnPermissions} need not hand out a (defensive) copy.
+   * 
+   */
+  private static long packSsp (final BtpSapTypes.GnPermissions gnPermissions)
+  {
+    long ssp = 0L;
+    if (gnPermissions != null)
+    {
+      final int length = gnPermissions.getPermissionsLength ();
+      for (int i = 0; i < length; i++)
+        ssp = (ssp << 8) | (gnPermissions.getPermissionsByte (i) & 0xffL);
+    }
+    return ssp;
+  }
+  
+  /** Returns the size of a compact (version 2) request PDU.
+   * 
+   */
+  private static int compactSize
+  (final BtpSapTypes.GnTransportType gnTransportType,
+   final BtpSapTypes.GnDestination gnDestination,
+   final BtpSapTypes.GnSecurityProfile gnSecurityProfile,
+   final long ssp,
+   final int length)
+  {
+    int size = UdpTnoSchema.REQ2_FIXED_SIZE;
+    if (gnTransportType == BtpSapTypes.GnTransportType.GN_UC)
+      size += UdpTnoSchema.GN_ADDRESS2.size;
+    else if (gnTransportType != null && UdpTnoSchema.HAS_GN_AREA[gnTransportType.ordinal ()]
+      && gnDestination != null && gnDestination.getGnArea () != null)
+      size += UdpTnoSchema.AREA2_ANGLE.end ();
+    if (gnSecurityProfile != null)
     {
-      LOG.log (Level.WARNING, "Invalid payload specification: offset {0} + length {1} > payloadLength {2}; request ignored!",
-        new Object[]{reqPayloadOffset, reqPayloadLength, reqPayload.length});
-      return null;
+      final long itsAid = gnSecurityProfile.getItsAid () & 0xffffffffL;
+      if (itsAid != 0L)
+        size += UdpTnoSchema.varintSize (itsAid);
+      if (ssp != 0L)
+        size += UdpTnoSchema.SSP2.size;
     }
-    pdu[index++] = (byte) ((reqPayloadLength & 0x7f000000) >> 24);
-    pdu[index++] = (byte) ((reqPayloadLength & 0x00ff0000) >> 16);
-    pdu[index++] = (byte) ((reqPayloadLength & 0x0000ff00) >> 8);
-    pdu[index++] = (byte) ((reqPayloadLength & 0x000000ff));
-    // 60 - (60 + PayloadLength - 1): PAYLOAD [if PayloadLength > 0].
-    if (reqPayload != null)
+    return size + UdpTnoSchema.varintSize (length) + length;
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // FORMAT REQUESTS [BATCH]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Encodes a batch of BTP Data Request PDUs contiguously into a buffer.
+   * 
+   * <p>
+   * The PDUs are written back-to-back starting at the position of {@code dst}, which is advanced past the last PDU written.
+   * Because each PDU is padded to a 32-bit boundary, every PDU starts at a 32-bit offset from the initial position.
+   * The boundaries are reported in {@code pduEnds}: upon return, {@code pduEnds[i]} holds the buffer position just past
+   * the {@code i}th PDU encoded, so that PDU {@code i} occupies {@code [pduEnds[i-1], pduEnds[i])}
+   * (with the initial position of {@code dst} in lieu of {@code pduEnds[-1]}).
+   * 
+   * <p>
+   * Encoding stops at the first request that does not fit into the remaining space of the buffer, or that cannot be encoded;
+   * the return value then tells the caller at which request to resume (or which request to drop).
+   * The method does not allocate.
+   * 
+   * @param reqs     The requests.
+   * @param off      The index of the first request in {@code reqs}.
+   * @param n        The number of requests to encode.
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link #unitMask}.
+   * @param dst      The buffer to write into (heap or direct), starting at its position.
+   * @param pduEnds  The array to receive the PDU boundaries, with length at least {@code n}.
+   * 
+   * @return The number of PDUs encoded, starting with {@code reqs[off]}, or -1 in case of illegal arguments.
+   * 
+   * @see #formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)
+   * 
+   */
+  public final static int formatRequests
+  (final BtpSap_DataReqContainer[] reqs,
+   final int off,
+   final int n,
+   final int clientID,
+   final int unitMask,
+   final ByteBuffer dst,
+   final int[] pduEnds)
+  {
+    if (reqs == null || off < 0 || n < 0 || off > reqs.length - n)
+      return -1;
+    if (dst == null || pduEnds == null || pduEnds.length < n)
+      return -1;
+    int count = 0;
+    while (count < n)
     {
-      if (index + reqPayloadLength > MAX_PDU_SIZE)
-      {
-        LOG.log (Level.WARNING, "Payload size too large: {1} > {2} (maximum); request ignored!",
-          new Object[]{reqPayloadLength, MAX_PDU_SIZE - index});
-        return null;
-      }
-      System.arraycopy (reqPayload, reqPayloadOffset, pdu, index, reqPayloadLength);
-      index += reqPayloadLength;
+      final BtpSap_DataReqContainer request = reqs[off + count];
+      if (request == null || encodedSize (request) > dst.remaining ())
+        break;
+      if (formatRequest (request, clientID, unitMask, dst) < 0)
+        break;
+      pduEnds[count++] = dst.position ();
     }
-    // 60 + PayloadLength 32-BIT BOUNDARY PADDING
-    while (index % 4 != 0)
-      pdu[index++] = (byte) 0;
-    // Trim the PDU; at this point 'index' holds the actual (trimmed) PDU size.
-    final int trimmedPduLength = index;
-    final byte[] trimmedPdu = new byte[trimmedPduLength];
-    System.arraycopy (pdu, 0, trimmedPdu, 0, trimmedPduLength);
-    return trimmedPdu;
+    return count;
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -423,6 +805,136 @@ public class UdpTnoDataReq
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+  /** Validates a BTP Data Request PDU, without throwing or logging.
+   * 
+   * <p>
+   * Each rejection is counted in its {@link BtpSapValidationError}.
+   * The array is wrapped in a (short-lived) {@link ByteBuffer};
+   * callers holding a buffer (e.g., a re-used receive buffer) should use the allocation-free
+   * {@link #validateRequest(ByteBuffer, int, int)} instead.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see #parseRequest
+   * 
+   */
+  public final static int validateRequest (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null)
+      return BtpSapValidationError.NULL_PDU.reject ();
+    if (offset < 0 || length < 0 || offset > pdu.length - length)
+      return BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
+    return validateRequest (ByteBuffer.wrap (pdu), offset, length);
+  }
+  
+  /** Validates a BTP Data Request PDU held in a (heap or direct) buffer, without throwing, logging or allocating.
+   * 
+   * <p>
+   * The offset is absolute; the position and limit of the buffer are neither used nor changed.
+   * Each rejection is counted in its {@link BtpSapValidationError}.
+   * 
+   * @param buffer The buffer holding the PDU.
+   * @param offset The (absolute) offset of the PDU in the buffer.
+   * @param length The length of the PDU.
+   * 
+   * @return The status, i.e., the ordinal of the {@link BtpSapValidationError}; zero ({@link BtpSapValidationError#OK}) if valid.
+   * 
+   * @see #validateRequest(byte[], int, int)
+   * 
+   */
+  public final static int validateRequest (final ByteBuffer buffer, final int offset, final int length)
+  {
+    if (buffer == null)
+      return BtpSapValidationError.NULL_PDU.reject ();
+    if (offset < 0 || length < 0 || offset > buffer.capacity () - length)
+      return BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
+    final int prefixStatus = validateRequestPrefix (buffer, offset, length);
+    if (prefixStatus != BtpSapValidationError.OK.ordinal ())
+      return prefixStatus;
+    final int btpFlags = UdpTnoSchema.REQ_BTP_FLAGS.getInt (buffer, offset);
+    if (UdpTnoSchema.GN_COMM_PROFILES[btpFlags >> 4] == null)
+      return BtpSapValidationError.UNKNOWN_GN_COMM_PROFILE.reject ();
+    if (UdpTnoSchema.BTP_TYPES[btpFlags & 0x0f] == null)
+      return BtpSapValidationError.UNKNOWN_BTP_TYPE.reject ();
+    final int gnType = UdpTnoSchema.REQ_GN_TYPE.getInt (buffer, offset);
+    final BtpSapTypes.GnTransportType gnTransportType = UdpTnoSchema.GN_TRANSPORT_TYPES[gnType >> 4];
+    if (gnTransportType == null)
+      return BtpSapValidationError.UNKNOWN_GN_TRANSPORT_TYPE.reject ();
+    if (UdpTnoSchema.HAS_GN_AREA[gnTransportType.ordinal ()] && UdpTnoSchema.GN_AREA_SHAPES[gnType & 0x0f] == null)
+      return BtpSapValidationError.UNKNOWN_GN_AREA_SHAPE.reject ();
+    return validateRequestLength (buffer, offset, length);
+  }
+  
+  /** Checks the PDU length against the (fixed) header size, the magic and the version.
+   * 
+   */
+  private static int validateRequestPrefix (final ByteBuffer buffer, final int offset, final int length)
+  {
+    if (length < UdpTnoSchema.REQ2_FIXED_SIZE)
+      return BtpSapValidationError.PDU_TOO_SHORT.reject ();
+    // Check magic: 0x3d93.
+    if (UdpTnoSchema.REQ_MAGIC.getInt (buffer, offset) != UdpTnoSchema.REQ_MAGIC_VALUE)
+      return BtpSapValidationError.MAGIC_MISMATCH.reject ();
+    // Check version: 0x01 and 0x02 supported.
+    switch (UdpTnoSchema.REQ_VERSION.getInt (buffer, offset))
+    {
+      case VERSION_1:
+        if (length < UdpTnoSchema.REQ_HEADER_SIZE)
+          return BtpSapValidationError.PDU_TOO_SHORT.reject ();
+        return BtpSapValidationError.OK.ordinal ();
+      case VERSION_2:
+        return BtpSapValidationError.OK.ordinal ();
+      default:
+        return BtpSapValidationError.UNSUPPORTED_VERSION.reject ();
+    }
+  }
+  
+  /** Checks the PDU length against the payload length.
+   * 
+   */
+  private static int validateRequestLength (final ByteBuffer buffer, final int offset, final int length)
+  {
+    if (UdpTnoSchema.REQ_VERSION.getInt (buffer, offset) == VERSION_2)
+    {
+      // Compact PDUs are never padded; the presence bitmap, varints and payload length must add up exactly.
+      if (UdpTnoSchema.compactLength
+        (buffer, offset, length, UdpTnoSchema.REQ2_FIXED_SIZE, UdpTnoSchema.REQ2_PRESENCE, UdpTnoSchema.REQ2_OPTIONAL_SIZES) != length)
+        return BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+      return BtpSapValidationError.OK.ordinal ();
+    }
+    // Note JdJ20181214: The AlixCommunicationProvider does not align the request onto
+    // 32-bit boundary.
+    // And, there is really no need to do so.
+    // So, instead, we make it optional.
+    final long payloadLength = UdpTnoSchema.REQ_PAYLOAD_LENGTH.get (buffer, offset);
+    final long payloadAndPaddingLength = (payloadLength + 3) & ~3L;
+    if (length != UdpTnoSchema.REQ_HEADER_SIZE + payloadLength
+      && length != UdpTnoSchema.REQ_HEADER_SIZE + payloadAndPaddingLength)
+      return BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH.reject ();
+    return BtpSapValidationError.OK.ordinal ();
+  }
+  
+  /** Parses a BTP Data Request PDU.
+   * 
+   * <p>
+   * Malformed PDUs are dropped (returning {@code null}) without throwing;
+   * the reason is counted in {@link BtpSapValidationError} (and logged at {@link Level#FINE}).
+   * 
+   * @param pdu               The array holding the PDU.
+   * @param offset            The offset of the PDU in the array.
+   * @param length            The length of the PDU.
+   * @param clientIdContainer An optional container for the client ID, set if the PDU prefix is valid.
+   * @param unitIdContainer   An optional container for the unit IDs, set if the PDU prefix is valid.
+   * 
+   * @return The BTP Data Request, or {@code null} in case of a failure.
+   * 
+   * @see #validateRequest
+   * 
+   */
   public final static BtpSap_DataReqContainer parseRequest
   ( final byte[] pdu,
     final int offset,
@@ -430,256 +942,348 @@ public class UdpTnoDataReq
     AtomicInteger clientIdContainer,
     final Set<Integer> unitIdContainer)
   {
-    if (pdu == null)
+    final ByteBuffer buffer = pdu != null ? ByteBuffer.wrap (pdu) : null;
+    final int status = validateRequest (buffer, offset, length);
+    if (BtpSapValidationError.isPduPrefixError (status))
     {
-      LOG.log (Level.SEVERE, "Received null PDU!");
+      LOG.log (Level.FINE, "Dropping invalid BTP/UDP[TNO] packet: {0}.", BtpSapValidationError.valueOf (status));
       return null;
     }
-    if (offset < 0 || length < 0 || offset + length > pdu.length)
+    final int clientId = UdpTnoSchema.REQ_CLIENT_ID.getInt (buffer, offset);
+    if (clientIdContainer != null)
+      clientIdContainer.set (clientId);
+    // Extract set of units (servers) to which the request applies.
+    createUnitIdContainer (UdpTnoSchema.REQ_UNITS.getInt (buffer, offset), unitIdContainer);
+    if (status != BtpSapValidationError.OK.ordinal ())
     {
-      LOG.log (Level.WARNING, "Received UDP packet with invalid size and/or offset!");
+      if (LOG.isLoggable (Level.FINE))
+        LOG.log (Level.FINE, "Dropping invalid BTP/UDP[TNO] packet from client ID {0}: {1}.",
+          new Object[] {clientId, BtpSapValidationError.valueOf (status)});
       return null;
     }
-    if (length < 60)
+    LOG.log (Level.FINE, "Received Data Request from client ID {0}.", clientId);
+    final int btpFlags = UdpTnoSchema.REQ_BTP_FLAGS.getInt (buffer, offset);
+    final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile = UdpTnoSchema.GN_COMM_PROFILES[btpFlags >> 4];
+    final BtpSapTypes.BtpType btpType = UdpTnoSchema.BTP_TYPES[btpFlags & 0x0f];
+    final int gnType = UdpTnoSchema.REQ_GN_TYPE.getInt (buffer, offset);
+    final BtpSapTypes.GnTransportType gnTransportType = UdpTnoSchema.GN_TRANSPORT_TYPES[gnType >> 4];
+    final int sourcePort = UdpTnoSchema.REQ_SRC_PORT.getInt (buffer, offset);
+    final int lifetime_ms = UdpTnoSchema.TIME_MS[UdpTnoSchema.REQ_LIFETIME.getInt (buffer, offset)];
+    final BtpSapTypes.GnTrafficClass gnTrafficClass =
+      BtpSapTypes.DefaultGnTrafficClass.valueOf ((byte) UdpTnoSchema.REQ_TRAFFIC_CLASS.getInt (buffer, offset));
+    final int destinationPort = UdpTnoSchema.REQ_DST_PORT.getInt (buffer, offset);
+    final int destinationPortInfo = UdpTnoSchema.REQ_DST_PORT_INFO.getInt (buffer, offset);
+    final int hopLimit = UdpTnoSchema.REQ_HOP_LIMIT.getInt (buffer, offset);
+    final int repInterval_ms = UdpTnoSchema.TIME_MS[decodeRepInterval (buffer, offset)];
+    final int repTime_ms = UdpTnoSchema.TIME_MS[decodeRepTime (buffer, offset)];
+    final BtpSapTypes.GnDestination gnDestination = decodeGnDestination (buffer, offset, gnTransportType, gnType);
+    final BtpSapTypes.GnSecurityProfile gnSecurityProfile = decodeGnSecurityProfile
+      (pdu, buffer, offset, gnCommunicationsProfile, btpType, gnTransportType, destinationPort);
+    final int payloadLength = payloadLength (buffer, offset);
+    final BtpSap_DataReqContainer reqContainer = BtpSap_DataReqContainer.tryCreate
+      (btpType, sourcePort, destinationPort, destinationPortInfo,
+       gnTransportType, gnDestination, gnCommunicationsProfile, gnSecurityProfile,
+       lifetime_ms, repInterval_ms, repTime_ms, hopLimit, gnTrafficClass,
+       payloadLength, payloadOffset (buffer, offset), pdu);
+    if (reqContainer == null)
     {
-      LOG.log (Level.WARNING, "Received UDP packet with invalid size!");
-      return null;
+      BtpSapValidationError.ILLEGAL_PRIMITIVE.reject ();
+      if (LOG.isLoggable (Level.FINE))
+        LOG.log (Level.FINE, "Dropping invalid BTP/UDP[TNO] packet from client ID {0}: {1}.",
+          new Object[] {clientId, BtpSapValidationError.ILLEGAL_PRIMITIVE});
     }
-    // Check magic: 0x3d93.
-    if (pdu[offset] != MAGIC_1 || pdu[offset + 1] != MAGIC_2)
+    return reqContainer;
+  }
+  
+  /** Parses a BTP Data Request PDU lazily.
+   * 
+   * <p>
+   * Only the framing of the PDU (header size, magic, version and payload length) is validated;
+   * all other fields are decoded on demand by the getters of the returned object, see {@link UdpTnoLazyDataReq}.
+   * Consumers that need only a few fields (e.g., for routing on the destination port)
+   * thus pay for little more than a header peek.
+   * The payload is not copied; the {@code pdu} array must not be modified or recycled while the container is in use.
+   * 
+   * <p>
+   * Like {@link #parseRequest}, malformed PDUs are dropped (returning {@code null}) without throwing,
+   * and the reason is counted in {@link BtpSapValidationError}.
+   * 
+   * @param pdu     The array holding the PDU.
+   * @param offset  The offset of the PDU in the array.
+   * @param length  The length of the PDU.
+   * @param memoize Whether the container memoizes object-valued fields after their first decoding.
+   * 
+   * @return The (lazy) BTP Data Request, or {@code null} in case of a failure.
+   * 
+   */
+  public final static UdpTnoLazyDataReq parseRequestLazy
+  ( final byte[] pdu,
+    final int offset,
+    final int length,
+    final boolean memoize)
+  {
+    if (pdu == null)
     {
-      LOG.log (Level.WARNING, "Received UDP packet with magic mismatch (!= 0x3d93)!");
+      BtpSapValidationError.NULL_PDU.reject ();
       return null;
     }
-    // Check version: only 0x01 supported.
-    if (pdu[offset + 2] != 1)
+    if (offset < 0 || length < 0 || offset > pdu.length - length)
     {
-      LOG.log (Level.WARNING, "Received UDP packet with unsupported version number: {0}.", pdu[offset + 2]);
+      BtpSapValidationError.ILLEGAL_PDU_BOUNDS.reject ();
       return null;
     }
-    final int clientId = pdu[offset + 3] & 0xff;
-    if (clientIdContainer != null)
-      clientIdContainer.set (clientId);
-    LOG.log (Level.FINE, "Received Data Request from client ID {0}.", clientId);
-    // Extract set of units (servers) to which the request applies.
-    final int unitsHigh = pdu[offset + 4] & 0xff;
-    final int unitsLow  = pdu[offset + 5] & 0xff;
-    createUnitIdContainer (unitsHigh, unitsLow, unitIdContainer);
-    boolean error = false;
-    final List<String> errorMessages = new ArrayList<> ();
-    final byte btpFlags = pdu[offset + 6];
-    final int communicationsProfileBits = (((int) btpFlags) & 0xff) >> 4;
-    final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile;
-    switch (communicationsProfileBits)
-    {
-      case 0:
-        gnCommunicationsProfile = BtpSapTypes.GnCommunicationsProfile.GN_COMPROF_ITSG5;
-        break;
-      case 1:
-        gnCommunicationsProfile = BtpSapTypes.GnCommunicationsProfile.GN_COMPROF_CELLULAR;
-        break;
-      default:
-        gnCommunicationsProfile = null;
-        error = true;
-        errorMessages.add ("Unknown Communications Profile: " + communicationsProfileBits + ".");
-        break;
-    }
-    final int btpTypeBits = (((int) btpFlags) & 0x0f);
-    final BtpSapTypes.BtpType btpType;
-    switch (btpTypeBits)
+    final ByteBuffer buffer = ByteBuffer.wrap (pdu);
+    if (validateRequestPrefix (buffer, offset, length) != BtpSapValidationError.OK.ordinal ()
+      || validateRequestLength (buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return null;
+    return new UdpTnoLazyDataReq (pdu, offset, memoize);
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DECODE VERSION-DEPENDENT FIELDS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+ 
+  /** Returns the (absolute) index of an optional field in a (validated) compact request PDU, or -1 if absent.
+   * 
+   */
+  private static int optionalIndex (final ByteBuffer buffer, final int offset, final int bit)
+  {
+    final int presence = UdpTnoSchema.REQ2_PRESENCE.getInt (buffer, offset);
+    if ((presence & bit) == 0)
+      return -1;
+    return UdpTnoSchema.compactIndex
+      (buffer, presence, offset + UdpTnoSchema.REQ2_FIXED_SIZE, UdpTnoSchema.REQ2_OPTIONAL_SIZES, bit);
+  }
+  
+  /** Returns the (absolute) index of the payload-length varint in a (validated) compact request PDU.
+   * 
+   */
+  private static int payloadLengthIndex (final ByteBuffer buffer, final int offset)
+  {
+    return UdpTnoSchema.compactIndex
+      (buffer,
+       UdpTnoSchema.REQ2_PRESENCE.getInt (buffer, offset),
+       offset + UdpTnoSchema.REQ2_FIXED_SIZE,
+       UdpTnoSchema.REQ2_OPTIONAL_SIZES,
+       1 << UdpTnoSchema.REQ2_OPTIONAL_SIZES.length);
+  }
+  
+  private static boolean isCompact (final ByteBuffer buffer, final int offset)
+  {
+    return UdpTnoSchema.REQ_VERSION.getInt (buffer, offset) == VERSION_2;
+  }
+  
+  /** Decodes the payload length from a (validated) request PDU.
+   * 
+   */
+  static int payloadLength (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
+      return (int) UdpTnoSchema.getVarint (buffer, payloadLengthIndex (buffer, offset));
+    return UdpTnoSchema.REQ_PAYLOAD_LENGTH.getInt (buffer, offset);
+  }
+  
+  /** Decodes the (absolute) payload offset from a (validated) request PDU.
+   * 
+   */
+  static int payloadOffset (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
     {
-      case 0:
-        btpType = BtpSapTypes.BtpType.BTP_A;
-        break;
-      case 1:
-        btpType = BtpSapTypes.BtpType.BTP_B;
-        break;
-      default:
-        btpType = null;
-        error = true;
-        errorMessages.add ("Unknown BTP Type: " + btpTypeBits + ".");
-        break;
+      final int index = payloadLengthIndex (buffer, offset);
+      return UdpTnoSchema.varintEnd (buffer, index, buffer.capacity ());
     }
-    final byte gnTypeByte = pdu[offset + 7];
-    final int gnTypeNibble = (((int) gnTypeByte) & 0xff) >> 4;
-    final BtpSapTypes.GnTransportType gnTransportType;
-    switch (gnTypeNibble)
+    return offset + UdpTnoSchema.REQ_HEADER_SIZE;
+  }
+  
+  /** Decodes the (encoded) repetition interval from a (validated) request PDU; zero if absent.
+   * 
+   */
+  static int decodeRepInterval (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
     {
-      case 0:
-        gnTransportType = BtpSapTypes.GnTransportType.GN_UC;
-        break;
-      case 1:
-        gnTransportType = BtpSapTypes.GnTransportType.GN_SHB;
-        break;
-      case 2:
-        gnTransportType = BtpSapTypes.GnTransportType.GN_TSB;
-        break;
-      case 3:
-        gnTransportType = BtpSapTypes.GnTransportType.GN_GBC;
-        break;
-      case 4:
-        gnTransportType = BtpSapTypes.GnTransportType.GN_AC;
-        break;
-      default:
-        gnTransportType = null;
-        error = true;
-        errorMessages.add ("Unknown GeoNetworking Transport Type: " + gnTypeNibble + ".");
-        break;
+      final int index = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_REPETITION);
+      return index < 0 ? 0 : UdpTnoSchema.REPETITION2_INTERVAL.getInt (buffer, index);
     }
-    final int sourcePort = ((pdu[offset + 8] & 0xff) << 8) + (pdu[offset + 9] & 0xff);
-    final byte lifeTimeByte = pdu[offset + 10];
-    final int lifeTimeMultiplier = (((int) lifeTimeByte) & 0xff) >> 2;
-    final int lifeTimeBaseBits = ((int) lifeTimeByte) & 0x03;
-    final int lifeTimeBase_ms;
-    switch (lifeTimeBaseBits)
+    return UdpTnoSchema.REQ_REP_INTERVAL.getInt (buffer, offset);
+  }
+  
+  /** Decodes the (encoded) maximum repetition time from a (validated) request PDU; zero if absent.
+   * 
+   */
+  static int decodeRepTime (final ByteBuffer buffer, final int offset)
+  {
+    if (isCompact (buffer, offset))
     {
-      case 0:
-        lifeTimeBase_ms = 50;
-        break;
-      case 1:
-        lifeTimeBase_ms = 1000;
-        break;
-      case 2:
-        lifeTimeBase_ms = 10000;
-        break;
-      case 3:
-        lifeTimeBase_ms = 100000;
-        break;
-      default:
-        lifeTimeBase_ms = 0;
-        error = true;
-        errorMessages.add ("Unknown Lifetime Base: " + lifeTimeBaseBits + ".");
-        break;
+      final int index = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_REPETITION);
+      return index < 0 ? 0 : UdpTnoSchema.REPETITION2_TIME.getInt (buffer, index);
     }
-    final int lifetime_ms = lifeTimeMultiplier * lifeTimeBase_ms;
-    final byte tcByte = pdu[offset + 11];
-    final BtpSapTypes.GnTrafficClass gnTrafficClass = new BtpSapTypes.DefaultGnTrafficClass (tcByte);
-    final int destinationPort = ((pdu[offset + 12] & 0xff) << 8) + (pdu[offset + 13] & 0xff);
-    final int destinationPortInfo = ((pdu[offset + 14] & 0xff) << 8) + (pdu[offset + 15] & 0xff);
-    final int hopLimit = pdu[offset + 16] & 0xff;
-    final byte repIntervalByte = pdu[offset + 17];
-    final int repIntervalMultiplier = (((int) repIntervalByte) & 0xff) >> 2;
-    final int repIntervalBaseBits = ((int) repIntervalByte) & 0x03;
-    final int repIntervalBase_ms;
-    switch (repIntervalBaseBits)
-    {
-      case 0:
-        repIntervalBase_ms = 50;
-        break;
-      case 1:
-        repIntervalBase_ms = 1000;
-        break;
-      case 2:
-        repIntervalBase_ms = 10000;
-        break;
-      case 3:
-        repIntervalBase_ms = 100000;
-        break;
+    return UdpTnoSchema.REQ_REP_TIME.getInt (buffer, offset);
+  }
+  
+  /** Decodes the GN destination (unicast address or area) from a request PDU.
+   * 
+   * @return The GN destination, or {@code null} if not applicable (SHB/TSB) or if the transport type or area shape is unknown.
+   * 
+   */
+  static BtpSapTypes.GnDestination decodeGnDestination
+  (final ByteBuffer buffer,
+   final int offset,
+   final BtpSapTypes.GnTransportType gnTransportType,
+   final int gnType)
+  {
+    if (gnTransportType == null)
+      return null;
+    switch (gnTransportType)
+    {
+      case GN_UC:
+        // XXX Error checking on the address??
+        final long address;
+        if (isCompact (buffer, offset))
+        {
+          final int index = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_GN_ADDRESS);
+          address = index < 0 ? 0L : UdpTnoSchema.GN_ADDRESS2.get (buffer, index);
+        }
+        else
+          address = UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.get (buffer, offset);
+        return new BtpSapTypes.DefaultGnDestination (new BtpSapTypes.DefaultGnAddress (address));
+      case GN_GBC:
+      case GN_AC:
+        final BtpSapTypes.GnAreaShape gnAreaShape = UdpTnoSchema.GN_AREA_SHAPES[gnType & 0x0f];
+        if (gnAreaShape == null)
+          return null;
+        if (isCompact (buffer, offset))
+        {
+          // Absent areas decode as all-zero, like in version 1.
+          final int index = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_GN_AREA);
+          if (index < 0)
+            return BtpSapTypes.DefaultGnDestination.valueOf (gnAreaShape, 0.0, 0.0, 0, 0, 0);
+          // Both (E7) coordinates in the first key, nothing in the second.
+          return areaDestination
+            (gnAreaShape,
+             true,
+             (UdpTnoSchema.AREA2_LATITUDE_E7.get (buffer, index) << 32) | UdpTnoSchema.AREA2_LONGITUDE_E7.get (buffer, index),
+             0L,
+             UdpTnoSchema.AREA2_DISTANCE_A.getInt (buffer, index),
+             UdpTnoSchema.AREA2_DISTANCE_B.getInt (buffer, index),
+             UdpTnoSchema.AREA2_ANGLE.getInt (buffer, index));
+        }
+        return areaDestination
+          (gnAreaShape,
+           false,
+           UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.get (buffer, offset),
+           UdpTnoSchema.REQ_DST_LON.get (buffer, offset),
+           UdpTnoSchema.REQ_DISTANCE_A.getInt (buffer, offset),
+           UdpTnoSchema.REQ_DISTANCE_B.getInt (buffer, offset),
+           UdpTnoSchema.REQ_ANGLE.getInt (buffer, offset));
+      case GN_SHB:
+      case GN_TSB:
       default:
-        repIntervalBase_ms = 0;
-        error = true;
-        errorMessages.add ("Unknown Repitition Interval Base: " + repIntervalBaseBits + ".");
-        break;
+        return null;
     }
-    final int repInterval_ms = repIntervalMultiplier * repIntervalBase_ms;
-    final byte repTimeByte = pdu[offset + 18];
-    final int repTimeMultiplier = (((int) repTimeByte) & 0xff) >> 2;
-    final int repTimeBaseBits = ((int) repTimeByte) & 0x03;
-    final int repTimeBase_ms;
-    switch (repTimeBaseBits)
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // AREA-DESTINATION CACHE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A decoded area destination, with the raw area fields it was decoded from as key.
+   * 
+   */
+  private static final class AreaEntry
+  {
+
+    private AreaEntry (final long coordinates, final long longitude, final long shapeAndExtent,
+      final BtpSapTypes.DefaultGnDestination destination)
     {
-      case 0:
-        repTimeBase_ms = 50;
-        break;
-      case 1:
-        repTimeBase_ms = 1000;
-        break;
-      case 2:
-        repTimeBase_ms = 10000;
-        break;
-      case 3:
-        repTimeBase_ms = 100000;
-        break;
-      default:
-        repTimeBase_ms = 0;
-        error = true;
-        errorMessages.add ("Unknown Repitition Time Base: " + repTimeBaseBits + ".");
-        break;
+      this.coordinates = coordinates;
+      this.longitude = longitude;
+      this.shapeAndExtent = shapeAndExtent;
+      this.destination = destination;
     }
-    final int repTime_ms = repTimeMultiplier * repTimeBase_ms;
-    // final byte reserved1Byte = pdu[offset + 19];
-    // System.err.println ("RESERVED_1: " + (((int) reserved1Byte) & 0xff) + ".");
-    final BtpSapTypes.GnDestination gnDestination;
-    if (gnTransportType == null)
-      gnDestination = null;
-    else
-      switch (gnTransportType)
-      {
-        case GN_UC:
-          final byte[] gnAddressBytes = Arrays.copyOfRange (pdu, 20, 28);
-          // XXX Error checking on gnAddressBytes??
-          final BtpSapTypes.GnAddress gnAddress = new BtpSapTypes.DefaultGnAddress (gnAddressBytes);
-          gnDestination = new BtpSapTypes.DefaultGnDestination (gnAddress);
-          break;
-        case GN_SHB:
-          gnDestination = null;
-          break;
-        case GN_TSB:
-          gnDestination = null;
-          break;
-        case GN_GBC:
-        case GN_AC:
-          final int gnSubTypeNibble = (((int) gnTypeByte) & 0x0f);
-          final BtpSapTypes.GnAreaShape gnAreaShape;
-          switch (gnSubTypeNibble)
-          {
-            case 0:
-              gnAreaShape = BtpSapTypes.GnAreaShape.CIRCLE;
-              break;
-            case 1:
-              gnAreaShape = BtpSapTypes.GnAreaShape.RECTANGLE;
-              break;
-            case 2:
-              gnAreaShape = BtpSapTypes.GnAreaShape.ELLIPSE;
-              break;
-            default:
-              gnAreaShape = null;
-              error = true;
-              errorMessages.add ("Unknown GeoNetworking SubType: " + gnSubTypeNibble + ".");
-              break;
-          }
-          final long latBits = ((long) (pdu[offset + 20] & 0xff) << 56)
-                             + ((long) (pdu[offset + 21] & 0xff) << 48)
-                             + ((long) (pdu[offset + 22] & 0xff) << 40)
-                             + ((long) (pdu[offset + 23] & 0xff) << 32)
-                             + ((long) (pdu[offset + 24] & 0xff) << 24)
-                             + ((long) (pdu[offset + 25] & 0xff) << 16)
-                             + ((long) (pdu[offset + 26] & 0xff) << 8)
-                             + ((long) (pdu[offset + 27] & 0xff));
-          final double latitude = Double.longBitsToDouble (latBits);
-          final long lonBits = ((long) (pdu[offset + 28] & 0xff) << 56)
-                             + ((long) (pdu[offset + 29] & 0xff) << 48)
-                             + ((long) (pdu[offset + 30] & 0xff) << 40)
-                             + ((long) (pdu[offset + 31] & 0xff) << 32)
-                             + ((long) (pdu[offset + 32] & 0xff) << 24)
-                             + ((long) (pdu[offset + 33] & 0xff) << 16)
-                             + ((long) (pdu[offset + 34] & 0xff) << 8)
-                             + ((long) (pdu[offset + 35] & 0xff));
-          final double longitude = Double.longBitsToDouble (lonBits);
-          final int dA = ((pdu[offset + 36] & 0xff) << 8) + (pdu[offset + 37] & 0xff);
-          final int dB = ((pdu[offset + 38] & 0xff) << 8) + (pdu[offset + 39] & 0xff);
-          final int angle = ((pdu[offset + 40] & 0xff) << 8) + (pdu[offset + 41] & 0xff);
-          if (error)
-            gnDestination = null;
-          else
-            gnDestination = new BtpSapTypes.DefaultGnDestination (new BtpSapTypes.DefaultGnArea (gnAreaShape, latitude, longitude, dA, dB, angle));
-          break;
-        default:
-          gnDestination = null;
-          break;
-      }
-    // final int reserved2Int = ((pdu[offset + 42] & 0xff) << 8) + (pdu[offset + 43] & 0xff);
-    // System.err.println ("RESERVED_2: " + reserved2Int + ".");
+
+    private final long coordinates;
+
+    private final long longitude;
+
+    private final long shapeAndExtent;
+
+    private final BtpSapTypes.DefaultGnDestination destination;
+
+  }
+
+  /** The size of the area-destination cache (a power of two).
+   * 
+   */
+  private static final int AREA_CACHE_SIZE = 64;
+
+  private static final AtomicReferenceArray<AreaEntry> AREA_CACHE = new AtomicReferenceArray<> (AREA_CACHE_SIZE);
+
+  /** Returns the area destination for the raw area fields of a request PDU.
+   * 
+   * <p>
+   * Uses a small, lock-free, direct-mapped cache keyed on the raw bytes of the area fields
+   * (the 22 bytes of a version-1 area, or the 14 bytes of a compact one) and the area shape,
+   * so that a repeated area is found without decoding its coordinates,
+   * see also {@link BtpSapTypes.DefaultGnDestination#valueOf}.
+   * Upon a cache miss, a new destination is created and replaces the cache entry.
+   * 
+   * @param gnAreaShape The area shape.
+   * @param compact     Whether the coordinates are compact (E7, both in {@code coordinates}), or raw doubles.
+   * @param coordinates The raw latitude (double), or both raw compact coordinates (latitude in the upper half).
+   * @param longitude   The raw longitude (double), or zero for compact coordinates.
+   * @param dA          The distance A in m.
+   * @param dB          The distance B in m.
+   * @param angle       The angle in degrees.
+   * 
+   */
+  private static BtpSapTypes.DefaultGnDestination areaDestination
+  (final BtpSapTypes.GnAreaShape gnAreaShape,
+   final boolean compact,
+   final long coordinates,
+   final long longitude,
+   final int dA,
+   final int dB,
+   final int angle)
+  {
+    final long shapeAndExtent = ((long) gnAreaShape.ordinal () << 49) | (compact ? 1L << 48 : 0L)
+      | ((long) dA << 32) | ((long) dB << 16) | angle;
+    long hash = coordinates * 31 + longitude;
+    hash = hash * 31 + shapeAndExtent;
+    final int index = (int) (hash ^ (hash >>> 32) ^ (hash >>> 16)) & (AREA_CACHE_SIZE - 1);
+    final AreaEntry cached = AREA_CACHE.get (index);
+    if (cached != null
+      && cached.coordinates == coordinates && cached.longitude == longitude && cached.shapeAndExtent == shapeAndExtent)
+      return cached.destination;
+    final BtpSapTypes.DefaultGnDestination destination = new BtpSapTypes.DefaultGnDestination
+      (new BtpSapTypes.DefaultGnArea
+        (gnAreaShape,
+         compact ? UdpTnoSchema.fromE7 ((int) (coordinates >>> 32)) : Double.longBitsToDouble (coordinates),
+         compact ? UdpTnoSchema.fromE7 ((int) coordinates) : Double.longBitsToDouble (longitude),
+         dA,
+         dB,
+         angle));
+    AREA_CACHE.lazySet (index, new AreaEntry (coordinates, longitude, shapeAndExtent, destination));
+    return destination;
+  }
+  
+  /** Decodes the GN security profile (ITS-AID and SSP) from a request PDU, applying courtesy ITS-AID substitution.
+   * 
+   */
+  static BtpSapTypes.GnSecurityProfile decodeGnSecurityProfile
+  (final byte[] pdu,
+   final ByteBuffer buffer,
+   final int offset,
+   final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile,
+   final BtpSapTypes.BtpType btpType,
+   final BtpSapTypes.GnTransportType gnTransportType,
+   final int destinationPort)
+  {
     //
     // Next 12 octets starting at offset 44 are reserved for the security profile.
     // We interpret the security profile as consisting of an ITS-AID and Service-Specific Permissions.
@@ -687,109 +1291,68 @@ public class UdpTnoDataReq
     // In Java, we simply put it into a (signed) long, and promiss to be careful with negative values.
     // The remaining 8 octets are reserved for future use in the interface, in particular,
     // for passing ssp (service-specific security permissions).
-    // For now, we set the ssp value to null in the constructor of the security profile.
     //
-    final long itsAidRead = ByteBuffer.wrap (pdu, 44, 4).getInt () & 0xffffffffL; // XXX Do this properly!!
-    final long itsAid;
-    if (itsAidRead == 0L && gnCommunicationsProfile == BtpSapTypes.GnCommunicationsProfile.GN_COMPROF_ITSG5)
-    {
-      // Courtesy substitution of ITS-AID for CAM and DENM.
-      // Well-known BTP port numbers: ETSI EN 302 636-5-1 V1.2.0 (2013-10); Annex B.
-      // XXX: Add TOPO/SPAT/SAM?
-      // XXX Should be split off into separate (static) method.
-      if (btpType == BtpSapTypes.BtpType.BTP_B && gnTransportType == BtpSapTypes.GnTransportType.GN_SHB
-        && destinationPort == 2001)
-      {
-        itsAid = ITS_AID_CAM;
-        LOG.log (Level.FINE, "Courtesy ITS-AID substitution for (apparent) CAM request.");
-      }
-      else if (btpType == BtpSapTypes.BtpType.BTP_B && gnTransportType == BtpSapTypes.GnTransportType.GN_GBC
-        && destinationPort == 2002)
-      {
-        itsAid = ITS_AID_DENM;
-        LOG.log (Level.FINE, "Courtesy ITS-AID substitution for (apparent) DENM request.");
-      }
-      else
-      {
-        itsAid = -1; // ITS_AID_ANY
-        LOG.log (Level.FINE, "Courtesy ITS-AID (ANY) substitution.");
-      }
-    }
-    else
-      itsAid = itsAidRead;
-    final byte[] itsSspRead = new byte[8];
-    ByteBuffer.wrap (pdu, 48, 8).get (itsSspRead);
-    final BtpSapTypes.GnPermissions permissions = new BtpSapTypes.BaseGnPermissions (itsSspRead);
-    final BtpSapTypes.GnSecurityProfile gnSecurityProfile = new BtpSapTypes.BaseGnSecurityProfile (itsAid, permissions);
-    final long payloadLength = ((long) (pdu[offset + 56] & 0xff) << 24)
-                             + ((long) (pdu[offset + 57] & 0xff) << 16)
-                             + ((long) (pdu[offset + 58] & 0xff) << 8)
-                             + ((long) (pdu[offset + 59] & 0xff));
-    long payloadAndPaddingLength = payloadLength;
-    while (payloadAndPaddingLength % 4 != 0)
-      payloadAndPaddingLength++;
-    if (length != 60 + payloadLength && length != 60 + payloadAndPaddingLength)
-    {
-      // Note JdJ20181214: The AlixCommunicationProvider does not align the request onto
-      // 32-bit boundary.
-      // And, there is really no need to do so.
-      // So, instead, we make it optional.
-      error = true;
-      errorMessages.add ("UDP Packet Length and Payload+Padding Length MISMATCH: UDP packet length = " + length
-        + ", payload length encoded in packet = " + payloadLength
-        + ", calculated payload+padding length = " + payloadAndPaddingLength
-        + " [ONE OF BOTH SHOULD BE EXACTLY 60 LESS THAN UDP PACKET SIZE]!");
-    }
-    // System.err.println ("Payload:");
-    // System.err.println (Arrays.toString (Arrays.copyOfRange (pdu, (int) 60, (int) (60 + payloadLength))));
-    if (error)
-    {
-      LOG.log (Level.WARNING, "Error decoding BTP/UDP[TNO] packet from client ID {0}:", clientId);
-      for (final String errorMessage : errorMessages)
-        LOG.log (Level.WARNING, errorMessage);
-      return null;
-    }
-    else
+    // In version 2, both are optional (absent meaning zero); the SSP still takes 8 octets if present.
+    //
+    if (isCompact (buffer, offset))
     {
-      final BtpSap_DataReqContainer reqContainer;
-      try
-      {
-        reqContainer = new BtpSap_DataReqContainer
-          (btpType, sourcePort, destinationPort, destinationPortInfo,
-           gnTransportType, gnDestination, gnCommunicationsProfile, gnSecurityProfile,
-           lifetime_ms, repInterval_ms, repTime_ms, hopLimit, gnTrafficClass,
-           (int) payloadLength, 60, pdu);
-        return reqContainer;
-      }
-      catch (IllegalArgumentException iae)
-      {
-        LOG.log (Level.WARNING, "Error creating BTP Request Container: "
-          + "Illegal Argument (dropping request from client ID {0}): {1}.",
-          new Object[] {clientId, iae.getMessage ()});
-        return null;
-      }
+      final int itsAidIndex = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_ITS_AID);
+      final long itsAid = substituteItsAid (itsAidIndex < 0 ? 0L : UdpTnoSchema.getVarint (buffer, itsAidIndex),
+        gnCommunicationsProfile, btpType, gnTransportType, destinationPort);
+      final int sspIndex = optionalIndex (buffer, offset, UdpTnoSchema.REQ2_HAS_SSP);
+      if (sspIndex < 0)
+        return BtpSapTypes.BaseGnSecurityProfile.valueOf (itsAid, ZERO_SSP, 0, ZERO_SSP.length);
+      return BtpSapTypes.BaseGnSecurityProfile.valueOf (itsAid, pdu, sspIndex, UdpTnoSchema.SSP2.size);
     }
+    final long itsAid = substituteItsAid (UdpTnoSchema.REQ_ITS_AID.get (buffer, offset),
+      gnCommunicationsProfile, btpType, gnTransportType, destinationPort);
+    return BtpSapTypes.BaseGnSecurityProfile.valueOf (itsAid, pdu, offset + UdpTnoSchema.REQ_SSP.offset, UdpTnoSchema.REQ_SSP.size);
   }
   
+  /** The SSP of compact requests without SSP; never modified.
+   * 
+   */
+  private static final byte[] ZERO_SSP = new byte[UdpTnoSchema.SSP2.size];
+  
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   //
-  // ENCODE LIFETIME
+  // COURTESY ITS-AID SUBSTITUTION
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
  
-  private static byte encodeMaxLifetime (final int maxLifetime_ms)
+  /** Substitutes a zero ITS-AID read from an ITS-G5 request PDU with the (apparent) ITS-AID of the request.
+   * 
+   * <p>
+   * Well-known BTP port numbers: ETSI EN 302 636-5-1 V1.2.0 (2013-10); Annex B.
+   * 
+   */
+  static long substituteItsAid
+  (final long itsAidRead,
+   final BtpSapTypes.GnCommunicationsProfile gnCommunicationsProfile,
+   final BtpSapTypes.BtpType btpType,
+   final BtpSapTypes.GnTransportType gnTransportType,
+   final int destinationPort)
   {
-    if (maxLifetime_ms <= 0)
-      return (byte) 0;
-    if (maxLifetime_ms <= 50 * 63)
-      return (byte) (((int) Math.round (maxLifetime_ms / 50.0)) << 2);
-    if (maxLifetime_ms <= 1000 * 63)
-      return (byte) (1 + (((int) Math.round (maxLifetime_ms / 1000.0)) << 2));
-    if (maxLifetime_ms <= 10000 * 63)
-      return (byte) (2 + (((int) Math.round (maxLifetime_ms / 10000.0)) << 2));
-    if (maxLifetime_ms <= 100000 * 63)
-      return (byte) (3 + (((int) Math.round (maxLifetime_ms / 100000.0)) << 2));
-    return (byte) 0xff;
+    if (itsAidRead != 0L || gnCommunicationsProfile != BtpSapTypes.GnCommunicationsProfile.GN_COMPROF_ITSG5)
+      return itsAidRead;
+    // XXX: Add TOPO/SPAT/SAM?
+    if (btpType == BtpSapTypes.BtpType.BTP_B && gnTransportType == BtpSapTypes.GnTransportType.GN_SHB
+      && destinationPort == 2001)
+    {
+      LOG.log (Level.FINE, "Courtesy ITS-AID substitution for (apparent) CAM request.");
+      return ITS_AID_CAM;
+    }
+    else if (btpType == BtpSapTypes.BtpType.BTP_B && gnTransportType == BtpSapTypes.GnTransportType.GN_GBC
+      && destinationPort == 2002)
+    {
+      LOG.log (Level.FINE, "Courtesy ITS-AID substitution for (apparent) DENM request.");
+      return ITS_AID_DENM;
+    }
+    else
+    {
+      LOG.log (Level.FINE, "Courtesy ITS-AID (ANY) substitution.");
+      return -1; // ITS_AID_ANY
+    }
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -798,43 +1361,14 @@ public class UdpTnoDataReq
   //
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
  
-  private static void createUnitIdContainer (final int unitsHigh, final int unitsLow, final Set<Integer> unitIdContainer)
+  private static void createUnitIdContainer (final int unitMask, final Set<Integer> unitIdContainer)
   {
     if (unitIdContainer == null)
       return;
     unitIdContainer.clear ();
-    if ((unitsLow & 0x01) != 0)
-      unitIdContainer.add (1);
-    if ((unitsLow & 0x02) != 0)
-      unitIdContainer.add (2);
-    if ((unitsLow & 0x04) != 0)
-      unitIdContainer.add (3);
-    if ((unitsLow & 0x08) != 0)
-      unitIdContainer.add (4);
-    if ((unitsLow & 0x10) != 0)
-      unitIdContainer.add (5);
-    if ((unitsLow & 0x20) != 0)
-      unitIdContainer.add (6);
-    if ((unitsLow & 0x40) != 0)
-      unitIdContainer.add (7);
-    if ((unitsLow & 0x80) != 0)
-      unitIdContainer.add (8);
-    if ((unitsHigh & 0x01) != 0)
-      unitIdContainer.add (9);
-    if ((unitsHigh & 0x02) != 0)
-      unitIdContainer.add (10);
-    if ((unitsHigh & 0x04) != 0)
-      unitIdContainer.add (11);
-    if ((unitsHigh & 0x08) != 0)
-      unitIdContainer.add (12);
-    if ((unitsHigh & 0x10) != 0)
-      unitIdContainer.add (13);
-    if ((unitsHigh & 0x20) != 0)
-      unitIdContainer.add (14);
-    if ((unitsHigh & 0x40) != 0)
-      unitIdContainer.add (15);
-    if ((unitsHigh & 0x80) != 0)
-      unitIdContainer.add (16);
+    for (int unitId = 1; unitId <= 16; unitId++)
+      if ((unitMask & (1 << (unitId - 1))) != 0)
+        unitIdContainer.add (unitId);
   }
   
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
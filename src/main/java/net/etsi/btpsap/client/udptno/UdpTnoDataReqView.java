@@ -0,0 +1,459 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSapValidationError;
+
+/** A reusable, mutable (flyweight) view on a UDP-TNO BtpSap Request PDU.
+ * 
+ * <p>
+ * A view is (re-)pointed at a PDU through one of the {@code wrap} methods,
+ * after which the fields of the PDU can be obtained through primitive getters, decoded on demand from the underlying bytes.
+ * Unlike {@link UdpTnoDataReq#parseRequest}, the view does not create any objects while wrapping or reading PDUs,
+ * provided the same receive array or buffer is re-used for subsequent PDUs.
+ * The view only supports the (fixed-layout) version-1 format; see {@link #isValid}.
+ * 
+ * <p>
+ * The view does not copy the PDU; the underlying array or buffer must not be modified while the view is in use.
+ * Enum-valued fields are reported by their ordinal in the corresponding {@link net.etsi.btpsap.BtpSapTypes} enum,
+ * or -1 if the PDU holds an unknown value.
+ * 
+ * <p>
+ * Objects of this class are not thread-safe.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * 
+ */
+public final class UdpTnoDataReqView
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a view that is not (yet) wrapping a PDU.
+   * 
+   */
+  public UdpTnoDataReqView ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // WRAP
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private byte[] array = null;
+
+  private ByteBuffer source = null;
+
+  private ByteBuffer buffer = null;
+
+  private int offset = 0;
+
+  private int length = 0;
+
+  private boolean valid = false;
+
+  /** Points this view at a PDU held in a byte array.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return Whether the PDU is a valid (version 1) request PDU, see {@link #isValid}.
+   * 
+   */
+  public final boolean wrap (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null)
+    {
+      BtpSapValidationError.NULL_PDU.reject ();
+      return invalidate ();
+    }
+    if (pdu != this.array)
+    {
+      this.array = pdu;
+      this.source = null;
+      this.buffer = ByteBuffer.wrap (pdu);
+    }
+    return validate (offset, length);
+  }
+
+  /** Points this view at a PDU held in a (heap or direct) byte buffer.
+   * 
+   * <p>
+   * The offset is absolute, i.e., independent of the position of the buffer; the position and limit of the buffer
+   * are neither used nor changed.
+   * 
+   * @param pdu    The buffer holding the PDU.
+   * @param offset The (absolute) offset of the PDU in the buffer.
+   * @param length The length of the PDU.
+   * 
+   * @return Whether the PDU is a valid (version 1) request PDU, see {@link #isValid}.
+   * 
+   */
+  public final boolean wrap (final ByteBuffer pdu, final int offset, final int length)
+  {
+    if (pdu == null)
+    {
+      BtpSapValidationError.NULL_PDU.reject ();
+      return invalidate ();
+    }
+    if (pdu != this.source)
+    {
+      this.array = null;
+      this.source = pdu;
+      this.buffer = pdu;
+    }
+    return validate (offset, length);
+  }
+
+  private boolean invalidate ()
+  {
+    this.array = null;
+    this.source = null;
+    this.buffer = null;
+    this.offset = 0;
+    this.length = 0;
+    this.valid = false;
+    return false;
+  }
+
+  private static int ordinal (final Enum<?> e)
+  {
+    return e != null ? e.ordinal () : -1;
+  }
+
+  private boolean validate (final int offset, final int length)
+  {
+    this.valid = false;
+    if (UdpTnoDataReq.validateRequest (this.buffer, offset, length) != BtpSapValidationError.OK.ordinal ())
+      return false;
+    this.offset = offset;
+    this.length = length;
+    // Only the (fixed-layout) version-1 header is supported.
+    // A valid version-2 PDU is not a protocol error, so it is not counted as a rejection.
+    if (UdpTnoSchema.REQ_VERSION.getInt (this.buffer, offset) != UdpTnoDataReq.VERSION_1)
+      return false;
+    this.valid = true;
+    return true;
+  }
+
+  /** Returns whether this view wraps a valid request PDU.
+   * 
+   * <p>
+   * A PDU is valid if it lies within the wrapped array or buffer, passes {@link UdpTnoDataReq#validateRequest(ByteBuffer, int, int)}
+   * (which checks the header size, magic, enum-valued header fields and payload length),
+   * and is a version-1 PDU; rejections by the validation are counted in {@link BtpSapValidationError}.
+   * The view supports version 1 only: a valid (compact) version-2 PDU renders the view invalid,
+   * but is <i>not</i> counted as a rejection.
+   * The getters below nonetheless report unknown values as -1 where applicable.
+   * 
+   * <p>
+   * The result of the getters is unspecified if this method returns {@code false}.
+   * 
+   * @return Whether this view wraps a valid request PDU.
+   * 
+   */
+  public final boolean isValid ()
+  {
+    return this.valid;
+  }
+
+  /** Returns the offset of the PDU in the wrapped array or buffer.
+   * 
+   * @return The offset of the PDU in the wrapped array or buffer.
+   * 
+   */
+  public final int getOffset ()
+  {
+    return this.offset;
+  }
+
+  /** Returns the length of the wrapped PDU.
+   * 
+   * @return The length of the wrapped PDU.
+   * 
+   */
+  public final int getLength ()
+  {
+    return this.length;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLIENT ID / UNITS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getClientId ()
+  {
+    return UdpTnoSchema.REQ_CLIENT_ID.getInt (this.buffer, this.offset);
+  }
+
+  /** Returns the unit mask; unit ID {@code i} (1 through 16) maps onto bit {@code i - 1}.
+   * 
+   * @return The unit mask.
+   * 
+   * @see UdpTnoDataReq#unitMask
+   * 
+   */
+  public final int getUnitMask ()
+  {
+    return UdpTnoSchema.REQ_UNITS.getInt (this.buffer, this.offset);
+  }
+
+  public final boolean hasUnit (final int unitId)
+  {
+    return unitId >= 1 && unitId <= 16 && (getUnitMask () & (1 << (unitId - 1))) != 0;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BTP FLAGS / GN TYPE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns the ordinal of the GN communications profile, or -1 if unknown.
+   * 
+   * @return The ordinal of the GN communications profile, or -1 if unknown.
+   * 
+   * @see net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile
+   * 
+   */
+  public final int getGnCommunicationsProfileOrdinal ()
+  {
+    return ordinal (UdpTnoSchema.GN_COMM_PROFILES[UdpTnoSchema.REQ_BTP_FLAGS.getInt (this.buffer, this.offset) >> 4]);
+  }
+
+  /** Returns the ordinal of the BTP type, or -1 if unknown.
+   * 
+   * @return The ordinal of the BTP type, or -1 if unknown.
+   * 
+   * @see net.etsi.btpsap.BtpSapTypes.BtpType
+   * 
+   */
+  public final int getBtpTypeOrdinal ()
+  {
+    return ordinal (UdpTnoSchema.BTP_TYPES[UdpTnoSchema.REQ_BTP_FLAGS.getInt (this.buffer, this.offset) & 0x0f]);
+  }
+
+  /** Returns the ordinal of the GN transport type, or -1 if unknown.
+   * 
+   * @return The ordinal of the GN transport type, or -1 if unknown.
+   * 
+   * @see net.etsi.btpsap.BtpSapTypes.GnTransportType
+   * 
+   */
+  public final int getGnTransportTypeOrdinal ()
+  {
+    return ordinal (UdpTnoSchema.GN_TRANSPORT_TYPES[UdpTnoSchema.REQ_GN_TYPE.getInt (this.buffer, this.offset) >> 4]);
+  }
+
+  /** Returns the ordinal of the GN area shape, or -1 if unknown or not applicable (i.e., not GBC/AC).
+   * 
+   * @return The ordinal of the GN area shape, or -1 if unknown or not applicable.
+   * 
+   * @see net.etsi.btpsap.BtpSapTypes.GnAreaShape
+   * 
+   */
+  public final int getGnAreaShapeOrdinal ()
+  {
+    if (! hasGnArea ())
+      return -1;
+    return ordinal (UdpTnoSchema.GN_AREA_SHAPES[UdpTnoSchema.REQ_GN_TYPE.getInt (this.buffer, this.offset) & 0x0f]);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BTP PORTS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getBtpSrcPort ()
+  {
+    return UdpTnoSchema.REQ_SRC_PORT.getInt (this.buffer, this.offset);
+  }
+
+  public final int getBtpDstPort ()
+  {
+    return UdpTnoSchema.REQ_DST_PORT.getInt (this.buffer, this.offset);
+  }
+
+  public final int getBtpDstPortInfo ()
+  {
+    return UdpTnoSchema.REQ_DST_PORT_INFO.getInt (this.buffer, this.offset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // LIFETIME / TRAFFIC CLASS / HOP LIMIT / REPETITION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getGnMaxLifetime_ms ()
+  {
+    return UdpTnoSchema.TIME_MS[UdpTnoSchema.REQ_LIFETIME.getInt (this.buffer, this.offset)];
+  }
+
+  public final byte getGnTrafficClassByte ()
+  {
+    return (byte) UdpTnoSchema.REQ_TRAFFIC_CLASS.getInt (this.buffer, this.offset);
+  }
+
+  public final int getGnMaxHopLimit ()
+  {
+    return UdpTnoSchema.REQ_HOP_LIMIT.getInt (this.buffer, this.offset);
+  }
+
+  public final int getGnRepInterval_ms ()
+  {
+    return UdpTnoSchema.TIME_MS[UdpTnoSchema.REQ_REP_INTERVAL.getInt (this.buffer, this.offset)];
+  }
+
+  public final int getGnMaxRepTime_ms ()
+  {
+    return UdpTnoSchema.TIME_MS[UdpTnoSchema.REQ_REP_TIME.getInt (this.buffer, this.offset)];
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN DESTINATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns whether the PDU holds a unicast destination address (i.e., GN_UC).
+   * 
+   * @return Whether the PDU holds a unicast destination address.
+   * 
+   */
+  public final boolean hasGnUnicastAddress ()
+  {
+    return getGnTransportTypeOrdinal () == GnTransportType.GN_UC.ordinal ();
+  }
+
+  /** Returns whether the PDU holds a destination area (i.e., GN_GBC or GN_AC).
+   * 
+   * @return Whether the PDU holds a destination area.
+   * 
+   */
+  public final boolean hasGnArea ()
+  {
+    final int gnTransportTypeOrdinal = getGnTransportTypeOrdinal ();
+    return gnTransportTypeOrdinal >= 0 && UdpTnoSchema.HAS_GN_AREA[gnTransportTypeOrdinal];
+  }
+
+  public final long getGnUnicastAddress ()
+  {
+    return UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.get (this.buffer, this.offset);
+  }
+
+  public final double getGnAreaLatitude ()
+  {
+    return UdpTnoSchema.REQ_DST_LAT_OR_ADDRESS.getDouble (this.buffer, this.offset);
+  }
+
+  public final double getGnAreaLongitude ()
+  {
+    return UdpTnoSchema.REQ_DST_LON.getDouble (this.buffer, this.offset);
+  }
+
+  public final int getGnAreaDistanceA_m ()
+  {
+    return UdpTnoSchema.REQ_DISTANCE_A.getInt (this.buffer, this.offset);
+  }
+
+  public final int getGnAreaDistanceB_m ()
+  {
+    return UdpTnoSchema.REQ_DISTANCE_B.getInt (this.buffer, this.offset);
+  }
+
+  public final int getGnAreaAngle_degrees ()
+  {
+    return UdpTnoSchema.REQ_ANGLE.getInt (this.buffer, this.offset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // SECURITY PROFILE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns the ITS-AID as found in the PDU (uint32), i.e., without courtesy substitution.
+   * 
+   * @return The ITS-AID as found in the PDU.
+   * 
+   */
+  public final long getItsAid ()
+  {
+    return UdpTnoSchema.REQ_ITS_AID.get (this.buffer, this.offset);
+  }
+
+  /** Returns an SSP byte.
+   * 
+   * @param i The index of the SSP byte, between zero and 7 inclusive.
+   * 
+   * @return The SSP byte.
+   * 
+   */
+  public final byte getSspByte (final int i)
+  {
+    if (i < 0 || i >= 8)
+      throw new IllegalArgumentException ();
+    return this.buffer.get (this.offset + UdpTnoSchema.REQ_SSP.offset + i);
+  }
+
+  /** Returns the eight SSP bytes packed in a {@code long} (big-endian).
+   * 
+   * @return The SSP bytes.
+   * 
+   */
+  public final long getSspBits ()
+  {
+    return UdpTnoSchema.REQ_SSP.get (this.buffer, this.offset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PAYLOAD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getPayloadLength ()
+  {
+    return UdpTnoSchema.REQ_PAYLOAD_LENGTH.getInt (this.buffer, this.offset) & 0x7fffffff;
+  }
+
+  /** Returns the (absolute) offset of the payload in the wrapped array or buffer.
+   * 
+   * @return The (absolute) offset of the payload in the wrapped array or buffer.
+   * 
+   */
+  public final int getPayloadOffset ()
+  {
+    return this.offset + UdpTnoSchema.REQ_HEADER_SIZE;
+  }
+
+}
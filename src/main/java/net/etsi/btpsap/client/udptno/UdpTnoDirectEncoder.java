@@ -0,0 +1,381 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataReq;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.BtpSap_DataReqPrimitive;
+
+/** A {@link BtpSap_DataReq} that encodes its requests straight into UDP-TNO BtpSap Request PDUs.
+ * 
+ * <p>
+ * Each {@link #btpSapRequest} is validated (as in {@link BtpSap_DataReqContainer#validate}) and serialized
+ * from its arguments into a single outgoing buffer in one pass, without creating a {@link BtpSap_DataReqContainer}.
+ * The resulting PDU is identical to the one produced by
+ * {@link UdpTnoDataReq#formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer, int)} for the same arguments (and version),
+ * and is handed to a {@link Sink} (e.g., a datagram channel) before the method returns.
+ * 
+ * <p>
+ * The encoder also implements {@link BtpSap_DataReqPrimitive}, so callers holding primitive arguments need not box them.
+ * 
+ * <p>
+ * Objects of this class are not thread-safe, as they re-use the outgoing buffer.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * 
+ */
+public final class UdpTnoDirectEncoder
+implements BtpSap_DataReq, BtpSap_DataReqPrimitive
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // SINK
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The destination of encoded PDUs.
+   * 
+   */
+  @FunctionalInterface
+  public interface Sink
+  {
+
+    /** Sends (or otherwise consumes) an encoded PDU.
+     * 
+     * <p>
+     * The PDU occupies the bytes between the position and the limit of {@code pdu}.
+     * The buffer is owned by the encoder and is overwritten by the next request;
+     * implementations must not retain it beyond this call.
+     * 
+     * @param pdu The buffer holding the PDU.
+     * 
+     * @throws IOException If sending the PDU failed.
+     * 
+     */
+    void send (ByteBuffer pdu) throws IOException;
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates an encoder using a given outgoing buffer.
+   * 
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * @param buffer   The (heap or direct) outgoing buffer, non-{@code null};
+   *                   requests whose PDU exceeds its capacity are rejected.
+   * @param sink     The sink of the encoded PDUs, non-{@code null}.
+   * 
+   * @throws IllegalArgumentException If the client ID is out of range, or the buffer or sink is {@code null}.
+   * 
+   */
+  public UdpTnoDirectEncoder (final int clientID, final int unitMask, final ByteBuffer buffer, final Sink sink)
+  {
+    this (clientID, unitMask, UdpTnoDataReq.VERSION_1, buffer, sink);
+  }
+
+  /** Creates an encoder using a given outgoing buffer and PDU version.
+   * 
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * @param version  The PDU version, {@link UdpTnoDataReq#VERSION_1} or {@link UdpTnoDataReq#VERSION_2}.
+   * @param buffer   The (heap or direct) outgoing buffer, non-{@code null};
+   *                   requests whose PDU exceeds its capacity are rejected.
+   * @param sink     The sink of the encoded PDUs, non-{@code null}.
+   * 
+   * @throws IllegalArgumentException If the client ID or version is out of range, or the buffer or sink is {@code null}.
+   * 
+   */
+  public UdpTnoDirectEncoder
+  (final int clientID, final int unitMask, final int version, final ByteBuffer buffer, final Sink sink)
+  {
+    if (clientID < 0 || clientID > 127 || buffer == null || sink == null)
+      throw new IllegalArgumentException ();
+    if (version != UdpTnoDataReq.VERSION_1 && version != UdpTnoDataReq.VERSION_2)
+      throw new IllegalArgumentException ();
+    this.clientID = clientID;
+    this.unitMask = unitMask;
+    this.version = version;
+    this.buffer = buffer;
+    this.sink = sink;
+  }
+
+  /** Creates an encoder with a (heap) outgoing buffer of {@link UdpTnoDataReq#MAX_PDU_SIZE} bytes.
+   * 
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitIds  The ID's of the units to which the requests apply.
+   * @param sink     The sink of the encoded PDUs, non-{@code null}.
+   * 
+   * @throws IllegalArgumentException If the client ID is out of range, or the sink is {@code null}.
+   * 
+   */
+  public UdpTnoDirectEncoder (final int clientID, final Set<Integer> unitIds, final Sink sink)
+  {
+    this (clientID, UdpTnoDataReq.unitMask (unitIds), ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE), sink);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLIENT ID / UNIT MASK / VERSION / BUFFER / SINK
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int clientID;
+
+  public final int getClientID ()
+  {
+    return this.clientID;
+  }
+
+  private final int unitMask;
+
+  public final int getUnitMask ()
+  {
+    return this.unitMask;
+  }
+
+  private final int version;
+
+  public final int getVersion ()
+  {
+    return this.version;
+  }
+
+  private final ByteBuffer buffer;
+
+  private final Sink sink;
+
+  public final Sink getSink ()
+  {
+    return this.sink;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReq
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException, IOException
+  {
+    btpSapRequest
+      (btpType,
+       BtpSap_DataReqPrimitive.unbox (btpSrcPort),
+       btpDstPort,
+       BtpSap_DataReqPrimitive.unbox (btpDstPortInfo),
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       BtpSap_DataReqPrimitive.unbox (gnMaxLifetime_ms),
+       BtpSap_DataReqPrimitive.unbox (gnRepInterval_ms),
+       BtpSap_DataReqPrimitive.unbox (gnMaxRepTime_ms),
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReqPrimitive
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates and encodes a request, and hands the PDU to the sink.
+   * 
+   * <p>
+   * The repetition interval and time are validated, but (like in {@link UdpTnoDataReq#formatRequest}) not encoded.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU does not fit into the outgoing buffer.
+   * @throws IOException              If the sink failed to send the PDU.
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final int gnMaxLifetime_ms,
+   final int gnRepInterval_ms,
+   final int gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException, IOException
+  {
+    if (BtpSap_DataReqContainer.validate
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       length,
+       offset,
+       data) != BtpSapValidationError.OK.ordinal ())
+      throw new IllegalArgumentException ();
+    this.buffer.clear ();
+    if (UdpTnoDataReq.encode
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data,
+       null,
+       this.clientID,
+       this.unitMask,
+       this.version,
+       false,
+       this.buffer) < 0)
+      throw new IllegalArgumentException ();
+    this.buffer.flip ();
+    this.sink.send (this.buffer);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReq [BYTEBUFFER PAYLOAD]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates and encodes a request with the payload held in a (heap or direct) buffer, and hands the PDU to the sink.
+   * 
+   * <p>
+   * The payload is copied straight from {@code payload} into the outgoing buffer; no intermediate heap copy is made.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU does not fit into the outgoing buffer.
+   * @throws IOException              If the sink failed to send the PDU.
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final ByteBuffer payload)
+  throws IllegalArgumentException, IOException
+  {
+    if (BtpSap_DataReqContainer.validate
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       0,
+       0,
+       null) != BtpSapValidationError.OK.ordinal ())
+      throw new IllegalArgumentException ();
+    this.buffer.clear ();
+    if (UdpTnoDataReq.encode
+      (btpType,
+       BtpSap_DataReqPrimitive.unbox (btpSrcPort),
+       btpDstPort,
+       BtpSap_DataReqPrimitive.unbox (btpDstPortInfo),
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       BtpSap_DataReqPrimitive.unbox (gnMaxLifetime_ms),
+       gnMaxHopLimit,
+       gnTrafficClass,
+       0,
+       0,
+       null,
+       payload,
+       this.clientID,
+       this.unitMask,
+       this.version,
+       false,
+       this.buffer) < 0)
+      throw new IllegalArgumentException ();
+    this.buffer.flip ();
+    this.sink.send (this.buffer);
+  }
+
+}
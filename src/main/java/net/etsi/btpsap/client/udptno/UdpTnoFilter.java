@@ -0,0 +1,535 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A compiled filter expression over the raw bytes of UDP-TNO BtpSap Request and Indication PDUs.
+ * 
+ * <p>
+ * The first 16 bytes of request and indication PDUs share the same layout, see {@link UdpTnoSchema}.
+ * A filter tests (masked) fields in that prefix straight from the receive buffer,
+ * so unwanted PDUs can be dropped before parsing, without allocating.
+ * PDUs shorter than 16 bytes are never accepted.
+ * 
+ * <p>
+ * The expression language:
+ * <pre>
+ *   expression := and ( '||' and )*
+ *   and        := unary ( '&amp;&amp;' unary )*
+ *   unary      := '!' unary | '(' expression ')' | comparison
+ *   comparison := field [ '&amp;' number ] ( op number | 'in' '{' number ( ',' number )* '}' )
+ *   op         := '==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;='
+ *   number     := decimal | '0x' hexadecimal
+ * </pre>
+ * with fields (all unsigned) {@code magic}, {@code version}, {@code clientId}, {@code units}, {@code btpFlags}, {@code gnType},
+ * {@code srcPort}, {@code lifetime}, {@code tc} (or {@code trafficClass}), {@code dstPort} and {@code dstPortInfo}.
+ * Note that the mask binds stronger than the comparison, e.g.,
+ * {@code dstPort in {2001, 2002} && tc & 0x80 == 0 && clientId != 5}.
+ * 
+ * <p>
+ * Filters are immutable and may be shared between threads.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * @see UdpTnoDataInd
+ * 
+ */
+public final class UdpTnoFilter
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private UdpTnoFilter (final String expression, final Node root)
+  {
+    this.expression = expression;
+    this.root = root;
+  }
+
+  /** Compiles a filter expression.
+   * 
+   * @param expression The expression, non-{@code null}.
+   * 
+   * @return The compiled filter.
+   * 
+   * @throws IllegalArgumentException If the expression is {@code null} or malformed.
+   * 
+   */
+  public static UdpTnoFilter compile (final String expression)
+  {
+    if (expression == null)
+      throw new IllegalArgumentException ();
+    final Parser parser = new Parser (expression);
+    final Node root = parser.parseExpression ();
+    parser.expectEnd ();
+    return new UdpTnoFilter (expression, root);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // EXPRESSION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final String expression;
+
+  public final String getExpression ()
+  {
+    return this.expression;
+  }
+
+  @Override
+  public final String toString ()
+  {
+    return this.expression;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // ACCEPT
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The size of the PDU prefix on which filters operate.
+   * 
+   */
+  public final static int PREFIX_SIZE = 16;
+
+  private final Node root;
+
+  /** Tests a PDU held in a byte array.
+   * 
+   * @param pdu    The array holding the PDU.
+   * @param offset The offset of the PDU in the array.
+   * @param length The length of the PDU.
+   * 
+   * @return Whether the PDU passes the filter; {@code false} if the array is {@code null},
+   *           the bounds are illegal, or the PDU is shorter than {@link #PREFIX_SIZE}.
+   * 
+   */
+  public final boolean accept (final byte[] pdu, final int offset, final int length)
+  {
+    if (pdu == null || offset < 0 || length < PREFIX_SIZE || offset > pdu.length - length)
+      return false;
+    return this.root.test (pdu, offset);
+  }
+
+  /** Tests a PDU held in a (heap or direct) byte buffer.
+   * 
+   * <p>
+   * The offset is absolute; the position and limit of the buffer are neither used nor changed.
+   * 
+   * @param pdu    The buffer holding the PDU.
+   * @param offset The (absolute) offset of the PDU in the buffer.
+   * @param length The length of the PDU.
+   * 
+   * @return Whether the PDU passes the filter; {@code false} if the buffer is {@code null},
+   *           the bounds are illegal, or the PDU is shorter than {@link #PREFIX_SIZE}.
+   * 
+   */
+  public final boolean accept (final ByteBuffer pdu, final int offset, final int length)
+  {
+    if (pdu == null || offset < 0 || length < PREFIX_SIZE || offset > pdu.capacity () - length)
+      return false;
+    return this.root.test (pdu, offset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // FIELDS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private static final String[] FIELD_NAMES =
+    { "magic", "version", "clientId", "units", "btpFlags", "gnType",
+      "srcPort", "lifetime", "tc", "trafficClass", "dstPort", "dstPortInfo" };
+
+  // Request fields; the indication fields in the prefix are at the same offsets.
+  private static final UdpTnoSchema.Field[] FIELDS =
+    { UdpTnoSchema.REQ_MAGIC, UdpTnoSchema.REQ_VERSION, UdpTnoSchema.REQ_CLIENT_ID, UdpTnoSchema.REQ_UNITS,
+      UdpTnoSchema.REQ_BTP_FLAGS, UdpTnoSchema.REQ_GN_TYPE, UdpTnoSchema.REQ_SRC_PORT, UdpTnoSchema.REQ_LIFETIME,
+      UdpTnoSchema.REQ_TRAFFIC_CLASS, UdpTnoSchema.REQ_TRAFFIC_CLASS, UdpTnoSchema.REQ_DST_PORT, UdpTnoSchema.REQ_DST_PORT_INFO };
+
+  private static UdpTnoSchema.Field field (final String name)
+  {
+    for (int i = 0; i < FIELD_NAMES.length; i++)
+      if (FIELD_NAMES[i].equals (name))
+        return FIELDS[i];
+    return null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PREDICATE TREE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private static abstract class Node
+  {
+
+    abstract boolean test (byte[] pdu, int base);
+
+    abstract boolean test (ByteBuffer pdu, int base);
+
+  }
+
+  private static final class Or
+  extends Node
+  {
+
+    private final Node[] operands;
+
+    private Or (final Node[] operands)
+    {
+      this.operands = operands;
+    }
+
+    @Override
+    final boolean test (final byte[] pdu, final int base)
+    {
+      for (final Node operand : this.operands)
+        if (operand.test (pdu, base))
+          return true;
+      return false;
+    }
+
+    @Override
+    final boolean test (final ByteBuffer pdu, final int base)
+    {
+      for (final Node operand : this.operands)
+        if (operand.test (pdu, base))
+          return true;
+      return false;
+    }
+
+  }
+
+  private static final class And
+  extends Node
+  {
+
+    private final Node[] operands;
+
+    private And (final Node[] operands)
+    {
+      this.operands = operands;
+    }
+
+    @Override
+    final boolean test (final byte[] pdu, final int base)
+    {
+      for (final Node operand : this.operands)
+        if (! operand.test (pdu, base))
+          return false;
+      return true;
+    }
+
+    @Override
+    final boolean test (final ByteBuffer pdu, final int base)
+    {
+      for (final Node operand : this.operands)
+        if (! operand.test (pdu, base))
+          return false;
+      return true;
+    }
+
+  }
+
+  private static final class Not
+  extends Node
+  {
+
+    private final Node operand;
+
+    private Not (final Node operand)
+    {
+      this.operand = operand;
+    }
+
+    @Override
+    final boolean test (final byte[] pdu, final int base)
+    {
+      return ! this.operand.test (pdu, base);
+    }
+
+    @Override
+    final boolean test (final ByteBuffer pdu, final int base)
+    {
+      return ! this.operand.test (pdu, base);
+    }
+
+  }
+
+  private static final int OP_EQ = 0;
+  private static final int OP_NE = 1;
+  private static final int OP_LT = 2;
+  private static final int OP_LE = 3;
+  private static final int OP_GT = 4;
+  private static final int OP_GE = 5;
+  private static final int OP_IN = 6;
+
+  /** A comparison of a masked field with a constant or (sorted) set of constants.
+   * 
+   */
+  private static final class Compare
+  extends Node
+  {
+
+    private final UdpTnoSchema.Field field;
+
+    private final long mask;
+
+    private final int op;
+
+    private final long[] constants;
+
+    private Compare (final UdpTnoSchema.Field field, final long mask, final int op, final long[] constants)
+    {
+      this.field = field;
+      this.mask = mask;
+      this.op = op;
+      this.constants = constants;
+    }
+
+    /** Reads the field from a byte array (big-endian, unsigned).
+     * 
+     */
+    private long get (final byte[] pdu, final int base)
+    {
+      long value = 0L;
+      for (int i = base + this.field.offset; i < base + this.field.end (); i++)
+        value = (value << 8) | (pdu[i] & 0xffL);
+      return value;
+    }
+
+    private boolean compare (final long value)
+    {
+      final long masked = value & this.mask;
+      switch (this.op)
+      {
+        case OP_EQ: return masked == this.constants[0];
+        case OP_NE: return masked != this.constants[0];
+        case OP_LT: return masked <  this.constants[0];
+        case OP_LE: return masked <= this.constants[0];
+        case OP_GT: return masked >  this.constants[0];
+        case OP_GE: return masked >= this.constants[0];
+        case OP_IN: return Arrays.binarySearch (this.constants, masked) >= 0;
+        default:
+          throw new RuntimeException ();
+      }
+    }
+
+    @Override
+    final boolean test (final byte[] pdu, final int base)
+    {
+      return compare (get (pdu, base));
+    }
+
+    @Override
+    final boolean test (final ByteBuffer pdu, final int base)
+    {
+      return compare (this.field.get (pdu, base));
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PARSER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A recursive-descent parser for filter expressions.
+   * 
+   */
+  private static final class Parser
+  {
+
+    private final String source;
+
+    private int position = 0;
+
+    private Parser (final String source)
+    {
+      this.source = source;
+    }
+
+    private IllegalArgumentException error (final String message)
+    {
+      return new IllegalArgumentException (message + " at position " + this.position + " in filter: " + this.source);
+    }
+
+    private void skipWhitespace ()
+    {
+      while (this.position < this.source.length () && Character.isWhitespace (this.source.charAt (this.position)))
+        this.position++;
+    }
+
+    /** Consumes given token if it is next in the input.
+     * 
+     */
+    private boolean accept (final String token)
+    {
+      skipWhitespace ();
+      if (! this.source.startsWith (token, this.position))
+        return false;
+      // Do not mistake '&&' for '&', '||' for '|', '<=' for '<', etc.
+      if (token.length () == 1 && this.position + 1 < this.source.length ())
+      {
+        final char next = this.source.charAt (this.position + 1);
+        if ((token.equals ("&") && next == '&') || ((token.equals ("<") || token.equals (">") || token.equals ("!")) && next == '='))
+          return false;
+      }
+      this.position += token.length ();
+      return true;
+    }
+
+    private void expect (final String token)
+    {
+      if (! accept (token))
+        throw error ("Expected '" + token + "'");
+    }
+
+    private void expectEnd ()
+    {
+      skipWhitespace ();
+      if (this.position != this.source.length ())
+        throw error ("Unexpected input");
+    }
+
+    private String identifier ()
+    {
+      skipWhitespace ();
+      final int start = this.position;
+      while (this.position < this.source.length () && Character.isJavaIdentifierPart (this.source.charAt (this.position)))
+        this.position++;
+      if (this.position == start || ! Character.isJavaIdentifierStart (this.source.charAt (start)))
+      {
+        this.position = start;
+        throw error ("Expected field name");
+      }
+      return this.source.substring (start, this.position);
+    }
+
+    private long number ()
+    {
+      skipWhitespace ();
+      final int start = this.position;
+      final boolean hex = this.source.startsWith ("0x", start) || this.source.startsWith ("0X", start);
+      if (hex)
+        this.position += 2;
+      final int digitsStart = this.position;
+      while (this.position < this.source.length ()
+        && Character.digit (this.source.charAt (this.position), hex ? 16 : 10) >= 0)
+        this.position++;
+      if (this.position == digitsStart || this.position - digitsStart > (hex ? 16 : 18))
+      {
+        this.position = start;
+        throw error ("Expected number");
+      }
+      return Long.parseUnsignedLong (this.source.substring (digitsStart, this.position), hex ? 16 : 10);
+    }
+
+    private Node parseExpression ()
+    {
+      final List<Node> operands = new ArrayList<> ();
+      operands.add (parseAnd ());
+      while (accept ("||"))
+        operands.add (parseAnd ());
+      return operands.size () == 1 ? operands.get (0) : new Or (operands.toArray (new Node[operands.size ()]));
+    }
+
+    private Node parseAnd ()
+    {
+      final List<Node> operands = new ArrayList<> ();
+      operands.add (parseUnary ());
+      while (accept ("&&"))
+        operands.add (parseUnary ());
+      return operands.size () == 1 ? operands.get (0) : new And (operands.toArray (new Node[operands.size ()]));
+    }
+
+    private Node parseUnary ()
+    {
+      if (accept ("!"))
+        return new Not (parseUnary ());
+      if (accept ("("))
+      {
+        final Node node = parseExpression ();
+        expect (")");
+        return node;
+      }
+      return parseComparison ();
+    }
+
+    private Node parseComparison ()
+    {
+      final int start = this.position;
+      final String name = identifier ();
+      final UdpTnoSchema.Field field = field (name);
+      if (field == null)
+      {
+        this.position = start;
+        throw error ("Unknown field '" + name + "'");
+      }
+      final long mask = accept ("&") ? number () : -1L;
+      final int op;
+      if (accept ("=="))
+        op = OP_EQ;
+      else if (accept ("!="))
+        op = OP_NE;
+      else if (accept ("<="))
+        op = OP_LE;
+      else if (accept (">="))
+        op = OP_GE;
+      else if (accept ("<"))
+        op = OP_LT;
+      else if (accept (">"))
+        op = OP_GT;
+      else if (accept ("in"))
+        op = OP_IN;
+      else
+        throw error ("Expected comparison");
+      final long[] constants;
+      if (op == OP_IN)
+      {
+        expect ("{");
+        final List<Long> values = new ArrayList<> ();
+        values.add (number ());
+        while (accept (","))
+          values.add (number ());
+        expect ("}");
+        constants = new long[values.size ()];
+        for (int i = 0; i < constants.length; i++)
+          constants[i] = values.get (i);
+        Arrays.sort (constants);
+      }
+      else
+        constants = new long[] { number () };
+      return new Compare (field, mask, op, constants);
+    }
+
+  }
+
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataReq;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.BtpSap_DataReqPrimitive;
+
+/** A {@link BtpSap_DataReq} and {@link BtpSap_DataReqPrimitive} that sends UDP-TNO BtpSap Request PDUs by scatter/gather, without copying the payload.
+ * 
+ * <p>
+ * Each {@link #btpSapRequest} is validated (as in {@link BtpSap_DataReqContainer#validate}),
+ * after which only the PDU header is encoded into a small re-used (direct) buffer,
+ * see {@link UdpTnoDataReq#formatRequestHeader}.
+ * The header, (a view on) the caller's payload and the (version-1) padding are then handed as a single {@link ByteBuffer} array
+ * to {@link GatheringByteChannel#write(ByteBuffer[])}; the bytes sent are identical to the PDU produced by
+ * {@link UdpTnoDataReq#formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer, int)} for the same arguments (and version).
+ * Payloads held in direct buffers (see the {@link ByteBuffer} overloads of {@link #btpSapRequest},
+ * with boxed or primitive arguments) are not copied at all;
+ * heap payloads are copied only by the channel implementation itself (if at all).
+ * All overloads share a single path: the boxed ones unbox their arguments (see {@link BtpSap_DataReqPrimitive#unbox})
+ * and validate and encode like the primitive ones.
+ * 
+ * <p>
+ * A {@link DatagramChannel} sends a single datagram per gathering write only if it is connected;
+ * hence, datagram channels must be connected (to the router) before being passed to this sender.
+ * Other channels (e.g., stream channels) are written to until the entire PDU has been accepted,
+ * and should therefore be in blocking mode.
+ * 
+ * <p>
+ * Objects of this class are not thread-safe, as they re-use the header buffer.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * @see UdpTnoDirectEncoder
+ * 
+ */
+public final class UdpTnoGatheringSender
+implements BtpSap_DataReq, BtpSap_DataReqPrimitive
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a (version-1) sender on a given channel.
+   * 
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * @param channel  The channel, non-{@code null}; if it is a {@link DatagramChannel}, it must be connected.
+   * 
+   * @throws IllegalArgumentException If the client ID is out of range, or the channel is {@code null} or an unconnected datagram channel.
+   * 
+   */
+  public UdpTnoGatheringSender (final int clientID, final int unitMask, final GatheringByteChannel channel)
+  {
+    this (clientID, unitMask, UdpTnoDataReq.VERSION_1, channel);
+  }
+
+  /** Creates a sender on a given channel using a given PDU version.
+   * 
+   * @param clientID The client ID (between 0 and 127 inclusive).
+   * @param unitMask The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * @param version  The PDU version, {@link UdpTnoDataReq#VERSION_1} or {@link UdpTnoDataReq#VERSION_2}.
+   * @param channel  The channel, non-{@code null}; if it is a {@link DatagramChannel}, it must be connected.
+   * 
+   * @throws IllegalArgumentException If the client ID or version is out of range,
+   *                                    or the channel is {@code null} or an unconnected datagram channel.
+   * 
+   */
+  public UdpTnoGatheringSender
+  (final int clientID, final int unitMask, final int version, final GatheringByteChannel channel)
+  {
+    if (clientID < 0 || clientID > 127 || channel == null)
+      throw new IllegalArgumentException ();
+    if (version != UdpTnoDataReq.VERSION_1 && version != UdpTnoDataReq.VERSION_2)
+      throw new IllegalArgumentException ();
+    this.datagram = channel instanceof DatagramChannel;
+    if (this.datagram && ! ((DatagramChannel) channel).isConnected ())
+      throw new IllegalArgumentException ();
+    this.clientID = clientID;
+    this.unitMask = unitMask;
+    this.version = version;
+    this.channel = channel;
+    this.header = ByteBuffer.allocateDirect (UdpTnoDataReq.HEADER_SIZE);
+    this.padding = ByteBuffer.allocateDirect (3);
+    this.srcs = new ByteBuffer[] { this.header, null, this.padding };
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLIENT ID / UNIT MASK / VERSION / CHANNEL
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int clientID;
+
+  public final int getClientID ()
+  {
+    return this.clientID;
+  }
+
+  private final int unitMask;
+
+  public final int getUnitMask ()
+  {
+    return this.unitMask;
+  }
+
+  private final int version;
+
+  public final int getVersion ()
+  {
+    return this.version;
+  }
+
+  private final GatheringByteChannel channel;
+
+  private final boolean datagram;
+
+  public final GatheringByteChannel getChannel ()
+  {
+    return this.channel;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // HEADER / PADDING / SEND
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final ByteBuffer header;
+
+  /** Zero bytes; only ever read from.
+   * 
+   */
+  private final ByteBuffer padding;
+
+  /** The gathering-write array: header, payload and padding.
+   * 
+   */
+  private final ByteBuffer[] srcs;
+
+  /** The (shared) payload of requests without payload data.
+   * 
+   */
+  private final static ByteBuffer EMPTY = ByteBuffer.allocate (0);
+
+  /** Writes the (already encoded) header, the payload and the padding to the channel.
+   * 
+   */
+  private void send (final ByteBuffer payload) throws IOException
+  {
+    this.header.flip ();
+    this.padding.clear ();
+    this.padding.limit (UdpTnoDataReq.paddingSize (payload.remaining (), this.version));
+    this.srcs[1] = payload;
+    try
+    {
+      final long size = this.header.remaining () + payload.remaining () + this.padding.remaining ();
+      long written = this.channel.write (this.srcs);
+      if (! this.datagram)
+        while (written < size)
+          written += this.channel.write (this.srcs);
+      if (written != size)
+        throw new IOException ("PDU not sent: " + written + " of " + size + " bytes written!");
+    }
+    finally
+    {
+      // Do not retain the caller's payload.
+      this.srcs[1] = null;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReq
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates a request, encodes its header, and sends header, payload and padding in a single gathering write.
+   * 
+   * <p>
+   * Unboxes the arguments and delegates to the primitive {@link #btpSapRequest} with byte-array payload.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the channel failed to send the entire PDU.
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException, IOException
+  {
+    btpSapRequest
+      (btpType,
+       BtpSap_DataReqPrimitive.unbox (btpSrcPort),
+       btpDstPort,
+       BtpSap_DataReqPrimitive.unbox (btpDstPortInfo),
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       BtpSap_DataReqPrimitive.unbox (gnMaxLifetime_ms),
+       BtpSap_DataReqPrimitive.unbox (gnRepInterval_ms),
+       BtpSap_DataReqPrimitive.unbox (gnMaxRepTime_ms),
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReqPrimitive
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates a request, encodes its header, and sends header, payload and padding in a single gathering write.
+   * 
+   * <p>
+   * The payload is wrapped (not copied) into a heap buffer.
+   * The repetition interval and time are validated, but (like in {@link UdpTnoDataReq#formatRequest}) not encoded.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the channel failed to send the entire PDU.
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final int gnMaxLifetime_ms,
+   final int gnRepInterval_ms,
+   final int gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data)
+  throws IllegalArgumentException, IOException
+  {
+    request
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data,
+       null);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReq [BYTEBUFFER PAYLOAD]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates a request with the payload held in a (heap or direct) buffer,
+   *  and sends header, payload and padding in a single gathering write.
+   * 
+   * <p>
+   * Unboxes the arguments and delegates to the primitive {@link #btpSapRequest} with buffer payload.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the channel failed to send the entire PDU.
+   * 
+   */
+  @Override
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final Integer btpSrcPort,
+   final int btpDstPort,
+   final Integer btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final Integer gnMaxLifetime_ms,
+   final Integer gnRepInterval_ms,
+   final Integer gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final ByteBuffer payload)
+  throws IllegalArgumentException, IOException
+  {
+    btpSapRequest
+      (btpType,
+       BtpSap_DataReqPrimitive.unbox (btpSrcPort),
+       btpDstPort,
+       BtpSap_DataReqPrimitive.unbox (btpDstPortInfo),
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       BtpSap_DataReqPrimitive.unbox (gnMaxLifetime_ms),
+       BtpSap_DataReqPrimitive.unbox (gnRepInterval_ms),
+       BtpSap_DataReqPrimitive.unbox (gnMaxRepTime_ms),
+       gnMaxHopLimit,
+       gnTrafficClass,
+       payload);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BtpSap_DataReqPrimitive [BYTEBUFFER PAYLOAD]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates a request with primitive arguments and the payload held in a (heap or direct) buffer,
+   *  and sends header, payload and padding in a single gathering write.
+   * 
+   * <p>
+   * Absent optional values are passed as {@link BtpSap_DataReqPrimitive#ABSENT}.
+   * The payload is sent from a duplicate of {@code payload}; the position and limit of {@code payload} are not changed,
+   * and a direct payload is handed to the channel as is, without any copy.
+   * A {@code null} payload is sent as an empty payload.
+   * 
+   * @throws IllegalArgumentException If the request has an illegal value, or its PDU is too large.
+   * @throws IOException              If the channel failed to send the entire PDU.
+   * 
+   */
+  public final void btpSapRequest
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final int gnMaxLifetime_ms,
+   final int gnRepInterval_ms,
+   final int gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final ByteBuffer payload)
+  throws IllegalArgumentException, IOException
+  {
+    request
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       0,
+       0,
+       null,
+       payload != null ? payload : EMPTY);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // REQUEST
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Validates a request, encodes its header and sends it with either the array or the buffer payload.
+   * 
+   * <p>
+   * If {@code payload} is non-{@code null}, it holds the payload, and {@code offset}, {@code length} and {@code data}
+   * must be zero, zero and {@code null}, respectively.
+   * 
+   */
+  private void request
+  (final BtpType btpType,
+   final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final GnTransportType gnTransportType,
+   final GnDestination gnDstAddress,
+   final GnCommunicationsProfile gnCommProfile,
+   final GnSecurityProfile gnSecProfile,
+   final int gnMaxLifetime_ms,
+   final int gnRepInterval_ms,
+   final int gnMaxRepTime_ms,
+   final int gnMaxHopLimit,
+   final GnTrafficClass gnTrafficClass,
+   final int offset,
+   final int length,
+   final byte[] data,
+   final ByteBuffer payload)
+  throws IllegalArgumentException, IOException
+  {
+    if (BtpSap_DataReqContainer.validate
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnRepInterval_ms,
+       gnMaxRepTime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       length,
+       offset,
+       data) != BtpSapValidationError.OK.ordinal ())
+      throw new IllegalArgumentException ();
+    this.header.clear ();
+    if (UdpTnoDataReq.encode
+      (btpType,
+       btpSrcPort,
+       btpDstPort,
+       btpDstPortInfo,
+       gnTransportType,
+       gnDstAddress,
+       gnCommProfile,
+       gnSecProfile,
+       gnMaxLifetime_ms,
+       gnMaxHopLimit,
+       gnTrafficClass,
+       offset,
+       length,
+       data,
+       payload,
+       this.clientID,
+       this.unitMask,
+       this.version,
+       true,
+       this.header) < 0)
+      throw new IllegalArgumentException ();
+    if (payload != null)
+      send (payload.duplicate ());
+    else
+      send (data != null ? ByteBuffer.wrap (data, offset, length) : EMPTY);
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import net.etsi.btpsap.BtpSapTypes;
+import net.etsi.btpsap.BtpSap_DataIndPrimitive;
+
+/** A columnar (struct-of-arrays) batch of BTP Data Indications decoded from UDP-TNO BtpSap Indication PDUs.
+ * 
+ * <p>
+ * A batch is filled by {@link UdpTnoDataInd#parseIndications}, which decodes a sequence of concatenated PDUs
+ * from a single source array in one loop.
+ * The fields of the {@code i}th indication are found at index {@code i} of the column arrays,
+ * for {@code 0 <= i < size ()}; entries beyond the size are unspecified.
+ * The column arrays are exposed directly (and are not copied), so downstream processing can run over them in tight loops.
+ * Payloads are not copied either: they are referenced by offset and length into the source array,
+ * which must therefore not be modified or recycled while the batch is in use.
+ * 
+ * <p>
+ * The source position vector is taken from the source latitude and longitude fields of the PDU;
+ * both are {@link Double#NaN} if the PDU has no source position.
+ * Remaining lifetimes are in seconds (rounded up), {@link BtpSap_DataIndPrimitive#ABSENT} if absent.
+ * 
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataInd#parseIndications
+ * 
+ */
+public final class UdpTnoIndicationBatch
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates an empty batch.
+   * 
+   * @param capacity The maximum number of indications in the batch, strictly positive.
+   * 
+   * @throws IllegalArgumentException If the capacity is not strictly positive.
+   * 
+   */
+  public UdpTnoIndicationBatch (final int capacity)
+  {
+    if (capacity <= 0)
+      throw new IllegalArgumentException ();
+    this.capacity = capacity;
+    this.btpSrcPort = new int[capacity];
+    this.btpDstPort = new int[capacity];
+    this.btpDstPortInfo = new int[capacity];
+    this.trafficClass = new byte[capacity];
+    this.remLifetime_s = new int[capacity];
+    this.srcLatitude = new double[capacity];
+    this.srcLongitude = new double[capacity];
+    this.payloadOffset = new int[capacity];
+    this.payloadLength = new int[capacity];
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CAPACITY / SIZE / SOURCE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int capacity;
+
+  public final int getCapacity ()
+  {
+    return this.capacity;
+  }
+
+  private int size = 0;
+
+  public final int size ()
+  {
+    return this.size;
+  }
+
+  public final boolean isFull ()
+  {
+    return this.size == this.capacity;
+  }
+
+  private byte[] source = null;
+
+  /** Returns the source array the payloads reside in.
+   * 
+   * @return The source array, {@code null} if the batch has never been filled.
+   * 
+   */
+  public final byte[] getSource ()
+  {
+    return this.source;
+  }
+
+  /** Empties the batch and binds it to a (new) source array.
+   * 
+   */
+  final void reset (final byte[] source)
+  {
+    this.source = source;
+    this.size = 0;
+  }
+
+  /** Appends an indication; the batch must not be full.
+   * 
+   */
+  final void add
+  (final int btpSrcPort,
+   final int btpDstPort,
+   final int btpDstPortInfo,
+   final byte trafficClass,
+   final int remLifetime_s,
+   final double srcLatitude,
+   final double srcLongitude,
+   final int payloadOffset,
+   final int payloadLength)
+  {
+    final int i = this.size++;
+    this.btpSrcPort[i] = btpSrcPort;
+    this.btpDstPort[i] = btpDstPort;
+    this.btpDstPortInfo[i] = btpDstPortInfo;
+    this.trafficClass[i] = trafficClass;
+    this.remLifetime_s[i] = remLifetime_s;
+    this.srcLatitude[i] = srcLatitude;
+    this.srcLongitude[i] = srcLongitude;
+    this.payloadOffset[i] = payloadOffset;
+    this.payloadLength[i] = payloadLength;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // COLUMNS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final int[] btpSrcPort;
+
+  public final int[] getBtpSrcPorts ()
+  {
+    return this.btpSrcPort;
+  }
+
+  private final int[] btpDstPort;
+
+  public final int[] getBtpDstPorts ()
+  {
+    return this.btpDstPort;
+  }
+
+  private final int[] btpDstPortInfo;
+
+  public final int[] getBtpDstPortInfos ()
+  {
+    return this.btpDstPortInfo;
+  }
+
+  private final byte[] trafficClass;
+
+  public final byte[] getTrafficClasses ()
+  {
+    return this.trafficClass;
+  }
+
+  private final int[] remLifetime_s;
+
+  public final int[] getRemLifetimes_s ()
+  {
+    return this.remLifetime_s;
+  }
+
+  private final double[] srcLatitude;
+
+  public final double[] getSrcLatitudes ()
+  {
+    return this.srcLatitude;
+  }
+
+  private final double[] srcLongitude;
+
+  public final double[] getSrcLongitudes ()
+  {
+    return this.srcLongitude;
+  }
+
+  private final int[] payloadOffset;
+
+  /** Returns the (absolute) offsets of the payloads in the source array.
+   * 
+   * @return The (absolute) offsets of the payloads in the source array.
+   * 
+   * @see #getSource
+   * 
+   */
+  public final int[] getPayloadOffsets ()
+  {
+    return this.payloadOffset;
+  }
+
+  private final int[] payloadLength;
+
+  public final int[] getPayloadLengths ()
+  {
+    return this.payloadLength;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DELIVER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Delivers an indication in the batch to a primitive (non-boxing) indication handler.
+   * 
+   * <p>
+   * The payload is passed by reference into the source array.
+   * Like {@link UdpTnoDataInd#parseIndication(byte[], int, int, BtpSap_DataIndPrimitive)},
+   * the destination is not (yet) reported;
+   * the source position vector (if present) is created from the latitude and longitude columns.
+   * 
+   * @param i       The index of the indication, between zero (inclusive) and {@link #size} (exclusive).
+   * @param handler The handler, non-{@code null}.
+   * 
+   * @throws IllegalArgumentException If the index is out of range or the handler is {@code null}, or if the handler throws it.
+   * 
+   */
+  public final void deliver (final int i, final BtpSap_DataIndPrimitive handler)
+  {
+    if (i < 0 || i >= this.size || handler == null)
+      throw new IllegalArgumentException ();
+    handler.btpSapIndication
+      (this.btpSrcPort[i],
+       this.btpDstPort[i],
+       this.btpDstPortInfo[i],
+       null,
+       Double.isNaN (this.srcLatitude[i]) ? null : new BtpSapTypes.DefaultGnPositionVector (this.srcLatitude[i], this.srcLongitude[i]),
+       null,
+       null,
+       null,
+       BtpSapTypes.DefaultGnTrafficClass.valueOf (this.trafficClass[i]),
+       this.remLifetime_s[i],
+       this.payloadOffset[i],
+       this.payloadLength[i],
+       this.source);
+  }
+
+}
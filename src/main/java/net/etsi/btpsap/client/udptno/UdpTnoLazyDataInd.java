@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import net.etsi.btpsap.BtpSapTypes;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataIndPrimitive;
+
+/** A BTP Data Indication decoded lazily from a UDP-TNO BtpSap Indication PDU.
+ * 
+ * <p>
+ * Only the framing of the PDU (header size, magic and payload length) is validated up front,
+ * see {@link UdpTnoDataInd#parseIndicationLazy}; in particular, the (reserved) security fields are not checked.
+ * Every other field is decoded from the PDU only when its getter is invoked;
+ * boxed fields are optionally memoized after their first decoding.
+ * Fields not (yet) supported by {@link UdpTnoDataInd#parseIndication} are reported likewise.
+ * 
+ * <p>
+ * A lazy indication is not a {@link BtpSap_DataIndContainer} (the getters of which are final),
+ * but offers the same getters, and is converted into a container through {@link #toContainer}.
+ * 
+ * <p>
+ * The object references the PDU array (the payload is not copied);
+ * the caller must not modify or recycle the array while the object is in use.
+ * 
+ * <p>
+ * Objects of this class are thread-safe as long as the PDU is not modified; concurrent memoization is benign.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataInd#parseIndicationLazy
+ * 
+ */
+public final class UdpTnoLazyDataInd
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a lazy indication on a PDU of which the framing has been validated.
+   * 
+   * @param pdu     The array holding the PDU.
+   * @param offset  The offset of the PDU in the array.
+   * @param memoize Whether to memoize boxed fields after their first decoding.
+   * 
+   */
+  UdpTnoLazyDataInd (final byte[] pdu, final int offset, final boolean memoize)
+  {
+    this.pdu = pdu;
+    this.buffer = ByteBuffer.wrap (pdu);
+    this.pduOffset = offset;
+    this.memoize = memoize;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PDU / MEMOIZE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final byte[] pdu;
+
+  private final ByteBuffer buffer;
+
+  private final int pduOffset;
+
+  private final boolean memoize;
+
+  public final boolean isMemoize ()
+  {
+    return this.memoize;
+  }
+
+  public final int getClientId ()
+  {
+    return UdpTnoSchema.IND_CLIENT_ID.getInt (this.buffer, this.pduOffset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BTP PORTS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private Integer btpSrcPort = null;
+
+  public final Integer getBtpSrcPort ()
+  {
+    if (this.btpSrcPort != null)
+      return this.btpSrcPort;
+    final Integer btpSrcPort = UdpTnoSchema.IND_SRC_PORT.getInt (this.buffer, this.pduOffset);
+    if (this.memoize)
+      this.btpSrcPort = btpSrcPort;
+    return btpSrcPort;
+  }
+
+  public final int getBtpDstPort ()
+  {
+    return UdpTnoSchema.IND_DST_PORT.getInt (this.buffer, this.pduOffset);
+  }
+
+  private Integer btpDstPortInfo = null;
+
+  public final Integer getBtpDstPortInfo ()
+  {
+    if (this.btpDstPortInfo != null)
+      return this.btpDstPortInfo;
+    final Integer btpDstPortInfo = UdpTnoSchema.IND_DST_PORT_INFO.getInt (this.buffer, this.pduOffset);
+    if (this.memoize)
+      this.btpDstPortInfo = btpDstPortInfo;
+    return btpDstPortInfo;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN DESTINATION / GN SOURCE POSITION VECTOR / SECURITY [UNSUPPORTED]
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final BtpSapTypes.GnDestination getGnDstAddress ()
+  {
+    // XXX Dst Latitude OR DstGnUc, Dst Longitude, Distance A, Distance B, Angle.
+    return null;
+  }
+
+  public final BtpSapTypes.GnPositionVector getGnSrcPV ()
+  {
+    // XXX SRC_GN_ADDRESS
+    return UdpTnoDataInd.srcPV (this.buffer, this.pduOffset);
+  }
+
+  public final BtpSapTypes.GnSecurityReport getGnSecReport ()
+  {
+    return null;
+  }
+
+  public final BtpSapTypes.GnCertificateId getGnCertId ()
+  {
+    return null;
+  }
+
+  public final BtpSapTypes.GnPermissions getGnPermissions ()
+  {
+    return null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN TRAFFIC CLASS / GN REMAINING LIFETIME
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final BtpSapTypes.GnTrafficClass getGnTrafficClass ()
+  {
+    // Traffic classes are interned; no need to memoize.
+    return BtpSapTypes.DefaultGnTrafficClass.valueOf ((byte) UdpTnoSchema.IND_TRAFFIC_CLASS.getInt (this.buffer, this.pduOffset));
+  }
+
+  public final Integer getGnRemLifetime_s ()
+  {
+    return BtpSap_DataIndPrimitive.box (UdpTnoDataInd.remLifetime_s (this.buffer, this.pduOffset));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DATA / PAYLOAD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getLength ()
+  {
+    return UdpTnoDataInd.payloadLength (this.buffer, this.pduOffset);
+  }
+
+  public final int getOffset ()
+  {
+    return UdpTnoDataInd.payloadOffset (this.buffer, this.pduOffset);
+  }
+
+  public final byte[] getData ()
+  {
+    return this.pdu;
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // TO CONTAINER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Decodes all fields into an indication container.
+   * 
+   * <p>
+   * The container references the PDU array for its payload (the payload is not copied).
+   * 
+   * @return The indication container.
+   * 
+   */
+  public final BtpSap_DataIndContainer toContainer ()
+  {
+    return new BtpSap_DataIndContainer
+      (getBtpSrcPort (),
+       getBtpDstPort (),
+       getBtpDstPortInfo (),
+       getGnDstAddress (),
+       getGnSrcPV (),
+       getGnSecReport (),
+       getGnCertId (),
+       getGnPermissions (),
+       getGnTrafficClass (),
+       getGnRemLifetime_s (),
+       getLength (),
+       getOffset (),
+       getData ());
+  }
+
+}
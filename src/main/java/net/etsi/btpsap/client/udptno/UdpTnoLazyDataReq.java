@@ -0,0 +1,327 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import net.etsi.btpsap.BtpSapTypes;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+
+/** A BTP Data Request decoded lazily from a UDP-TNO BtpSap Request PDU.
+ * 
+ * <p>
+ * Only the framing of the PDU (header size, magic, version and payload length) is validated up front
+ * (version-1 and compact version-2 PDUs alike),
+ * see {@link UdpTnoDataReq#parseRequestLazy}.
+ * Every other field is decoded from the PDU only when its getter is invoked;
+ * object-valued fields (e.g., the GN destination and security profile) are optionally memoized after their first decoding.
+ * Field values are <i>not</i> validated: getters of enum-valued fields return {@code null} for unknown values,
+ * and {@link #getGnDestination} returns {@code null} if the area shape is unknown.
+ * Consumers requiring strict validation should use {@link UdpTnoDataReq#parseRequest} instead.
+ * 
+ * <p>
+ * A lazy request is not a {@link BtpSap_DataReqContainer} (the getters of which are final),
+ * but offers the same getters, and is converted into a container through {@link #toContainer}.
+ * 
+ * <p>
+ * The object references the PDU array (the payload is not copied);
+ * the caller must not modify or recycle the array while the object is in use.
+ * 
+ * <p>
+ * Objects of this class are thread-safe as long as the PDU is not modified; concurrent memoization is benign.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq#parseRequestLazy
+ * 
+ */
+public final class UdpTnoLazyDataReq
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a lazy request on a PDU of which the framing has been validated.
+   * 
+   * @param pdu     The array holding the PDU.
+   * @param offset  The offset of the PDU in the array.
+   * @param memoize Whether to memoize object-valued fields after their first decoding.
+   * 
+   */
+  UdpTnoLazyDataReq (final byte[] pdu, final int offset, final boolean memoize)
+  {
+    this.pdu = pdu;
+    this.buffer = ByteBuffer.wrap (pdu);
+    this.pduOffset = offset;
+    this.memoize = memoize;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PDU / MEMOIZE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final byte[] pdu;
+
+  private final ByteBuffer buffer;
+
+  private final int pduOffset;
+
+  private final boolean memoize;
+
+  public final boolean isMemoize ()
+  {
+    return this.memoize;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLIENT ID / UNITS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getClientId ()
+  {
+    return UdpTnoSchema.REQ_CLIENT_ID.getInt (this.buffer, this.pduOffset);
+  }
+
+  /** Returns the unit mask; unit ID {@code i} (1 through 16) maps onto bit {@code i - 1}.
+   * 
+   * @return The unit mask.
+   * 
+   * @see UdpTnoDataReq#unitMask
+   * 
+   */
+  public final int getUnitMask ()
+  {
+    return UdpTnoSchema.REQ_UNITS.getInt (this.buffer, this.pduOffset);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // BTP TYPE / BTP PORTS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final BtpSapTypes.BtpType getBtpType ()
+  {
+    return UdpTnoSchema.BTP_TYPES[UdpTnoSchema.REQ_BTP_FLAGS.getInt (this.buffer, this.pduOffset) & 0x0f];
+  }
+
+  private Integer btpSrcPort = null;
+
+  public final Integer getBtpSrcPort ()
+  {
+    if (this.btpSrcPort != null)
+      return this.btpSrcPort;
+    final Integer btpSrcPort = UdpTnoSchema.REQ_SRC_PORT.getInt (this.buffer, this.pduOffset);
+    if (this.memoize)
+      this.btpSrcPort = btpSrcPort;
+    return btpSrcPort;
+  }
+
+  public final int getBtpDestinationPort ()
+  {
+    return UdpTnoSchema.REQ_DST_PORT.getInt (this.buffer, this.pduOffset);
+  }
+
+  private Integer btpDstPortInfo = null;
+
+  public final Integer getBtpDstPortInfo ()
+  {
+    if (this.btpDstPortInfo != null)
+      return this.btpDstPortInfo;
+    final Integer btpDstPortInfo = UdpTnoSchema.REQ_DST_PORT_INFO.getInt (this.buffer, this.pduOffset);
+    if (this.memoize)
+      this.btpDstPortInfo = btpDstPortInfo;
+    return btpDstPortInfo;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN TRANSPORT TYPE / GN DESTINATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final BtpSapTypes.GnTransportType getGnTransportType ()
+  {
+    return UdpTnoSchema.GN_TRANSPORT_TYPES[UdpTnoSchema.REQ_GN_TYPE.getInt (this.buffer, this.pduOffset) >> 4];
+  }
+
+  private BtpSapTypes.GnDestination gnDst = null;
+
+  public final BtpSapTypes.GnDestination getGnDestination ()
+  {
+    if (this.gnDst != null)
+      return this.gnDst;
+    final BtpSapTypes.GnDestination gnDst = UdpTnoDataReq.decodeGnDestination
+      (this.buffer, this.pduOffset, getGnTransportType (), UdpTnoSchema.REQ_GN_TYPE.getInt (this.buffer, this.pduOffset));
+    if (this.memoize)
+      this.gnDst = gnDst;
+    return gnDst;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN COMMUNICATIONS PROFILE / GN SECURITY PROFILE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final BtpSapTypes.GnCommunicationsProfile getCommunicationsProfile ()
+  {
+    return UdpTnoSchema.GN_COMM_PROFILES[UdpTnoSchema.REQ_BTP_FLAGS.getInt (this.buffer, this.pduOffset) >> 4];
+  }
+
+  private BtpSapTypes.GnSecurityProfile gnSecProfile = null;
+
+  /** Returns the GN security profile, after courtesy ITS-AID substitution (as in {@link UdpTnoDataReq#parseRequest}).
+   * 
+   * @return The GN security profile.
+   * 
+   */
+  public final BtpSapTypes.GnSecurityProfile getSecurityProfile ()
+  {
+    if (this.gnSecProfile != null)
+      return this.gnSecProfile;
+    final BtpSapTypes.GnSecurityProfile gnSecProfile = UdpTnoDataReq.decodeGnSecurityProfile
+      (this.pdu, this.buffer, this.pduOffset, getCommunicationsProfile (), getBtpType (), getGnTransportType (), getBtpDestinationPort ());
+    if (this.memoize)
+      this.gnSecProfile = gnSecProfile;
+    return gnSecProfile;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN MAXIMUM LIFETIME / GN REPETITION INTERVAL / GN MAXIMUM REPETITION TIME
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final boolean hasMaxLifetime ()
+  {
+    return true;
+  }
+
+  public final int getMaxLifeTime_ms ()
+  {
+    return UdpTnoSchema.TIME_MS[UdpTnoSchema.REQ_LIFETIME.getInt (this.buffer, this.pduOffset)];
+  }
+
+  private Integer gnRepInterval_ms = null;
+
+  public final Integer getGnRepInterval_ms ()
+  {
+    if (this.gnRepInterval_ms != null)
+      return this.gnRepInterval_ms;
+    final Integer gnRepInterval_ms = UdpTnoSchema.TIME_MS[UdpTnoDataReq.decodeRepInterval (this.buffer, this.pduOffset)];
+    if (this.memoize)
+      this.gnRepInterval_ms = gnRepInterval_ms;
+    return gnRepInterval_ms;
+  }
+
+  private Integer gnMaxRepTime_ms = null;
+
+  public final Integer getGnMaxRepTime_ms ()
+  {
+    if (this.gnMaxRepTime_ms != null)
+      return this.gnMaxRepTime_ms;
+    final Integer gnMaxRepTime_ms = UdpTnoSchema.TIME_MS[UdpTnoDataReq.decodeRepTime (this.buffer, this.pduOffset)];
+    if (this.memoize)
+      this.gnMaxRepTime_ms = gnMaxRepTime_ms;
+    return gnMaxRepTime_ms;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // GN MAXIMUM HOP LIMIT / GN TRAFFIC CLASS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getGnMaxHopLimit ()
+  {
+    return UdpTnoSchema.REQ_HOP_LIMIT.getInt (this.buffer, this.pduOffset);
+  }
+
+  public final BtpSapTypes.GnTrafficClass getGnTrafficClass ()
+  {
+    // Traffic classes are interned; no need to memoize.
+    return BtpSapTypes.DefaultGnTrafficClass.valueOf ((byte) UdpTnoSchema.REQ_TRAFFIC_CLASS.getInt (this.buffer, this.pduOffset));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // DATA / PAYLOAD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  public final int getLength ()
+  {
+    return UdpTnoDataReq.payloadLength (this.buffer, this.pduOffset);
+  }
+
+  public final int getOffset ()
+  {
+    return UdpTnoDataReq.payloadOffset (this.buffer, this.pduOffset);
+  }
+
+  public final byte[] getData ()
+  {
+    return this.pdu;
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // TO CONTAINER
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Decodes all fields into a (validated) request container.
+   * 
+   * <p>
+   * The container references the PDU array for its payload (the payload is not copied).
+   * 
+   * @return The request container, or {@code null} if the decoded fields do not form a valid request
+   *         (the rejection is counted in {@link net.etsi.btpsap.BtpSapValidationError}).
+   * 
+   * @see BtpSap_DataReqContainer#tryCreate
+   * 
+   */
+  public final BtpSap_DataReqContainer toContainer ()
+  {
+    return BtpSap_DataReqContainer.tryCreate
+      (getBtpType (),
+       getBtpSrcPort (),
+       getBtpDestinationPort (),
+       getBtpDstPortInfo (),
+       getGnTransportType (),
+       getGnDestination (),
+       getCommunicationsProfile (),
+       getSecurityProfile (),
+       getMaxLifeTime_ms (),
+       getGnRepInterval_ms (),
+       getGnMaxRepTime_ms (),
+       getGnMaxHopLimit (),
+       getGnTrafficClass (),
+       getLength (),
+       getOffset (),
+       getData ());
+  }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.BtpSap_DataReqPrimitive;
+
+/** A pre-encoded UDP-TNO BtpSap Request PDU header for (periodically) sending requests that differ only in their payload.
+ * 
+ * <p>
+ * A template is created once from a prototype request, a client ID and a set of units;
+ * the complete 60-byte header (including BTP flags, GN type, traffic class, hop limit, lifetime, ports,
+ * unicast address or GBC/AC area, ITS-AID and SSP) is encoded at construction and cached.
+ * Encoding a request from the template copies the cached header image,
+ * and only patches the payload length and appends the payload (and padding).
+ * The payload of the prototype itself is ignored.
+ * 
+ * <p>
+ * Templates always encode {@link UdpTnoDataReq#VERSION_1} PDUs, see {@link #getVersion}.
+ * The compact {@link UdpTnoDataReq#VERSION_2} format stores the payload length as a varint,
+ * the size of which (and hence the position of the payload) depends on the payload length,
+ * so its header cannot be patched in place.
+ * Clients that use version 2 should encode through {@link UdpTnoDataReq} or {@link UdpTnoDirectEncoder} instead.
+ * 
+ * <p>
+ * Templates are immutable and may be shared between threads.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq#formatRequest(BtpSap_DataReqContainer, int, int, ByteBuffer)
+ * 
+ */
+public final class UdpTnoRequestTemplate
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates a template from a prototype request.
+   * 
+   * @param prototype The prototype BTP Data Request (non-{@code null}); its payload is ignored.
+   * @param clientID  The client ID (between 0 and 127 inclusive).
+   * @param unitMask  The unit mask, see {@link UdpTnoDataReq#unitMask}.
+   * 
+   * @throws IllegalArgumentException If the prototype is {@code null} or cannot be encoded.
+   * 
+   */
+  public UdpTnoRequestTemplate (final BtpSap_DataReqContainer prototype, final int clientID, final int unitMask)
+  {
+    if (prototype == null)
+      throw new IllegalArgumentException ();
+    this.header = new byte[UdpTnoSchema.REQ_HEADER_SIZE];
+    // Encode the header as if the payload were empty; the payload of the prototype is never looked at.
+    if (UdpTnoDataReq.encode
+      (prototype.getBtpType (),
+       BtpSap_DataReqPrimitive.unbox (prototype.getBtpSrcPort ()),
+       prototype.getBtpDestinationPort (),
+       BtpSap_DataReqPrimitive.unbox (prototype.getBtpDstPortInfo ()),
+       prototype.getGnTransportType (),
+       prototype.getGnDestination (),
+       prototype.getCommunicationsProfile (),
+       prototype.getSecurityProfile (),
+       prototype.hasMaxLifetime () ? prototype.getMaxLifeTime_ms () : BtpSap_DataReqPrimitive.ABSENT,
+       prototype.getGnMaxHopLimit (),
+       prototype.getGnTrafficClass (),
+       0,
+       0,
+       null,
+       null,
+       clientID,
+       unitMask,
+       UdpTnoDataReq.VERSION_1,
+       true,
+       ByteBuffer.wrap (this.header)) != UdpTnoSchema.REQ_HEADER_SIZE)
+      throw new IllegalArgumentException ();
+    this.prototype = prototype;
+    this.clientID = clientID;
+    this.unitMask = unitMask;
+  }
+  
+  /** Creates a template from a prototype request.
+   * 
+   * @param prototype The prototype BTP Data Request (non-{@code null}); its payload is ignored.
+   * @param clientID  The client ID (between 0 and 127 inclusive).
+   * @param unitIds   The ID's of the units to which the requests apply.
+   * 
+   * @throws IllegalArgumentException If the prototype is {@code null} or cannot be encoded.
+   * 
+   */
+  public UdpTnoRequestTemplate (final BtpSap_DataReqContainer prototype, final int clientID, final Set<Integer> unitIds)
+  {
+    this (prototype, clientID, UdpTnoDataReq.unitMask (unitIds));
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // PROTOTYPE / CLIENT ID / UNIT MASK
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final BtpSap_DataReqContainer prototype;
+  
+  public final BtpSap_DataReqContainer getPrototype ()
+  {
+    return this.prototype;
+  }
+  
+  private final int clientID;
+  
+  public final int getClientID ()
+  {
+    return this.clientID;
+  }
+  
+  private final int unitMask;
+  
+  public final int getUnitMask ()
+  {
+    return this.unitMask;
+  }
+  
+  /** Returns the version of the PDUs encoded from this template; always {@link UdpTnoDataReq#VERSION_1}.
+   * 
+   * @return The PDU version.
+   * 
+   */
+  public final int getVersion ()
+  {
+    return UdpTnoDataReq.VERSION_1;
+  }
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // HEADER IMAGE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The pre-encoded header, encoded with zero payload length (patched upon encoding).
+   * 
+   */
+  private final byte[] header;
+  
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // ENCODE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns the size of the PDU for given payload length, including 32-bit boundary padding.
+   * 
+   * @param payloadLength The payload length (non-negative).
+   * 
+   * @return The size of the PDU in bytes.
+   * 
+   */
+  public final int encodedSize (final int payloadLength)
+  {
+    return UdpTnoSchema.padded (UdpTnoSchema.REQ_HEADER_SIZE + payloadLength);
+  }
+  
+  /** Encodes a BTP Data Request PDU with given payload into a buffer.
+   * 
+   * <p>
+   * The PDU is written at the position of {@code dst}, and upon success, the position is advanced by the number of bytes written.
+   * Upon failure, the buffer is left unchanged.
+   * The method does not allocate.
+   * 
+   * @param data   The payload data, may be {@code null} if {@code length == 0}.
+   * @param offset The offset of the payload in {@code data}.
+   * @param length The length of the payload.
+   * @param dst    The buffer to write into (heap or direct), starting at its position.
+   * 
+   * @return The number of bytes written, or -1 in case of a failure.
+   * 
+   */
+  public final int encode (final byte[] data, final int offset, final int length, final ByteBuffer dst)
+  {
+    if (dst == null || offset < 0 || length < 0)
+      return -1;
+    if (data == null ? (offset > 0 || length > 0) : offset > data.length - length)
+      return -1;
+    if (length > UdpTnoDataReq.MAX_PDU_SIZE - UdpTnoSchema.REQ_HEADER_SIZE)
+      return -1;
+    final int size = encodedSize (length);
+    if (size > UdpTnoDataReq.MAX_PDU_SIZE || size > dst.remaining ())
+      return -1;
+    final int o = dst.position ();
+    dst.put (this.header, 0, UdpTnoSchema.REQ_HEADER_SIZE);
+    UdpTnoSchema.REQ_PAYLOAD_LENGTH.put (dst, o, length);
+    if (length > 0)
+      dst.put (data, offset, length);
+    // 32-BIT BOUNDARY PADDING
+    for (int index = o + UdpTnoSchema.REQ_HEADER_SIZE + length; index < o + size; index++)
+      dst.put (index, (byte) 0);
+    dst.position (o + size);
+    return size;
+  }
+  
+  /** Creates a BTP Data Request PDU with given payload.
+   * 
+   * @param data   The payload data, may be {@code null} if {@code length == 0}.
+   * @param offset The offset of the payload in {@code data}.
+   * @param length The length of the payload.
+   * 
+   * @return The BTP Data Request PDU, or {@code null} in case of a failure.
+   * 
+   */
+  public final byte[] encode (final byte[] data, final int offset, final int length)
+  {
+    if (length < 0 || length > UdpTnoDataReq.MAX_PDU_SIZE - UdpTnoSchema.REQ_HEADER_SIZE)
+      return null;
+    final byte[] pdu = new byte[encodedSize (length)];
+    if (encode (data, offset, length, ByteBuffer.wrap (pdu)) < 0)
+      return null;
+    return pdu;
+  }
+  
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.etsi.btpsap.BtpSapTypes;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+
+/** A (local) emulator of a UDP-TNO BtpSap router, for (load) testing clients without a real router.
+ * 
+ * <p>
+ * The emulator receives BtpSap Request PDUs (of either version) on a single UDP socket,
+ * and decodes them with {@link UdpTnoDataReq#parseRequest}.
+ * Each (socket) address it receives a valid request from is registered as a client,
+ * with the client ID, unit mask and version of its latest request.
+ * Single-hop broadcast (SHB), topologically-scoped broadcast (TSB) and GeoBroadcast (GBC) requests are looped back,
+ * as BtpSap Indication PDUs (see {@link UdpTnoDataInd#formatIndication(BtpSap_DataIndContainer, int, ByteBuffer, int)}),
+ * to every registered client whose unit mask intersects the unit mask of the request;
+ * the unit mask of each indication holds the intersection.
+ * Indications are sent in the version of the receiving client, and (optionally) to the requesting client as well.
+ * Other requests (e.g., GeoUnicast) are dropped.
+ * The emulator does not emulate the radio channel; in particular, it does not (yet) apply GeoBroadcast areas.
+ * 
+ * <p>
+ * An indication is encoded only once per version, into a buffer reused for all requests;
+ * the client ID and unit mask are patched for each recipient.
+ * Absent (i.e., zero) source ports and destination port infos of a request are absent in its indications,
+ * and the lifetime of the request is rounded up to whole seconds as the remaining lifetime of the indications.
+ * Requests are handled by a single thread (see {@link #run}), using blocking I/O.
+ * 
+ * <p>
+ * The emulator is meant for functional and moderate-rate load testing.
+ * Its throughput is bound by the system calls of that single thread: one receive per request,
+ * and one send per indication (i.e., per recipient); NIO offers no batched datagram I/O (like {@code recvmmsg}).
+ * It does not sustain 500k PDUs/s on loopback (a single-core run looped back about 70k to 80k PDUs/s end to end),
+ * so it should not be relied upon to benchmark transports or dispatchers at rates beyond that of a single thread;
+ * if needed, several emulators can be run on distinct ports.
+ * The (test) class {@code UdpTnoRouterEmulatorBenchmark} measures its throughput.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoBtpSapClient
+ * 
+ */
+public final class UdpTnoRouterEmulator
+implements Runnable, Closeable
+{
+
+  private static final Logger LOG = Logger.getLogger (UdpTnoRouterEmulator.class.getName ());
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Creates an emulator, bound to a given address.
+   * 
+   * @param bindAddress      The address to bind to, {@code null} for an automatically assigned address.
+   * @param loopback         Whether indications are also sent to the requesting client.
+   * @param socketBufferSize The socket send- and receive-buffer sizes in bytes, zero for the system defaults.
+   * 
+   * @throws IllegalArgumentException If the socket buffer size is negative.
+   * @throws IOException              If the channel could not be opened, configured or bound.
+   * 
+   */
+  public UdpTnoRouterEmulator (final SocketAddress bindAddress, final boolean loopback, final int socketBufferSize)
+  throws IOException
+  {
+    if (socketBufferSize < 0)
+      throw new IllegalArgumentException ();
+    this.loopback = loopback;
+    this.channel = DatagramChannel.open ();
+    try
+    {
+      if (socketBufferSize > 0)
+      {
+        this.channel.setOption (StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+        this.channel.setOption (StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+      }
+      this.channel.bind (bindAddress);
+    }
+    catch (IOException | RuntimeException e)
+    {
+      this.channel.close ();
+      throw e;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CHANNEL / LOOPBACK
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final DatagramChannel channel;
+
+  public final SocketAddress getLocalAddress () throws IOException
+  {
+    return this.channel.getLocalAddress ();
+  }
+
+  private final boolean loopback;
+
+  public final boolean isLoopback ()
+  {
+    return this.loopback;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CLIENTS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A registered client; only accessed by the emulator thread.
+   * 
+   */
+  private static final class Client
+  {
+
+    private Client (final SocketAddress address)
+    {
+      this.address = address;
+    }
+
+    private final SocketAddress address;
+
+    private int clientID;
+
+    private int unitMask;
+
+    private int version;
+
+  }
+
+  /** The clients by address; only accessed by the emulator thread.
+   * 
+   */
+  private final Map<SocketAddress, Client> clientMap = new HashMap<> ();
+
+  /** The clients, in order of registration; only accessed by the emulator thread.
+   * 
+   */
+  private Client[] clients = new Client[0];
+
+  private volatile int clientCount = 0;
+
+  /** Returns the number of registered clients.
+   * 
+   * @return The number of registered clients.
+   * 
+   */
+  public final int getClientCount ()
+  {
+    return this.clientCount;
+  }
+
+  private Client register (final SocketAddress address, final int clientID, final int unitMask, final int version)
+  {
+    Client client = this.clientMap.get (address);
+    if (client == null)
+    {
+      client = new Client (address);
+      this.clientMap.put (address, client);
+      this.clients = Arrays.copyOf (this.clients, this.clients.length + 1);
+      this.clients[this.clients.length - 1] = client;
+      this.clientCount = this.clients.length;
+      LOG.log (Level.INFO, "Registered client ID {0} at {1}.", new Object[]{clientID, address});
+    }
+    client.clientID = clientID;
+    client.unitMask = unitMask;
+    client.version = version;
+    return client;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // STATISTICS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final LongAdder receivedCount = new LongAdder ();
+
+  private final LongAdder invalidCount = new LongAdder ();
+
+  private final LongAdder droppedCount = new LongAdder ();
+
+  private final LongAdder sentCount = new LongAdder ();
+
+  /** Returns the number of datagrams received.
+   * 
+   * @return The number of datagrams received.
+   * 
+   */
+  public final long getReceivedCount ()
+  {
+    return this.receivedCount.sum ();
+  }
+
+  /** Returns the number of received datagrams that were not valid request PDUs.
+   * 
+   * @return The number of received datagrams that were not valid request PDUs.
+   * 
+   */
+  public final long getInvalidCount ()
+  {
+    return this.invalidCount.sum ();
+  }
+
+  /** Returns the number of (valid) requests that were not looped back (e.g., because of their transport type).
+   * 
+   * @return The number of (valid) requests that were not looped back.
+   * 
+   */
+  public final long getDroppedCount ()
+  {
+    return this.droppedCount.sum ();
+  }
+
+  /** Returns the number of indication PDUs sent.
+   * 
+   * @return The number of indication PDUs sent.
+   * 
+   */
+  public final long getSentCount ()
+  {
+    return this.sentCount.sum ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // INDICATION
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Returns an optional BTP port, mapping port zero (the encoding of an absent port in a request PDU) onto {@code null}.
+   * 
+   */
+  private static Integer optionalPort (final Integer port)
+  {
+    return port == null || port == 0 ? null : port;
+  }
+
+  /** Creates the indication looped back for a (parsed) request.
+   * 
+   * <p>
+   * Absent source ports and destination port infos remain absent.
+   * The lifetime of the request is rounded up to whole seconds as the remaining lifetime,
+   * so that lifetimes under one second are not truncated to zero.
+   * The payload is not copied.
+   * 
+   */
+  private static BtpSap_DataIndContainer indication (final BtpSap_DataReqContainer request)
+  {
+    return new BtpSap_DataIndContainer
+      (optionalPort (request.getBtpSrcPort ()),
+       request.getBtpDestinationPort (),
+       optionalPort (request.getBtpDstPortInfo ()),
+       null,
+       null,
+       null,
+       null,
+       null,
+       request.getGnTrafficClass (),
+       (int) ((request.getMaxLifeTime_ms () + 999L) / 1000L),
+       request.getLength (),
+       request.getOffset (),
+       request.getData ());
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // RUN / CLOSE
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private volatile boolean closed = false;
+
+  /** Receives and handles requests until the emulator is closed.
+   * 
+   * <p>
+   * This method must be invoked by at most one thread.
+   * 
+   */
+  @Override
+  public final void run ()
+  {
+    final byte[] pdu = new byte[UdpTnoDataReq.MAX_PDU_SIZE];
+    final ByteBuffer in = ByteBuffer.wrap (pdu);
+    final AtomicInteger clientIdContainer = new AtomicInteger ();
+    // One outgoing buffer per version; index 0 is unused.
+    final ByteBuffer[] out = new ByteBuffer[UdpTnoDataInd.VERSION_2 + 1];
+    // The length of the indication in each version; zero if not (yet) encoded, -1 if encoding failed.
+    final int[] outLength = new int[out.length];
+    for (int v = UdpTnoDataInd.VERSION_1; v <= UdpTnoDataInd.VERSION_2; v++)
+      out[v] = ByteBuffer.allocateDirect (UdpTnoDataInd.HEADER_SIZE + UdpTnoDataReq.MAX_PDU_SIZE);
+    try
+    {
+      while (! this.closed)
+      {
+        in.clear ();
+        final SocketAddress from = this.channel.receive (in);
+        if (from == null)
+          continue;
+        this.receivedCount.increment ();
+        final int length = in.position ();
+        final BtpSap_DataReqContainer request = UdpTnoDataReq.parseRequest (pdu, 0, length, clientIdContainer, null);
+        if (request == null)
+        {
+          this.invalidCount.increment ();
+          continue;
+        }
+        // The unit mask is in the prefix shared by all versions.
+        final int unitMask = UdpTnoSchema.REQ_UNITS.getInt (in, 0);
+        final Client requester =
+          register (from, clientIdContainer.get (), unitMask, UdpTnoDataReq.versionOf (pdu, 0, length));
+        final BtpSapTypes.GnTransportType gnTransportType = request.getGnTransportType ();
+        if (gnTransportType != BtpSapTypes.GnTransportType.GN_SHB
+          && gnTransportType != BtpSapTypes.GnTransportType.GN_TSB
+          && gnTransportType != BtpSapTypes.GnTransportType.GN_GBC)
+        {
+          this.droppedCount.increment ();
+          continue;
+        }
+        final BtpSap_DataIndContainer indication = indication (request);
+        Arrays.fill (outLength, 0);
+        for (final Client client : this.clients)
+        {
+          final int units = client.unitMask & unitMask;
+          if (units == 0 || (client == requester && ! this.loopback))
+            continue;
+          final ByteBuffer buffer = out[client.version];
+          if (outLength[client.version] == 0)
+          {
+            buffer.clear ();
+            outLength[client.version] = UdpTnoDataInd.formatIndication (indication, 0, buffer, client.version);
+            if (outLength[client.version] < 0)
+              LOG.log (Level.FINE, "Failed to encode indication in version {0}.", client.version);
+          }
+          if (outLength[client.version] < 0)
+            continue;
+          UdpTnoSchema.IND_CLIENT_ID.put (buffer, 0, client.clientID);
+          UdpTnoSchema.IND_UNITS.put (buffer, 0, units);
+          buffer.limit (outLength[client.version]);
+          buffer.position (0);
+          this.channel.send (buffer, client.address);
+          this.sentCount.increment ();
+        }
+      }
+    }
+    catch (AsynchronousCloseException ace)
+    {
+      // Closed; fall through.
+    }
+    catch (IOException ioe)
+    {
+      if (! this.closed)
+        LOG.log (Level.SEVERE, "Emulator terminated: ", ioe);
+    }
+  }
+
+  /** Closes the emulator; a thread in {@link #run} returns.
+   * 
+   * @throws IOException If closing the channel failed.
+   * 
+   */
+  @Override
+  public final void close () throws IOException
+  {
+    this.closed = true;
+    this.channel.close ();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // MAIN
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Runs an emulator until killed, logging throughput statistics every ten seconds.
+   * 
+   * <p>
+   * Arguments (all optional): port (default 4000), loopback ({@code true} or {@code false}, default {@code true})
+   * and socket buffer size (default 4194304).
+   * 
+   * @param args The arguments.
+   * 
+   * @throws IOException          If the emulator could not be created.
+   * @throws InterruptedException If interrupted while waiting.
+   * 
+   */
+  public static void main (final String[] args) throws IOException, InterruptedException
+  {
+    final int port = args.length > 0 ? Integer.parseInt (args[0]) : 4000;
+    final boolean loopback = args.length > 1 ? Boolean.parseBoolean (args[1]) : true;
+    final int socketBufferSize = args.length > 2 ? Integer.parseInt (args[2]) : 4194304;
+    final UdpTnoRouterEmulator emulator = new UdpTnoRouterEmulator (new InetSocketAddress (port), loopback, socketBufferSize);
+    final Thread thread = new Thread (emulator, "UdpTnoRouterEmulator");
+    thread.setDaemon (true);
+    thread.start ();
+    LOG.log (Level.INFO, "Emulator listening on {0}.", emulator.getLocalAddress ());
+    long received = 0L;
+    long sent = 0L;
+    while (thread.isAlive ())
+    {
+      Thread.sleep (10000L);
+      final long newReceived = emulator.getReceivedCount ();
+      final long newSent = emulator.getSentCount ();
+      LOG.log (Level.INFO, "Clients: {0}; received: {1}/s; sent: {2}/s; invalid: {3}; dropped: {4}.",
+        new Object[]{emulator.getClientCount (), (newReceived - received) / 10, (newSent - sent) / 10,
+                     emulator.getInvalidCount (), emulator.getDroppedCount ()});
+      received = newReceived;
+      sent = newSent;
+    }
+  }
+
+}
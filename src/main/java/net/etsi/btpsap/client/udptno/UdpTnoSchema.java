@@ -0,0 +1,676 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+
+/** The (declarative) schema of the UDP-TNO BtpSap Request and Indication PDUs.
+ * 
+ * <p>
+ * The layout of both PDU headers is defined exactly once, below, as a list of (big-endian) fields,
+ * and is used by both the encoders and the decoders in this package.
+ * The enum-valued fields are defined through (enum constant, wire code) pairs,
+ * which are compiled into ordinal-indexed and code-indexed lookup tables at class initialization.
+ * Likewise, the decoded values of all 256 lifetime/repetition bytes are tabulated.
+ * 
+ * <p>
+ * All field accessors take an absolute base offset (the start of the PDU) and respect the byte order of the buffer,
+ * so callers need not (and should not) change the order of buffers they do not own.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ * @see UdpTnoDataReq
+ * @see UdpTnoDataInd
+ * 
+ */
+final class UdpTnoSchema
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Inhibits instantiation.
+   * 
+   */
+  private UdpTnoSchema ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // FIELD
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A fixed-size, fixed-offset, big-endian unsigned field in a PDU header.
+   * 
+   */
+  static final class Field
+  {
+
+    final String name;
+
+    final int offset;
+
+    final int size;
+
+    private Field (final String name, final int offset, final int size)
+    {
+      if (size != 1 && size != 2 && size != 4 && size != 8)
+        throw new IllegalArgumentException ();
+      this.name = name;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    final int end ()
+    {
+      return this.offset + this.size;
+    }
+
+    /** Reads the field as an unsigned value (except for 64-bit fields, which are returned as is).
+     * 
+     */
+    final long get (final ByteBuffer buffer, final int base)
+    {
+      final boolean bigEndian = buffer.order () == ByteOrder.BIG_ENDIAN;
+      final int index = base + this.offset;
+      switch (this.size)
+      {
+        case 1:
+          return buffer.get (index) & 0xffL;
+        case 2:
+          final short s = buffer.getShort (index);
+          return (bigEndian ? s : Short.reverseBytes (s)) & 0xffffL;
+        case 4:
+          final int i = buffer.getInt (index);
+          return (bigEndian ? i : Integer.reverseBytes (i)) & 0xffffffffL;
+        case 8:
+          final long l = buffer.getLong (index);
+          return bigEndian ? l : Long.reverseBytes (l);
+        default:
+          throw new RuntimeException ();
+      }
+    }
+
+    final int getInt (final ByteBuffer buffer, final int base)
+    {
+      return (int) get (buffer, base);
+    }
+
+    final double getDouble (final ByteBuffer buffer, final int base)
+    {
+      return Double.longBitsToDouble (get (buffer, base));
+    }
+
+    /** Writes the (least-significant bytes of the) value into the field.
+     * 
+     */
+    final void put (final ByteBuffer buffer, final int base, final long value)
+    {
+      final boolean bigEndian = buffer.order () == ByteOrder.BIG_ENDIAN;
+      final int index = base + this.offset;
+      switch (this.size)
+      {
+        case 1:
+          buffer.put (index, (byte) value);
+          break;
+        case 2:
+          buffer.putShort (index, bigEndian ? (short) value : Short.reverseBytes ((short) value));
+          break;
+        case 4:
+          buffer.putInt (index, bigEndian ? (int) value : Integer.reverseBytes ((int) value));
+          break;
+        case 8:
+          buffer.putLong (index, bigEndian ? value : Long.reverseBytes (value));
+          break;
+        default:
+          throw new RuntimeException ();
+      }
+    }
+
+    final void putDouble (final ByteBuffer buffer, final int base, final double value)
+    {
+      put (buffer, base, Double.doubleToLongBits (value));
+    }
+
+    @Override
+    public final String toString ()
+    {
+      return this.name + "[" + this.offset + ".." + (end () - 1) + "]";
+    }
+
+  }
+
+  private static Field field (final String name, final int offset, final int size)
+  {
+    return new Field (name, offset, size);
+  }
+
+  /** Checks that the fields are contiguous, start at offset zero, and cover exactly the given header size.
+   * 
+   */
+  private static Field[] layout (final int headerSize, final Field... fields)
+  {
+    int offset = 0;
+    for (final Field field : fields)
+    {
+      if (field.offset != offset)
+        throw new IllegalStateException ("Gap or overlap in UDP-TNO PDU schema at " + field + ".");
+      offset = field.end ();
+    }
+    if (offset != headerSize)
+      throw new IllegalStateException ("UDP-TNO PDU schema does not match header size " + headerSize + ".");
+    return fields;
+  }
+
+  /** Zero-fills a header in the buffer (using 64-bit writes where possible).
+   * 
+   */
+  static void clear (final ByteBuffer buffer, final int base, final int headerSize)
+  {
+    int index = base;
+    final int end = base + headerSize;
+    while (index + 8 <= end)
+    {
+      buffer.putLong (index, 0L);
+      index += 8;
+    }
+    while (index < end)
+      buffer.put (index++, (byte) 0);
+  }
+
+  /** Returns the 32-bit-aligned size of a PDU.
+   * 
+   */
+  static int padded (final int unpaddedSize)
+  {
+    return (unpaddedSize + 3) & ~3;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // REQUEST PDU
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  static final int REQ_MAGIC_VALUE = 0x3d93;
+
+  static final Field REQ_MAGIC              = field ("MAGIC",               0, 2);
+  static final Field REQ_VERSION            = field ("VERSION",             2, 1);
+  static final Field REQ_CLIENT_ID          = field ("CLIENT_ID",           3, 1);
+  static final Field REQ_UNITS              = field ("UNITS",               4, 2);
+  static final Field REQ_BTP_FLAGS          = field ("BTP_FLAGS",           6, 1);
+  static final Field REQ_GN_TYPE            = field ("GN_TYPE",             7, 1);
+  static final Field REQ_SRC_PORT           = field ("SRC_PORT",            8, 2);
+  static final Field REQ_LIFETIME           = field ("LIFETIME",           10, 1);
+  static final Field REQ_TRAFFIC_CLASS      = field ("TRAFFIC_CLASS",      11, 1);
+  static final Field REQ_DST_PORT           = field ("DST_PORT",           12, 2);
+  static final Field REQ_DST_PORT_INFO      = field ("DST_PORT_INFO",      14, 2);
+  static final Field REQ_HOP_LIMIT          = field ("HOP_LIMIT",          16, 1);
+  static final Field REQ_REP_INTERVAL       = field ("REP_INTERVAL",       17, 1);
+  static final Field REQ_REP_TIME           = field ("REP_TIME",           18, 1);
+  static final Field REQ_RESERVED_1         = field ("RESERVED_1",         19, 1);
+  /** Latitude [GBC/AC] or unicast destination address [UC]. */
+  static final Field REQ_DST_LAT_OR_ADDRESS = field ("DST_LAT_OR_ADDRESS", 20, 8);
+  static final Field REQ_DST_LON            = field ("DST_LON",            28, 8);
+  static final Field REQ_DISTANCE_A         = field ("DISTANCE_A",         36, 2);
+  static final Field REQ_DISTANCE_B         = field ("DISTANCE_B",         38, 2);
+  static final Field REQ_ANGLE              = field ("ANGLE",              40, 2);
+  static final Field REQ_RESERVED_2         = field ("RESERVED_2",         42, 2);
+  static final Field REQ_ITS_AID            = field ("ITS_AID",            44, 4);
+  static final Field REQ_SSP                = field ("SSP",                48, 8);
+  static final Field REQ_PAYLOAD_LENGTH     = field ("PAYLOAD_LENGTH",     56, 4);
+
+  static final int REQ_HEADER_SIZE = 60;
+
+  static final Field[] REQUEST = layout (REQ_HEADER_SIZE,
+    REQ_MAGIC, REQ_VERSION, REQ_CLIENT_ID, REQ_UNITS, REQ_BTP_FLAGS, REQ_GN_TYPE,
+    REQ_SRC_PORT, REQ_LIFETIME, REQ_TRAFFIC_CLASS, REQ_DST_PORT, REQ_DST_PORT_INFO,
+    REQ_HOP_LIMIT, REQ_REP_INTERVAL, REQ_REP_TIME, REQ_RESERVED_1,
+    REQ_DST_LAT_OR_ADDRESS, REQ_DST_LON, REQ_DISTANCE_A, REQ_DISTANCE_B, REQ_ANGLE, REQ_RESERVED_2,
+    REQ_ITS_AID, REQ_SSP, REQ_PAYLOAD_LENGTH);
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // INDICATION PDU
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  static final int IND_MAGIC_VALUE = 0x3d94;
+
+  static final Field IND_MAGIC              = field ("MAGIC",               0, 2);
+  static final Field IND_VERSION            = field ("VERSION",             2, 1);
+  static final Field IND_CLIENT_ID          = field ("CLIENT_ID",           3, 1);
+  static final Field IND_UNITS              = field ("UNITS",               4, 2);
+  static final Field IND_BTP_FLAGS          = field ("BTP_FLAGS",           6, 1);
+  static final Field IND_GN_TYPE            = field ("GN_TYPE",             7, 1);
+  static final Field IND_SRC_PORT           = field ("SRC_PORT",            8, 2);
+  static final Field IND_REM_LIFETIME       = field ("REM_LIFETIME",       10, 1);
+  static final Field IND_TRAFFIC_CLASS      = field ("TRAFFIC_CLASS",      11, 1);
+  static final Field IND_DST_PORT           = field ("DST_PORT",           12, 2);
+  static final Field IND_DST_PORT_INFO      = field ("DST_PORT_INFO",      14, 2);
+  /** Latitude [GBC/AC] or unicast destination address [UC]. */
+  static final Field IND_DST_LAT_OR_ADDRESS = field ("DST_LAT_OR_ADDRESS", 16, 8);
+  static final Field IND_DST_LON            = field ("DST_LON",            24, 8);
+  static final Field IND_DISTANCE_A         = field ("DISTANCE_A",         32, 2);
+  static final Field IND_DISTANCE_B         = field ("DISTANCE_B",         34, 2);
+  static final Field IND_ANGLE              = field ("ANGLE",              36, 2);
+  static final Field IND_RESERVED_1         = field ("RESERVED_1",         38, 2);
+  static final Field IND_SRC_ADDRESS        = field ("SRC_ADDRESS",        40, 8);
+  static final Field IND_SRC_LAT            = field ("SRC_LAT",            48, 8);
+  static final Field IND_SRC_LON            = field ("SRC_LON",            56, 8);
+  static final Field IND_SEC_REPORT_LENGTH  = field ("SEC_REPORT_LENGTH",  64, 4);
+  static final Field IND_CERT_ID_LENGTH     = field ("CERT_ID_LENGTH",     68, 4);
+  static final Field IND_PERMISSIONS_LENGTH = field ("PERMISSIONS_LENGTH", 72, 4);
+  static final Field IND_PAYLOAD_LENGTH     = field ("PAYLOAD_LENGTH",     76, 4);
+
+  static final int IND_HEADER_SIZE = 80;
+
+  static final Field[] INDICATION = layout (IND_HEADER_SIZE,
+    IND_MAGIC, IND_VERSION, IND_CLIENT_ID, IND_UNITS, IND_BTP_FLAGS, IND_GN_TYPE,
+    IND_SRC_PORT, IND_REM_LIFETIME, IND_TRAFFIC_CLASS, IND_DST_PORT, IND_DST_PORT_INFO,
+    IND_DST_LAT_OR_ADDRESS, IND_DST_LON, IND_DISTANCE_A, IND_DISTANCE_B, IND_ANGLE, IND_RESERVED_1,
+    IND_SRC_ADDRESS, IND_SRC_LAT, IND_SRC_LON,
+    IND_SEC_REPORT_LENGTH, IND_CERT_ID_LENGTH, IND_PERMISSIONS_LENGTH, IND_PAYLOAD_LENGTH);
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // VERSIONS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The original (fixed-layout, 32-bit padded) PDU format. */
+  static final int VERSION_1 = 1;
+
+  /** The compact PDU format.
+   * 
+   * <p>
+   * Version-2 PDUs keep the first 16 bytes (the prefix) of version-1 PDUs (with the version byte set to 2),
+   * followed by a presence bitmap, the present optional fields (in bitmap order),
+   * the payload length as an (unsigned LEB128) varint, and the payload, without padding.
+   * Coordinates are 32-bit fixed-point numbers in units of 1e-7 degrees.
+   * 
+   */
+  static final int VERSION_2 = 2;
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // COMPACT (VERSION 2) REQUEST PDU
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  // Bytes 0-16 (up to and including HOP_LIMIT) are as in version 1.
+  static final Field REQ2_PRESENCE          = field ("PRESENCE",           17, 1);
+
+  static final int REQ2_FIXED_SIZE = 18;
+
+  static final int REQ2_HAS_REPETITION = 0x01;
+  static final int REQ2_HAS_GN_ADDRESS = 0x02;
+  static final int REQ2_HAS_GN_AREA    = 0x04;
+  static final int REQ2_HAS_ITS_AID    = 0x08;
+  static final int REQ2_HAS_SSP        = 0x10;
+
+  /** The sizes of the optional request fields, indexed by presence bit number; -1 for varints. */
+  static final int[] REQ2_OPTIONAL_SIZES = { 2, 8, 14, -1, 8 };
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // COMPACT (VERSION 2) INDICATION PDU
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  // Bytes 0-15 are as in version 1.
+  static final Field IND2_PRESENCE          = field ("PRESENCE",           16, 1);
+
+  static final int IND2_FIXED_SIZE = 17;
+
+  static final int IND2_HAS_DST_GN_ADDRESS = 0x01;
+  static final int IND2_HAS_DST_GN_AREA    = 0x02;
+  static final int IND2_HAS_SRC_GN_ADDRESS = 0x04;
+  static final int IND2_HAS_SRC_POSITION   = 0x08;
+
+  /** The sizes of the optional indication fields, indexed by presence bit number. */
+  static final int[] IND2_OPTIONAL_SIZES = { 8, 14, 8, 8 };
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // COMPACT (VERSION 2) OPTIONAL FIELDS
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  // Offsets are relative to the start of the optional field.
+
+  static final Field REPETITION2_INTERVAL   = field ("REP_INTERVAL",        0, 1);
+  static final Field REPETITION2_TIME       = field ("REP_TIME",            1, 1);
+
+  static final Field[] REPETITION2 = layout (2, REPETITION2_INTERVAL, REPETITION2_TIME);
+
+  static final Field GN_ADDRESS2            = field ("GN_ADDRESS",          0, 8);
+
+  static final Field[] ADDRESS2 = layout (8, GN_ADDRESS2);
+
+  static final Field AREA2_LATITUDE_E7      = field ("LATITUDE_E7",         0, 4);
+  static final Field AREA2_LONGITUDE_E7     = field ("LONGITUDE_E7",        4, 4);
+  static final Field AREA2_DISTANCE_A       = field ("DISTANCE_A",          8, 2);
+  static final Field AREA2_DISTANCE_B       = field ("DISTANCE_B",         10, 2);
+  static final Field AREA2_ANGLE            = field ("ANGLE",              12, 2);
+
+  static final Field[] AREA2 = layout (14,
+    AREA2_LATITUDE_E7, AREA2_LONGITUDE_E7, AREA2_DISTANCE_A, AREA2_DISTANCE_B, AREA2_ANGLE);
+
+  static final Field SSP2                   = field ("SSP",                 0, 8);
+
+  static final Field[] SECURITY2 = layout (8, SSP2);
+
+  static final Field POSITION2_LATITUDE_E7  = field ("LATITUDE_E7",         0, 4);
+  static final Field POSITION2_LONGITUDE_E7 = field ("LONGITUDE_E7",        4, 4);
+
+  static final Field[] POSITION2 = layout (8, POSITION2_LATITUDE_E7, POSITION2_LONGITUDE_E7);
+
+  /** Returns the (absolute) index of an optional field, or of the payload length if the bit is beyond the optional fields.
+   * 
+   * <p>
+   * The PDU must have been validated, see {@link #compactLength}.
+   * 
+   * @param buffer   The buffer holding the PDU.
+   * @param presence The presence bitmap.
+   * @param index    The (absolute) index of the first optional field.
+   * @param sizes    The sizes of the optional fields.
+   * @param bit      The presence bit of the field.
+   * 
+   */
+  static int compactIndex
+  (final ByteBuffer buffer, final int presence, int index, final int[] sizes, final int bit)
+  {
+    for (int n = 0; n < sizes.length && (1 << n) < bit; n++)
+      if ((presence & (1 << n)) != 0)
+        index = sizes[n] >= 0 ? index + sizes[n] : varintEnd (buffer, index, buffer.capacity ());
+    return index;
+  }
+
+  /** Walks a compact PDU and returns its length as implied by its presence bitmap, varints and payload length.
+   * 
+   * @param buffer    The buffer holding the PDU.
+   * @param base      The offset of the PDU in the buffer.
+   * @param length    The (maximum) length of the PDU.
+   * @param fixedSize The size of the fixed part of the PDU (including the presence bitmap).
+   * @param presence  The presence bitmap field.
+   * @param sizes     The sizes of the optional fields.
+   * 
+   * @return The length of the PDU, or -1 if malformed (unknown presence bits, overlong varints,
+   *         or fields extending beyond {@code length}).
+   * 
+   */
+  static int compactLength
+  (final ByteBuffer buffer, final int base, final int length, final int fixedSize, final Field presence, final int[] sizes)
+  {
+    if (length < fixedSize)
+      return -1;
+    final int presenceBits = presence.getInt (buffer, base);
+    if ((presenceBits >> sizes.length) != 0)
+      return -1;
+    final int limit = base + length;
+    int index = base + fixedSize;
+    for (int n = 0; n < sizes.length; n++)
+      if ((presenceBits & (1 << n)) != 0)
+      {
+        index = sizes[n] >= 0 ? index + sizes[n] : varintEnd (buffer, index, limit);
+        if (index < 0 || index > limit)
+          return -1;
+      }
+    final int payloadIndex = varintEnd (buffer, index, limit);
+    if (payloadIndex < 0)
+      return -1;
+    final long payloadLength = getVarint (buffer, index);
+    if (payloadLength > limit - payloadIndex)
+      return -1;
+    return (int) (payloadIndex + payloadLength - base);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // VARINTS / FIXED-POINT COORDINATES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The maximum size of a varint; all varints hold unsigned 32-bit values. */
+  static final int VARINT_MAX_SIZE = 5;
+
+  static int varintSize (final long value)
+  {
+    int size = 1;
+    for (long v = value >>> 7; v != 0; v >>>= 7)
+      size++;
+    return size;
+  }
+
+  /** Writes an (unsigned LEB128) varint at given index, and returns the index just beyond it.
+   * 
+   */
+  static int putVarint (final ByteBuffer buffer, int index, final long value)
+  {
+    long v = value;
+    while ((v & ~0x7fL) != 0)
+    {
+      buffer.put (index++, (byte) ((v & 0x7f) | 0x80));
+      v >>>= 7;
+    }
+    buffer.put (index++, (byte) v);
+    return index;
+  }
+
+  /** Returns the index just beyond the varint at given index, or -1 if it is too long or extends beyond the limit.
+   * 
+   * <p>
+   * A varint is also too long if its value does not fit in 32 bits,
+   * i.e., if its fifth (and last) byte carries more than the 4 remaining value bits.
+   * 
+   */
+  static int varintEnd (final ByteBuffer buffer, final int index, final int limit)
+  {
+    final int last = index + VARINT_MAX_SIZE - 1;
+    for (int i = index; i < limit && i < last; i++)
+      if ((buffer.get (i) & 0x80) == 0)
+        return i + 1;
+    return last < limit && (buffer.get (last) & 0xf0) == 0 ? last + 1 : -1;
+  }
+
+  /** Reads a (valid) varint.
+   * 
+   */
+  static long getVarint (final ByteBuffer buffer, final int index)
+  {
+    long value = 0L;
+    for (int i = index, shift = 0; ; i++, shift += 7)
+    {
+      final byte b = buffer.get (i);
+      value |= (b & 0x7fL) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+  }
+
+  static int toE7 (final double degrees)
+  {
+    return (int) Math.round (degrees * 1e7);
+  }
+
+  static double fromE7 (final int degrees_e7)
+  {
+    return degrees_e7 / 1e7;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // ENUM CODES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Compiles enum constants and their wire codes (pairwise) into a table of wire codes indexed by ordinal
+   *  (-1 for unmapped constants).
+   * 
+   */
+  private static <E extends Enum<E>> int[] codes (final Class<E> enumClass, final E[] constants, final int[] wireCodes)
+  {
+    if (constants.length != wireCodes.length)
+      throw new IllegalArgumentException ();
+    final int[] codes = new int[enumClass.getEnumConstants ().length];
+    for (int i = 0; i < codes.length; i++)
+      codes[i] = -1;
+    for (int c = 0; c < constants.length; c++)
+      codes[constants[c].ordinal ()] = wireCodes[c];
+    return codes;
+  }
+
+  /** Inverts a table of wire codes into a table of enum constants indexed by wire code ({@code null} for unknown codes).
+   * 
+   */
+  @SuppressWarnings ("unchecked")
+  private static <E extends Enum<E>> E[] decodes (final Class<E> enumClass, final int[] codes, final int codeSpace)
+  {
+    final E[] constants = enumClass.getEnumConstants ();
+    final E[] decodes = (E[]) Array.newInstance (enumClass, codeSpace);
+    for (int ordinal = 0; ordinal < codes.length; ordinal++)
+      if (codes[ordinal] >= 0)
+        decodes[codes[ordinal]] = constants[ordinal];
+    return decodes;
+  }
+
+  /** BTP type: low nibble of the BTP flags. */
+  static final int[] BTP_TYPE_CODES = codes (BtpType.class,
+    new BtpType[] { BtpType.BTP_A, BtpType.BTP_B },
+    new int[]     { 0,             1             });
+
+  static final BtpType[] BTP_TYPES = decodes (BtpType.class, BTP_TYPE_CODES, 16);
+
+  /** Communications profile: high nibble of the BTP flags. */
+  static final int[] GN_COMM_PROFILE_CODES = codes (GnCommunicationsProfile.class,
+    new GnCommunicationsProfile[] { GnCommunicationsProfile.GN_COMPROF_ITSG5, GnCommunicationsProfile.GN_COMPROF_CELLULAR },
+    new int[]                     { 0,                                        1                                           });
+
+  static final GnCommunicationsProfile[] GN_COMM_PROFILES = decodes (GnCommunicationsProfile.class, GN_COMM_PROFILE_CODES, 16);
+
+  /** Transport type: high nibble of the GN type. */
+  static final int[] GN_TRANSPORT_TYPE_CODES = codes (GnTransportType.class,
+    new GnTransportType[]
+      { GnTransportType.GN_UC, GnTransportType.GN_SHB, GnTransportType.GN_TSB, GnTransportType.GN_GBC, GnTransportType.GN_AC },
+    new int[]
+      { 0,                     1,                      2,                      3,                      4                     });
+
+  static final GnTransportType[] GN_TRANSPORT_TYPES = decodes (GnTransportType.class, GN_TRANSPORT_TYPE_CODES, 16);
+
+  /** Area shape: low nibble of the GN type [GBC/AC only]. */
+  static final int[] GN_AREA_SHAPE_CODES = codes (GnAreaShape.class,
+    new GnAreaShape[] { GnAreaShape.CIRCLE, GnAreaShape.RECTANGLE, GnAreaShape.ELLIPSE },
+    new int[]         { 0,                  1,                     2                   });
+
+  static final GnAreaShape[] GN_AREA_SHAPES = decodes (GnAreaShape.class, GN_AREA_SHAPE_CODES, 16);
+
+  /** Whether a transport type (by ordinal) carries a destination area. */
+  static final boolean[] HAS_GN_AREA = new boolean[GnTransportType.values ().length];
+
+  static
+  {
+    HAS_GN_AREA[GnTransportType.GN_GBC.ordinal ()] = true;
+    HAS_GN_AREA[GnTransportType.GN_AC.ordinal ()] = true;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // LIFETIME / REPETITION TIME
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** The time bases in ms, indexed by the two least-significant bits of a lifetime/repetition byte.
+   * 
+   * <p>
+   * The six most-significant bits hold the multiplier.
+   * 
+   */
+  static final int[] TIME_BASE_MS = { 50, 1000, 10000, 100000 };
+
+  static final int TIME_MAX_MULTIPLIER = 63;
+
+  /** The decoded time in ms for each of the 256 lifetime/repetition byte values. */
+  static final int[] TIME_MS = new int[256];
+
+  static
+  {
+    for (int b = 0; b < 256; b++)
+      TIME_MS[b] = (b >> 2) * TIME_BASE_MS[b & 0x03];
+  }
+
+  static int decodeTime_ms (final byte timeByte)
+  {
+    return TIME_MS[timeByte & 0xff];
+  }
+
+  /** The largest time in ms each base can hold, indexed like {@link #TIME_BASE_MS}. */
+  static final int[] TIME_MAX_MS = new int[TIME_BASE_MS.length];
+
+  /** The number of fraction bits of the reciprocals in {@link #TIME_RECIPROCAL}. */
+  static final int TIME_RECIPROCAL_SHIFT = 40;
+
+  /** The reciprocals of the time bases, rounded up, indexed like {@link #TIME_BASE_MS}.
+   * 
+   * <p>
+   * For all dividends {@code n} below {@code 2^40 / base} (about 11 million for the largest base),
+   * {@code (n * reciprocal) >>> 40} equals {@code n / base}, see {@link #encodeTime_ms}.
+   * 
+   */
+  static final long[] TIME_RECIPROCAL = new long[TIME_BASE_MS.length];
+
+  static
+  {
+    for (int baseBits = 0; baseBits < TIME_BASE_MS.length; baseBits++)
+    {
+      TIME_MAX_MS[baseBits] = TIME_BASE_MS[baseBits] * TIME_MAX_MULTIPLIER;
+      TIME_RECIPROCAL[baseBits] = (1L << TIME_RECIPROCAL_SHIFT) / TIME_BASE_MS[baseBits] + 1;
+    }
+  }
+
+  /** Encodes a time in ms into a lifetime/repetition byte.
+   * 
+   * <p>
+   * Selects the smallest base that can hold the value and rounds to the nearest multiple (half-way up).
+   * Non-positive values encode to zero; values beyond the maximum encode to {@code 0xff}.
+   * The multiplier is obtained through a multiplication with the reciprocal of the base instead of a division;
+   * the rounded dividend never exceeds {@code 63 * 100000 + 50000}, for which the result is exact.
+   * 
+   */
+  static byte encodeTime_ms (final int time_ms)
+  {
+    if (time_ms <= 0)
+      return (byte) 0;
+    for (int baseBits = 0; baseBits < TIME_BASE_MS.length; baseBits++)
+      if (time_ms <= TIME_MAX_MS[baseBits])
+        return (byte) (baseBits
+          + ((int) (((time_ms + (TIME_BASE_MS[baseBits] >> 1)) * TIME_RECIPROCAL[baseBits]) >>> TIME_RECIPROCAL_SHIFT) << 2));
+    return (byte) 0xff;
+  }
+
+}
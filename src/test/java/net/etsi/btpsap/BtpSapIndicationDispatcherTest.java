@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import net.etsi.btpsap.BtpSapTypes.GnCertificateId;
+import net.etsi.btpsap.BtpSapTypes.GnDestination;
+import net.etsi.btpsap.BtpSapTypes.GnPermissions;
+import net.etsi.btpsap.BtpSapTypes.GnPositionVector;
+import net.etsi.btpsap.BtpSapTypes.GnSecurityReport;
+import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link BtpSapIndicationDispatcher}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class BtpSapIndicationDispatcherTest
+{
+
+  private static final byte[] PAYLOAD = { 0, 1, 2, 3, 4 };
+
+  /** A handler appending its name and the variant through which it was invoked to a shared log.
+   *
+   */
+  private static final class Recorder
+  implements BtpSap_DataInd
+  {
+
+    private final String name;
+
+    private final List<String> log;
+
+    Recorder (final String name, final List<String> log)
+    {
+      this.name = name;
+      this.log = log;
+    }
+
+    @Override
+    public void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int length,
+     final byte[] data)
+    {
+      assertSame (PAYLOAD, data);
+      this.log.add (this.name + ":array");
+    }
+
+    @Override
+    public void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int offset,
+     final int length,
+     final byte[] data)
+    {
+      assertSame (PAYLOAD, data);
+      assertEquals (1, offset);
+      this.log.add (this.name + ":offset");
+    }
+
+    @Override
+    public void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final ByteBuffer payload)
+    {
+      this.log.add (this.name + ":buffer");
+    }
+
+  }
+
+  private static void dispatch (final BtpSap_DataInd dispatcher, final int btpDstPort, final Integer btpDstPortInfo)
+  {
+    dispatcher.btpSapIndication (1234, btpDstPort, btpDstPortInfo, null, null, null, null, null, null, null,
+      PAYLOAD.length, PAYLOAD);
+  }
+
+  /** Dispatches an indication and returns (and clears) the log.
+   *
+   */
+  private static List<String> dispatch
+  (final BtpSap_DataInd dispatcher, final List<String> log, final int btpDstPort, final Integer btpDstPortInfo)
+  {
+    dispatch (dispatcher, btpDstPort, btpDstPortInfo);
+    final List<String> result = new ArrayList<> (log);
+    log.clear ();
+    return result;
+  }
+
+  @Test
+  public void testPortRouting ()
+  {
+    final List<String> log = new ArrayList<> ();
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    final Recorder a = new Recorder ("a", log);
+    final Recorder b = new Recorder ("b", log);
+    assertFalse (dispatcher.hasHandlers (2001));
+    assertTrue (dispatcher.register (2001, a));
+    assertTrue (dispatcher.register (2001, b));
+    assertFalse (dispatcher.register (2001, a));
+    assertTrue (dispatcher.hasHandlers (2001));
+    assertEquals (Arrays.asList ("a:array", "b:array"), dispatch (dispatcher, log, 2001, null));
+    assertEquals (Arrays.asList ("a:array", "b:array"), dispatch (dispatcher, log, 2001, 17));
+    assertEquals (Collections.emptyList (), dispatch (dispatcher, log, 2002, null));
+    assertTrue (dispatcher.unregister (2001, a));
+    assertFalse (dispatcher.unregister (2001, a));
+    assertEquals (Arrays.asList ("b:array"), dispatch (dispatcher, log, 2001, null));
+    assertTrue (dispatcher.unregister (2001, b));
+    assertFalse (dispatcher.hasHandlers (2001));
+    assertEquals (Collections.emptyList (), dispatch (dispatcher, log, 2001, null));
+  }
+
+  @Test
+  public void testPortInfoRouting ()
+  {
+    final List<String> log = new ArrayList<> ();
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    final Recorder port = new Recorder ("port", log);
+    final Recorder info5 = new Recorder ("info5", log);
+    final Recorder info9 = new Recorder ("info9", log);
+    assertTrue (dispatcher.register (2001, port));
+    assertTrue (dispatcher.register (2001, 9, info9));
+    assertTrue (dispatcher.register (2001, 5, info5));
+    assertFalse (dispatcher.register (2001, 5, info5));
+    // The same handler on another port info.
+    assertTrue (dispatcher.register (2001, 7, info5));
+    // Port-info handlers come first.
+    assertEquals (Arrays.asList ("info5:array", "port:array"), dispatch (dispatcher, log, 2001, 5));
+    assertEquals (Arrays.asList ("info5:array", "port:array"), dispatch (dispatcher, log, 2001, 7));
+    assertEquals (Arrays.asList ("info9:array", "port:array"), dispatch (dispatcher, log, 2001, 9));
+    assertEquals (Arrays.asList ("port:array"), dispatch (dispatcher, log, 2001, 6));
+    assertEquals (Arrays.asList ("port:array"), dispatch (dispatcher, log, 2001, null));
+    assertTrue (dispatcher.unregister (2001, 7, info5));
+    assertFalse (dispatcher.unregister (2001, 7, info5));
+    assertFalse (dispatcher.unregister (2001, 8, info5));
+    assertEquals (Arrays.asList ("port:array"), dispatch (dispatcher, log, 2001, 7));
+    assertEquals (Arrays.asList ("info5:array", "port:array"), dispatch (dispatcher, log, 2001, 5));
+    // Unregistering from the port leaves port-info registrations in place.
+    assertTrue (dispatcher.unregister (2001, port));
+    assertTrue (dispatcher.hasHandlers (2001));
+    assertEquals (Arrays.asList ("info5:array"), dispatch (dispatcher, log, 2001, 5));
+    assertEquals (Collections.emptyList (), dispatch (dispatcher, log, 2001, 6));
+    assertTrue (dispatcher.unregister (2001, 5, info5));
+    assertTrue (dispatcher.unregister (2001, 9, info9));
+    assertFalse (dispatcher.hasHandlers (2001));
+  }
+
+  @Test
+  public void testWildcardRouting ()
+  {
+    final List<String> log = new ArrayList<> ();
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    final Recorder port = new Recorder ("port", log);
+    final Recorder info = new Recorder ("info", log);
+    final Recorder wildcard = new Recorder ("wildcard", log);
+    assertNull (dispatcher.getWildcardHandler ());
+    dispatcher.setWildcardHandler (wildcard);
+    assertSame (wildcard, dispatcher.getWildcardHandler ());
+    dispatcher.register (2001, port);
+    dispatcher.register (2003, 7, info);
+    assertEquals (Arrays.asList ("port:array"), dispatch (dispatcher, log, 2001, null));
+    assertEquals (Arrays.asList ("wildcard:array"), dispatch (dispatcher, log, 2002, null));
+    assertEquals (Arrays.asList ("info:array"), dispatch (dispatcher, log, 2003, 7));
+    // A port with only port-info handlers falls back to the wildcard handler for other port infos.
+    assertEquals (Arrays.asList ("wildcard:array"), dispatch (dispatcher, log, 2003, 8));
+    assertEquals (Arrays.asList ("wildcard:array"), dispatch (dispatcher, log, 2003, null));
+    dispatcher.setWildcardHandler (null);
+    assertNull (dispatcher.getWildcardHandler ());
+    assertEquals (Collections.emptyList (), dispatch (dispatcher, log, 2002, null));
+  }
+
+  @Test
+  public void testVariants ()
+  {
+    final List<String> log = new ArrayList<> ();
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    dispatcher.register (2001, new Recorder ("a", log));
+    dispatcher.btpSapIndication (1234, 2001, null, null, null, null, null, null, null, null, 1, 3, PAYLOAD);
+    dispatcher.btpSapIndication (1234, 2001, null, null, null, null, null, null, null, null, ByteBuffer.allocateDirect (3));
+    assertEquals (Arrays.asList ("a:offset", "a:buffer"), log);
+  }
+
+  @Test
+  public void testHandlerFailureAbortsDelivery ()
+  {
+    final List<String> log = new ArrayList<> ();
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    dispatcher.register (2001, (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+      gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+    {
+      throw new IllegalStateException ();
+    });
+    dispatcher.register (2001, new Recorder ("b", log));
+    try
+    {
+      dispatch (dispatcher, 2001, null);
+      fail ();
+    }
+    catch (IllegalStateException ise)
+    {
+      // Expected.
+    }
+    assertTrue (log.isEmpty ());
+  }
+
+  @Test
+  public void testIllegalArguments ()
+  {
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    final Recorder a = new Recorder ("a", new ArrayList<> ());
+    final Runnable[] illegal =
+    {
+      () -> dispatcher.register (-1, a),
+      () -> dispatcher.register (BtpSapIndicationDispatcher.NUMBER_OF_PORTS, a),
+      () -> dispatcher.register (2001, null),
+      () -> dispatcher.register (2001, -1, a),
+      () -> dispatcher.register (2001, BtpSapIndicationDispatcher.NUMBER_OF_PORTS, a),
+      () -> dispatcher.register (2001, 5, null),
+      () -> dispatcher.unregister (-1, a),
+      () -> dispatcher.unregister (BtpSapIndicationDispatcher.NUMBER_OF_PORTS, 5, a),
+      () -> dispatcher.hasHandlers (-1),
+      () -> dispatch (dispatcher, BtpSapIndicationDispatcher.NUMBER_OF_PORTS, null)
+    };
+    for (final Runnable runnable : illegal)
+      try
+      {
+        runnable.run ();
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+  }
+
+  @Test
+  public void testRegisterDuringDispatch () throws InterruptedException
+  {
+    final BtpSapIndicationDispatcher dispatcher = new BtpSapIndicationDispatcher ();
+    final AtomicLong stable = new AtomicLong ();
+    final AtomicLong stableInfo = new AtomicLong ();
+    final AtomicLong transientCount = new AtomicLong ();
+    final BtpSap_DataInd stableHandler = (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport,
+      gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) -> stable.incrementAndGet ();
+    final BtpSap_DataInd stableInfoHandler = (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport,
+      gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) -> stableInfo.incrementAndGet ();
+    final BtpSap_DataInd transientHandler = (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport,
+      gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) -> transientCount.incrementAndGet ();
+    dispatcher.register (2001, stableHandler);
+    dispatcher.register (2001, 5, stableInfoHandler);
+    final AtomicBoolean done = new AtomicBoolean ();
+    final AtomicReference<Throwable> failure = new AtomicReference<> ();
+    final int dispatches = 200000;
+    final Thread[] dispatchers = new Thread[2];
+    for (int t = 0; t < dispatchers.length; t++)
+    {
+      dispatchers[t] = new Thread (() ->
+      {
+        try
+        {
+          for (int i = 0; i < dispatches; i++)
+            dispatch (dispatcher, 2001, 5);
+        }
+        catch (Throwable e)
+        {
+          failure.set (e);
+        }
+      });
+      dispatchers[t].start ();
+    }
+    final Thread mutator = new Thread (() ->
+    {
+      int i = 0;
+      while (! done.get ())
+      {
+        // Churn the route of the dispatched port, and of a neighbouring port info.
+        assertTrue (dispatcher.register (2001, transientHandler));
+        assertTrue (dispatcher.register (2001, 4 + 2 * (i % 2), transientHandler));
+        assertTrue (dispatcher.unregister (2001, transientHandler));
+        assertTrue (dispatcher.unregister (2001, 4 + 2 * (i % 2), transientHandler));
+        i++;
+      }
+    });
+    mutator.start ();
+    for (final Thread thread : dispatchers)
+      thread.join ();
+    done.set (true);
+    mutator.join ();
+    assertNull (failure.get ());
+    // Handlers that stay registered see every indication exactly once.
+    assertEquals (dispatchers.length * dispatches, stable.get ());
+    assertEquals (dispatchers.length * dispatches, stableInfo.get ());
+    assertTrue (transientCount.get () <= dispatchers.length * dispatches);
+  }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.etsi.btpsap.BtpSapIndicationFanOut.OverflowPolicy;
+import net.etsi.btpsap.BtpSapIndicationFanOut.Subscription;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link BtpSapIndicationFanOut}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class BtpSapIndicationFanOutTest
+{
+
+  private static final long TIMEOUT_MS = 5000L;
+
+  /** A handler recording destination port and payload of each indication,
+   *  and holding up its worker on the first indication until released.
+   * 
+   */
+  private static final class GatedHandler
+  implements BtpSap_DataInd
+  {
+
+    private final CountDownLatch entered = new CountDownLatch (1);
+
+    private final CountDownLatch release = new CountDownLatch (1);
+
+    private final List<Integer> dstPorts = new CopyOnWriteArrayList<> ();
+
+    private final List<String> payloads = new CopyOnWriteArrayList<> ();
+
+    @Override
+    public void btpSapIndication
+    (final Integer btpSrcPort,
+     final int btpDstPort,
+     final Integer btpDstPortInfo,
+     final GnDestination gnDstAddress,
+     final GnPositionVector gnSrcPV,
+     final GnSecurityReport gnSecReport,
+     final GnCertificateId gnCertId,
+     final GnPermissions gnPermissions,
+     final GnTrafficClass gnTrafficClass,
+     final Integer gnRemLifetime_s,
+     final int length,
+     final byte[] data)
+    {
+      this.entered.countDown ();
+      try
+      {
+        this.release.await ();
+      }
+      catch (InterruptedException ie)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      this.payloads.add (new String (data, 0, length));
+      this.dstPorts.add (btpDstPort);
+    }
+
+    private void awaitEntered () throws InterruptedException
+    {
+      assertTrue (this.entered.await (TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+  }
+
+  private static void indicate (final BtpSapIndicationFanOut fanOut, final int btpDstPort)
+  {
+    final byte[] data = ("#" + btpDstPort).getBytes ();
+    fanOut.btpSapIndication (null, btpDstPort, null, null, null, null, null, null, null, null, data.length, data);
+  }
+
+  /** Waits until the subscription has delivered given number of indications.
+   * 
+   */
+  private static void awaitDelivered (final Subscription subscription, final long delivered) throws InterruptedException
+  {
+    final long deadline = System.currentTimeMillis () + TIMEOUT_MS;
+    while (subscription.getDeliveredCount () < delivered && System.currentTimeMillis () < deadline)
+      Thread.sleep (1L);
+    assertEquals (delivered, subscription.getDeliveredCount ());
+  }
+
+  private static void awaitClosed (final Subscription subscription) throws InterruptedException
+  {
+    final long deadline = System.currentTimeMillis () + TIMEOUT_MS;
+    while (! subscription.isClosed () && System.currentTimeMillis () < deadline)
+      Thread.sleep (1L);
+    assertTrue (subscription.isClosed ());
+  }
+
+  @Test
+  public void testDelivery () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler1 = new GatedHandler ();
+      final GatedHandler handler2 = new GatedHandler ();
+      final Subscription subscription1 = fanOut.subscribe ("one", handler1, 16, OverflowPolicy.DROP_NEWEST, 1000);
+      final Subscription subscription2 = fanOut.subscribe ("two", handler2, 16, OverflowPolicy.DROP_NEWEST, 1000);
+      assertArrayEquals (new Subscription[]{subscription1, subscription2}, fanOut.getSubscriptions ());
+      handler1.release.countDown ();
+      handler2.release.countDown ();
+      indicate (fanOut, 1);
+      final byte[] data = "xx#2".getBytes ();
+      fanOut.btpSapIndication (null, 2, null, null, null, null, null, null, null, null, 2, 2, data);
+      final ByteBuffer payload = ByteBuffer.allocateDirect (8);
+      payload.put ("#3".getBytes ()).flip ();
+      fanOut.btpSapIndication (null, 3, null, null, null, null, null, null, null, null, payload);
+      assertEquals (0, payload.position ());
+      awaitDelivered (subscription1, 3);
+      awaitDelivered (subscription2, 3);
+      assertEquals (Arrays.asList (1, 2, 3), handler1.dstPorts);
+      assertEquals (Arrays.asList ("#1", "#2", "#3"), handler1.payloads);
+      assertEquals (handler1.payloads, handler2.payloads);
+      assertEquals (0, subscription1.getDroppedCount ());
+    }
+  }
+
+  @Test
+  public void testDropNewest () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler = new GatedHandler ();
+      final Subscription subscription = fanOut.subscribe ("dropNewest", handler, 2, OverflowPolicy.DROP_NEWEST, 1000);
+      indicate (fanOut, 0);
+      handler.awaitEntered ();
+      for (int p = 1; p <= 4; p++)
+        indicate (fanOut, p);
+      assertEquals (2, subscription.getQueueDepth ());
+      assertEquals (2, subscription.getDroppedCount ());
+      handler.release.countDown ();
+      awaitDelivered (subscription, 3);
+      assertEquals (Arrays.asList (0, 1, 2), handler.dstPorts);
+      assertEquals (Arrays.asList ("#0", "#1", "#2"), handler.payloads);
+      assertEquals (2, subscription.getMaxQueueDepth ());
+    }
+  }
+
+  @Test
+  public void testDropOldest () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler = new GatedHandler ();
+      final Subscription subscription = fanOut.subscribe ("dropOldest", handler, 2, OverflowPolicy.DROP_OLDEST, 1000);
+      indicate (fanOut, 0);
+      handler.awaitEntered ();
+      for (int p = 1; p <= 4; p++)
+        indicate (fanOut, p);
+      assertEquals (2, subscription.getQueueDepth ());
+      assertEquals (2, subscription.getDroppedCount ());
+      handler.release.countDown ();
+      awaitDelivered (subscription, 3);
+      assertEquals (Arrays.asList (0, 3, 4), handler.dstPorts);
+      assertEquals (Arrays.asList ("#0", "#3", "#4"), handler.payloads);
+    }
+  }
+
+  @Test
+  public void testBlock () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler = new GatedHandler ();
+      final Subscription subscription = fanOut.subscribe ("block", handler, 1, OverflowPolicy.BLOCK, 1000);
+      indicate (fanOut, 0);
+      handler.awaitEntered ();
+      indicate (fanOut, 1);
+      final Thread producer = new Thread (() ->
+      {
+        indicate (fanOut, 2);
+        indicate (fanOut, 3);
+      });
+      producer.start ();
+      producer.join (100L);
+      assertTrue (producer.isAlive ());
+      assertEquals (1, subscription.getQueueDepth ());
+      handler.release.countDown ();
+      producer.join (TIMEOUT_MS);
+      assertFalse (producer.isAlive ());
+      awaitDelivered (subscription, 4);
+      assertEquals (Arrays.asList (0, 1, 2, 3), handler.dstPorts);
+      assertEquals (0, subscription.getDroppedCount ());
+    }
+  }
+
+  @Test
+  public void testSlowConsumer () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler = new GatedHandler ();
+      final Subscription subscription = fanOut.subscribe ("slow", handler, 4, OverflowPolicy.DROP_NEWEST, 1);
+      indicate (fanOut, 0);
+      handler.awaitEntered ();
+      Thread.sleep (10L);
+      indicate (fanOut, 1);
+      assertTrue (subscription.isSlow ());
+      assertEquals (1, subscription.getSlowCount ());
+      assertTrue (subscription.getLag_us () >= 1000L);
+      handler.release.countDown ();
+      awaitDelivered (subscription, 2);
+    }
+  }
+
+  @Test
+  public void testRuntimeExceptionIsCounted () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final List<Integer> dstPorts = new CopyOnWriteArrayList<> ();
+      final BtpSap_DataInd handler = (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+        gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+      {
+        dstPorts.add (btpDstPort);
+        if (btpDstPort == 1)
+          throw new IllegalStateException ("Test failure; please ignore.");
+      };
+      final Subscription subscription = fanOut.subscribe ("failing", handler, 4, OverflowPolicy.BLOCK, 1000);
+      for (int p = 0; p < 3; p++)
+        indicate (fanOut, p);
+      awaitDelivered (subscription, 3);
+      assertEquals (Arrays.asList (0, 1, 2), dstPorts);
+      assertEquals (1, subscription.getFailureCount ());
+      assertFalse (subscription.isClosed ());
+    }
+  }
+
+  @Test
+  public void testErrorClosesSubscription () throws InterruptedException
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final BtpSap_DataInd handler = (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+        gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+      {
+        throw new Error ("Test failure; please ignore.");
+      };
+      final GatedHandler other = new GatedHandler ();
+      other.release.countDown ();
+      final Subscription subscription = fanOut.subscribe ("fatal", handler, 1, OverflowPolicy.BLOCK, 1000);
+      final Subscription otherSubscription = fanOut.subscribe ("other", other, 16, OverflowPolicy.BLOCK, 1000);
+      indicate (fanOut, 0);
+      awaitClosed (subscription);
+      assertEquals (1, subscription.getFailureCount ());
+      assertArrayEquals (new Subscription[]{otherSubscription}, fanOut.getSubscriptions ());
+      // The producer must not block on the mailbox of the closed subscription.
+      final Thread producer = new Thread (() ->
+      {
+        for (int p = 1; p < 4; p++)
+          indicate (fanOut, p);
+      });
+      producer.start ();
+      producer.join (TIMEOUT_MS);
+      assertFalse (producer.isAlive ());
+      awaitDelivered (otherSubscription, 4);
+    }
+  }
+
+  @Test
+  public void testCloseUnblocksProducer () throws InterruptedException
+  {
+    final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ();
+    final GatedHandler handler = new GatedHandler ();
+    final Subscription subscription = fanOut.subscribe ("block", handler, 1, OverflowPolicy.BLOCK, 1000);
+    indicate (fanOut, 0);
+    handler.awaitEntered ();
+    indicate (fanOut, 1);
+    final Thread producer = new Thread (() -> indicate (fanOut, 2));
+    producer.start ();
+    producer.join (50L);
+    assertTrue (producer.isAlive ());
+    fanOut.close ();
+    producer.join (TIMEOUT_MS);
+    assertFalse (producer.isAlive ());
+    assertTrue (subscription.isClosed ());
+    assertEquals (0, fanOut.getSubscriptions ().length);
+    handler.release.countDown ();
+    try
+    {
+      fanOut.subscribe ("late", handler, 1, OverflowPolicy.BLOCK, 1000);
+      fail ();
+    }
+    catch (IllegalStateException ise)
+    {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testIllegalArguments ()
+  {
+    try (final BtpSapIndicationFanOut fanOut = new BtpSapIndicationFanOut ())
+    {
+      final GatedHandler handler = new GatedHandler ();
+      for (final Runnable subscribe : new Runnable[]
+        { () -> fanOut.subscribe (null, handler, 1, OverflowPolicy.BLOCK, 1),
+          () -> fanOut.subscribe ("x", null, 1, OverflowPolicy.BLOCK, 1),
+          () -> fanOut.subscribe ("x", handler, 0, OverflowPolicy.BLOCK, 1),
+          () -> fanOut.subscribe ("x", handler, 1, null, 1),
+          () -> fanOut.subscribe ("x", handler, 1, OverflowPolicy.BLOCK, 0),
+          () -> fanOut.btpSapIndication (null, 1, null, null, null, null, null, null, null, null, 2, 1, new byte[2]),
+          () -> fanOut.btpSapIndication (null, 1, null, null, null, null, null, null, null, null, (ByteBuffer) null) })
+        try
+        {
+          subscribe.run ();
+          fail ();
+        }
+        catch (IllegalArgumentException iae)
+        {
+          // Expected.
+        }
+      assertEquals (0, fanOut.getSubscriptions ().length);
+    }
+  }
+
+}
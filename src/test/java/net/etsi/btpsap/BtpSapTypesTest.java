@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import net.etsi.btpsap.BtpSapTypes.BaseGnPermissions;
+import net.etsi.btpsap.BtpSapTypes.BaseGnSecurityProfile;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnAddress;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnArea;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnDestination;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnPositionVector;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the value classes in {@link BtpSapTypes}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class BtpSapTypesTest
+{
+
+  private static final byte[] ADDRESS = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+  private static final byte[] SSP = { 0x01, (byte) 0xfe, 0x00 };
+
+  /** Asserts that two distinct objects are equal and have equal hash codes, and that a third one differs.
+   *
+   */
+  private static void assertValue (final Object value, final Object equal, final Object other)
+  {
+    assertNotSame (value, equal);
+    assertEquals (value, equal);
+    assertEquals (equal, value);
+    assertEquals (value.hashCode (), equal.hashCode ());
+    assertNotEquals (value, other);
+    assertNotEquals (other, value);
+    assertNotEquals (value, null);
+    assertNotEquals (value, new Object ());
+  }
+
+  private static DefaultGnArea area (final double latitude)
+  {
+    return new DefaultGnArea (GnAreaShape.ELLIPSE, latitude, 4.7654321, 500, 250, 45);
+  }
+
+  @Test
+  public void testEqualsAndHashCode ()
+  {
+    assertValue (area (52.1234567), area (52.1234567), area (52.1234568));
+    assertValue (new DefaultGnArea (GnAreaShape.CIRCLE, 52.0, 4.0, 500, 0, 0),
+      new DefaultGnArea (GnAreaShape.CIRCLE, 52.0, 4.0, 500, 0, 0),
+      new DefaultGnArea (GnAreaShape.RECTANGLE, 52.0, 4.0, 500, 0, 0));
+    final byte[] otherAddress = ADDRESS.clone ();
+    otherAddress[7] = 9;
+    assertValue (new DefaultGnAddress (ADDRESS), new DefaultGnAddress (ADDRESS.clone ()), new DefaultGnAddress (otherAddress));
+    assertValue (new DefaultGnDestination (new DefaultGnAddress (ADDRESS)),
+      new DefaultGnDestination (new DefaultGnAddress (ADDRESS)),
+      new DefaultGnDestination (new DefaultGnAddress (otherAddress)));
+    assertValue (new DefaultGnDestination (area (52.0)), new DefaultGnDestination (area (52.0)),
+      new DefaultGnDestination (area (53.0)));
+    assertNotEquals (new DefaultGnDestination (area (52.0)), new DefaultGnDestination (new DefaultGnAddress (ADDRESS)));
+    assertValue (new BaseGnPermissions (SSP.clone ()), new BaseGnPermissions (SSP.clone ()), new BaseGnPermissions ());
+    assertEquals (new BaseGnPermissions (), new BaseGnPermissions (new byte[0]));
+    assertValue (new BaseGnSecurityProfile (36, new BaseGnPermissions (SSP.clone ())),
+      new BaseGnSecurityProfile (36, new BaseGnPermissions (SSP.clone ())),
+      new BaseGnSecurityProfile (37, new BaseGnPermissions (SSP.clone ())));
+    assertValue (new BaseGnSecurityProfile (36, null), new BaseGnSecurityProfile (36, null),
+      new BaseGnSecurityProfile (36, new BaseGnPermissions ()));
+    assertValue (new DefaultGnTrafficClass ((byte) 0x82), new DefaultGnTrafficClass ((byte) 0x82),
+      new DefaultGnTrafficClass ((byte) 0x02));
+    assertValue (new DefaultGnPositionVector (52.1234567, 4.7654321), new DefaultGnPositionVector (52.1234567, 4.7654321),
+      new DefaultGnPositionVector (4.7654321, 52.1234567));
+  }
+
+  @Test
+  public void testTrafficClassValueOf ()
+  {
+    for (int b = 0; b < 256; b++)
+    {
+      final DefaultGnTrafficClass trafficClass = DefaultGnTrafficClass.valueOf ((byte) b);
+      assertSame (trafficClass, DefaultGnTrafficClass.valueOf ((byte) b));
+      assertEquals ((byte) b, trafficClass.toByte ());
+      assertEquals (new DefaultGnTrafficClass ((byte) b), trafficClass);
+    }
+  }
+
+  @Test
+  public void testSecurityProfileValueOf ()
+  {
+    final byte[] pdu = { 0, 0, 0x01, (byte) 0xfe, 0x00, 0 };
+    final BaseGnSecurityProfile profile = BaseGnSecurityProfile.valueOf (36, pdu, 2, SSP.length);
+    assertEquals (new BaseGnSecurityProfile (36, new BaseGnPermissions (SSP.clone ())), profile);
+    assertSame (profile, BaseGnSecurityProfile.valueOf (36, SSP.clone (), 0, SSP.length));
+    // The SSP bytes are copied.
+    pdu[2] = 0x02;
+    assertArrayEquals (SSP, profile.getPermissions ().getPermissionsArray ());
+    final BaseGnSecurityProfile other = BaseGnSecurityProfile.valueOf (36, pdu, 2, SSP.length);
+    assertNotEquals (profile, other);
+    assertSame (other, BaseGnSecurityProfile.valueOf (36, pdu, 2, SSP.length));
+    assertNotEquals (profile, BaseGnSecurityProfile.valueOf (37, SSP, 0, SSP.length));
+    assertNotEquals (profile, BaseGnSecurityProfile.valueOf (36, SSP, 0, SSP.length - 1));
+  }
+
+  @Test
+  public void testSecurityProfileValueOfIllegal ()
+  {
+    for (final int[] bounds : new int[][]{ { -1, 1 }, { 0, -1 }, { 0, 32 }, { 3, 1 }, { 1, Integer.MAX_VALUE } })
+      try
+      {
+        BaseGnSecurityProfile.valueOf (36, SSP, bounds[0], bounds[1]);
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+    try
+    {
+      BaseGnSecurityProfile.valueOf (36, null, 0, 0);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testDestinationValueOf ()
+  {
+    final DefaultGnDestination destination =
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 500, 250, 45);
+    assertEquals (new DefaultGnDestination (area (52.1234567)), destination);
+    assertSame (destination, DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 500, 250, 45));
+    for (final DefaultGnDestination other : new DefaultGnDestination[]{
+      DefaultGnDestination.valueOf (GnAreaShape.RECTANGLE, 52.1234567, 4.7654321, 500, 250, 45),
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234568, 4.7654321, 500, 250, 45),
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654322, 500, 250, 45),
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 501, 250, 45),
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 500, 251, 45),
+      DefaultGnDestination.valueOf (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 500, 250, 46) })
+      assertNotEquals (destination, other);
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testDestinationValueOfNullShape ()
+  {
+    DefaultGnDestination.valueOf (null, 52.0, 4.0, 500, 0, 0);
+  }
+
+  @Test
+  public void testAddressFromLong ()
+  {
+    final DefaultGnAddress address = new DefaultGnAddress (0x0102030405060708L);
+    assertEquals (new DefaultGnAddress (ADDRESS), address);
+    assertArrayEquals (ADDRESS, address.getGnAddressBytes ());
+    assertEquals (0x0102030405060708L, new DefaultGnAddress (ADDRESS).toLong ());
+    assertEquals (-1L, new DefaultGnAddress (-1L).toLong ());
+  }
+
+}
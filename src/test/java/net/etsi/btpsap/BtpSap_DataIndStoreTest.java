@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.util.Arrays;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnAddress;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnArea;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnDestination;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnPositionVector;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnArea;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnDestinationType;
+import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link BtpSap_DataIndStore}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class BtpSap_DataIndStoreTest
+{
+
+  private static final GnTrafficClass TC = new DefaultGnTrafficClass ((byte) 0x23);
+
+  /** Returns a payload of given length, filled with given value.
+   * 
+   */
+  private static byte[] payload (final int length, final int value)
+  {
+    final byte[] payload = new byte[length];
+    Arrays.fill (payload, (byte) value);
+    return payload;
+  }
+
+  private static long append (final BtpSap_DataIndStore store, final int btpDstPort, final byte[] payload)
+  {
+    return store.append (BtpSap_DataIndPrimitive.ABSENT, btpDstPort, BtpSap_DataIndPrimitive.ABSENT, null, null, TC,
+      BtpSap_DataIndPrimitive.ABSENT, 0, payload.length, payload);
+  }
+
+  private static byte[] payloadOf (final BtpSap_DataIndContainer container)
+  {
+    return Arrays.copyOfRange (container.getData (), container.getOffset (), container.getOffset () + container.getLength ());
+  }
+
+  private static byte[] payloadOf (final BtpSap_DataIndStore.Cursor.View view)
+  {
+    return Arrays.copyOfRange (view.getData (), view.getOffset (), view.getOffset () + view.getLength ());
+  }
+
+  @Test
+  public void testAppendAndRead ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (4, 64);
+    final BtpSap_DataIndContainer indication = new BtpSap_DataIndContainer
+      (1234, 2001, 17, new DefaultGnDestination (new DefaultGnAddress (new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 })),
+       new DefaultGnPositionVector (52.1234567, -4.7654321), null, null, null, TC, 12, 3, 1, new byte[]{ 0, 9, 8, 7 });
+    assertEquals (0L, store.append (indication));
+    assertEquals (1, store.size ());
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertFalse (cursor.isValid ());
+    assertTrue (cursor.next ());
+    assertEquals (0L, cursor.getSequence ());
+    final BtpSap_DataIndStore.Cursor.View view = cursor.get ();
+    assertEquals (Integer.valueOf (1234), view.getBtpSrcPort ());
+    assertEquals (2001, view.getBtpDstPort ());
+    assertEquals (Integer.valueOf (17), view.getBtpDstPortInfo ());
+    assertEquals (GnDestinationType.GN_DEST_UC, view.getGnDstAddress ().getGnDestinationType ());
+    assertEquals (0x0102030405060708L, view.getGnDstAddress ().getGnUnicastAddress ().toLong ());
+    assertEquals (52.1234567, view.getGnSrcPV ().getLatitude (), 1e-9);
+    assertEquals (-4.7654321, view.getGnSrcPV ().getLongitude (), 1e-9);
+    assertEquals ((byte) 0x23, view.getGnTrafficClass ().toByte ());
+    assertEquals (Integer.valueOf (12), view.getGnRemLifetime_s ());
+    assertArrayEquals (new byte[]{ 9, 8, 7 }, payloadOf (view));
+    assertFalse (cursor.next ());
+    assertEquals (0L, cursor.getSequence ());
+  }
+
+  @Test
+  public void testAbsentFields ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (4, 64);
+    append (store, 2001, new byte[0]);
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertTrue (cursor.next ());
+    final BtpSap_DataIndStore.Cursor.View view = cursor.get ();
+    assertNull (view.getBtpSrcPort ());
+    assertNull (view.getBtpDstPortInfo ());
+    assertNull (view.getGnDstAddress ());
+    assertNull (view.getGnSrcPV ());
+    assertNull (view.getGnRemLifetime_s ());
+    assertEquals (0, view.getLength ());
+    final BtpSap_DataIndContainer copy = cursor.copy ();
+    assertNull (copy.getBtpSrcPort ());
+    assertNull (copy.getGnSrcPV ());
+    assertEquals (0, copy.getLength ());
+  }
+
+  @Test
+  public void testToE7Quantization ()
+  {
+    // Latitudes and longitudes are held in units of 1e-7 degrees, rounded to the nearest unit.
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (4, 64);
+    store.append (BtpSap_DataIndPrimitive.ABSENT, 2001, BtpSap_DataIndPrimitive.ABSENT,
+      new DefaultGnDestination (new DefaultGnArea (GnAreaShape.RECTANGLE, -33.123456749, 151.123456751, 1000, 200, 90)),
+      new DefaultGnPositionVector (52.12345678, -4.76543214), TC, 5, 0, 0, null);
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertTrue (cursor.next ());
+    final BtpSap_DataIndStore.Cursor.View view = cursor.get ();
+    assertEquals (52.1234568, view.getGnSrcPV ().getLatitude (), 1e-12);
+    assertEquals (-4.7654321, view.getGnSrcPV ().getLongitude (), 1e-12);
+    final GnArea area = view.getGnDstAddress ().getGnArea ();
+    assertEquals (GnAreaShape.RECTANGLE, area.getAreaShape ());
+    assertEquals (-33.1234567, area.getLatitude (), 1e-12);
+    assertEquals (151.1234568, area.getLongitude (), 1e-12);
+    assertEquals (1000, area.getDistanceA_m ());
+    assertEquals (200, area.getDistanceB_m ());
+    assertEquals (90, area.getAngle_degrees ());
+    final GnArea copy = cursor.copy ().getGnDstAddress ().getGnArea ();
+    assertEquals (area.getLatitude (), copy.getLatitude (), 0.0);
+    assertEquals (area.getLongitude (), copy.getLongitude (), 0.0);
+  }
+
+  @Test
+  public void testEvictionByCapacity ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (3, 1024);
+    for (int i = 0; i < 5; i++)
+      assertEquals (i, append (store, 100 + i, payload (4, i)));
+    assertEquals (3, store.size ());
+    assertEquals (2L, store.getFirstSequence ());
+    assertEquals (5L, store.getNextSequence ());
+    assertFalse (store.contains (1L));
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    for (int i = 2; i < 5; i++)
+    {
+      assertTrue (cursor.next ());
+      assertEquals (i, cursor.getSequence ());
+      assertEquals (100 + i, cursor.get ().getBtpDstPort ());
+      assertArrayEquals (payload (4, i), payloadOf (cursor.get ()));
+    }
+    assertFalse (cursor.next ());
+  }
+
+  @Test
+  public void testSlabWrap ()
+  {
+    // Payloads do not wrap around the end of the slab; records are evicted to make room in the slab.
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (8, 10);
+    assertEquals (0L, append (store, 100, payload (4, 1)));
+    assertEquals (1L, append (store, 101, payload (4, 2)));
+    // Does not fit at index 8; starts at index 0, evicting (only) the record it overwrites.
+    assertEquals (2L, append (store, 102, payload (4, 3)));
+    assertEquals (2, store.size ());
+    assertEquals (1L, store.getFirstSequence ());
+    assertEquals (3L, append (store, 103, payload (6, 4)));
+    assertEquals (2, store.size ());
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertTrue (cursor.next ());
+    assertEquals (0, cursor.get ().getOffset ());
+    assertArrayEquals (payload (4, 3), payloadOf (cursor.get ()));
+    assertTrue (cursor.next ());
+    assertEquals (4, cursor.get ().getOffset ());
+    assertArrayEquals (payload (6, 4), payloadOf (cursor.get ()));
+    // A payload of the full slab capacity evicts all.
+    assertEquals (4L, append (store, 104, payload (10, 5)));
+    assertEquals (1, store.size ());
+    assertTrue (cursor.seek (4L));
+    assertArrayEquals (payload (10, 5), payloadOf (cursor.get ()));
+    assertEquals (-1L, append (store, 105, payload (11, 6)));
+  }
+
+  @Test
+  public void testCursorFlyweight ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (2, 64);
+    append (store, 100, payload (1, 1));
+    append (store, 101, payload (1, 2));
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertTrue (cursor.next ());
+    final BtpSap_DataIndStore.Cursor.View view = cursor.get ();
+    final BtpSap_DataIndContainer copy = cursor.copy ();
+    assertTrue (cursor.next ());
+    // The view is re-pointed, the copy is not.
+    assertSame (view, cursor.get ());
+    assertEquals (101, view.getBtpDstPort ());
+    assertEquals (100, copy.getBtpDstPort ());
+    assertArrayEquals (payload (1, 1), payloadOf (copy));
+    // Converting the view is copying.
+    final BtpSap_DataIndContainer container = view.toContainer ();
+    assertEquals (101, container.getBtpDstPort ());
+    assertArrayEquals (payload (1, 2), payloadOf (container));
+    assertNotSame (view.getData (), container.getData ());
+    // Evicting the current record invalidates the cursor.
+    append (store, 102, payload (1, 3));
+    append (store, 103, payload (1, 4));
+    assertFalse (cursor.isValid ());
+    try
+    {
+      cursor.get ();
+      fail ();
+    }
+    catch (IllegalStateException ise)
+    {
+      // Expected.
+    }
+    // Moving on skips the evicted records.
+    assertTrue (cursor.next ());
+    assertEquals (2L, cursor.getSequence ());
+    assertFalse (cursor.seek (1L));
+    assertEquals (2L, cursor.getSequence ());
+    assertFalse (new BtpSap_DataIndStore (2, 64).cursor ().next ());
+  }
+
+  @Test
+  public void testDeliver ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (4, 64);
+    store.btpSapIndication (BtpSap_DataIndPrimitive.ABSENT, 2001, 17, null, null, null, null, null, TC, 3, 1, 2, new byte[]{ 0, 5, 6 });
+    final BtpSap_DataIndStore target = new BtpSap_DataIndStore (4, 64);
+    final BtpSap_DataIndStore.Cursor cursor = store.cursor ();
+    assertTrue (cursor.next ());
+    cursor.deliver (target);
+    final BtpSap_DataIndStore.Cursor targetCursor = target.cursor ();
+    assertTrue (targetCursor.next ());
+    final BtpSap_DataIndContainer copy = targetCursor.copy ();
+    assertNull (copy.getBtpSrcPort ());
+    assertEquals (2001, copy.getBtpDstPort ());
+    assertEquals (Integer.valueOf (17), copy.getBtpDstPortInfo ());
+    assertEquals (Integer.valueOf (3), copy.getGnRemLifetime_s ());
+    assertEquals ((byte) 0x23, copy.getGnTrafficClass ().toByte ());
+    assertArrayEquals (new byte[]{ 5, 6 }, payloadOf (copy));
+  }
+
+  @Test
+  public void testIllegalArguments ()
+  {
+    final BtpSap_DataIndStore store = new BtpSap_DataIndStore (4, 64);
+    assertEquals (-1L, store.append (null));
+    assertEquals (-1L, append (store, 65536, new byte[0]));
+    assertEquals (-1L, store.append (BtpSap_DataIndPrimitive.ABSENT, 2001, BtpSap_DataIndPrimitive.ABSENT, null, null, null,
+      BtpSap_DataIndPrimitive.ABSENT, 0, 0, null));
+    assertEquals (-1L, store.append (BtpSap_DataIndPrimitive.ABSENT, 2001, BtpSap_DataIndPrimitive.ABSENT, null, null, TC,
+      BtpSap_DataIndPrimitive.ABSENT, 2, 4, new byte[4]));
+    assertTrue (store.isEmpty ());
+    try
+    {
+      store.btpSapIndication (-5, 2001, BtpSap_DataIndPrimitive.ABSENT, null, null, null, null, null, TC, 3, 0, 0, null);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+    try
+    {
+      new BtpSap_DataIndStore (0, 64);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnAddress;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnArea;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnDestination;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnDestination;
+import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link BtpSap_DataReqContainer}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class BtpSap_DataReqContainerTest
+{
+
+  private static final byte[] DATA = new byte[16];
+
+  private static final GnTrafficClass TC = new DefaultGnTrafficClass ((byte) 0);
+
+  private static final GnDestination UC = new DefaultGnDestination (new DefaultGnAddress (new byte[8]));
+
+  private static int validate
+  (final Integer btpSrcPort, final int btpDstPort, final GnTransportType gnTransportType, final GnDestination gnDst,
+   final Integer gnMaxLifetime_ms, final int gnMaxHopLimit, final int length, final int offset, final byte[] data)
+  {
+    return BtpSap_DataReqContainer.validate (BtpType.BTP_B, btpSrcPort, btpDstPort, null, gnTransportType, gnDst,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, gnMaxLifetime_ms, null, null, gnMaxHopLimit, TC, length, offset, data);
+  }
+
+  private static void assertRejected (final BtpSapValidationError error, final int status, final long count)
+  {
+    assertEquals (error.ordinal (), status);
+    assertEquals (count + 1, error.getCount ());
+  }
+
+  @Test
+  public void testValidate ()
+  {
+    assertEquals (BtpSapValidationError.OK.ordinal (), validate (null, 2001, GnTransportType.GN_SHB, null, null, 1, 16, 0, DATA));
+    assertEquals (BtpSapValidationError.OK.ordinal (), validate (1234, 2001, GnTransportType.GN_UC, UC, 3000, 10, 0, 0, null));
+    long count = BtpSapValidationError.ILLEGAL_BTP_SRC_PORT.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_BTP_SRC_PORT,
+      validate (65536, 2001, GnTransportType.GN_SHB, null, null, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_BTP_DST_PORT.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_BTP_DST_PORT,
+      validate (null, -1, GnTransportType.GN_SHB, null, null, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.NULL_GN_TRANSPORT_TYPE.getCount ();
+    assertRejected (BtpSapValidationError.NULL_GN_TRANSPORT_TYPE,
+      validate (null, 2001, null, null, null, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_GN_DESTINATION.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_GN_DESTINATION,
+      validate (null, 2001, GnTransportType.GN_SHB, UC, null, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_GN_DESTINATION.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_GN_DESTINATION,
+      validate (null, 2001, GnTransportType.GN_GBC, UC, null, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_GN_MAX_LIFETIME.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_GN_MAX_LIFETIME,
+      validate (null, 2001, GnTransportType.GN_SHB, null, BtpSap_DataReqContainer.MAX_GN_TIME_MS + 1, 1, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_GN_MAX_HOP_LIMIT.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_GN_MAX_HOP_LIMIT,
+      validate (null, 2001, GnTransportType.GN_SHB, null, null, 256, 16, 0, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_PAYLOAD.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_PAYLOAD,
+      validate (null, 2001, GnTransportType.GN_SHB, null, null, 1, 16, 1, DATA), count);
+    count = BtpSapValidationError.ILLEGAL_PAYLOAD.getCount ();
+    assertRejected (BtpSapValidationError.ILLEGAL_PAYLOAD,
+      validate (null, 2001, GnTransportType.GN_SHB, null, null, 1, Integer.MAX_VALUE, 1, DATA), count);
+  }
+
+  @Test
+  public void testSupportedGnTransportTypes ()
+  {
+    final GnDestination area = new DefaultGnDestination (new DefaultGnArea (GnAreaShape.CIRCLE, 52.0, 4.0, 500, 0, 0));
+    final long count = BtpSapValidationError.UNSUPPORTED_GN_TRANSPORT_TYPE.getCount ();
+    for (final GnTransportType gnTransportType : GnTransportType.values ())
+    {
+      final GnDestination gnDst;
+      switch (gnTransportType)
+      {
+        case GN_UC:
+          gnDst = UC;
+          break;
+        case GN_GBC:
+        case GN_AC:
+          gnDst = area;
+          break;
+        default:
+          gnDst = null;
+      }
+      assertEquals (BtpSapValidationError.OK.ordinal (), validate (null, 2001, gnTransportType, gnDst, null, 1, 16, 0, DATA));
+    }
+    assertEquals (count, BtpSapValidationError.UNSUPPORTED_GN_TRANSPORT_TYPE.getCount ());
+    // Appended, so that the statuses of the other codes are unaffected.
+    assertEquals (BtpSapValidationError.values ().length - 1, BtpSapValidationError.UNSUPPORTED_GN_TRANSPORT_TYPE.ordinal ());
+    assertEquals (BtpSapValidationError.ILLEGAL_PRIMITIVE.ordinal () + 1,
+      BtpSapValidationError.UNSUPPORTED_GN_TRANSPORT_TYPE.ordinal ());
+  }
+
+  @Test
+  public void testTryCreate ()
+  {
+    assertNotNull (BtpSap_DataReqContainer.tryCreate (BtpType.BTP_A, null, 2001, null, GnTransportType.GN_SHB, null,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, null, null, null, 1, TC, 16, 0, DATA));
+    final long count = BtpSapValidationError.NULL_BTP_TYPE.getCount ();
+    assertNull (BtpSap_DataReqContainer.tryCreate (null, null, 2001, null, GnTransportType.GN_SHB, null,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, null, null, null, 1, TC, 16, 0, DATA));
+    assertEquals (count + 1, BtpSapValidationError.NULL_BTP_TYPE.getCount ());
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testConstructorThrows ()
+  {
+    new BtpSap_DataReqContainer (BtpType.BTP_A, null, 2001, null, GnTransportType.GN_SHB, null,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, null, null, null, 1, null, 16, 0, DATA);
+  }
+
+}
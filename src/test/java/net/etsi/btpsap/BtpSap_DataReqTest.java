@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link BtpSap_DataReq}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class BtpSap_DataReqTest
+{
+
+  private static BtpSap_DataReqContainer request (final int btpDstPort)
+  {
+    return new BtpSap_DataReqContainer (BtpType.BTP_B, null, btpDstPort, null, GnTransportType.GN_SHB, null,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, 1000, null, null, 1, new DefaultGnTrafficClass ((byte) 0), 3, 1, new byte[4]);
+  }
+
+  private static BtpSap_DataReq recorder (final List<Integer> btpDstPorts)
+  {
+    return (btpType, btpSrcPort, btpDstPort, btpDstPortInfo, gnTransportType, gnDstAddress, gnCommProfile, gnSecProfile,
+      gnMaxLifetime_ms, gnRepInterval_ms, gnMaxRepTime_ms, gnMaxHopLimit, gnTrafficClass, offset, length, data) ->
+    {
+      assertEquals (1000, (int) gnMaxLifetime_ms);
+      assertEquals (1, offset);
+      assertEquals (3, length);
+      btpDstPorts.add (btpDstPort);
+    };
+  }
+
+  @Test
+  public void testBtpSapRequests () throws IOException
+  {
+    final BtpSap_DataReqContainer[] reqs = { request (1), request (2), request (3), request (4) };
+    final List<Integer> btpDstPorts = new ArrayList<> ();
+    recorder (btpDstPorts).btpSapRequests (reqs, 1, 2);
+    assertEquals (2, btpDstPorts.size ());
+    assertEquals (2, (int) btpDstPorts.get (0));
+    assertEquals (3, (int) btpDstPorts.get (1));
+    recorder (btpDstPorts).btpSapRequests (reqs, 4, 0);
+    assertEquals (2, btpDstPorts.size ());
+  }
+
+  @Test
+  public void testBtpSapRequestsIllegalArguments () throws IOException
+  {
+    final BtpSap_DataReqContainer[] reqs = { request (1), null };
+    final List<Integer> btpDstPorts = new ArrayList<> ();
+    final BtpSap_DataReq recorder = recorder (btpDstPorts);
+    final int[][] ranges = { { -1, 1 }, { 0, -1 }, { 0, 3 }, { 2, 1 },
+      { 1, Integer.MAX_VALUE },
+      { 0, 2 } };
+    for (final int[] range : ranges)
+      try
+      {
+        recorder.btpSapRequests (reqs, range[0], range[1]);
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+    try
+    {
+      recorder.btpSapRequests (null, 0, 0);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+}
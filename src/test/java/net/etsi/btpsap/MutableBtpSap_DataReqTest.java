@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link MutableBtpSap_DataReq} and its {@link MutableBtpSap_DataReq.Pool}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class MutableBtpSap_DataReqTest
+{
+
+  private static Set<MutableBtpSap_DataReq> identitySet ()
+  {
+    return Collections.newSetFromMap (new IdentityHashMap<> ());
+  }
+
+  /** Runs given task in a new thread, and waits for it to complete.
+   * 
+   */
+  private static void inOtherThread (final Runnable task) throws InterruptedException
+  {
+    final AtomicReference<Throwable> failure = new AtomicReference<> ();
+    final Thread thread = new Thread (() ->
+    {
+      try
+      {
+        task.run ();
+      }
+      catch (Throwable t)
+      {
+        failure.set (t);
+      }
+    });
+    thread.start ();
+    thread.join ();
+    if (failure.get () != null)
+      throw new AssertionError (failure.get ());
+  }
+
+  @Test
+  public void testSetAndToContainer ()
+  {
+    final BtpSap_DataReqContainer request = new BtpSap_DataReqContainer (BtpType.BTP_B, null, 2001, 17, GnTransportType.GN_SHB, null,
+      GnCommunicationsProfile.GN_COMPROF_ITSG5, null, 3000, null, null, 3, new DefaultGnTrafficClass ((byte) 2), 2, 1, new byte[]{ 0, 1, 2 });
+    final MutableBtpSap_DataReq mutable = new MutableBtpSap_DataReq ().set (request);
+    assertEquals (BtpSapValidationError.OK.ordinal (), mutable.validate ());
+    assertEquals (BtpSap_DataReqPrimitive.ABSENT, mutable.getBtpSrcPort ());
+    assertEquals (17, mutable.getBtpDstPortInfo ());
+    final BtpSap_DataReqContainer container = mutable.toContainer ();
+    assertNull (container.getBtpSrcPort ());
+    assertEquals (Integer.valueOf (17), container.getBtpDstPortInfo ());
+    assertEquals (3000, container.getMaxLifeTime_ms ());
+    assertNull (container.getGnRepInterval_ms ());
+    assertEquals (1, container.getOffset ());
+    assertEquals (2, container.getLength ());
+    assertSame (request.getData (), container.getData ());
+    mutable.reset ();
+    assertNull (mutable.getBtpType ());
+    assertNull (mutable.getData ());
+    assertNotEquals (BtpSapValidationError.OK.ordinal (), mutable.validate ());
+  }
+
+  @Test
+  public void testSameThreadRelease ()
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (4);
+    final MutableBtpSap_DataReq request = pool.acquire ();
+    request.setBtpDestinationPort (2001).setBtpType (BtpType.BTP_A);
+    pool.release (request);
+    final MutableBtpSap_DataReq again = pool.acquire ();
+    assertSame (request, again);
+    // Requests are reset upon acquisition.
+    assertNull (again.getBtpType ());
+    assertEquals (0, again.getBtpDestinationPort ());
+    assertNotSame (again, pool.acquire ());
+  }
+
+  @Test
+  public void testSameThreadBound ()
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (2);
+    final Set<MutableBtpSap_DataReq> released = identitySet ();
+    for (int i = 0; i < 5; i++)
+      released.add (pool.acquire ());
+    for (final MutableBtpSap_DataReq request : released)
+      pool.release (request);
+    // At most two objects are cached.
+    final Set<MutableBtpSap_DataReq> reacquired = identitySet ();
+    for (int i = 0; i < 5; i++)
+      reacquired.add (pool.acquire ());
+    reacquired.retainAll (released);
+    assertEquals (2, reacquired.size ());
+  }
+
+  @Test
+  public void testCrossThreadRelease () throws InterruptedException
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (8);
+    final Set<MutableBtpSap_DataReq> acquired = identitySet ();
+    for (int i = 0; i < 3; i++)
+      acquired.add (pool.acquire ());
+    // Released by another thread, the requests return to the cache of the acquiring thread.
+    inOtherThread (() ->
+    {
+      for (final MutableBtpSap_DataReq request : acquired)
+        pool.release (request);
+      // The other thread does not get them.
+      assertFalse (acquired.contains (pool.acquire ()));
+    });
+    final Set<MutableBtpSap_DataReq> reacquired = identitySet ();
+    for (int i = 0; i < 3; i++)
+      reacquired.add (pool.acquire ());
+    assertEquals (acquired, reacquired);
+    assertFalse (acquired.contains (pool.acquire ()));
+  }
+
+  @Test
+  public void testCrossThreadBound () throws InterruptedException
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (2);
+    for (int round = 0; round < 3; round++)
+    {
+      final Set<MutableBtpSap_DataReq> acquired = identitySet ();
+      for (int i = 0; i < 5; i++)
+        acquired.add (pool.acquire ());
+      inOtherThread (() ->
+      {
+        for (final MutableBtpSap_DataReq request : acquired)
+          pool.release (request);
+      });
+      // At most two objects released by other threads are cached, in every round.
+      final Set<MutableBtpSap_DataReq> reacquired = identitySet ();
+      for (int i = 0; i < 5; i++)
+        reacquired.add (pool.acquire ());
+      reacquired.retainAll (acquired);
+      assertEquals (2, reacquired.size ());
+      for (final MutableBtpSap_DataReq request : reacquired)
+        pool.release (request);
+    }
+  }
+
+  @Test
+  public void testConcurrentCrossThreadBound () throws InterruptedException
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (4);
+    for (int round = 0; round < 200; round++)
+    {
+      final MutableBtpSap_DataReq[] acquired = new MutableBtpSap_DataReq[16];
+      for (int i = 0; i < acquired.length; i++)
+        acquired[i] = pool.acquire ();
+      // Two threads race to release (interleaved halves of) the requests.
+      final Thread[] threads = new Thread[2];
+      for (int t = 0; t < threads.length; t++)
+      {
+        final int first = t;
+        threads[t] = new Thread (() ->
+        {
+          for (int i = first; i < acquired.length; i += 2)
+            pool.release (acquired[i]);
+        });
+        threads[t].start ();
+      }
+      for (final Thread thread : threads)
+        thread.join ();
+      // Exactly the bound is cached, in every round; the bound does not drift under concurrent pushes and takeovers.
+      final Set<MutableBtpSap_DataReq> reacquired = identitySet ();
+      for (int i = 0; i < acquired.length; i++)
+        reacquired.add (pool.acquire ());
+      final Set<MutableBtpSap_DataReq> reused = identitySet ();
+      for (final MutableBtpSap_DataReq request : acquired)
+        if (reacquired.contains (request))
+          reused.add (request);
+      assertEquals (4, reused.size ());
+      for (final MutableBtpSap_DataReq request : reacquired)
+        pool.release (request);
+      // Drain the local cache, so that the next round starts empty.
+      for (int i = 0; i < 4; i++)
+        pool.acquire ();
+    }
+  }
+
+  @Test
+  public void testConcurrentDoubleRelease () throws InterruptedException
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (4);
+    for (int round = 0; round < 200; round++)
+    {
+      final MutableBtpSap_DataReq request = pool.acquire ();
+      final AtomicReference<Integer> released = new AtomicReference<> (0);
+      final Thread[] threads = new Thread[2];
+      for (int t = 0; t < threads.length; t++)
+      {
+        threads[t] = new Thread (() ->
+        {
+          try
+          {
+            pool.release (request);
+            released.accumulateAndGet (1, Integer::sum);
+          }
+          catch (IllegalStateException ise)
+          {
+            // Expected for all but one thread.
+          }
+        });
+        threads[t].start ();
+      }
+      for (final Thread thread : threads)
+        thread.join ();
+      assertEquals (Integer.valueOf (1), released.get ());
+      assertSame (request, pool.acquire ());
+    }
+  }
+
+  @Test
+  public void testDoubleRelease ()
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (4);
+    final MutableBtpSap_DataReq request = pool.acquire ();
+    pool.release (request);
+    try
+    {
+      pool.release (request);
+      fail ();
+    }
+    catch (IllegalStateException ise)
+    {
+      // Expected.
+    }
+    // The request is in the pool only once.
+    assertSame (request, pool.acquire ());
+    assertNotSame (request, pool.acquire ());
+  }
+
+  @Test
+  public void testReleaseForeign ()
+  {
+    final MutableBtpSap_DataReq.Pool pool = new MutableBtpSap_DataReq.Pool (4);
+    for (final MutableBtpSap_DataReq request :
+      new MutableBtpSap_DataReq[]{ null, new MutableBtpSap_DataReq (), new MutableBtpSap_DataReq.Pool (4).acquire () })
+      try
+      {
+        pool.release (request);
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+  }
+
+}
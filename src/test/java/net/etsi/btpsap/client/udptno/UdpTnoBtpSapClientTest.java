@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoBtpSapClient} over loopback, against a plain datagram channel acting as router.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoBtpSapClientTest
+{
+
+  /** Waits (at most ten seconds) until a condition holds.
+   *
+   */
+  static void await (final BooleanSupplier condition) throws InterruptedException
+  {
+    final long deadline = System.nanoTime () + 10_000_000_000L;
+    while (! condition.getAsBoolean ())
+    {
+      if (System.nanoTime () - deadline > 0)
+        fail ("Timeout.");
+      Thread.sleep (1L);
+    }
+  }
+
+  static InetSocketAddress loopback ()
+  {
+    return new InetSocketAddress (InetAddress.getLoopbackAddress (), 0);
+  }
+
+  private static DatagramChannel router () throws IOException
+  {
+    final DatagramChannel router = DatagramChannel.open ();
+    router.bind (loopback ());
+    return router;
+  }
+
+  private static UdpTnoBtpSapClient client (final DatagramChannel router, final String... properties) throws IOException
+  {
+    final Properties p = new Properties ();
+    for (int i = 0; i < properties.length; i += 2)
+      p.setProperty (UdpTnoBtpSapClient.PROPERTY_PREFIX + properties[i], properties[i + 1]);
+    return new UdpTnoBtpSapClient (router.getLocalAddress (), loopback (), 42, 0x05, p);
+  }
+
+  /** Receives a single datagram (blocking).
+   *
+   */
+  private static byte[] receive (final DatagramChannel router) throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE);
+    assertNotNull (router.receive (buffer));
+    return Arrays.copyOf (buffer.array (), buffer.position ());
+  }
+
+  static void send (final UdpTnoBtpSapClient client, final BtpSap_DataReqContainer request) throws IOException
+  {
+    client.btpSapRequest
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.getMaxLifeTime_ms (),
+       request.getGnRepInterval_ms (),
+       request.getGnMaxRepTime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       request.getOffset (),
+       request.getLength (),
+       request.getData ());
+  }
+
+  /** Sends an indication (with given destination port) from the router to the client.
+   *
+   */
+  private static void indicate (final DatagramChannel router, final UdpTnoBtpSapClient client, final int btpDstPort)
+    throws IOException
+  {
+    final BtpSap_DataIndContainer indication = UdpTnoDataIndTest.indication ();
+    final BtpSap_DataIndContainer container = new BtpSap_DataIndContainer
+      (indication.getBtpSrcPort (), btpDstPort, indication.getBtpDstPortInfo (), null, indication.getGnSrcPV (),
+       null, null, null, indication.getGnTrafficClass (), indication.getGnRemLifetime_s (),
+       indication.getLength (), indication.getOffset (), indication.getData ());
+    router.send (ByteBuffer.wrap (UdpTnoDataIndTest.encode (container)), client.getLocalAddress ());
+  }
+
+  @Test
+  public void testRequests () throws IOException
+  {
+    try (final DatagramChannel router = router ())
+    {
+      for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+        try (final UdpTnoBtpSapClient client = client (router, "version", Integer.toString (version)))
+        {
+          assertEquals (42, client.getClientID ());
+          assertEquals (0x05, client.getUnitMask ());
+          assertEquals (version, client.getVersion ());
+          assertEquals (router.getLocalAddress (), client.getRouterAddress ());
+          for (final BtpSap_DataReqContainer request :
+            new BtpSap_DataReqContainer[]{ UdpTnoDataReqTest.shbRequest (), UdpTnoDataReqTest.ucRequest (), UdpTnoDataReqTest.gbcRequest () })
+          {
+            send (client, request);
+            assertArrayEquals (UdpTnoDataReqTest.encode (request, version), receive (router));
+          }
+          assertEquals (3, client.getSentCount ());
+          assertEquals (0, client.getSendFailureCount ());
+        }
+    }
+  }
+
+  @Test
+  public void testConcurrentRequests () throws IOException, InterruptedException
+  {
+    final int threads = 4;
+    final int requestsPerThread = 100;
+    try (final DatagramChannel router = router ();
+         final UdpTnoBtpSapClient client = client (router, "sendBufferSize", "1048576"))
+    {
+      final AtomicInteger valid = new AtomicInteger ();
+      final AtomicInteger invalid = new AtomicInteger ();
+      final Thread reader = new Thread (() ->
+      {
+        try
+        {
+          while (true)
+          {
+            final byte[] pdu = receive (router);
+            if (UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null) != null)
+              valid.incrementAndGet ();
+            else
+              invalid.incrementAndGet ();
+          }
+        }
+        catch (IOException ioe)
+        {
+          // Closed.
+        }
+      });
+      reader.setDaemon (true);
+      reader.start ();
+      final Thread[] senders = new Thread[threads];
+      for (int t = 0; t < threads; t++)
+      {
+        senders[t] = new Thread (() ->
+        {
+          for (int i = 0; i < requestsPerThread; i++)
+            try
+            {
+              send (client, UdpTnoDataReqTest.gbcRequest ());
+            }
+            catch (IOException ioe)
+            {
+              // Counted as send failure.
+            }
+        });
+        senders[t].start ();
+      }
+      for (final Thread sender : senders)
+        sender.join ();
+      assertEquals (threads * requestsPerThread, client.getSentCount () + client.getSendFailureCount ());
+      // Wait until the reader is idle; the router socket may drop datagrams under load.
+      int received;
+      do
+      {
+        received = valid.get () + invalid.get ();
+        Thread.sleep (200L);
+      }
+      while (valid.get () + invalid.get () != received);
+      assertTrue (valid.get () > 0);
+      // Serialized sends never interleave header and payload of distinct requests.
+      assertEquals (0, invalid.get ());
+    }
+  }
+
+  @Test
+  public void testIndications () throws IOException, InterruptedException
+  {
+    try (final DatagramChannel router = router ();
+         final UdpTnoBtpSapClient client = client (router))
+    {
+      final List<Integer> dstPorts = new CopyOnWriteArrayList<> ();
+      final List<byte[]> payloads = new CopyOnWriteArrayList<> ();
+      client.setIndicationHandler ((btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+        gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+      {
+        assertEquals (Integer.valueOf (1234), btpSrcPort);
+        dstPorts.add (btpDstPort);
+        payloads.add (Arrays.copyOf (data, length));
+      });
+      client.start ();
+      for (int port = 1; port <= 3; port++)
+        indicate (router, client, port);
+      await (() -> dstPorts.size () == 3);
+      assertEquals (Arrays.asList (1, 2, 3), dstPorts);
+      for (final byte[] payload : payloads)
+        assertArrayEquals (new byte[]{ 9, 8, 7, 6, 5 }, payload);
+      assertEquals (3, client.getReceivedCount ());
+      assertEquals (0, client.getInvalidCount ());
+    }
+  }
+
+  @Test
+  public void testDrainLimit () throws IOException, InterruptedException
+  {
+    for (final int maxDatagramsPerWakeup : new int[]{ 1, 64 })
+      try (final DatagramChannel router = router ();
+           final UdpTnoBtpSapClient client =
+             client (router, "maxDatagramsPerWakeup", Integer.toString (maxDatagramsPerWakeup)))
+      {
+        final AtomicInteger delivered = new AtomicInteger ();
+        client.setIndicationHandler ((btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+          gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) -> delivered.incrementAndGet ());
+        // All datagrams are pending before the receiver thread starts.
+        for (int i = 0; i < 20; i++)
+          indicate (router, client, 2001);
+        client.start ();
+        await (() -> delivered.get () == 20);
+        assertEquals (20, client.getReceivedCount ());
+        if (maxDatagramsPerWakeup == 1)
+          assertTrue (client.getWakeupCount () >= 20);
+        else
+          assertTrue (client.getWakeupCount () < 20);
+      }
+  }
+
+  @Test
+  public void testHandlerFailureAndInvalidDatagrams () throws IOException, InterruptedException
+  {
+    try (final DatagramChannel router = router ();
+         final UdpTnoBtpSapClient client = client (router))
+    {
+      final List<Integer> dstPorts = new CopyOnWriteArrayList<> ();
+      client.setIndicationHandler ((btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+        gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+      {
+        if (btpDstPort == 2)
+          throw new IllegalStateException ("Test failure; please ignore.");
+        dstPorts.add (btpDstPort);
+      });
+      client.start ();
+      indicate (router, client, 1);
+      indicate (router, client, 2);
+      router.send (ByteBuffer.wrap (new byte[]{ 1, 2, 3, 4 }), client.getLocalAddress ());
+      indicate (router, client, 3);
+      await (() -> client.getReceivedCount () == 4 && dstPorts.size () == 2);
+      assertEquals (Arrays.asList (1, 3), dstPorts);
+      assertEquals (1, client.getHandlerFailureCount ());
+      assertEquals (1, client.getInvalidCount ());
+    }
+  }
+
+  @Test
+  public void testStartAndClose () throws IOException
+  {
+    try (final DatagramChannel router = router ())
+    {
+      final UdpTnoBtpSapClient client = client (router);
+      client.start ();
+      try
+      {
+        client.start ();
+        fail ();
+      }
+      catch (IllegalStateException ise)
+      {
+        // Expected.
+      }
+      assertFalse (client.isClosed ());
+      client.close ();
+      assertTrue (client.isClosed ());
+      client.close ();
+      final UdpTnoBtpSapClient never = client (router);
+      never.close ();
+      try
+      {
+        never.start ();
+        fail ();
+      }
+      catch (IllegalStateException ise)
+      {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void testIllegalConstruction () throws IOException
+  {
+    try (final DatagramChannel router = router ())
+    {
+      for (final String[] properties : new String[][]{ { "version", "3" }, { "maxDatagramsPerWakeup", "0" } })
+        try
+        {
+          client (router, properties).close ();
+          fail ();
+        }
+        catch (IllegalArgumentException iae)
+        {
+          // Expected.
+        }
+      try
+      {
+        new UdpTnoBtpSapClient (null, loopback (), 42, 0x05, null).close ();
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+    }
+  }
+
+}
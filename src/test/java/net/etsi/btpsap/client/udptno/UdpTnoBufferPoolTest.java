@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoBufferPool}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoBufferPoolTest
+{
+
+  /** Creates a pool with a single slab of four 64-byte buffers, and magazines of two buffers.
+   * 
+   */
+  private static UdpTnoBufferPool smallPool ()
+  {
+    final Properties properties = new Properties ();
+    properties.setProperty (UdpTnoBufferPool.PROPERTY_PREFIX + "magazineSize", "2");
+    properties.setProperty (UdpTnoBufferPool.PROPERTY_PREFIX + "slabSize", "256");
+    properties.setProperty (UdpTnoBufferPool.PROPERTY_PREFIX + "initialSlabs", "1");
+    properties.setProperty (UdpTnoBufferPool.PROPERTY_PREFIX + "maxSlabs", "1");
+    return new UdpTnoBufferPool (properties);
+  }
+
+  @Test
+  public void testAcquireSizeClass ()
+  {
+    final UdpTnoBufferPool pool = new UdpTnoBufferPool ();
+    final UdpTnoBufferPool.Handle small = pool.acquire (1);
+    assertEquals (64, small.getBuffer ().capacity ());
+    assertTrue (small.getBuffer ().isDirect ());
+    final UdpTnoBufferPool.Handle medium = pool.acquire (65);
+    assertEquals (128, medium.getBuffer ().capacity ());
+    final UdpTnoBufferPool.Handle large = pool.acquire (UdpTnoBufferPool.MAX_BUFFER_SIZE);
+    assertEquals (UdpTnoBufferPool.MAX_BUFFER_SIZE, large.getBuffer ().capacity ());
+    assertEquals (1, pool.getInUseCount (64));
+    small.release ();
+    medium.release ();
+    large.release ();
+    assertEquals (0, pool.getInUseCount (64));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testAcquireTooLarge ()
+  {
+    new UdpTnoBufferPool ().acquire (UdpTnoBufferPool.MAX_BUFFER_SIZE + 1);
+  }
+
+  @Test
+  public void testBufferClearedUponAcquisition ()
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final UdpTnoBufferPool.Handle handle = pool.acquire (64);
+    handle.getBuffer ().position (10).limit (20);
+    handle.release ();
+    final UdpTnoBufferPool.Handle again = pool.acquire (64);
+    assertSame (handle, again);
+    assertEquals (0, again.getBuffer ().position ());
+    assertEquals (64, again.getBuffer ().limit ());
+  }
+
+  @Test
+  public void testExhaustion ()
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final List<UdpTnoBufferPool.Handle> handles = new ArrayList<> ();
+    for (int i = 0; i < 4; i++)
+    {
+      final UdpTnoBufferPool.Handle handle = pool.acquire (64);
+      assertNotNull (handle);
+      assertFalse (handles.contains (handle));
+      handles.add (handle);
+    }
+    assertNull (pool.acquire (64));
+    assertEquals (1, pool.getExhaustedCount ());
+    assertEquals (1, pool.getSlabCount (64));
+    assertEquals (4, pool.getInUseCount (64));
+    // Other size classes are not affected.
+    assertNotNull (pool.acquire (128));
+    handles.remove (0).release ();
+    assertNotNull (pool.acquire (64));
+    assertEquals (1, pool.getExhaustedCount ());
+  }
+
+  @Test
+  public void testDoubleRelease ()
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final UdpTnoBufferPool.Handle handle = pool.acquire (64);
+    handle.release ();
+    try
+    {
+      handle.release ();
+      fail ();
+    }
+    catch (IllegalStateException ise)
+    {
+      // Expected.
+    }
+    // The buffer is in the pool only once.
+    final UdpTnoBufferPool.Handle first = pool.acquire (64);
+    final UdpTnoBufferPool.Handle second = pool.acquire (64);
+    assertNotSame (first, second);
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testReleaseIntoOtherPool ()
+  {
+    final UdpTnoBufferPool.Handle handle = smallPool ().acquire (64);
+    smallPool ().release (handle);
+  }
+
+  @Test
+  public void testConcurrentDoubleRelease () throws InterruptedException
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    for (int round = 0; round < 1000; round++)
+    {
+      final UdpTnoBufferPool.Handle handle = pool.acquire (64);
+      final CountDownLatch start = new CountDownLatch (1);
+      final AtomicInteger released = new AtomicInteger ();
+      final Thread[] threads = new Thread[2];
+      for (int t = 0; t < threads.length; t++)
+      {
+        threads[t] = new Thread (() ->
+        {
+          try
+          {
+            start.await ();
+            handle.release ();
+            released.incrementAndGet ();
+          }
+          catch (IllegalStateException | InterruptedException e)
+          {
+            // Expected for all but one thread.
+          }
+          pool.flush ();
+        });
+        threads[t].start ();
+      }
+      start.countDown ();
+      for (final Thread thread : threads)
+        thread.join ();
+      assertEquals (1, released.get ());
+      assertEquals (0, pool.getInUseCount (64));
+    }
+  }
+
+  @Test
+  public void testReleaseFromOtherThread () throws InterruptedException
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final List<UdpTnoBufferPool.Handle> handles = new ArrayList<> ();
+    UdpTnoBufferPool.Handle handle;
+    while ((handle = pool.acquire (64)) != null)
+      handles.add (handle);
+    assertEquals (4, handles.size ());
+    final Thread worker = new Thread (() ->
+    {
+      for (final UdpTnoBufferPool.Handle h : handles)
+        h.release ();
+      pool.flush ();
+    });
+    worker.start ();
+    worker.join ();
+    // All buffers flow back through the depot to the acquiring thread.
+    for (int i = 0; i < 4; i++)
+      assertNotNull (pool.acquire (64));
+    assertNull (pool.acquire (64));
+  }
+
+  @Test
+  public void testDepotNeverLosesBuffers () throws InterruptedException
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++)
+    {
+      final int seed = t;
+      threads[t] = new Thread (() ->
+      {
+        final List<UdpTnoBufferPool.Handle> held = new ArrayList<> ();
+        for (int i = 0; i < 2000; i++)
+        {
+          final UdpTnoBufferPool.Handle handle = pool.acquire (64);
+          if (handle != null)
+            held.add (handle);
+          if (held.size () == 2 || (i + seed) % 3 == 0)
+          {
+            for (final UdpTnoBufferPool.Handle h : held)
+              h.release ();
+            held.clear ();
+          }
+          if ((i + seed) % 5 == 0)
+            // Partial magazines go to the depot.
+            pool.flush ();
+        }
+        for (final UdpTnoBufferPool.Handle h : held)
+          h.release ();
+        pool.flush ();
+      });
+      threads[t].start ();
+    }
+    for (final Thread thread : threads)
+      thread.join ();
+    assertEquals (0, pool.getInUseCount (64));
+    for (int i = 0; i < 4; i++)
+      assertNotNull (pool.acquire (64));
+    assertNull (pool.acquire (64));
+  }
+
+  @Test
+  public void testPooledEncoders ()
+  {
+    final UdpTnoBufferPool pool = smallPool ();
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.shbRequest ();
+    final UdpTnoBufferPool.Handle handle = UdpTnoDataReq.formatRequest (request, 42, 0x05, UdpTnoDataReq.VERSION_1, pool);
+    assertNotNull (handle);
+    final byte[] pdu = new byte[handle.getBuffer ().remaining ()];
+    handle.getBuffer ().get (pdu);
+    assertArrayEquals (UdpTnoDataReqTest.encode (request), pdu);
+    handle.release ();
+    final BtpSap_DataIndContainer indication = UdpTnoDataIndTest.indication ();
+    final UdpTnoBufferPool.Handle indHandle = UdpTnoDataInd.formatIndication (indication, 42, UdpTnoDataInd.VERSION_2, pool);
+    assertNotNull (indHandle);
+    final byte[] indPdu = new byte[indHandle.getBuffer ().remaining ()];
+    indHandle.getBuffer ().get (indPdu);
+    assertArrayEquals (UdpTnoDataIndTest.encode (indication, UdpTnoDataInd.VERSION_2), indPdu);
+    indHandle.release ();
+    assertNull (UdpTnoDataReq.formatRequest (request, 42, 0x05, UdpTnoDataReq.VERSION_1, null));
+    // An exhausted pool; nothing is held upon failure.
+    final List<UdpTnoBufferPool.Handle> handles = new ArrayList<> ();
+    UdpTnoBufferPool.Handle h;
+    while ((h = pool.acquire (UdpTnoDataReq.encodedSize (request))) != null)
+      handles.add (h);
+    final int inUse = pool.getInUseCount (handles.get (0).getBuffer ().capacity ());
+    assertNull (UdpTnoDataReq.formatRequest (request, 42, 0x05, UdpTnoDataReq.VERSION_1, pool));
+    assertEquals (inUse, pool.getInUseCount (handles.get (0).getBuffer ().capacity ()));
+  }
+
+  @Test
+  public void testLargestSizeClass ()
+  {
+    // An indication carrying a maximum-size request payload.
+    final UdpTnoBufferPool.Handle handle = new UdpTnoBufferPool ().acquire (UdpTnoDataReq.MAX_PDU_SIZE + 20);
+    assertEquals (4096, handle.getBuffer ().capacity ());
+    assertEquals (4096, UdpTnoBufferPool.MAX_BUFFER_SIZE);
+    handle.release ();
+  }
+
+}
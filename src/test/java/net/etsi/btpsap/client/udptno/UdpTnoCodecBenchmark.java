@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import net.etsi.btpsap.BtpSapTypes.BaseGnPermissions;
+import net.etsi.btpsap.BtpSapTypes.BaseGnSecurityProfile;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnAddress;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnDestination;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+
+/** A (single-threaded, wall-clock) micro benchmark of the UDP-TNO BtpSap Request PDU codec.
+ * 
+ * <p>
+ * The benchmark measures the average time per operation of
+ * GN address long conversion and comparison,
+ * encoding a (unicast, with SSP) request into a reused buffer,
+ * and parsing that request.
+ * Each case is run for a number of rounds after warm-up; the median round is reported in nanoseconds per operation.
+ * 
+ * <p>
+ * The benchmark uses only the long-standing public codec API, so the same class can be run against older revisions for comparison.
+ * It is a rough measurement tool; it does not control for JIT effects as a harness like JMH would.
+ * It is not a unit test (and is not run by the build); run it from the test classpath, e.g.,
+ * {@code java -cp target/classes:target/test-classes net.etsi.btpsap.client.udptno.UdpTnoCodecBenchmark}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public final class UdpTnoCodecBenchmark
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Prevents instantiation.
+   * 
+   */
+  private UdpTnoCodecBenchmark ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CASES
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** A benchmark case.
+   * 
+   */
+  private interface Case
+  {
+
+    /** Runs the operation a number of times, and returns a value depending on all results.
+     * 
+     */
+    long run (int operations);
+
+  }
+
+  /** The number of distinct GN addresses (a power of two).
+   * 
+   */
+  private final static int ADDRESSES = 1024;
+
+  /** Accumulates the results of all cases, preventing the JIT from eliminating the operations.
+   * 
+   */
+  private static long sink = 0L;
+
+  /** Runs a case, and returns the median (round) time in nanoseconds per operation.
+   * 
+   */
+  private static double measure (final Case c, final int rounds, final int operations)
+  {
+    for (int r = 0; r < rounds; r++)
+      UdpTnoCodecBenchmark.sink += c.run (operations);
+    final double[] ns = new double[rounds];
+    for (int r = 0; r < rounds; r++)
+    {
+      final long start = System.nanoTime ();
+      UdpTnoCodecBenchmark.sink += c.run (operations);
+      ns[r] = (double) (System.nanoTime () - start) / operations;
+    }
+    Arrays.sort (ns);
+    return ns[rounds / 2];
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // MAIN
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Runs the benchmark, and prints the results on standard output.
+   * 
+   * <p>
+   * Arguments (all optional): number of rounds (default 15) and operations per round (default 1000000).
+   * 
+   * @param args The arguments.
+   * 
+   */
+  public static void main (final String[] args)
+  {
+    final int rounds = args.length > 0 ? Integer.parseInt (args[0]) : 15;
+    final int operations = args.length > 1 ? Integer.parseInt (args[1]) : 1000000;
+    // Equal pairs of (distinct) addresses, visited in turn to defeat hoisting out of the loop.
+    final DefaultGnAddress[] addresses = new DefaultGnAddress[2 * ADDRESSES];
+    for (int a = 0; a < addresses.length; a++)
+      addresses[a] = new DefaultGnAddress (new byte[]{1, 2, 3, 4, 5, 6, (byte) (a >> 9), (byte) (a >> 1)});
+    final BtpSap_DataReqContainer request = new BtpSap_DataReqContainer
+      (BtpType.BTP_B,
+       1234,
+       2001,
+       null,
+       GnTransportType.GN_UC,
+       new DefaultGnDestination (addresses[0]),
+       GnCommunicationsProfile.GN_COMPROF_ITSG5,
+       new BaseGnSecurityProfile (36, new BaseGnPermissions (new byte[]{1, 2, 3})),
+       1000,
+       null,
+       null,
+       10,
+       new DefaultGnTrafficClass ((byte) 0x12),
+       0,
+       40,
+       new byte[40]);
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE);
+    final int length = UdpTnoDataReq.formatRequest (request, 5, 1, buffer);
+    if (length < 0)
+      throw new IllegalStateException ();
+    final byte[] pdu = Arrays.copyOf (buffer.array (), length);
+    final Case[] cases = new Case[]
+    {
+      (final int n) ->
+      {
+        long result = 0L;
+        for (int i = 0; i < n; i++)
+        {
+          final DefaultGnAddress address1 = addresses[(2 * i) & (2 * ADDRESSES - 1)];
+          final DefaultGnAddress address2 = addresses[(2 * i + 1) & (2 * ADDRESSES - 1)];
+          result += address1.toLong () + (address1.equals (address2) ? 1 : 0) + address2.hashCode ();
+        }
+        return result;
+      },
+      (final int n) ->
+      {
+        long result = 0L;
+        for (int i = 0; i < n; i++)
+        {
+          buffer.clear ();
+          result += UdpTnoDataReq.formatRequest (request, 5, 1, buffer);
+        }
+        return result;
+      },
+      (final int n) ->
+      {
+        long result = 0L;
+        for (int i = 0; i < n; i++)
+          result += UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null).getLength ();
+        return result;
+      }
+    };
+    final String[] names = new String[]{"GN address toLong/equals/hashCode", "Encode UC request (SSP)", "Parse UC request"};
+    for (int c = 0; c < cases.length; c++)
+      System.out.println (String.format (Locale.ROOT, "%-40s %8.1f ns/op", names[c], measure (cases[c], rounds, operations)));
+    System.out.println ("(sink " + UdpTnoCodecBenchmark.sink + ")");
+  }
+
+}
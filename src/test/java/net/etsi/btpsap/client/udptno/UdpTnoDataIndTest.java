@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnPositionVector;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCertificateId;
+import net.etsi.btpsap.BtpSapTypes.GnDestination;
+import net.etsi.btpsap.BtpSapTypes.GnPermissions;
+import net.etsi.btpsap.BtpSapTypes.GnPositionVector;
+import net.etsi.btpsap.BtpSapTypes.GnSecurityReport;
+import net.etsi.btpsap.BtpSapTypes.GnTrafficClass;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataInd;
+import net.etsi.btpsap.BtpSap_DataIndPrimitive;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoDataInd}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoDataIndTest
+{
+
+  private static final byte[] PAYLOAD = { 9, 8, 7, 6, 5 };
+
+  static BtpSap_DataIndContainer indication ()
+  {
+    return new BtpSap_DataIndContainer
+      (1234,
+       2001,
+       17,
+       null,
+       new DefaultGnPositionVector (52.1234567, 4.7654321),
+       null,
+       null,
+       null,
+       new DefaultGnTrafficClass ((byte) 0x02),
+       12,
+       PAYLOAD.length,
+       0,
+       PAYLOAD);
+  }
+
+  /** Encodes a (version-1) indication into an array of exactly the encoded size.
+   * 
+   */
+  static byte[] encode (final BtpSap_DataIndContainer indication)
+  {
+    final int size = UdpTnoDataInd.encodedSize (indication);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    assertEquals (size, UdpTnoDataInd.formatIndication (indication, 42, buffer));
+    assertEquals (size, buffer.position ());
+    return buffer.array ();
+  }
+
+  /** Encodes an indication in given wire version into an array of exactly the encoded size.
+   * 
+   */
+  static byte[] encode (final BtpSap_DataIndContainer indication, final int version)
+  {
+    final int size = UdpTnoDataInd.encodedSize (indication, version);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    assertEquals (size, UdpTnoDataInd.formatIndication (indication, 42, buffer, version));
+    return buffer.array ();
+  }
+
+  static void assertIndication (final BtpSap_DataIndContainer expected, final BtpSap_DataIndContainer actual)
+  {
+    assertNotNull (actual);
+    assertEquals (expected.getBtpSrcPort (), actual.getBtpSrcPort ());
+    assertEquals (expected.getBtpDstPort (), actual.getBtpDstPort ());
+    assertEquals (expected.getBtpDstPortInfo (), actual.getBtpDstPortInfo ());
+    assertEquals (expected.getGnSrcPV ().getLatitude (), actual.getGnSrcPV ().getLatitude (), 1e-7);
+    assertEquals (expected.getGnSrcPV ().getLongitude (), actual.getGnSrcPV ().getLongitude (), 1e-7);
+    assertEquals (expected.getGnRemLifetime_s (), actual.getGnRemLifetime_s ());
+    assertEquals (expected.getGnTrafficClass ().toByte (), actual.getGnTrafficClass ().toByte ());
+    assertArrayEquals
+      (Arrays.copyOfRange (expected.getData (), expected.getOffset (), expected.getOffset () + expected.getLength ()),
+       Arrays.copyOfRange (actual.getData (), actual.getOffset (), actual.getOffset () + actual.getLength ()));
+  }
+
+  @Test
+  public void testEncodeIntoBuffer ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] expected = UdpTnoDataInd.formatIndication (indication, 42);
+    assertEquals (UdpTnoDataInd.HEADER_SIZE + 8, UdpTnoDataInd.encodedSize (indication));
+    assertArrayEquals (expected, encode (indication));
+    for (final ByteBuffer buffer : new ByteBuffer[]{ ByteBuffer.allocate (256), ByteBuffer.allocateDirect (256) })
+    {
+      buffer.position (7);
+      assertEquals (expected.length, UdpTnoDataInd.formatIndication (indication, 42, buffer));
+      assertEquals (7 + expected.length, buffer.position ());
+      final byte[] actual = new byte[expected.length];
+      buffer.position (7);
+      buffer.get (actual);
+      assertArrayEquals (expected, actual);
+    }
+  }
+
+  @Test
+  public void testEncodeIntoSmallBuffer ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataInd.encodedSize (indication) - 1);
+    assertEquals (-1, UdpTnoDataInd.formatIndication (indication, 42, buffer));
+    assertEquals (0, buffer.position ());
+    assertNull (UdpTnoDataInd.formatIndication (indication, -1));
+  }
+
+  @Test
+  public void testRoundTrip ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication);
+    assertIndication (indication, UdpTnoDataInd.parseIndication (pdu, 0, pdu.length));
+    final byte[] shifted = new byte[pdu.length + 9];
+    System.arraycopy (pdu, 0, shifted, 3, pdu.length);
+    assertIndication (indication, UdpTnoDataInd.parseIndication (shifted, 3, pdu.length));
+    assertNull (UdpTnoDataInd.parseIndication (pdu, 0, pdu.length - 4));
+  }
+
+  @Test
+  public void testZeroCopy ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication);
+    final byte[] shifted = new byte[pdu.length + 9];
+    System.arraycopy (pdu, 0, shifted, 3, pdu.length);
+    final BtpSap_DataIndContainer parsed = UdpTnoDataInd.parseIndication (shifted, 3, pdu.length, true);
+    assertIndication (indication, parsed);
+    assertSame (shifted, parsed.getData ());
+    assertEquals (3 + UdpTnoDataInd.HEADER_SIZE, parsed.getOffset ());
+    final BtpSap_DataIndContainer copied = UdpTnoDataInd.parseIndication (shifted, 3, pdu.length, false);
+    assertNotSame (shifted, copied.getData ());
+    assertEquals (0, copied.getOffset ());
+  }
+
+  @Test
+  public void testRejectSecurityFields ()
+  {
+    final byte[] pdu = encode (indication ());
+    pdu[67] = 1;
+    assertRejected (BtpSapValidationError.UNSUPPORTED_SECURITY_FIELDS, pdu, 0, pdu.length);
+  }
+
+  /** Asserts that a PDU is rejected with given error, that the rejection is counted, and that it is neither parsed nor delivered.
+   * 
+   */
+  private static void assertRejected (final BtpSapValidationError error, final byte[] pdu, final int offset, final int length)
+  {
+    final long count = error.getCount ();
+    assertEquals (error.ordinal (), UdpTnoDataInd.validateIndication (pdu, offset, length));
+    assertEquals (count + 1, error.getCount ());
+    assertNull (UdpTnoDataInd.parseIndication (pdu, offset, length));
+    final BtpSap_DataIndPrimitive handler =
+      (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId, gnPermissions,
+       gnTrafficClass, gnRemLifetime_s, payloadOffset, payloadLength, data) -> fail ("Malformed PDU delivered.");
+    assertFalse (UdpTnoDataInd.parseIndication (pdu, offset, length, handler));
+  }
+
+  @Test
+  public void testRejectMalformed ()
+  {
+    for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+    {
+      final byte[] pdu = encode (indication (), version);
+      assertEquals (BtpSapValidationError.OK.ordinal (), UdpTnoDataInd.validateIndication (pdu, 0, pdu.length));
+      assertRejected (BtpSapValidationError.NULL_PDU, null, 0, 0);
+      assertRejected (BtpSapValidationError.ILLEGAL_PDU_BOUNDS, pdu, -1, pdu.length);
+      assertRejected (BtpSapValidationError.ILLEGAL_PDU_BOUNDS, pdu, 1, Integer.MAX_VALUE);
+      assertRejected (BtpSapValidationError.PDU_TOO_SHORT, pdu, 0, 10);
+      assertRejected (BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH, pdu, 0, pdu.length - 4);
+      final byte[] magic = pdu.clone ();
+      magic[UdpTnoSchema.IND_MAGIC.offset] ^= 0x01;
+      assertRejected (BtpSapValidationError.MAGIC_MISMATCH, magic, 0, magic.length);
+    }
+  }
+
+  @Test
+  public void testRejectUnsupportedVersion ()
+  {
+    for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+      for (final byte unsupported : new byte[]{ 0, 3, 0x7f })
+      {
+        final byte[] pdu = encode (indication (), version);
+        pdu[UdpTnoSchema.IND_VERSION.offset] = unsupported;
+        assertRejected (BtpSapValidationError.UNSUPPORTED_VERSION, pdu, 0, pdu.length);
+        assertNull (UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false));
+        // The framing is lost, so batch decoding stops at the PDU.
+        final long count = BtpSapValidationError.UNSUPPORTED_VERSION.getCount ();
+        final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (4);
+        assertEquals (0, UdpTnoDataInd.parseIndications (pdu, 0, pdu.length, batch));
+        assertEquals (0, batch.size ());
+        assertEquals (count + 1, BtpSapValidationError.UNSUPPORTED_VERSION.getCount ());
+      }
+  }
+
+  @Test
+  public void testDeliverPrimitive ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication);
+    final BtpSap_DataIndContainer[] delivered = new BtpSap_DataIndContainer[1];
+    assertTrue (UdpTnoDataInd.parseIndication (pdu, 0, pdu.length, (BtpSap_DataIndPrimitive)
+      (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId, gnPermissions,
+       gnTrafficClass, gnRemLifetime_s, payloadOffset, payloadLength, data) ->
+      {
+        // The payload is passed in place.
+        assertSame (pdu, data);
+        assertEquals (UdpTnoDataInd.HEADER_SIZE, payloadOffset);
+        delivered[0] = new BtpSap_DataIndContainer (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV,
+          gnSecReport, gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, payloadLength, payloadOffset, data);
+      }));
+    assertIndication (indication, delivered[0]);
+  }
+
+  @Test
+  public void testDeliver ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication);
+    final BtpSap_DataIndContainer[] delivered = new BtpSap_DataIndContainer[1];
+    assertTrue (UdpTnoDataInd.parseIndication (pdu, 0, pdu.length, (BtpSap_DataInd)
+      (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId, gnPermissions,
+       gnTrafficClass, gnRemLifetime_s, length, data) ->
+      {
+        delivered[0] = new BtpSap_DataIndContainer (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV,
+          gnSecReport, gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, 0, data);
+      }));
+    assertIndication (indication, delivered[0]);
+  }
+
+  @Test
+  public void testLazyRoundTrip ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication);
+    assertIndication (indication, UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false).toContainer ());
+    assertIndication (indication, UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, true).toContainer ());
+  }
+
+  @Test
+  public void testVersion2RoundTrip ()
+  {
+    final BtpSap_DataIndContainer indication = indication ();
+    final byte[] pdu = encode (indication, UdpTnoDataInd.VERSION_2);
+    assertTrue (pdu.length < UdpTnoDataInd.encodedSize (indication, UdpTnoDataInd.VERSION_1));
+    assertEquals (UdpTnoDataInd.VERSION_2, UdpTnoDataInd.versionOf (pdu, 0, pdu.length));
+    assertIndication (indication, UdpTnoDataInd.parseIndication (pdu, 0, pdu.length));
+    assertIndication (indication, UdpTnoDataInd.parseIndication (pdu, 0, pdu.length, true));
+    assertIndication (indication, UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false).toContainer ());
+    final byte[] v1 = encode (indication, UdpTnoDataInd.VERSION_1);
+    assertArrayEquals (encode (indication), v1);
+    assertEquals (UdpTnoDataInd.VERSION_1, UdpTnoDataInd.versionOf (v1, 0, v1.length));
+  }
+
+  @Test
+  public void testRoundTripDirectBuffer ()
+  {
+    for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+    {
+      final BtpSap_DataIndContainer indication = indication ();
+      final ByteBuffer buffer = ByteBuffer.allocateDirect (256);
+      buffer.position (4);
+      final int size = UdpTnoDataInd.formatIndication (indication, 42, buffer, version);
+      assertEquals (UdpTnoDataInd.encodedSize (indication, version), size);
+      final BtpSap_DataIndContainer[] delivered = new BtpSap_DataIndContainer[1];
+      assertTrue (UdpTnoDataInd.parseIndication (buffer, 4, size, new BtpSap_DataInd ()
+      {
+        @Override
+        public void btpSapIndication
+        (final Integer btpSrcPort, final int btpDstPort, final Integer btpDstPortInfo,
+         final GnDestination gnDstAddress, final GnPositionVector gnSrcPV,
+         final GnSecurityReport gnSecReport, final GnCertificateId gnCertId, final GnPermissions gnPermissions,
+         final GnTrafficClass gnTrafficClass, final Integer gnRemLifetime_s, final int length, final byte[] data)
+        {
+          fail ("Payload copied to the heap.");
+        }
+        @Override
+        public void btpSapIndication
+        (final Integer btpSrcPort, final int btpDstPort, final Integer btpDstPortInfo,
+         final GnDestination gnDstAddress, final GnPositionVector gnSrcPV,
+         final GnSecurityReport gnSecReport, final GnCertificateId gnCertId, final GnPermissions gnPermissions,
+         final GnTrafficClass gnTrafficClass, final Integer gnRemLifetime_s, final ByteBuffer payload)
+        {
+          assertTrue (payload.isDirect ());
+          final byte[] copy = new byte[payload.remaining ()];
+          payload.get (copy);
+          delivered[0] = new BtpSap_DataIndContainer (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV,
+            gnSecReport, gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, copy.length, 0, copy);
+        }
+      }));
+      assertIndication (indication, delivered[0]);
+    }
+  }
+
+  @Test
+  public void testAbsentSourcePositionAndLifetime ()
+  {
+    final BtpSap_DataIndContainer indication = new BtpSap_DataIndContainer
+      (1234, 2001, 17, null, null, null, null, null, new DefaultGnTrafficClass ((byte) 0x02), null, PAYLOAD.length, 0, PAYLOAD);
+    for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+    {
+      final byte[] pdu = encode (indication, version);
+      for (final BtpSap_DataIndContainer parsed : new BtpSap_DataIndContainer[]{
+        UdpTnoDataInd.parseIndication (pdu, 0, pdu.length),
+        UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false).toContainer () })
+      {
+        assertNull (parsed.getGnSrcPV ());
+        assertNull (parsed.getGnRemLifetime_s ());
+      }
+    }
+  }
+
+  @Test
+  public void testRemainingLifetimeRoundedUp ()
+  {
+    // The remaining lifetime is carried in the (logarithmic) time encoding, and decoded in whole seconds, rounded up.
+    for (final int remLifetime_s : new int[]{ 1, 2, 12, 60, 600 })
+    {
+      final BtpSap_DataIndContainer indication = new BtpSap_DataIndContainer
+        (1234, 2001, 17, null, null, null, null, null, null, remLifetime_s, 0, 0, new byte[0]);
+      for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+      {
+        final byte[] pdu = encode (indication, version);
+        final Integer parsed = UdpTnoDataInd.parseIndication (pdu, 0, pdu.length).getGnRemLifetime_s ();
+        assertEquals (Integer.valueOf ((UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (remLifetime_s * 1000)) + 999) / 1000), parsed);
+        assertTrue (parsed >= remLifetime_s);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.etsi.btpsap.BtpSapTypes.BaseGnPermissions;
+import net.etsi.btpsap.BtpSapTypes.BaseGnSecurityProfile;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnAddress;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnArea;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnDestination;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnArea;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnDestination;
+import net.etsi.btpsap.BtpSapTypes.GnSecurityProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.MutableBtpSap_DataReq;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoDataReq}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoDataReqTest
+{
+
+  private static final byte[] PAYLOAD = { 1, 2, 3, 4, 5, 6, 7 };
+
+  private static final byte[] GN_ADDRESS = { 0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef };
+
+  private static BtpSap_DataReqContainer request
+  (final GnTransportType gnTransportType, final GnDestination gnDestination, final GnSecurityProfile gnSecurityProfile)
+  {
+    return new BtpSap_DataReqContainer
+      (BtpType.BTP_B,
+       1234,
+       2001,
+       17,
+       gnTransportType,
+       gnDestination,
+       GnCommunicationsProfile.GN_COMPROF_ITSG5,
+       gnSecurityProfile,
+       3000,
+       null,
+       null,
+       3,
+       new DefaultGnTrafficClass ((byte) 0x02),
+       PAYLOAD.length - 2,
+       1,
+       PAYLOAD);
+  }
+
+  static BtpSap_DataReqContainer shbRequest ()
+  {
+    return request (GnTransportType.GN_SHB, null,
+      new BaseGnSecurityProfile (UdpTnoDataReq.ITS_AID_CAM, new BaseGnPermissions (new byte[]{ 0x01, (byte) 0xfe })));
+  }
+
+  static BtpSap_DataReqContainer ucRequest ()
+  {
+    return request (GnTransportType.GN_UC, new DefaultGnDestination (new DefaultGnAddress (GN_ADDRESS)), null);
+  }
+
+  static BtpSap_DataReqContainer gbcRequest ()
+  {
+    return request (GnTransportType.GN_GBC,
+      new DefaultGnDestination (new DefaultGnArea (GnAreaShape.ELLIPSE, 52.1234567, 4.7654321, 500, 250, 45)),
+      new BaseGnSecurityProfile (UdpTnoDataReq.ITS_AID_DENM, new BaseGnPermissions ()));
+  }
+
+  /** Encodes a (version-1) request into an array of exactly the encoded size.
+   * 
+   */
+  static byte[] encode (final BtpSap_DataReqContainer request)
+  {
+    final int size = UdpTnoDataReq.encodedSize (request);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    assertEquals (size, UdpTnoDataReq.formatRequest (request, 42, 0x05, buffer));
+    assertEquals (size, buffer.position ());
+    return buffer.array ();
+  }
+
+  /** Encodes a request in given wire version into an array of exactly the encoded size.
+   * 
+   */
+  static byte[] encode (final BtpSap_DataReqContainer request, final int version)
+  {
+    final int size = UdpTnoDataReq.encodedSize (request, version);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    assertEquals (size, UdpTnoDataReq.formatRequest (request, 42, 0x05, buffer, version));
+    assertEquals (size, buffer.position ());
+    return buffer.array ();
+  }
+
+  /** Parses an encoded request, and checks the fields common to all transport types.
+   * 
+   */
+  private static BtpSap_DataReqContainer parse (final BtpSap_DataReqContainer request, final byte[] pdu)
+  {
+    final AtomicInteger clientId = new AtomicInteger (-1);
+    final HashSet<Integer> unitIds = new HashSet<> ();
+    final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, clientId, unitIds);
+    assertNotNull (parsed);
+    assertEquals (42, clientId.get ());
+    assertEquals (new HashSet<> (Arrays.asList (1, 3)), unitIds);
+    assertEquals (request.getBtpType (), parsed.getBtpType ());
+    assertEquals (request.getBtpSrcPort (), parsed.getBtpSrcPort ());
+    assertEquals (request.getBtpDestinationPort (), parsed.getBtpDestinationPort ());
+    assertEquals (request.getBtpDstPortInfo (), parsed.getBtpDstPortInfo ());
+    assertEquals (request.getGnTransportType (), parsed.getGnTransportType ());
+    assertEquals (request.getCommunicationsProfile (), parsed.getCommunicationsProfile ());
+    assertEquals (request.getMaxLifeTime_ms (), parsed.getMaxLifeTime_ms ());
+    assertEquals (request.getGnMaxHopLimit (), parsed.getGnMaxHopLimit ());
+    assertEquals (request.getGnTrafficClass ().toByte (), parsed.getGnTrafficClass ().toByte ());
+    assertEquals (request.getLength (), parsed.getLength ());
+    assertArrayEquals
+      (Arrays.copyOfRange (request.getData (), request.getOffset (), request.getOffset () + request.getLength ()),
+       Arrays.copyOfRange (parsed.getData (), parsed.getOffset (), parsed.getOffset () + parsed.getLength ()));
+    return parsed;
+  }
+
+  private static void assertSecurityProfile (final GnSecurityProfile expected, final GnSecurityProfile actual)
+  {
+    assertNotNull (actual);
+    assertEquals (expected.getItsAid (), actual.getItsAid ());
+    // The SSP is decoded as its full (8-byte) field, with the encoded bytes right-aligned.
+    final byte[] ssp = expected.getPermissions ().getPermissionsArray ();
+    final byte[] field = new byte[8];
+    System.arraycopy (ssp, 0, field, field.length - ssp.length, ssp.length);
+    assertArrayEquals (field, actual.getPermissions ().getPermissionsArray ());
+  }
+
+  private static void assertGbc (final BtpSap_DataReqContainer request, final BtpSap_DataReqContainer parsed, final double delta)
+  {
+    final GnArea expected = request.getGnDestination ().getGnArea ();
+    final GnArea actual = parsed.getGnDestination ().getGnArea ();
+    assertEquals (expected.getAreaShape (), actual.getAreaShape ());
+    assertEquals (expected.getLatitude (), actual.getLatitude (), delta);
+    assertEquals (expected.getLongitude (), actual.getLongitude (), delta);
+    assertEquals (expected.getDistanceA_m (), actual.getDistanceA_m ());
+    assertEquals (expected.getDistanceB_m (), actual.getDistanceB_m ());
+    assertEquals (expected.getAngle_degrees (), actual.getAngle_degrees ());
+    assertEquals (UdpTnoDataReq.ITS_AID_DENM, parsed.getSecurityProfile ().getItsAid ());
+  }
+
+  @Test
+  public void testEncodedSize ()
+  {
+    // Header plus payload, padded to a 32-bit boundary.
+    assertEquals (UdpTnoDataReq.HEADER_SIZE + 8, UdpTnoDataReq.encodedSize (shbRequest ()));
+    assertEquals (-1, UdpTnoDataReq.encodedSize ((BtpSap_DataReqContainer) null));
+  }
+
+  @Test
+  public void testUnitMask ()
+  {
+    assertEquals (0, UdpTnoDataReq.unitMask (null));
+    assertEquals (0x8005, UdpTnoDataReq.unitMask (new HashSet<> (Arrays.asList (1, 3, 16))));
+    // Illegal unit IDs are ignored.
+    assertEquals (0x0001, UdpTnoDataReq.unitMask (new HashSet<> (Arrays.asList (0, 1, 17))));
+  }
+
+  @Test
+  public void testEncodeIntoBuffer ()
+  {
+    final BtpSap_DataReqContainer request = gbcRequest ();
+    final byte[] expected = UdpTnoDataReq.formatRequest (request, 42, new HashSet<> (Arrays.asList (1, 3)));
+    assertArrayEquals (expected, encode (request));
+    for (final ByteBuffer buffer : new ByteBuffer[]{ ByteBuffer.allocate (256), ByteBuffer.allocateDirect (256) })
+    {
+      buffer.position (5);
+      assertEquals (expected.length, UdpTnoDataReq.formatRequest (request, 42, 0x05, buffer));
+      assertEquals (5 + expected.length, buffer.position ());
+      final byte[] actual = new byte[expected.length];
+      buffer.position (5);
+      buffer.get (actual);
+      assertArrayEquals (expected, actual);
+    }
+  }
+
+  @Test
+  public void testEncodeIntoSmallBuffer ()
+  {
+    final BtpSap_DataReqContainer request = shbRequest ();
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.encodedSize (request) + 2);
+    buffer.position (3);
+    assertEquals (-1, UdpTnoDataReq.formatRequest (request, 42, 0x05, buffer));
+    assertEquals (3, buffer.position ());
+    buffer.position (0);
+    assertEquals (-1, UdpTnoDataReq.formatRequest (request, 128, 0x05, buffer));
+    assertEquals (0, buffer.position ());
+  }
+
+  @Test
+  public void testShbRoundTrip ()
+  {
+    final BtpSap_DataReqContainer request = shbRequest ();
+    assertSecurityProfile (request.getSecurityProfile (), parse (request, encode (request)).getSecurityProfile ());
+  }
+
+  @Test
+  public void testUcRoundTrip ()
+  {
+    final BtpSap_DataReqContainer request = ucRequest ();
+    final BtpSap_DataReqContainer parsed = parse (request, encode (request));
+    assertEquals (0x0123456789abcdefL, parsed.getGnDestination ().getGnUnicastAddress ().toLong ());
+  }
+
+  @Test
+  public void testGbcRoundTrip ()
+  {
+    final BtpSap_DataReqContainer request = gbcRequest ();
+    assertGbc (request, parse (request, encode (request)), 0.0);
+  }
+
+  @Test
+  public void testVersion1Padding ()
+  {
+    final byte[] pdu = encode (shbRequest ());
+    assertEquals (UdpTnoDataReq.HEADER_SIZE + 8, pdu.length);
+    assertEquals (0, pdu[pdu.length - 1]);
+    // The (optional) padding may also be omitted by the sender.
+    assertNotNull (UdpTnoDataReq.parseRequest (pdu, 0, UdpTnoDataReq.HEADER_SIZE + 5, null, null));
+    assertNull (UdpTnoDataReq.parseRequest (pdu, 0, UdpTnoDataReq.HEADER_SIZE + 6, null, null));
+  }
+
+  @Test
+  public void testRoundTripAtOffset ()
+  {
+    final byte[] pdu = encode (ucRequest ());
+    final byte[] shifted = new byte[pdu.length + 13];
+    System.arraycopy (pdu, 0, shifted, 5, pdu.length);
+    final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (shifted, 5, pdu.length, null, null);
+    assertNotNull (parsed);
+    assertEquals (0x0123456789abcdefL, parsed.getGnDestination ().getGnUnicastAddress ().toLong ());
+    assertEquals (2001, parsed.getBtpDestinationPort ());
+  }
+
+  @Test
+  public void testBatchRoundTrip ()
+  {
+    final BtpSap_DataReqContainer[] reqs = { shbRequest (), ucRequest (), gbcRequest () };
+    final ByteBuffer buffer = ByteBuffer.allocate (1024);
+    buffer.position (4);
+    final int[] pduEnds = new int[reqs.length];
+    assertEquals (reqs.length, UdpTnoDataReq.formatRequests (reqs, 0, reqs.length, 42, 0x05, buffer, pduEnds));
+    assertEquals (pduEnds[reqs.length - 1], buffer.position ());
+    int start = 4;
+    for (int i = 0; i < reqs.length; i++)
+    {
+      assertArrayEquals (encode (reqs[i]), Arrays.copyOfRange (buffer.array (), start, pduEnds[i]));
+      start = pduEnds[i];
+    }
+  }
+
+  @Test
+  public void testBatchStopsWhenFull ()
+  {
+    final BtpSap_DataReqContainer[] reqs = { shbRequest (), ucRequest (), gbcRequest () };
+    final int size = UdpTnoDataReq.encodedSize (reqs[0]);
+    final ByteBuffer buffer = ByteBuffer.allocate (2 * size + size / 2);
+    final int[] pduEnds = new int[reqs.length];
+    assertEquals (2, UdpTnoDataReq.formatRequests (reqs, 0, reqs.length, 42, 0x05, buffer, pduEnds));
+    assertEquals (2 * size, buffer.position ());
+    assertEquals (0, UdpTnoDataReq.formatRequests (reqs, 2, 1, 42, 0x05, buffer, pduEnds));
+    assertEquals (-1, UdpTnoDataReq.formatRequests (reqs, 2, 2, 42, 0x05, buffer, pduEnds));
+    assertEquals (-1, UdpTnoDataReq.formatRequests (reqs, 1, Integer.MAX_VALUE, 42, 0x05, buffer, pduEnds));
+  }
+
+  @Test
+  public void testMutableRequest ()
+  {
+    for (final BtpSap_DataReqContainer request : new BtpSap_DataReqContainer[]{ shbRequest (), ucRequest (), gbcRequest () })
+    {
+      final MutableBtpSap_DataReq mutable = new MutableBtpSap_DataReq ().set (request);
+      assertEquals (UdpTnoDataReq.encodedSize (request), UdpTnoDataReq.encodedSize (mutable));
+      final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.encodedSize (mutable));
+      assertEquals (buffer.capacity (), UdpTnoDataReq.formatRequest (mutable, 42, 0x05, buffer));
+      assertArrayEquals (encode (request), buffer.array ());
+    }
+    // Invalid requests are not encoded.
+    final ByteBuffer buffer = ByteBuffer.allocate (256);
+    assertEquals (-1, UdpTnoDataReq.formatRequest (new MutableBtpSap_DataReq (), 42, 0x05, buffer));
+    assertEquals (0, buffer.position ());
+  }
+
+  /** Asserts that a PDU is rejected with given error, that the rejection is counted, and that it is not parsed.
+   * 
+   */
+  private static void assertRejected (final BtpSapValidationError error, final byte[] pdu, final int offset, final int length)
+  {
+    final long count = error.getCount ();
+    assertEquals (error.ordinal (), UdpTnoDataReq.validateRequest (pdu, offset, length));
+    assertEquals (count + 1, error.getCount ());
+    assertNull (UdpTnoDataReq.parseRequest (pdu, offset, length, null, null));
+  }
+
+  @Test
+  public void testRejectMalformed ()
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+    {
+      final byte[] pdu = encode (shbRequest (), version);
+      assertEquals (BtpSapValidationError.OK.ordinal (), UdpTnoDataReq.validateRequest (pdu, 0, pdu.length));
+      assertRejected (BtpSapValidationError.NULL_PDU, null, 0, 0);
+      assertRejected (BtpSapValidationError.ILLEGAL_PDU_BOUNDS, pdu, 1, pdu.length);
+      assertRejected (BtpSapValidationError.ILLEGAL_PDU_BOUNDS, pdu, 1, Integer.MAX_VALUE);
+      assertRejected (BtpSapValidationError.PDU_TOO_SHORT, pdu, 0, 10);
+      // Truncated payload.
+      assertRejected (BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH, pdu, 0, pdu.length - 6);
+      final byte[] magic = pdu.clone ();
+      magic[UdpTnoSchema.REQ_MAGIC.offset + 1] ^= 0x01;
+      assertRejected (BtpSapValidationError.MAGIC_MISMATCH, magic, 0, magic.length);
+      final byte[] unknownVersion = pdu.clone ();
+      unknownVersion[UdpTnoSchema.REQ_VERSION.offset] = 0x7f;
+      assertRejected (BtpSapValidationError.UNSUPPORTED_VERSION, unknownVersion, 0, unknownVersion.length);
+      final byte[] btpType = pdu.clone ();
+      btpType[UdpTnoSchema.REQ_BTP_FLAGS.offset] |= 0x0f;
+      assertRejected (BtpSapValidationError.UNKNOWN_BTP_TYPE, btpType, 0, btpType.length);
+      final byte[] transportType = pdu.clone ();
+      transportType[UdpTnoSchema.REQ_GN_TYPE.offset] |= (byte) 0xf0;
+      assertRejected (BtpSapValidationError.UNKNOWN_GN_TRANSPORT_TYPE, transportType, 0, transportType.length);
+    }
+  }
+
+  @Test
+  public void testRejectMalformedVersion2 ()
+  {
+    final byte[] pdu = encode (gbcRequest (), UdpTnoDataReq.VERSION_2);
+    // Unknown presence bits.
+    final byte[] presence = pdu.clone ();
+    presence[UdpTnoSchema.REQ2_PRESENCE.offset] |= (byte) 0x80;
+    assertRejected (BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH, presence, 0, presence.length);
+    // Trailing bytes (compact PDUs are never padded).
+    final byte[] trailing = new byte[pdu.length + 1];
+    System.arraycopy (pdu, 0, trailing, 0, pdu.length);
+    assertRejected (BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH, trailing, 0, trailing.length);
+  }
+
+  @Test
+  public void testAreaDestinationCached ()
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+    {
+      final byte[] pdu = encode (gbcRequest (), version);
+      final GnDestination destination = UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null).getGnDestination ();
+      // The same raw area bytes yield the same destination.
+      assertSame (destination, UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null).getGnDestination ());
+      assertSame (destination, UdpTnoDataReq.parseRequest (pdu.clone (), 0, pdu.length, null, null).getGnDestination ());
+      // A change in any area byte (here the least-significant byte of the longitude and of the angle) yields another one.
+      final int lonEnd, angleEnd;
+      if (version == UdpTnoDataReq.VERSION_1)
+      {
+        lonEnd = UdpTnoSchema.REQ_DST_LON.end () - 1;
+        angleEnd = UdpTnoSchema.REQ_ANGLE.end () - 1;
+      }
+      else
+      {
+        final ByteBuffer buffer = ByteBuffer.wrap (pdu);
+        final int area = UdpTnoSchema.compactIndex (buffer, UdpTnoSchema.REQ2_PRESENCE.getInt (buffer, 0),
+          UdpTnoSchema.REQ2_FIXED_SIZE, UdpTnoSchema.REQ2_OPTIONAL_SIZES, UdpTnoSchema.REQ2_HAS_GN_AREA);
+        lonEnd = area + UdpTnoSchema.AREA2_LONGITUDE_E7.end () - 1;
+        angleEnd = area + UdpTnoSchema.AREA2_ANGLE.end () - 1;
+      }
+      for (final int changed : new int[]{ lonEnd, angleEnd })
+      {
+        final byte[] other = pdu.clone ();
+        other[changed] ^= 0x01;
+        final GnDestination otherDestination = UdpTnoDataReq.parseRequest (other, 0, other.length, null, null).getGnDestination ();
+        assertNotEquals (destination, otherDestination);
+        assertSame (otherDestination, UdpTnoDataReq.parseRequest (other, 0, other.length, null, null).getGnDestination ());
+      }
+      assertEquals (gbcRequest ().getGnDestination (), destination);
+    }
+  }
+
+  @Test
+  public void testRejectItsAidBeyond32Bits ()
+  {
+    final BtpSap_DataReqContainer request = request (GnTransportType.GN_SHB, null,
+      new BaseGnSecurityProfile (0xffffffffL, new BaseGnPermissions ()));
+    final byte[] pdu = encode (request, UdpTnoDataReq.VERSION_2);
+    assertEquals (0xffffffffL, parse (request, pdu).getSecurityProfile ().getItsAid ());
+    // The ITS-AID varint is ff ff ff ff 0f; setting a fifth-byte bit beyond 32 bits must not wrap.
+    int last = -1;
+    for (int i = 0; i + 4 < pdu.length && last < 0; i++)
+      if (pdu[i] == (byte) 0xff && pdu[i + 1] == (byte) 0xff && pdu[i + 2] == (byte) 0xff && pdu[i + 3] == (byte) 0xff
+        && pdu[i + 4] == 0x0f)
+        last = i + 4;
+    assertTrue (last > 0);
+    final byte[] beyond = pdu.clone ();
+    beyond[last] = 0x1f;
+    assertRejected (BtpSapValidationError.PAYLOAD_LENGTH_MISMATCH, beyond, 0, beyond.length);
+  }
+
+  @Test
+  public void testVersion2RoundTrip ()
+  {
+    final BtpSap_DataReqContainer shb = shbRequest ();
+    assertSecurityProfile (shb.getSecurityProfile (), parse (shb, encode (shb, UdpTnoDataReq.VERSION_2)).getSecurityProfile ());
+    final BtpSap_DataReqContainer uc = ucRequest ();
+    final BtpSap_DataReqContainer parsedUc = parse (uc, encode (uc, UdpTnoDataReq.VERSION_2));
+    assertEquals (0x0123456789abcdefL, parsedUc.getGnDestination ().getGnUnicastAddress ().toLong ());
+    // Version 2 carries coordinates in units of 1e-7 degrees.
+    final BtpSap_DataReqContainer gbc = gbcRequest ();
+    assertGbc (gbc, parse (gbc, encode (gbc, UdpTnoDataReq.VERSION_2)), 1e-7);
+  }
+
+  @Test
+  public void testVersionOf ()
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+    {
+      final byte[] pdu = encode (gbcRequest (), version);
+      assertEquals (version, UdpTnoDataReq.versionOf (pdu, 0, pdu.length));
+    }
+    assertArrayEquals (encode (gbcRequest ()), encode (gbcRequest (), UdpTnoDataReq.VERSION_1));
+  }
+
+  @Test
+  public void testVersion2IsCompact ()
+  {
+    final BtpSap_DataReqContainer request = shbRequest ();
+    final int size = UdpTnoDataReq.encodedSize (request, UdpTnoDataReq.VERSION_2);
+    assertTrue (size < UdpTnoDataReq.encodedSize (request, UdpTnoDataReq.VERSION_1));
+    assertEquals (size, encode (request, UdpTnoDataReq.VERSION_2).length);
+  }
+
+  @Test
+  public void testVersion2RoundTripAtOffset ()
+  {
+    final byte[] pdu = encode (ucRequest (), UdpTnoDataReq.VERSION_2);
+    final byte[] shifted = new byte[pdu.length + 13];
+    System.arraycopy (pdu, 0, shifted, 5, pdu.length);
+    final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (shifted, 5, pdu.length, null, null);
+    assertNotNull (parsed);
+    assertEquals (0x0123456789abcdefL, parsed.getGnDestination ().getGnUnicastAddress ().toLong ());
+  }
+
+}
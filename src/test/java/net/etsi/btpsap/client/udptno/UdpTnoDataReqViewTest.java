@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import net.etsi.btpsap.BtpSapTypes.GnArea;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoDataReqView}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoDataReqViewTest
+{
+
+  private static void assertView (final BtpSap_DataReqContainer request, final UdpTnoDataReqView view)
+  {
+    assertTrue (view.isValid ());
+    assertEquals (42, view.getClientId ());
+    assertEquals (0x05, view.getUnitMask ());
+    assertTrue (view.hasUnit (1));
+    assertFalse (view.hasUnit (2));
+    assertTrue (view.hasUnit (3));
+    assertEquals (request.getBtpType ().ordinal (), view.getBtpTypeOrdinal ());
+    assertEquals (request.getCommunicationsProfile ().ordinal (), view.getGnCommunicationsProfileOrdinal ());
+    assertEquals (request.getGnTransportType ().ordinal (), view.getGnTransportTypeOrdinal ());
+    assertEquals ((int) request.getBtpSrcPort (), view.getBtpSrcPort ());
+    assertEquals (request.getBtpDestinationPort (), view.getBtpDstPort ());
+    assertEquals ((int) request.getBtpDstPortInfo (), view.getBtpDstPortInfo ());
+    assertEquals ((int) request.getMaxLifeTime_ms (), view.getGnMaxLifetime_ms ());
+    assertEquals (request.getGnTrafficClass ().toByte (), view.getGnTrafficClassByte ());
+    assertEquals ((int) request.getGnMaxHopLimit (), view.getGnMaxHopLimit ());
+    assertEquals (0, view.getGnRepInterval_ms ());
+    assertEquals (request.getLength (), view.getPayloadLength ());
+    assertEquals (view.getOffset () + UdpTnoDataReq.HEADER_SIZE, view.getPayloadOffset ());
+  }
+
+  @Test
+  public void testUc ()
+  {
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.ucRequest ();
+    final byte[] pdu = UdpTnoDataReqTest.encode (request);
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertTrue (view.wrap (pdu, 0, pdu.length));
+    assertView (request, view);
+    assertTrue (view.hasGnUnicastAddress ());
+    assertFalse (view.hasGnArea ());
+    assertEquals (-1, view.getGnAreaShapeOrdinal ());
+    assertEquals (0x0123456789abcdefL, view.getGnUnicastAddress ());
+  }
+
+  @Test
+  public void testGbc ()
+  {
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.gbcRequest ();
+    final byte[] pdu = UdpTnoDataReqTest.encode (request);
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertTrue (view.wrap (pdu, 0, pdu.length));
+    assertView (request, view);
+    final GnArea area = request.getGnDestination ().getGnArea ();
+    assertFalse (view.hasGnUnicastAddress ());
+    assertTrue (view.hasGnArea ());
+    assertEquals (area.getAreaShape ().ordinal (), view.getGnAreaShapeOrdinal ());
+    assertEquals (area.getLatitude (), view.getGnAreaLatitude (), 0.0);
+    assertEquals (area.getLongitude (), view.getGnAreaLongitude (), 0.0);
+    assertEquals (area.getDistanceA_m (), view.getGnAreaDistanceA_m ());
+    assertEquals (area.getDistanceB_m (), view.getGnAreaDistanceB_m ());
+    assertEquals (area.getAngle_degrees (), view.getGnAreaAngle_degrees ());
+    assertEquals (UdpTnoDataReq.ITS_AID_DENM, view.getItsAid ());
+  }
+
+  @Test
+  public void testShbSecurityProfile ()
+  {
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.shbRequest ();
+    final byte[] pdu = UdpTnoDataReqTest.encode (request);
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertTrue (view.wrap (pdu, 0, pdu.length));
+    assertView (request, view);
+    assertFalse (view.hasGnUnicastAddress ());
+    assertFalse (view.hasGnArea ());
+    assertEquals (UdpTnoDataReq.ITS_AID_CAM, view.getItsAid ());
+    // The SSP bytes are right-aligned in their 8-byte field.
+    assertEquals (0x01feL, view.getSspBits ());
+    assertEquals ((byte) 0xfe, view.getSspByte (7));
+    assertEquals ((byte) 0x00, view.getSspByte (0));
+  }
+
+  @Test
+  public void testWrapBuffer ()
+  {
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.gbcRequest ();
+    final byte[] pdu = UdpTnoDataReqTest.encode (request);
+    // The byte order of the wrapped buffer is irrelevant.
+    final ByteBuffer buffer = ByteBuffer.allocateDirect (pdu.length + 6).order (ByteOrder.LITTLE_ENDIAN);
+    buffer.position (6);
+    buffer.put (pdu);
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertTrue (view.wrap (buffer, 6, pdu.length));
+    assertEquals (6, view.getOffset ());
+    assertEquals (pdu.length, view.getLength ());
+    assertView (request, view);
+    assertEquals (request.getGnDestination ().getGnArea ().getLatitude (), view.getGnAreaLatitude (), 0.0);
+  }
+
+  @Test
+  public void testWrapInvalid ()
+  {
+    final byte[] pdu = UdpTnoDataReqTest.encode (UdpTnoDataReqTest.ucRequest ());
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertFalse (view.wrap ((byte[]) null, 0, 0));
+    assertFalse (view.wrap (pdu, 0, UdpTnoDataReq.HEADER_SIZE - 1));
+    assertFalse (view.isValid ());
+    assertFalse (view.wrap (pdu, 0, pdu.length - 4));
+    final byte[] magic = pdu.clone ();
+    magic[0] ^= 0x01;
+    assertFalse (view.wrap (magic, 0, magic.length));
+    // The view is re-usable after an invalid PDU.
+    assertTrue (view.wrap (pdu, 0, pdu.length));
+    assertEquals (0x0123456789abcdefL, view.getGnUnicastAddress ());
+  }
+
+  @Test
+  public void testWrapBoundsOverflow ()
+  {
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    assertFalse (view.wrap (new byte[100], 10, Integer.MAX_VALUE));
+    assertFalse (view.wrap (ByteBuffer.allocate (100), 10, Integer.MAX_VALUE));
+    assertFalse (view.isValid ());
+  }
+
+  @Test
+  public void testViewIgnoresVersion2 ()
+  {
+    final UdpTnoDataReqView view = new UdpTnoDataReqView ();
+    final byte[] v1 = UdpTnoDataReqTest.encode (UdpTnoDataReqTest.ucRequest (), UdpTnoDataReq.VERSION_1);
+    assertTrue (view.wrap (v1, 0, v1.length));
+    assertEquals (0x0123456789abcdefL, view.getGnUnicastAddress ());
+    final byte[] v2 = UdpTnoDataReqTest.encode (UdpTnoDataReqTest.ucRequest (), UdpTnoDataReq.VERSION_2);
+    final long count = BtpSapValidationError.UNSUPPORTED_VERSION.getCount ();
+    assertFalse (view.wrap (v2, 0, v2.length));
+    assertFalse (view.isValid ());
+    assertEquals (count, BtpSapValidationError.UNSUPPORTED_VERSION.getCount ());
+  }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoDirectEncoder}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoDirectEncoderTest
+{
+
+  /** A sink collecting copies of the PDUs it is handed.
+   *
+   */
+  private static final class Collector
+  implements UdpTnoDirectEncoder.Sink
+  {
+
+    private final List<byte[]> pdus = new ArrayList<> ();
+
+    @Override
+    public void send (final ByteBuffer pdu)
+    {
+      final byte[] copy = new byte[pdu.remaining ()];
+      pdu.get (copy);
+      this.pdus.add (copy);
+    }
+
+  }
+
+  /** Passes the fields of a request container to an encoder.
+   *
+   */
+  private static void request (final UdpTnoDirectEncoder encoder, final BtpSap_DataReqContainer request)
+    throws IOException
+  {
+    encoder.btpSapRequest
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       (Integer) request.getMaxLifeTime_ms (),
+       request.getGnRepInterval_ms (),
+       request.getGnMaxRepTime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       request.getOffset (),
+       request.getLength (),
+       request.getData ());
+  }
+
+  private static BtpSap_DataReqContainer[] requests ()
+  {
+    return new BtpSap_DataReqContainer[]
+    {
+      UdpTnoDataReqTest.shbRequest (),
+      UdpTnoDataReqTest.ucRequest (),
+      UdpTnoDataReqTest.gbcRequest ()
+    };
+  }
+
+  @Test
+  public void testEqualsFormatRequest () throws IOException
+  {
+    for (final boolean direct : new boolean[]{ false, true })
+    {
+      final Collector collector = new Collector ();
+      final ByteBuffer buffer =
+        direct ? ByteBuffer.allocateDirect (UdpTnoDataReq.MAX_PDU_SIZE) : ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE);
+      final UdpTnoDirectEncoder encoder = new UdpTnoDirectEncoder (42, 0x05, buffer, collector);
+      for (final BtpSap_DataReqContainer request : requests ())
+        request (encoder, request);
+      assertEquals (3, collector.pdus.size ());
+      for (int i = 0; i < 3; i++)
+        assertArrayEquals (UdpTnoDataReqTest.encode (requests ()[i]), collector.pdus.get (i));
+    }
+  }
+
+  @Test
+  public void testIllegalRequest () throws IOException
+  {
+    final Collector collector = new Collector ();
+    final UdpTnoDirectEncoder encoder = new UdpTnoDirectEncoder (42, 0x05, ByteBuffer.allocate (256), collector);
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.ucRequest ();
+    try
+    {
+      // Unicast without destination.
+      encoder.btpSapRequest (BtpType.BTP_B, 1234, 2001, 17, GnTransportType.GN_UC, null,
+        GnCommunicationsProfile.GN_COMPROF_ITSG5, null, 3000, null, null, 3, request.getGnTrafficClass (),
+        request.getOffset (), request.getLength (), request.getData ());
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+    assertTrue (collector.pdus.isEmpty ());
+  }
+
+  @Test
+  public void testBufferTooSmall () throws IOException
+  {
+    final Collector collector = new Collector ();
+    final BtpSap_DataReqContainer request = UdpTnoDataReqTest.ucRequest ();
+    final UdpTnoDirectEncoder encoder =
+      new UdpTnoDirectEncoder (42, 0x05, ByteBuffer.allocate (UdpTnoDataReq.encodedSize (request) - 1), collector);
+    try
+    {
+      request (encoder, request);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+    assertTrue (collector.pdus.isEmpty ());
+  }
+
+  @Test
+  public void testIllegalConstruction ()
+  {
+    for (final int clientId : new int[]{ -1, 128 })
+      try
+      {
+        new UdpTnoDirectEncoder (clientId, 0x05, ByteBuffer.allocate (256), new Collector ());
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+    try
+    {
+      new UdpTnoDirectEncoder (42, 0x05, null, new Collector ());
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+    try
+    {
+      new UdpTnoDirectEncoder (42, 0x05, ByteBuffer.allocate (256), null);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testEqualsFormatRequestVersion2 () throws IOException
+  {
+    final Collector collector = new Collector ();
+    final UdpTnoDirectEncoder encoder =
+      new UdpTnoDirectEncoder (42, 0x05, UdpTnoDataReq.VERSION_2, ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE), collector);
+    for (final BtpSap_DataReqContainer request : requests ())
+      request (encoder, request);
+    for (int i = 0; i < 3; i++)
+      assertArrayEquals (UdpTnoDataReqTest.encode (requests ()[i], UdpTnoDataReq.VERSION_2), collector.pdus.get (i));
+  }
+
+  @Test
+  public void testEqualsFormatRequestBufferPayload () throws IOException
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+    {
+      final Collector collector = new Collector ();
+      final UdpTnoDirectEncoder encoder =
+        new UdpTnoDirectEncoder (42, 0x05, version, ByteBuffer.allocateDirect (UdpTnoDataReq.MAX_PDU_SIZE), collector);
+      for (final BtpSap_DataReqContainer request : requests ())
+      {
+        final ByteBuffer payload = ByteBuffer.allocateDirect (request.getLength ());
+        payload.put (request.getData (), request.getOffset (), request.getLength ()).flip ();
+        encoder.btpSapRequest
+          (request.getBtpType (),
+           request.getBtpSrcPort (),
+           request.getBtpDestinationPort (),
+           request.getBtpDstPortInfo (),
+           request.getGnTransportType (),
+           request.getGnDestination (),
+           request.getCommunicationsProfile (),
+           request.getSecurityProfile (),
+           (Integer) request.getMaxLifeTime_ms (),
+           request.getGnRepInterval_ms (),
+           request.getGnMaxRepTime_ms (),
+           request.getGnMaxHopLimit (),
+           request.getGnTrafficClass (),
+           payload);
+      }
+      for (int i = 0; i < 3; i++)
+        assertArrayEquals (UdpTnoDataReqTest.encode (requests ()[i], version), collector.pdus.get (i));
+    }
+  }
+
+}
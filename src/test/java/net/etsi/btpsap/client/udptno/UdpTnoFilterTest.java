@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoFilter}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoFilterTest
+{
+
+  /** A version-1 SHB request PDU from client 42 to units 0x05, with destination port 2001 and traffic class 0x82.
+   * 
+   */
+  private static byte[] pdu ()
+  {
+    final BtpSap_DataReqContainer request = new BtpSap_DataReqContainer
+      (BtpType.BTP_B, 1234, 2001, 17, GnTransportType.GN_SHB, null, GnCommunicationsProfile.GN_COMPROF_ITSG5, null,
+       null, null, null, 1, DefaultGnTrafficClass.valueOf ((byte) 0x82), 0, 0, null);
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.encodedSize (request));
+    assertTrue (UdpTnoDataReq.formatRequest (request, 42, 0x05, buffer) > 0);
+    return buffer.array ();
+  }
+
+  private static boolean accept (final String expression)
+  {
+    final byte[] pdu = pdu ();
+    final UdpTnoFilter filter = UdpTnoFilter.compile (expression);
+    final boolean accepted = filter.accept (pdu, 0, pdu.length);
+    final ByteBuffer direct = ByteBuffer.allocateDirect (pdu.length + 3);
+    direct.position (3);
+    direct.put (pdu);
+    assertEquals (accepted, filter.accept (direct, 3, pdu.length));
+    return accepted;
+  }
+
+  @Test
+  public void testComparisons ()
+  {
+    assertTrue (accept ("magic == 0x3d93"));
+    assertTrue (accept ("version == 1"));
+    assertTrue (accept ("clientId == 42"));
+    assertTrue (accept ("dstPort == 2001"));
+    assertFalse (accept ("dstPort != 2001"));
+    assertTrue (accept ("dstPort < 2002"));
+    assertFalse (accept ("dstPort < 2001"));
+    assertTrue (accept ("dstPort <= 2001"));
+    assertTrue (accept ("dstPort > 2000"));
+    assertFalse (accept ("dstPort > 2001"));
+    assertTrue (accept ("dstPort >= 2001"));
+    assertTrue (accept ("srcPort == 1234 && dstPortInfo == 17"));
+    assertTrue (accept ("tc == 0x82"));
+    assertTrue (accept ("trafficClass == 130"));
+    assertTrue (accept ("units == 5"));
+  }
+
+  @Test
+  public void testMask ()
+  {
+    assertTrue (accept ("tc & 0x80 == 0x80"));
+    assertFalse (accept ("tc & 0x80 == 0"));
+    assertTrue (accept ("units & 0x04 != 0"));
+    assertTrue (accept ("units&0x02==0"));
+  }
+
+  @Test
+  public void testIn ()
+  {
+    assertTrue (accept ("dstPort in {2001, 2002}"));
+    assertTrue (accept ("dstPort in { 2004, 2003, 2001 }"));
+    assertFalse (accept ("dstPort in {2002}"));
+    assertTrue (accept ("tc & 0x0f in {1, 2}"));
+  }
+
+  @Test
+  public void testPrecedence ()
+  {
+    // '&&' binds stronger than '||'.
+    assertTrue (accept ("clientId == 1 && dstPort == 1 || dstPort == 2001"));
+    assertFalse (accept ("clientId == 1 && (dstPort == 1 || dstPort == 2001)"));
+    // '!' binds stronger than '&&'.
+    assertFalse (accept ("! clientId == 42 && dstPort == 2001"));
+    assertTrue (accept ("!(clientId == 1) && !!(dstPort == 2001)"));
+    assertTrue (accept ("dstPort in {2001, 2002} && tc & 0x80 == 0x80 && clientId != 5"));
+  }
+
+  @Test
+  public void testShortOrIllegalPdu ()
+  {
+    final byte[] pdu = pdu ();
+    final UdpTnoFilter filter = UdpTnoFilter.compile ("magic == 0x3d93");
+    assertTrue (filter.accept (pdu, 0, UdpTnoFilter.PREFIX_SIZE));
+    assertFalse (filter.accept (pdu, 0, UdpTnoFilter.PREFIX_SIZE - 1));
+    assertFalse (filter.accept ((byte[]) null, 0, pdu.length));
+    assertFalse (filter.accept (pdu, -1, pdu.length));
+    assertFalse (filter.accept (pdu, 1, Integer.MAX_VALUE));
+    assertFalse (filter.accept ((ByteBuffer) null, 0, pdu.length));
+  }
+
+  @Test
+  public void testExpression ()
+  {
+    final String expression = "dstPort == 2001";
+    assertEquals (expression, UdpTnoFilter.compile (expression).getExpression ());
+    assertEquals (expression, UdpTnoFilter.compile (expression).toString ());
+  }
+
+  @Test
+  public void testMalformed ()
+  {
+    for (final String expression : new String[]
+      { "", "dstPort", "dstPort ==", "foo == 1", "dstPort == 1 &&", "dstPort == 1 ||", "(dstPort == 1",
+        "dstPort == 1)", "dstPort in {}", "dstPort in {1,}", "dstPort in 1", "dstPort == 0x", "dstPort = 1",
+        "dstPort == 1 extra", "1 == dstPort", "dstPort == 12345678901234567890" })
+      try
+      {
+        UdpTnoFilter.compile (expression);
+        fail ("Compiled malformed expression: " + expression);
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testNull ()
+  {
+    UdpTnoFilter.compile (null);
+  }
+
+}
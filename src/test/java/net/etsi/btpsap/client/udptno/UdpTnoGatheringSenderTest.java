@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import net.etsi.btpsap.BtpSap_DataReqPrimitive;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoGatheringSender}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoGatheringSenderTest
+{
+
+  private static final int[] VERSIONS = { UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 };
+
+  private static BtpSap_DataReqContainer[] requests ()
+  {
+    return new BtpSap_DataReqContainer[]
+    {
+      UdpTnoDataReqTest.shbRequest (),
+      UdpTnoDataReqTest.ucRequest (),
+      UdpTnoDataReqTest.gbcRequest ()
+    };
+  }
+
+  /** Sends a request through the byte-array variant of the sender.
+   *
+   */
+  private static void send (final UdpTnoGatheringSender sender, final BtpSap_DataReqContainer request)
+    throws IOException
+  {
+    sender.btpSapRequest
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       (Integer) request.getMaxLifeTime_ms (),
+       request.getGnRepInterval_ms (),
+       request.getGnMaxRepTime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       request.getOffset (),
+       request.getLength (),
+       request.getData ());
+  }
+
+  /** Sends a request through the buffer variant of the sender.
+   *
+   */
+  private static void send (final UdpTnoGatheringSender sender, final BtpSap_DataReqContainer request, final ByteBuffer payload)
+    throws IOException
+  {
+    sender.btpSapRequest
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       (Integer) request.getMaxLifeTime_ms (),
+       request.getGnRepInterval_ms (),
+       request.getGnMaxRepTime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       payload);
+  }
+
+  /** Sends a request with primitive arguments through the buffer variant of the sender.
+   *
+   */
+  private static void sendPrimitive (final UdpTnoGatheringSender sender, final BtpSap_DataReqContainer request, final ByteBuffer payload)
+    throws IOException
+  {
+    sender.btpSapRequest
+      (request.getBtpType (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpSrcPort ()),
+       request.getBtpDestinationPort (),
+       BtpSap_DataReqPrimitive.unbox (request.getBtpDstPortInfo ()),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.getMaxLifeTime_ms (),
+       BtpSap_DataReqPrimitive.unbox (request.getGnRepInterval_ms ()),
+       BtpSap_DataReqPrimitive.unbox (request.getGnMaxRepTime_ms ()),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       payload);
+  }
+
+  /** Receives a single datagram.
+   *
+   */
+  private static byte[] receive (final DatagramChannel receiver) throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.MAX_PDU_SIZE);
+    assertNotNull (receiver.receive (buffer));
+    return Arrays.copyOf (buffer.array (), buffer.position ());
+  }
+
+  @Test
+  public void testLoopbackEqualsFormatRequest () throws IOException
+  {
+    try (final DatagramChannel receiver = DatagramChannel.open ();
+         final DatagramChannel channel = DatagramChannel.open ())
+    {
+      receiver.bind (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0));
+      channel.connect (receiver.getLocalAddress ());
+      for (final int version : VERSIONS)
+      {
+        final UdpTnoGatheringSender sender = new UdpTnoGatheringSender (42, 0x05, version, channel);
+        assertEquals (version, sender.getVersion ());
+        for (final BtpSap_DataReqContainer request : requests ())
+        {
+          final byte[] expected = UdpTnoDataReqTest.encode (request, version);
+          send (sender, request);
+          assertArrayEquals (expected, receive (receiver));
+          for (final ByteBuffer payload : new ByteBuffer[]
+            { ByteBuffer.allocate (request.getLength () + 2), ByteBuffer.allocateDirect (request.getLength () + 2) })
+          {
+            payload.position (1);
+            payload.put (request.getData (), request.getOffset (), request.getLength ());
+            payload.flip ().position (1);
+            send (sender, request, payload);
+            assertArrayEquals (expected, receive (receiver));
+            // The position and limit of the payload are not changed.
+            assertEquals (1, payload.position ());
+            assertEquals (request.getLength () + 1, payload.limit ());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLoopbackPrimitiveEqualsFormatRequest () throws IOException
+  {
+    try (final DatagramChannel receiver = DatagramChannel.open ();
+         final DatagramChannel channel = DatagramChannel.open ())
+    {
+      receiver.bind (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0));
+      channel.connect (receiver.getLocalAddress ());
+      for (final int version : VERSIONS)
+      {
+        final UdpTnoGatheringSender sender = new UdpTnoGatheringSender (42, 0x05, version, channel);
+        for (final BtpSap_DataReqContainer request : requests ())
+        {
+          final byte[] expected = UdpTnoDataReqTest.encode (request, version);
+          sender.btpSapRequest
+            (request.getBtpType (),
+             BtpSap_DataReqPrimitive.unbox (request.getBtpSrcPort ()),
+             request.getBtpDestinationPort (),
+             BtpSap_DataReqPrimitive.unbox (request.getBtpDstPortInfo ()),
+             request.getGnTransportType (),
+             request.getGnDestination (),
+             request.getCommunicationsProfile (),
+             request.getSecurityProfile (),
+             request.getMaxLifeTime_ms (),
+             BtpSap_DataReqPrimitive.unbox (request.getGnRepInterval_ms ()),
+             BtpSap_DataReqPrimitive.unbox (request.getGnMaxRepTime_ms ()),
+             request.getGnMaxHopLimit (),
+             request.getGnTrafficClass (),
+             request.getOffset (),
+             request.getLength (),
+             request.getData ());
+          assertArrayEquals (expected, receive (receiver));
+          final ByteBuffer payload = ByteBuffer.allocateDirect (request.getLength ());
+          payload.put (request.getData (), request.getOffset (), request.getLength ()).flip ();
+          sendPrimitive (sender, request, payload);
+          assertArrayEquals (expected, receive (receiver));
+          assertEquals (0, payload.position ());
+          assertEquals (request.getLength (), payload.limit ());
+        }
+        sendPrimitive (sender, UdpTnoDataReqTest.shbRequest (), null);
+        final byte[] pdu = receive (receiver);
+        assertEquals (0, UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null).getLength ());
+      }
+    }
+  }
+
+  @Test
+  public void testIllegalPrimitiveRequest () throws IOException
+  {
+    try (final DatagramChannel receiver = DatagramChannel.open ();
+         final DatagramChannel channel = DatagramChannel.open ())
+    {
+      receiver.bind (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0));
+      channel.connect (receiver.getLocalAddress ());
+      final UdpTnoGatheringSender sender = new UdpTnoGatheringSender (42, 0x05, channel);
+      final BtpSap_DataReqContainer request = UdpTnoDataReqTest.ucRequest ();
+      try
+      {
+        // Unicast without destination.
+        sender.btpSapRequest (BtpType.BTP_B, 1234, 2001, 17, GnTransportType.GN_UC, null,
+          GnCommunicationsProfile.GN_COMPROF_ITSG5, null, 3000, BtpSap_DataReqPrimitive.ABSENT, BtpSap_DataReqPrimitive.ABSENT,
+          3, request.getGnTrafficClass (), ByteBuffer.allocateDirect (4));
+        fail ();
+      }
+      catch (IllegalArgumentException iae)
+      {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void testStreamChannel () throws IOException
+  {
+    final Pipe pipe = Pipe.open ();
+    try (final Pipe.SinkChannel sink = pipe.sink (); final Pipe.SourceChannel source = pipe.source ())
+    {
+      final UdpTnoGatheringSender sender = new UdpTnoGatheringSender (42, 0x05, sink);
+      assertEquals (UdpTnoDataReq.VERSION_1, sender.getVersion ());
+      for (final BtpSap_DataReqContainer request : requests ())
+      {
+        final byte[] expected = UdpTnoDataReqTest.encode (request);
+        send (sender, request);
+        final ByteBuffer received = ByteBuffer.allocate (expected.length);
+        while (received.hasRemaining ())
+          source.read (received);
+        assertArrayEquals (expected, received.array ());
+      }
+    }
+  }
+
+  @Test
+  public void testIllegalConstruction () throws IOException
+  {
+    try (final DatagramChannel unconnected = DatagramChannel.open ())
+    {
+      new UdpTnoGatheringSender (42, 0x05, unconnected);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+    final Pipe pipe = Pipe.open ();
+    try (final Pipe.SinkChannel sink = pipe.sink (); final Pipe.SourceChannel source = pipe.source ())
+    {
+      for (final int[] args : new int[][]{ { -1, 1 }, { 128, 1 }, { 42, 0 }, { 42, 3 } })
+        try
+        {
+          new UdpTnoGatheringSender (args[0], 0x05, args[1], sink);
+          fail ();
+        }
+        catch (IllegalArgumentException iae)
+        {
+          // Expected.
+        }
+    }
+    try
+    {
+      new UdpTnoGatheringSender (42, 0x05, null);
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testNullBufferPayload () throws IOException
+  {
+    try (final DatagramChannel receiver = DatagramChannel.open ();
+         final DatagramChannel channel = DatagramChannel.open ())
+    {
+      receiver.bind (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0));
+      channel.connect (receiver.getLocalAddress ());
+      for (final int version : VERSIONS)
+      {
+        final UdpTnoGatheringSender sender = new UdpTnoGatheringSender (42, 0x05, version, channel);
+        send (sender, UdpTnoDataReqTest.shbRequest (), null);
+        final byte[] pdu = receive (receiver);
+        final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null);
+        assertNotNull (parsed);
+        assertEquals (0, parsed.getLength ());
+      }
+    }
+  }
+
+}
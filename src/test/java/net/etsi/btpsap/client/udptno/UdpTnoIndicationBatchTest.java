@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnPositionVector;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataIndPrimitive;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoIndicationBatch} and {@link UdpTnoDataInd#parseIndications}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoIndicationBatchTest
+{
+
+  /** An indication without source port, destination-port info, source position vector and remaining lifetime.
+   *
+   */
+  private static BtpSap_DataIndContainer sparseIndication ()
+  {
+    return new BtpSap_DataIndContainer
+      (null, 2002, null, null, null, null, null, null, new DefaultGnTrafficClass ((byte) 0x81), null, 3, 1, new byte[]{ 0, 1, 2, 3 });
+  }
+
+  /** Concatenates PDUs.
+   *
+   */
+  private static byte[] concat (final byte[]... pdus)
+  {
+    int length = 0;
+    for (final byte[] pdu : pdus)
+      length += pdu.length;
+    final byte[] src = new byte[length];
+    int o = 0;
+    for (final byte[] pdu : pdus)
+    {
+      System.arraycopy (pdu, 0, src, o, pdu.length);
+      o += pdu.length;
+    }
+    return src;
+  }
+
+  private static long securityFieldRejections ()
+  {
+    return BtpSapValidationError.UNSUPPORTED_SECURITY_FIELDS.getCount ();
+  }
+
+  /** Asserts that entry {@code i} of a batch holds {@link UdpTnoDataIndTest#indication}, its PDU starting at {@code pduOffset}.
+   *
+   */
+  private static void assertIndication (final UdpTnoIndicationBatch batch, final int i, final int pduOffset, final int headerSize)
+  {
+    assertEquals (1234, batch.getBtpSrcPorts ()[i]);
+    assertEquals (2001, batch.getBtpDstPorts ()[i]);
+    assertEquals (17, batch.getBtpDstPortInfos ()[i]);
+    assertEquals (0x02, batch.getTrafficClasses ()[i]);
+    assertEquals (52.1234567, batch.getSrcLatitudes ()[i], 1e-7);
+    assertEquals (4.7654321, batch.getSrcLongitudes ()[i], 1e-7);
+    assertEquals (pduOffset + headerSize, batch.getPayloadOffsets ()[i]);
+    assertEquals (5, batch.getPayloadLengths ()[i]);
+    assertEquals (9, batch.getSource ()[batch.getPayloadOffsets ()[i]]);
+  }
+
+  @Test
+  public void testParseIndications ()
+  {
+    final byte[] pdu = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication ());
+    final byte[] src = concat (new byte[3], pdu, pdu, pdu);
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+    assertEquals (8, batch.getCapacity ());
+    assertNull (batch.getSource ());
+    assertEquals (3 * pdu.length, UdpTnoDataInd.parseIndications (src, 3, src.length - 3, batch));
+    assertSame (src, batch.getSource ());
+    assertEquals (3, batch.size ());
+    assertFalse (batch.isFull ());
+    for (int i = 0; i < 3; i++)
+      assertIndication (batch, i, 3 + i * pdu.length, UdpTnoDataInd.HEADER_SIZE);
+    // Refilling empties the batch.
+    assertEquals (pdu.length, UdpTnoDataInd.parseIndications (pdu, 0, pdu.length, batch));
+    assertEquals (1, batch.size ());
+    assertSame (pdu, batch.getSource ());
+  }
+
+  @Test
+  public void testBatchFull ()
+  {
+    final byte[] pdu = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication ());
+    final byte[] src = concat (pdu, pdu, pdu);
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (2);
+    final int consumed = UdpTnoDataInd.parseIndications (src, 0, src.length, batch);
+    assertEquals (2 * pdu.length, consumed);
+    assertTrue (batch.isFull ());
+    // Resume.
+    assertEquals (pdu.length, UdpTnoDataInd.parseIndications (src, consumed, src.length - consumed, batch));
+    assertEquals (1, batch.size ());
+    assertIndication (batch, 0, 2 * pdu.length, UdpTnoDataInd.HEADER_SIZE);
+  }
+
+  @Test
+  public void testSkipSecurityFields ()
+  {
+    final byte[] pdu = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication ());
+    final byte[] secured = pdu.clone ();
+    secured[UdpTnoSchema.IND_SEC_REPORT_LENGTH.offset + UdpTnoSchema.IND_SEC_REPORT_LENGTH.size - 1] = 1;
+    final byte[] src = concat (pdu, secured, pdu);
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+    final long rejections = securityFieldRejections ();
+    // The secured PDU is consumed, but not added.
+    assertEquals (src.length, UdpTnoDataInd.parseIndications (src, 0, src.length, batch));
+    assertEquals (rejections + 1, securityFieldRejections ());
+    assertEquals (2, batch.size ());
+    assertIndication (batch, 0, 0, UdpTnoDataInd.HEADER_SIZE);
+    assertIndication (batch, 1, 2 * pdu.length, UdpTnoDataInd.HEADER_SIZE);
+  }
+
+  @Test
+  public void testStopOnLostFraming ()
+  {
+    final byte[] pdu = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication ());
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+    // Wrong magic.
+    final byte[] magic = pdu.clone ();
+    magic[UdpTnoSchema.IND_MAGIC.offset] ^= 0x01;
+    byte[] src = concat (pdu, magic, pdu);
+    assertEquals (pdu.length, UdpTnoDataInd.parseIndications (src, 0, src.length, batch));
+    assertEquals (1, batch.size ());
+    // PDU extending beyond the range.
+    src = concat (pdu, pdu);
+    assertEquals (pdu.length, UdpTnoDataInd.parseIndications (src, 0, src.length - 1, batch));
+    assertEquals (1, batch.size ());
+    // Less than a header remaining.
+    assertEquals (pdu.length, UdpTnoDataInd.parseIndications (src, 0, pdu.length + 10, batch));
+    assertEquals (1, batch.size ());
+  }
+
+  @Test
+  public void testIllegalArguments ()
+  {
+    final byte[] pdu = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication ());
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+    assertEquals (-1, UdpTnoDataInd.parseIndications (null, 0, 0, batch));
+    assertEquals (-1, UdpTnoDataInd.parseIndications (pdu, 0, pdu.length, null));
+    assertEquals (-1, UdpTnoDataInd.parseIndications (pdu, -1, pdu.length, batch));
+    assertEquals (-1, UdpTnoDataInd.parseIndications (pdu, 1, Integer.MAX_VALUE, batch));
+    assertEquals (0, UdpTnoDataInd.parseIndications (pdu, 0, 0, batch));
+    assertEquals (0, batch.size ());
+    try
+    {
+      batch.deliver (0, (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId, gnPermissions,
+        gnTrafficClass, gnRemLifetime_s, payloadOffset, payloadLength, data) -> fail ());
+      fail ();
+    }
+    catch (IllegalArgumentException iae)
+    {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testMixedVersions ()
+  {
+    final byte[] v1 = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication (), UdpTnoDataInd.VERSION_1);
+    final byte[] v2 = UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication (), UdpTnoDataInd.VERSION_2);
+    assertTrue (v2.length < v1.length);
+    final byte[] src = concat (v1, v2, v1, v2);
+    final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+    assertEquals (src.length, UdpTnoDataInd.parseIndications (src, 0, src.length, batch));
+    assertEquals (4, batch.size ());
+    for (int i = 0; i < 4; i++)
+    {
+      final int pduOffset = (i / 2) * (v1.length + v2.length) + (i % 2) * v1.length;
+      // Version-2 PDUs are not padded.
+      final int headerSize = i % 2 == 0 ? UdpTnoDataInd.HEADER_SIZE : v2.length - 5;
+      assertIndication (batch, i, pduOffset, headerSize);
+    }
+  }
+
+  @Test
+  public void testAbsentSourcePositionAndLifetime ()
+  {
+    for (final int version : new int[]{ UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 })
+    {
+      final byte[] src = concat
+        (UdpTnoDataIndTest.encode (UdpTnoDataIndTest.indication (), version),
+         UdpTnoDataIndTest.encode (sparseIndication (), version));
+      final UdpTnoIndicationBatch batch = new UdpTnoIndicationBatch (8);
+      assertEquals (src.length, UdpTnoDataInd.parseIndications (src, 0, src.length, batch));
+      assertEquals (2, batch.size ());
+      assertEquals (12, batch.getRemLifetimes_s ()[0]);
+      assertEquals (BtpSap_DataIndPrimitive.ABSENT, batch.getRemLifetimes_s ()[1]);
+      assertFalse (Double.isNaN (batch.getSrcLatitudes ()[0]));
+      assertTrue (Double.isNaN (batch.getSrcLatitudes ()[1]));
+      assertTrue (Double.isNaN (batch.getSrcLongitudes ()[1]));
+      final GnPositionVector[] srcPV = new GnPositionVector[2];
+      final int[] remLifetime_s = new int[2];
+      for (int i = 0; i < 2; i++)
+      {
+        final int index = i;
+        batch.deliver (i, (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId, gnPermissions,
+          gnTrafficClass, gnRemLifetime_s, payloadOffset, payloadLength, data) ->
+        {
+          srcPV[index] = gnSrcPV;
+          remLifetime_s[index] = gnRemLifetime_s;
+          assertSame (src, data);
+          assertEquals (batch.getPayloadOffsets ()[index], payloadOffset);
+        });
+      }
+      assertEquals (52.1234567, srcPV[0].getLatitude (), 1e-7);
+      assertEquals (4.7654321, srcPV[0].getLongitude (), 1e-7);
+      assertNull (srcPV[1]);
+      assertEquals (12, remLifetime_s[0]);
+      assertEquals (BtpSap_DataIndPrimitive.ABSENT, remLifetime_s[1]);
+    }
+  }
+
+}
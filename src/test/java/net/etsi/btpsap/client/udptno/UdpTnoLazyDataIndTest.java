@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.util.Arrays;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoLazyDataInd}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoLazyDataIndTest
+{
+
+  private static final int[] VERSIONS =
+    { UdpTnoDataInd.VERSION_1, UdpTnoDataInd.VERSION_2 };
+
+  private static byte[] encode (final BtpSap_DataIndContainer indication, final int version)
+  {
+    return UdpTnoDataIndTest.encode (indication, version);
+  }
+
+  private static BtpSap_DataIndContainer[] indications ()
+  {
+    return new BtpSap_DataIndContainer[]
+    {
+      UdpTnoDataIndTest.indication (),
+      // Without source port, destination-port info, source position vector and remaining lifetime.
+      new BtpSap_DataIndContainer
+        (null, 2002, null, null, null, null, null, null, new DefaultGnTrafficClass ((byte) 0x81), null, 3, 1, new byte[]{ 0, 1, 2, 3 })
+    };
+  }
+
+  /** Asserts that all fields of a lazy indication equal those of the eagerly parsed indication.
+   *
+   */
+  private static void assertEquivalent (final BtpSap_DataIndContainer expected, final UdpTnoLazyDataInd actual)
+  {
+    assertNotNull (actual);
+    assertEquals (expected.getBtpSrcPort (), actual.getBtpSrcPort ());
+    assertEquals (expected.getBtpDstPort (), actual.getBtpDstPort ());
+    assertEquals (expected.getBtpDstPortInfo (), actual.getBtpDstPortInfo ());
+    assertEquals (expected.getGnDstAddress (), actual.getGnDstAddress ());
+    assertEquals (expected.getGnSrcPV (), actual.getGnSrcPV ());
+    assertEquals (expected.getGnSecReport (), actual.getGnSecReport ());
+    assertEquals (expected.getGnCertId (), actual.getGnCertId ());
+    assertEquals (expected.getGnPermissions (), actual.getGnPermissions ());
+    assertEquals (expected.getGnTrafficClass (), actual.getGnTrafficClass ());
+    assertEquals (expected.getGnRemLifetime_s (), actual.getGnRemLifetime_s ());
+    assertEquals (expected.getLength (), actual.getLength ());
+    assertArrayEquals
+      (Arrays.copyOfRange (expected.getData (), expected.getOffset (), expected.getOffset () + expected.getLength ()),
+       Arrays.copyOfRange (actual.getData (), actual.getOffset (), actual.getOffset () + actual.getLength ()));
+  }
+
+  @Test
+  public void testEquivalentToParseIndication ()
+  {
+    for (final int version : VERSIONS)
+      for (final BtpSap_DataIndContainer indication : indications ())
+      {
+        final byte[] pdu = encode (indication, version);
+        final byte[] shifted = new byte[pdu.length + 8];
+        System.arraycopy (pdu, 0, shifted, 3, pdu.length);
+        final BtpSap_DataIndContainer parsed = UdpTnoDataInd.parseIndication (pdu, 0, pdu.length);
+        assertNotNull (parsed);
+        for (final boolean memoize : new boolean[]{ false, true })
+        {
+          final UdpTnoLazyDataInd lazy = UdpTnoDataInd.parseIndicationLazy (shifted, 3, pdu.length, memoize);
+          assertEquivalent (parsed, lazy);
+          assertEquals (memoize, lazy.isMemoize ());
+          assertEquals (42, lazy.getClientId ());
+          assertSame (shifted, lazy.getData ());
+          assertEquivalent (parsed, lazy);
+        }
+      }
+  }
+
+  @Test
+  public void testMemoize ()
+  {
+    for (final int version : VERSIONS)
+    {
+      final byte[] pdu = encode (UdpTnoDataIndTest.indication (), version);
+      final UdpTnoLazyDataInd memoizing = UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, true);
+      assertSame (memoizing.getBtpSrcPort (), memoizing.getBtpSrcPort ());
+      final UdpTnoLazyDataInd lazy = UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false);
+      assertNotSame (lazy.getBtpSrcPort (), lazy.getBtpSrcPort ());
+    }
+  }
+
+  @Test
+  public void testToContainer ()
+  {
+    for (final int version : VERSIONS)
+      for (final BtpSap_DataIndContainer indication : indications ())
+      {
+        final byte[] pdu = encode (indication, version);
+        final BtpSap_DataIndContainer parsed = UdpTnoDataInd.parseIndication (pdu, 0, pdu.length);
+        final BtpSap_DataIndContainer container = UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length, false).toContainer ();
+        assertSame (pdu, container.getData ());
+        assertArrayEquals (encode (parsed, version), encode (container, version));
+      }
+  }
+
+  @Test
+  public void testRejectMalformedFraming ()
+  {
+    for (final int version : VERSIONS)
+    {
+      final byte[] pdu = encode (UdpTnoDataIndTest.indication (), version);
+      assertNull (UdpTnoDataInd.parseIndicationLazy (null, 0, 0, false));
+      assertNull (UdpTnoDataInd.parseIndicationLazy (pdu, -1, pdu.length, false));
+      assertNull (UdpTnoDataInd.parseIndicationLazy (pdu, 0, 10, false));
+      assertNull (UdpTnoDataInd.parseIndicationLazy (pdu, 0, pdu.length - 1, false));
+      final byte[] magic = pdu.clone ();
+      magic[UdpTnoSchema.IND_MAGIC.offset] ^= 0x01;
+      assertNull (UdpTnoDataInd.parseIndicationLazy (magic, 0, magic.length, false));
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.util.Arrays;
+import net.etsi.btpsap.BtpSapValidationError;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoLazyDataReq}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoLazyDataReqTest
+{
+
+  private static final int[] VERSIONS =
+    { UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 };
+
+  private static byte[] encode (final BtpSap_DataReqContainer request, final int version)
+  {
+    return UdpTnoDataReqTest.encode (request, version);
+  }
+
+  private static BtpSap_DataReqContainer[] requests ()
+  {
+    return new BtpSap_DataReqContainer[]
+    {
+      UdpTnoDataReqTest.shbRequest (),
+      UdpTnoDataReqTest.ucRequest (),
+      UdpTnoDataReqTest.gbcRequest ()
+    };
+  }
+
+  /** Asserts that all fields of a lazy request equal those of the eagerly parsed request.
+   *
+   */
+  private static void assertEquivalent (final BtpSap_DataReqContainer expected, final UdpTnoLazyDataReq actual)
+  {
+    assertNotNull (actual);
+    assertEquals (expected.getBtpType (), actual.getBtpType ());
+    assertEquals (expected.getBtpSrcPort (), actual.getBtpSrcPort ());
+    assertEquals (expected.getBtpDestinationPort (), actual.getBtpDestinationPort ());
+    assertEquals (expected.getBtpDstPortInfo (), actual.getBtpDstPortInfo ());
+    assertEquals (expected.getGnTransportType (), actual.getGnTransportType ());
+    assertEquals (expected.getGnDestination (), actual.getGnDestination ());
+    assertEquals (expected.getCommunicationsProfile (), actual.getCommunicationsProfile ());
+    assertEquals (expected.getSecurityProfile (), actual.getSecurityProfile ());
+    assertEquals (expected.hasMaxLifetime (), actual.hasMaxLifetime ());
+    assertEquals (expected.getMaxLifeTime_ms (), actual.getMaxLifeTime_ms ());
+    assertEquals (expected.getGnRepInterval_ms (), actual.getGnRepInterval_ms ());
+    assertEquals (expected.getGnMaxRepTime_ms (), actual.getGnMaxRepTime_ms ());
+    assertEquals (expected.getGnMaxHopLimit (), actual.getGnMaxHopLimit ());
+    assertEquals (expected.getGnTrafficClass (), actual.getGnTrafficClass ());
+    assertEquals (expected.getLength (), actual.getLength ());
+    assertArrayEquals
+      (Arrays.copyOfRange (expected.getData (), expected.getOffset (), expected.getOffset () + expected.getLength ()),
+       Arrays.copyOfRange (actual.getData (), actual.getOffset (), actual.getOffset () + actual.getLength ()));
+  }
+
+  @Test
+  public void testEquivalentToParseRequest ()
+  {
+    for (final int version : VERSIONS)
+      for (final BtpSap_DataReqContainer request : requests ())
+      {
+        final byte[] pdu = encode (request, version);
+        // At an offset, to check that the lazy getters honor it.
+        final byte[] shifted = new byte[pdu.length + 8];
+        System.arraycopy (pdu, 0, shifted, 5, pdu.length);
+        final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null);
+        assertNotNull (parsed);
+        for (final boolean memoize : new boolean[]{ false, true })
+        {
+          final UdpTnoLazyDataReq lazy = UdpTnoDataReq.parseRequestLazy (shifted, 5, pdu.length, memoize);
+          assertEquivalent (parsed, lazy);
+          assertEquals (memoize, lazy.isMemoize ());
+          assertEquals (42, lazy.getClientId ());
+          assertEquals (0x05, lazy.getUnitMask ());
+          assertSame (shifted, lazy.getData ());
+          // Again, now from memoized fields (if so configured).
+          assertEquivalent (parsed, lazy);
+        }
+      }
+  }
+
+  @Test
+  public void testMemoize ()
+  {
+    for (final int version : VERSIONS)
+    {
+      final byte[] pdu = encode (UdpTnoDataReqTest.gbcRequest (), version);
+      final UdpTnoLazyDataReq memoizing = UdpTnoDataReq.parseRequestLazy (pdu, 0, pdu.length, true);
+      assertSame (memoizing.getGnDestination (), memoizing.getGnDestination ());
+      assertSame (memoizing.getSecurityProfile (), memoizing.getSecurityProfile ());
+    }
+  }
+
+  @Test
+  public void testToContainer ()
+  {
+    for (final int version : VERSIONS)
+      for (final BtpSap_DataReqContainer request : requests ())
+      {
+        final byte[] pdu = encode (request, version);
+        final BtpSap_DataReqContainer parsed = UdpTnoDataReq.parseRequest (pdu, 0, pdu.length, null, null);
+        final BtpSap_DataReqContainer container = UdpTnoDataReq.parseRequestLazy (pdu, 0, pdu.length, false).toContainer ();
+        assertNotNull (container);
+        assertSame (pdu, container.getData ());
+        assertArrayEquals (encode (parsed, version), encode (container, version));
+      }
+  }
+
+  @Test
+  public void testToContainerInvalid ()
+  {
+    // The lazy request only checks the framing; the conversion validates all fields.
+    final byte[] pdu = encode (UdpTnoDataReqTest.shbRequest (), UdpTnoDataReq.VERSION_1);
+    pdu[UdpTnoSchema.REQ_BTP_FLAGS.offset] |= 0x0f;
+    final UdpTnoLazyDataReq lazy = UdpTnoDataReq.parseRequestLazy (pdu, 0, pdu.length, false);
+    assertNotNull (lazy);
+    assertNull (lazy.getBtpType ());
+    final long count = BtpSapValidationError.NULL_BTP_TYPE.getCount ();
+    assertNull (lazy.toContainer ());
+    assertEquals (count + 1, BtpSapValidationError.NULL_BTP_TYPE.getCount ());
+  }
+
+  @Test
+  public void testRejectMalformedFraming ()
+  {
+    for (final int version : VERSIONS)
+    {
+      final byte[] pdu = encode (UdpTnoDataReqTest.ucRequest (), version);
+      assertNull (UdpTnoDataReq.parseRequestLazy (null, 0, 0, false));
+      assertNull (UdpTnoDataReq.parseRequestLazy (pdu, -1, pdu.length, false));
+      assertNull (UdpTnoDataReq.parseRequestLazy (pdu, 0, 10, false));
+      assertNull (UdpTnoDataReq.parseRequestLazy (pdu, 0, pdu.length - 1, false));
+      final byte[] magic = pdu.clone ();
+      magic[UdpTnoSchema.REQ_MAGIC.offset] ^= 0x01;
+      assertNull (UdpTnoDataReq.parseRequestLazy (magic, 0, magic.length, false));
+    }
+  }
+
+}
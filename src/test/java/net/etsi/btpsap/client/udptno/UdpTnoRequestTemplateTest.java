@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoRequestTemplate}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoRequestTemplateTest
+{
+
+  /** Returns a copy of a request with given payload.
+   * 
+   */
+  private static BtpSap_DataReqContainer withPayload (final BtpSap_DataReqContainer request, final byte[] data, final int offset, final int length)
+  {
+    return new BtpSap_DataReqContainer
+      (request.getBtpType (),
+       request.getBtpSrcPort (),
+       request.getBtpDestinationPort (),
+       request.getBtpDstPortInfo (),
+       request.getGnTransportType (),
+       request.getGnDestination (),
+       request.getCommunicationsProfile (),
+       request.getSecurityProfile (),
+       request.getMaxLifeTime_ms (),
+       request.getGnRepInterval_ms (),
+       request.getGnMaxRepTime_ms (),
+       request.getGnMaxHopLimit (),
+       request.getGnTrafficClass (),
+       length,
+       offset,
+       data);
+  }
+
+  @Test
+  public void testEqualsFormatRequest ()
+  {
+    final byte[] data = new byte[32];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i + 1);
+    for (final BtpSap_DataReqContainer prototype :
+      new BtpSap_DataReqContainer[]{ UdpTnoDataReqTest.shbRequest (), UdpTnoDataReqTest.ucRequest (), UdpTnoDataReqTest.gbcRequest () })
+    {
+      final UdpTnoRequestTemplate template = new UdpTnoRequestTemplate (prototype, 42, 0x05);
+      // Payload lengths covering all four padding sizes (0-3), and the empty payload.
+      for (int length = 0; length <= 9; length++)
+      {
+        final BtpSap_DataReqContainer request = withPayload (prototype, data, 3, length);
+        final ByteBuffer expected = ByteBuffer.allocate (UdpTnoDataReq.encodedSize (request));
+        assertEquals (expected.capacity (), UdpTnoDataReq.formatRequest (request, 42, 0x05, expected));
+        assertEquals (expected.capacity (), template.encodedSize (length));
+        // Into a dirty buffer, at an offset: the padding must be cleared.
+        final ByteBuffer actual = ByteBuffer.allocate (expected.capacity () + 8);
+        Arrays.fill (actual.array (), (byte) 0x5a);
+        actual.position (5);
+        assertEquals (expected.capacity (), template.encode (data, 3, length, actual));
+        assertEquals (5 + expected.capacity (), actual.position ());
+        assertArrayEquals (expected.array (), Arrays.copyOfRange (actual.array (), 5, 5 + expected.capacity ()));
+        assertArrayEquals (expected.array (), template.encode (data, 3, length));
+      }
+    }
+  }
+
+  @Test
+  public void testUnitSet ()
+  {
+    final UdpTnoRequestTemplate template = new UdpTnoRequestTemplate (UdpTnoDataReqTest.ucRequest (), 42, new HashSet<> (Arrays.asList (1, 3)));
+    assertEquals (0x05, template.getUnitMask ());
+    assertEquals (42, template.getClientID ());
+    assertArrayEquals (UdpTnoDataReqTest.encode (UdpTnoDataReqTest.ucRequest ()), template.encode (new byte[]{ 0, 0, 2, 3, 4, 5, 6, 7 }, 2, 5));
+  }
+
+  @Test
+  public void testVersion1Only ()
+  {
+    final UdpTnoRequestTemplate template = new UdpTnoRequestTemplate (UdpTnoDataReqTest.gbcRequest (), 42, 0x05);
+    assertEquals (UdpTnoDataReq.VERSION_1, template.getVersion ());
+    for (final int length : new int[]{ 0, 1, 127, 128, 1000 })
+    {
+      final byte[] pdu = template.encode (new byte[length], 0, length);
+      assertEquals (UdpTnoDataReq.VERSION_1, UdpTnoDataReq.versionOf (pdu, 0, pdu.length));
+      assertEquals (UdpTnoSchema.REQ_HEADER_SIZE + ((length + 3) & ~3), pdu.length);
+    }
+  }
+
+  @Test
+  public void testEncodeFailure ()
+  {
+    final UdpTnoRequestTemplate template = new UdpTnoRequestTemplate (UdpTnoDataReqTest.shbRequest (), 42, 0x05);
+    final ByteBuffer small = ByteBuffer.allocate (template.encodedSize (4) - 1);
+    assertEquals (-1, template.encode (new byte[4], 0, 4, small));
+    assertEquals (0, small.position ());
+    assertEquals (-1, template.encode (new byte[4], 1, 4, ByteBuffer.allocate (256)));
+    assertEquals (-1, template.encode (null, 0, 1, ByteBuffer.allocate (256)));
+    assertNull (template.encode (new byte[UdpTnoDataReq.MAX_PDU_SIZE], 0, UdpTnoDataReq.MAX_PDU_SIZE));
+    assertNotNull (template.encode (null, 0, 0));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testIllegalClientId ()
+  {
+    new UdpTnoRequestTemplate (UdpTnoDataReqTest.shbRequest (), 128, 0x05);
+  }
+
+  @Test
+  public void testPrototypePayloadIgnored ()
+  {
+    // A prototype payload that would not fit into a PDU does not prevent creating a template.
+    final BtpSap_DataReqContainer prototype =
+      withPayload (UdpTnoDataReqTest.gbcRequest (), new byte[UdpTnoDataReq.MAX_PDU_SIZE], 0, UdpTnoDataReq.MAX_PDU_SIZE);
+    final UdpTnoRequestTemplate template = new UdpTnoRequestTemplate (prototype, 42, 0x05);
+    final byte[] data = { 1, 2, 3 };
+    assertArrayEquals (UdpTnoDataReqTest.encode (withPayload (prototype, data, 0, data.length)), template.encode (data, 0, data.length));
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+
+/** A (wall-clock) throughput benchmark of {@link UdpTnoRouterEmulator} over loopback.
+ *
+ * <p>
+ * A number of sender threads send (pre-encoded, single-hop broadcast) requests to the emulator as fast as they can,
+ * from a single socket; the emulator loops each request back, as an indication, to a single receiving socket.
+ * The benchmark reports the requests received, and the indications sent by the emulator and received, per second.
+ * Datagrams dropped by the (loopback) sockets are not retransmitted; the received rates are the ones that count.
+ *
+ * <p>
+ * It is not a unit test (and is not run by the build); run it from the test classpath, e.g.,
+ * {@code java -cp target/classes:target/test-classes net.etsi.btpsap.client.udptno.UdpTnoRouterEmulatorBenchmark}.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public final class UdpTnoRouterEmulatorBenchmark
+{
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // CONSTRUCTORS / FACTORIES / CLONING
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /** Prevents instantiation.
+   *
+   */
+  private UdpTnoRouterEmulatorBenchmark ()
+  {
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  //
+  // MAIN
+  //
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  private final static int SOCKET_BUFFER_SIZE = 4194304;
+
+  private static DatagramChannel open () throws IOException
+  {
+    final DatagramChannel channel = DatagramChannel.open ();
+    channel.setOption (StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+    channel.setOption (StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+    channel.bind (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0));
+    return channel;
+  }
+
+  /** Encodes a request into an array of exactly the encoded size.
+   *
+   */
+  private static byte[] encode (final BtpSap_DataReqContainer request, final int clientID, final int version)
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoDataReq.encodedSize (request, version));
+    if (UdpTnoDataReq.formatRequest (request, clientID, 0x01, buffer, version) < 0)
+      throw new IllegalArgumentException ();
+    return buffer.array ();
+  }
+
+  /** Runs the benchmark, and prints the results on standard output.
+   *
+   * <p>
+   * Arguments (all optional): number of sender threads (default 1), duration in seconds (default 10)
+   * and PDU version (default 1).
+   *
+   * @param args The arguments.
+   *
+   * @throws IOException          If the sockets could not be set up.
+   * @throws InterruptedException If interrupted while waiting.
+   *
+   */
+  public static void main (final String[] args) throws IOException, InterruptedException
+  {
+    final int threads = args.length > 0 ? Integer.parseInt (args[0]) : 1;
+    final int seconds = args.length > 1 ? Integer.parseInt (args[1]) : 10;
+    final int version = args.length > 2 ? Integer.parseInt (args[2]) : UdpTnoDataReq.VERSION_1;
+    final BtpSap_DataReqContainer request = new BtpSap_DataReqContainer
+      (BtpType.BTP_B,
+       1234,
+       2001,
+       null,
+       GnTransportType.GN_SHB,
+       null,
+       GnCommunicationsProfile.GN_COMPROF_ITSG5,
+       null,
+       1000,
+       null,
+       null,
+       1,
+       DefaultGnTrafficClass.valueOf ((byte) 0x02),
+       0,
+       40,
+       new byte[40]);
+    final byte[] pdu = encode (request, 1, version);
+    try (final UdpTnoRouterEmulator emulator = new UdpTnoRouterEmulator
+           (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0), false, SOCKET_BUFFER_SIZE);
+         final DatagramChannel sender = open ();
+         final DatagramChannel receiver = open ())
+    {
+      final Thread emulatorThread = new Thread (emulator, "UdpTnoRouterEmulator");
+      emulatorThread.setDaemon (true);
+      emulatorThread.start ();
+      sender.connect (emulator.getLocalAddress ());
+      receiver.connect (emulator.getLocalAddress ());
+      // Register the receiver (its request is not looped back to itself).
+      receiver.write (ByteBuffer.wrap (encode (request, 2, version)));
+      final LongAdder received = new LongAdder ();
+      final Thread receiverThread = new Thread (() ->
+      {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect (UdpTnoDataInd.HEADER_SIZE + UdpTnoDataReq.MAX_PDU_SIZE);
+        try
+        {
+          while (true)
+          {
+            buffer.clear ();
+            receiver.read (buffer);
+            received.increment ();
+          }
+        }
+        catch (AsynchronousCloseException ace)
+        {
+          // Done.
+        }
+        catch (IOException ioe)
+        {
+          throw new RuntimeException (ioe);
+        }
+      }, "Receiver");
+      receiverThread.setDaemon (true);
+      receiverThread.start ();
+      while (emulator.getClientCount () < 1)
+        Thread.sleep (1L);
+      final long deadline = System.nanoTime () + seconds * 1000000000L;
+      final Thread[] senders = new Thread[threads];
+      for (int t = 0; t < threads; t++)
+      {
+        senders[t] = new Thread (() ->
+        {
+          final ByteBuffer buffer = ByteBuffer.allocateDirect (pdu.length);
+          buffer.put (pdu).flip ();
+          try
+          {
+            while (System.nanoTime () - deadline < 0)
+            {
+              buffer.rewind ();
+              sender.write (buffer);
+            }
+          }
+          catch (IOException ioe)
+          {
+            // Loopback sends may fail transiently (e.g., ECONNREFUSED); stop this sender.
+          }
+        }, "Sender-" + t);
+        senders[t].start ();
+      }
+      final long start = System.nanoTime ();
+      final long startReceived = emulator.getReceivedCount ();
+      final long startSent = emulator.getSentCount ();
+      final long startIndications = received.sum ();
+      for (final Thread s : senders)
+        s.join ();
+      final double elapsed = (System.nanoTime () - start) / 1e9;
+      // Allow the emulator and receiver to drain the socket buffers.
+      Thread.sleep (200L);
+      System.out.println (String.format (Locale.ROOT, "Version %d, %d sender thread(s), %.1f s:", version, threads, elapsed));
+      System.out.println (String.format (Locale.ROOT, "  requests received by emulator  %10.0f /s",
+        (emulator.getReceivedCount () - startReceived) / elapsed));
+      System.out.println (String.format (Locale.ROOT, "  indications sent by emulator   %10.0f /s",
+        (emulator.getSentCount () - startSent) / elapsed));
+      System.out.println (String.format (Locale.ROOT, "  indications received           %10.0f /s",
+        (received.sum () - startIndications) / elapsed));
+    }
+  }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.DefaultGnTrafficClass;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import net.etsi.btpsap.BtpSap_DataIndContainer;
+import net.etsi.btpsap.BtpSap_DataReqContainer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static net.etsi.btpsap.client.udptno.UdpTnoBtpSapClientTest.await;
+import static net.etsi.btpsap.client.udptno.UdpTnoBtpSapClientTest.loopback;
+import static net.etsi.btpsap.client.udptno.UdpTnoBtpSapClientTest.send;
+
+/** End-to-end tests of {@link UdpTnoRouterEmulator} and {@link UdpTnoBtpSapClient} over loopback.
+ *
+ * @author Jan de Jongh, TNO.
+ *
+ */
+public class UdpTnoRouterEmulatorTest
+{
+
+  private static final byte[] PAYLOAD = { 1, 2, 3, 4, 5, 6, 7 };
+
+  /** Creates an emulator on the loopback interface, and runs it on a daemon thread.
+   *
+   */
+  private static UdpTnoRouterEmulator emulator (final boolean loopback) throws IOException
+  {
+    final UdpTnoRouterEmulator emulator = new UdpTnoRouterEmulator (loopback (), loopback, 1048576);
+    final Thread thread = new Thread (emulator, "UdpTnoRouterEmulatorTest");
+    thread.setDaemon (true);
+    thread.start ();
+    return emulator;
+  }
+
+  private static UdpTnoBtpSapClient client
+  (final UdpTnoRouterEmulator emulator, final int clientID, final int unitMask, final int version, final String... properties)
+    throws IOException
+  {
+    final Properties p = new Properties ();
+    p.setProperty (UdpTnoBtpSapClient.PROPERTY_PREFIX + "version", Integer.toString (version));
+    p.setProperty (UdpTnoBtpSapClient.PROPERTY_PREFIX + "receiveBufferSize", "1048576");
+    for (int i = 0; i < properties.length; i += 2)
+      p.setProperty (UdpTnoBtpSapClient.PROPERTY_PREFIX + properties[i], properties[i + 1]);
+    return new UdpTnoBtpSapClient (emulator.getLocalAddress (), loopback (), clientID, unitMask, p);
+  }
+
+  private static BtpSap_DataReqContainer request (final GnTransportType gnTransportType, final int btpDstPort)
+  {
+    return new BtpSap_DataReqContainer
+      (BtpType.BTP_B,
+       1234,
+       btpDstPort,
+       17,
+       gnTransportType,
+       null,
+       GnCommunicationsProfile.GN_COMPROF_ITSG5,
+       null,
+       3000,
+       null,
+       null,
+       3,
+       DefaultGnTrafficClass.valueOf ((byte) 0x02),
+       PAYLOAD.length - 2,
+       1,
+       PAYLOAD);
+  }
+
+  /** Sets a handler on a client that collects (copies of) the indications it receives, and starts the client.
+   *
+   */
+  private static List<BtpSap_DataIndContainer> collect (final UdpTnoBtpSapClient client)
+  {
+    final List<BtpSap_DataIndContainer> indications = new CopyOnWriteArrayList<> ();
+    client.setIndicationHandler ((btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport, gnCertId,
+      gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+        indications.add (new BtpSap_DataIndContainer (btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV,
+          gnSecReport, gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, 0, Arrays.copyOf (data, length))));
+    client.start ();
+    return indications;
+  }
+
+  /** Registers clients at an emulator by sending a (dropped) unicast request from each of them.
+   *
+   */
+  private static void register (final UdpTnoRouterEmulator emulator, final UdpTnoBtpSapClient... clients)
+    throws IOException, InterruptedException
+  {
+    final long dropped = emulator.getDroppedCount ();
+    for (final UdpTnoBtpSapClient client : clients)
+      send (client, UdpTnoDataReqTest.ucRequest ());
+    await (() -> emulator.getDroppedCount () == dropped + clients.length);
+    assertEquals (clients.length, emulator.getClientCount ());
+  }
+
+  /** Asserts that an indication carries the fields of a request created with {@link #request}.
+   *
+   */
+  private static void assertLoopedBack (final int btpDstPort, final BtpSap_DataIndContainer indication)
+  {
+    assertEquals (Integer.valueOf (1234), indication.getBtpSrcPort ());
+    assertEquals (btpDstPort, indication.getBtpDstPort ());
+    assertEquals (Integer.valueOf (17), indication.getBtpDstPortInfo ());
+    assertEquals (DefaultGnTrafficClass.valueOf ((byte) 0x02), indication.getGnTrafficClass ());
+    assertEquals (Integer.valueOf (3), indication.getGnRemLifetime_s ());
+    assertArrayEquals (Arrays.copyOfRange (PAYLOAD, 1, PAYLOAD.length - 1),
+      Arrays.copyOfRange (indication.getData (), indication.getOffset (), indication.getOffset () + indication.getLength ()));
+  }
+
+  @Test
+  public void testFanOutByUnitMask () throws IOException, InterruptedException
+  {
+    try (final UdpTnoRouterEmulator emulator = emulator (false);
+         final UdpTnoBtpSapClient a = client (emulator, 1, 0x01, UdpTnoDataReq.VERSION_1);
+         final UdpTnoBtpSapClient b = client (emulator, 2, 0x03, UdpTnoDataReq.VERSION_2);
+         final UdpTnoBtpSapClient c = client (emulator, 3, 0x04, UdpTnoDataReq.VERSION_1))
+    {
+      assertFalse (emulator.isLoopback ());
+      final List<BtpSap_DataIndContainer> atA = collect (a);
+      final List<BtpSap_DataIndContainer> atB = collect (b);
+      final List<BtpSap_DataIndContainer> atC = collect (c);
+      register (emulator, a, b, c);
+      // Only b shares a unit with a; a does not receive its own request.
+      send (a, request (GnTransportType.GN_SHB, 2001));
+      await (() -> atB.size () == 1);
+      assertLoopedBack (2001, atB.get (0));
+      // No other client shares a unit with c.
+      send (c, request (GnTransportType.GN_SHB, 2002));
+      // Only a shares a unit with b; in version 1.
+      send (b, request (GnTransportType.GN_TSB, 2003));
+      await (() -> atA.size () == 1);
+      assertLoopedBack (2003, atA.get (0));
+      assertEquals (6, emulator.getReceivedCount ());
+      assertEquals (3, emulator.getDroppedCount ());
+      assertEquals (0, emulator.getInvalidCount ());
+      // The emulator counts an indication after sending it.
+      await (() -> emulator.getSentCount () == 2);
+      assertEquals (1, atB.size ());
+      assertTrue (atC.isEmpty ());
+      for (final UdpTnoBtpSapClient client : new UdpTnoBtpSapClient[]{ a, b, c })
+        assertEquals (0, client.getInvalidCount ());
+    }
+  }
+
+  @Test
+  public void testLoopback () throws IOException, InterruptedException
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+      try (final UdpTnoRouterEmulator emulator = emulator (true);
+           final UdpTnoBtpSapClient client = client (emulator, 1, 0x01, version))
+      {
+        assertTrue (emulator.isLoopback ());
+        final List<BtpSap_DataIndContainer> indications = collect (client);
+        // Unicast is dropped, even with loopback.
+        register (emulator, client);
+        send (client, request (GnTransportType.GN_SHB, 2001));
+        send (client, UdpTnoDataReqTest.gbcRequest ());
+        await (() -> indications.size () == 2);
+        assertLoopedBack (2001, indications.get (0));
+        assertEquals (2001, indications.get (1).getBtpDstPort ());
+        await (() -> emulator.getSentCount () == 2);
+        assertEquals (0, client.getInvalidCount ());
+      }
+  }
+
+  @Test
+  public void testInvalidDatagrams () throws IOException, InterruptedException
+  {
+    try (final UdpTnoRouterEmulator emulator = emulator (true);
+         final DatagramChannel channel = DatagramChannel.open ())
+    {
+      channel.bind (loopback ());
+      channel.send (ByteBuffer.wrap (new byte[]{ 1, 2, 3, 4 }), emulator.getLocalAddress ());
+      final byte[] pdu = UdpTnoDataReqTest.encode (UdpTnoDataReqTest.shbRequest (), UdpTnoDataReq.VERSION_1);
+      pdu[0] ^= 0x01;
+      channel.send (ByteBuffer.wrap (pdu), emulator.getLocalAddress ());
+      await (() -> emulator.getInvalidCount () == 2);
+      assertEquals (2, emulator.getReceivedCount ());
+      assertEquals (0, emulator.getClientCount ());
+      assertEquals (0, emulator.getSentCount ());
+    }
+  }
+
+  @Test
+  public void testAbsentPortsEqualFormatIndication () throws IOException, InterruptedException
+  {
+    for (final int version : new int[]{ UdpTnoDataReq.VERSION_1, UdpTnoDataReq.VERSION_2 })
+      try (final UdpTnoRouterEmulator emulator = emulator (true);
+           final DatagramChannel channel = DatagramChannel.open ())
+      {
+        channel.bind (loopback ());
+        channel.connect (emulator.getLocalAddress ());
+        final BtpSap_DataReqContainer request = new BtpSap_DataReqContainer
+          (BtpType.BTP_B, null, 2001, null, GnTransportType.GN_SHB, null, GnCommunicationsProfile.GN_COMPROF_ITSG5, null,
+           500, null, null, 3, DefaultGnTrafficClass.valueOf ((byte) 0x02), PAYLOAD.length - 2, 1, PAYLOAD);
+        channel.write (ByteBuffer.wrap (UdpTnoDataReqTest.encode (request, version)));
+        final ByteBuffer received = ByteBuffer.allocate (UdpTnoDataInd.HEADER_SIZE + UdpTnoDataReq.MAX_PDU_SIZE);
+        channel.read (received);
+        received.flip ();
+        // Ports stay absent (in the indication's encoding), and the sub-second lifetime is rounded up to one second.
+        final BtpSap_DataIndContainer indication = new BtpSap_DataIndContainer (null, 2001, null, null, null, null, null,
+          null, DefaultGnTrafficClass.valueOf ((byte) 0x02), 1, PAYLOAD.length - 2, 1, PAYLOAD);
+        final ByteBuffer expected = ByteBuffer.allocate (UdpTnoDataInd.encodedSize (indication, version));
+        assertEquals (expected.capacity (), UdpTnoDataInd.formatIndication (indication, 42, expected, version));
+        UdpTnoSchema.IND_UNITS.put (expected, 0, 0x05);
+        expected.flip ();
+        assertEquals (expected, received);
+        await (() -> emulator.getSentCount () == 1);
+      }
+  }
+
+  @Test
+  public void testConcurrentRequests () throws IOException, InterruptedException
+  {
+    final int threads = 4;
+    final int requestsPerThread = 100;
+    try (final UdpTnoRouterEmulator emulator = emulator (false);
+         final UdpTnoBtpSapClient sender = client (emulator, 1, 0x01, UdpTnoDataReq.VERSION_1, "sendBufferSize", "1048576");
+         final UdpTnoBtpSapClient receiver = client (emulator, 2, 0x01, UdpTnoDataReq.VERSION_2))
+    {
+      final List<BtpSap_DataIndContainer> indications = collect (receiver);
+      register (emulator, sender, receiver);
+      final Thread[] senders = new Thread[threads];
+      for (int t = 0; t < threads; t++)
+      {
+        final int btpDstPort = 3000 + t;
+        senders[t] = new Thread (() ->
+        {
+          for (int i = 0; i < requestsPerThread; i++)
+            try
+            {
+              send (sender, request (GnTransportType.GN_SHB, btpDstPort));
+            }
+            catch (IOException ioe)
+            {
+              // Counted as send failure.
+            }
+        });
+        senders[t].start ();
+      }
+      for (final Thread thread : senders)
+        thread.join ();
+      // Including the registration request.
+      assertEquals (threads * requestsPerThread + 1, sender.getSentCount () + sender.getSendFailureCount ());
+      // Wait until the receiver is idle; sockets may drop datagrams under load.
+      int received;
+      do
+      {
+        received = indications.size ();
+        Thread.sleep (200L);
+      }
+      while (indications.size () != received);
+      assertTrue (received > 0);
+      // Serialized sends never interleave header and payload of distinct requests.
+      assertEquals (0, emulator.getInvalidCount ());
+      assertEquals (0, receiver.getInvalidCount ());
+      for (final BtpSap_DataIndContainer indication : indications)
+      {
+        assertTrue (indication.getBtpDstPort () >= 3000 && indication.getBtpDstPort () < 3000 + threads);
+        assertLoopedBack (indication.getBtpDstPort (), indication);
+      }
+    }
+  }
+
+  @Test
+  public void testDrainLimitAndHandlerFailure () throws IOException, InterruptedException
+  {
+    for (final int maxDatagramsPerWakeup : new int[]{ 1, 64 })
+      try (final UdpTnoRouterEmulator emulator = emulator (false);
+           final UdpTnoBtpSapClient sender = client (emulator, 1, 0x01, UdpTnoDataReq.VERSION_2);
+           final UdpTnoBtpSapClient receiver = client (emulator, 2, 0x01, UdpTnoDataReq.VERSION_1,
+             "maxDatagramsPerWakeup", Integer.toString (maxDatagramsPerWakeup)))
+      {
+        final List<Integer> dstPorts = new CopyOnWriteArrayList<> ();
+        final AtomicInteger invoked = new AtomicInteger ();
+        receiver.setIndicationHandler ((btpSrcPort, btpDstPort, btpDstPortInfo, gnDstAddress, gnSrcPV, gnSecReport,
+          gnCertId, gnPermissions, gnTrafficClass, gnRemLifetime_s, length, data) ->
+        {
+          invoked.incrementAndGet ();
+          if (btpDstPort == 2)
+            throw new IllegalStateException ("Test failure; please ignore.");
+          dstPorts.add (btpDstPort);
+        });
+        register (emulator, sender, receiver);
+        final long sent = emulator.getSentCount ();
+        // All indications are pending before the receiver thread starts.
+        for (int port = 1; port <= 20; port++)
+          send (sender, request (GnTransportType.GN_SHB, port));
+        await (() -> emulator.getSentCount () == sent + 20);
+        receiver.start ();
+        await (() -> invoked.get () == 20);
+        assertEquals (20, receiver.getReceivedCount ());
+        assertEquals (19, dstPorts.size ());
+        assertFalse (dstPorts.contains (2));
+        assertEquals (1, receiver.getHandlerFailureCount ());
+        assertEquals (0, receiver.getInvalidCount ());
+        if (maxDatagramsPerWakeup == 1)
+          assertTrue (receiver.getWakeupCount () >= 20);
+        else
+          assertTrue (receiver.getWakeupCount () < 20);
+      }
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016-2018 Jan de Jongh, TNO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.etsi.btpsap.client.udptno;
+
+import java.nio.ByteBuffer;
+import net.etsi.btpsap.BtpSapTypes.BtpType;
+import net.etsi.btpsap.BtpSapTypes.GnAreaShape;
+import net.etsi.btpsap.BtpSapTypes.GnCommunicationsProfile;
+import net.etsi.btpsap.BtpSapTypes.GnTransportType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of {@link UdpTnoSchema}.
+ * 
+ * @author Jan de Jongh, TNO.
+ * 
+ */
+public class UdpTnoSchemaTest
+{
+
+  private static final long[] VARINTS = { 0L, 1L, 127L, 128L, 300L, 16383L, 16384L, 0x7fffffffL, 0xffffffffL };
+
+  @Test
+  public void testLayout ()
+  {
+    assertEquals (60, UdpTnoSchema.REQ_HEADER_SIZE);
+    assertEquals (80, UdpTnoSchema.IND_HEADER_SIZE);
+    assertEquals (UdpTnoSchema.REQ_HEADER_SIZE, UdpTnoSchema.REQUEST[UdpTnoSchema.REQUEST.length - 1].end ());
+    assertEquals (UdpTnoSchema.IND_HEADER_SIZE, UdpTnoSchema.INDICATION[UdpTnoSchema.INDICATION.length - 1].end ());
+    assertEquals (56, UdpTnoSchema.REQ_PAYLOAD_LENGTH.offset);
+    assertEquals (76, UdpTnoSchema.IND_PAYLOAD_LENGTH.offset);
+  }
+
+  @Test
+  public void testFieldAccess ()
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (UdpTnoSchema.REQ_HEADER_SIZE + 4);
+    UdpTnoSchema.REQ_DST_PORT.put (buffer, 4, 0xbeef);
+    assertEquals ((byte) 0xbe, buffer.get (4 + 12));
+    assertEquals ((byte) 0xef, buffer.get (4 + 13));
+    assertEquals (0xbeef, UdpTnoSchema.REQ_DST_PORT.getInt (buffer, 4));
+    UdpTnoSchema.REQ_DST_LON.putDouble (buffer, 4, -4.7654321);
+    assertEquals (-4.7654321, UdpTnoSchema.REQ_DST_LON.getDouble (buffer, 4), 0.0);
+    UdpTnoSchema.REQ_PAYLOAD_LENGTH.put (buffer, 4, 0xfffffffeL);
+    assertEquals (0xfffffffeL, UdpTnoSchema.REQ_PAYLOAD_LENGTH.get (buffer, 4));
+  }
+
+  @Test
+  public void testEnumCodes ()
+  {
+    for (final BtpType btpType : BtpType.values ())
+      assertSame (btpType, UdpTnoSchema.BTP_TYPES[UdpTnoSchema.BTP_TYPE_CODES[btpType.ordinal ()]]);
+    for (final GnTransportType gnTransportType : GnTransportType.values ())
+      if (UdpTnoSchema.GN_TRANSPORT_TYPE_CODES[gnTransportType.ordinal ()] >= 0)
+        assertSame (gnTransportType, UdpTnoSchema.GN_TRANSPORT_TYPES[UdpTnoSchema.GN_TRANSPORT_TYPE_CODES[gnTransportType.ordinal ()]]);
+    for (final GnAreaShape gnAreaShape : GnAreaShape.values ())
+      assertSame (gnAreaShape, UdpTnoSchema.GN_AREA_SHAPES[UdpTnoSchema.GN_AREA_SHAPE_CODES[gnAreaShape.ordinal ()]]);
+    for (final GnCommunicationsProfile profile : GnCommunicationsProfile.values ())
+      assertSame (profile, UdpTnoSchema.GN_COMM_PROFILES[UdpTnoSchema.GN_COMM_PROFILE_CODES[profile.ordinal ()]]);
+    assertEquals (1, UdpTnoSchema.GN_COMM_PROFILE_CODES[GnCommunicationsProfile.GN_COMPROF_CELLULAR.ordinal ()]);
+    assertEquals (3, UdpTnoSchema.GN_TRANSPORT_TYPE_CODES[GnTransportType.GN_GBC.ordinal ()]);
+    assertNull (UdpTnoSchema.BTP_TYPES[15]);
+    assertNull (UdpTnoSchema.GN_TRANSPORT_TYPES[15]);
+  }
+
+  @Test
+  public void testVarintRoundTrip ()
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (16);
+    for (final long value : VARINTS)
+    {
+      final int end = UdpTnoSchema.putVarint (buffer, 3, value);
+      assertEquals (UdpTnoSchema.varintSize (value), end - 3);
+      assertTrue (end - 3 <= UdpTnoSchema.VARINT_MAX_SIZE);
+      assertEquals (end, UdpTnoSchema.varintEnd (buffer, 3, buffer.capacity ()));
+      assertEquals (value, UdpTnoSchema.getVarint (buffer, 3));
+    }
+  }
+
+  @Test
+  public void testVarintEncoding ()
+  {
+    // Unsigned LEB128: least-significant group first, continuation bit set on all but the last byte.
+    final ByteBuffer buffer = ByteBuffer.allocate (4);
+    assertEquals (2, UdpTnoSchema.putVarint (buffer, 0, 300L));
+    assertEquals ((byte) 0xac, buffer.get (0));
+    assertEquals ((byte) 0x02, buffer.get (1));
+  }
+
+  @Test
+  public void testVarintMalformed ()
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate (8);
+    // Beyond the limit.
+    UdpTnoSchema.putVarint (buffer, 0, 300L);
+    assertEquals (-1, UdpTnoSchema.varintEnd (buffer, 0, 1));
+    // Overlong.
+    for (int i = 0; i < buffer.capacity (); i++)
+      buffer.put (i, (byte) 0x80);
+    assertEquals (-1, UdpTnoSchema.varintEnd (buffer, 0, buffer.capacity ()));
+    // Beyond 32 bits.
+    assertEquals (5, UdpTnoSchema.putVarint (buffer, 0, 0xffffffffL));
+    assertEquals (5, UdpTnoSchema.varintEnd (buffer, 0, buffer.capacity ()));
+    assertEquals (5, UdpTnoSchema.putVarint (buffer, 0, 1L << 32));
+    assertEquals (-1, UdpTnoSchema.varintEnd (buffer, 0, buffer.capacity ()));
+    assertEquals (-1, UdpTnoSchema.varintEnd (buffer, 0, 4));
+  }
+
+  @Test
+  public void testE7 ()
+  {
+    assertEquals (521234567, UdpTnoSchema.toE7 (52.1234567));
+    assertEquals (-47654321, UdpTnoSchema.toE7 (-4.7654321));
+    assertEquals (52.1234567, UdpTnoSchema.fromE7 (521234567), 1e-9);
+  }
+
+  @Test
+  public void testTimeEncoding ()
+  {
+    assertEquals (0, UdpTnoSchema.encodeTime_ms (0));
+    assertEquals (0, UdpTnoSchema.encodeTime_ms (-5));
+    for (final int time_ms : new int[]{ 50, 500, 1000, 3000, 60000, 600000 })
+      assertEquals (time_ms, UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (time_ms)));
+    // Smallest base that holds the value; rounding to the nearest multiple, half-way up.
+    assertEquals (50, UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (74)));
+    assertEquals (100, UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (75)));
+    assertEquals (4000, UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (3500)));
+    // Saturation.
+    assertEquals ((byte) 0xff, UdpTnoSchema.encodeTime_ms (Integer.MAX_VALUE));
+    assertEquals (63 * 100000, UdpTnoSchema.decodeTime_ms ((byte) 0xff));
+  }
+
+  @Test
+  public void testTimeEncodingExhaustive ()
+  {
+    // Every time up to the maximum encodes to a byte that decodes within half a time base.
+    for (int time_ms = 1; time_ms <= 63 * 100000; time_ms += 7)
+    {
+      final int decoded_ms = UdpTnoSchema.decodeTime_ms (UdpTnoSchema.encodeTime_ms (time_ms));
+      final int base_ms = time_ms <= 63 * 50 ? 50 : time_ms <= 63 * 1000 ? 1000 : time_ms <= 63 * 10000 ? 10000 : 100000;
+      assertTrue (time_ms + " -> " + decoded_ms, Math.abs (decoded_ms - time_ms) <= base_ms / 2);
+    }
+  }
+
+  @Test
+  public void testTimeEncodingMatchesDivision ()
+  {
+    // The reciprocal multiplication is exact for every time up to (and beyond) the maximum.
+    for (int time_ms = -1; time_ms <= 64 * 100000; time_ms++)
+    {
+      byte expected = (byte) 0xff;
+      if (time_ms <= 0)
+        expected = 0;
+      else
+        for (int baseBits = 0; baseBits < UdpTnoSchema.TIME_BASE_MS.length; baseBits++)
+        {
+          final int base_ms = UdpTnoSchema.TIME_BASE_MS[baseBits];
+          if (time_ms <= base_ms * UdpTnoSchema.TIME_MAX_MULTIPLIER)
+          {
+            expected = (byte) (baseBits + (((time_ms + base_ms / 2) / base_ms) << 2));
+            break;
+          }
+        }
+      if (expected != UdpTnoSchema.encodeTime_ms (time_ms))
+        assertEquals ("time_ms = " + time_ms, expected, UdpTnoSchema.encodeTime_ms (time_ms));
+    }
+  }
+
+}